@@ -15,34 +15,91 @@
  */
 package bi.deep;
 
+import bi.deep.stats.FilteringEmitterStats;
 import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.apache.druid.java.util.common.concurrent.Execs;
 import org.apache.druid.java.util.common.lifecycle.LifecycleStart;
 import org.apache.druid.java.util.common.lifecycle.LifecycleStop;
+import org.apache.druid.java.util.common.logger.Logger;
 import org.apache.druid.java.util.emitter.core.Emitter;
 import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceEmitter;
 
 public class FilteringEmitter implements Emitter {
+    private static final Logger log = new Logger(FilteringEmitter.class);
 
     private final Emitter inner;
     private final Predicate<Event> filter;
+    private final FilteringEmitterStats stats;
+    private final Emitter statsEmitter;
+    private final long statsPeriodMillis;
+    private final Supplier<ServiceEmitter> serviceEmitter;
+    private ScheduledExecutorService exec;
 
     public FilteringEmitter(Emitter inner, Predicate<Event> filter) {
+        this(inner, filter, null, null, 0, null);
+    }
+
+    /**
+     * @param stats             statistics of the emitter, or {@code null}
+     * @param statsEmitter      emitter the statistics are reported to, usually the emitter at the end of the chain
+     *                          wrapped by {@code inner}, so that the statistics are not filtered or changed
+     * @param statsPeriodMillis how often the statistics are reported
+     * @param serviceEmitter    service emitter wrapping this emitter, providing the service and host of the statistics
+     */
+    public FilteringEmitter(
+            Emitter inner,
+            Predicate<Event> filter,
+            FilteringEmitterStats stats,
+            Emitter statsEmitter,
+            long statsPeriodMillis,
+            Supplier<ServiceEmitter> serviceEmitter) {
         this.inner = inner;
         this.filter = filter;
+        this.stats = stats;
+        this.statsEmitter = statsEmitter;
+        this.statsPeriodMillis = statsPeriodMillis;
+        this.serviceEmitter = serviceEmitter;
     }
 
     @Override
     @LifecycleStart
     public void start() {
         inner.start();
+
+        if (stats != null) {
+            exec = Execs.scheduledSingleThreaded("FilteringEmitter-stats-%d");
+            exec.scheduleAtFixedRate(this::reportStats, statsPeriodMillis, statsPeriodMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public void emit(Event event) {
+        if (stats == null) {
+            if (filter.test(event)) {
+                inner.emit(event);
+            }
+            return;
+        }
+
+        final long start = System.nanoTime();
         if (filter.test(event)) {
             inner.emit(event);
         }
+        stats.recordEmitTime(System.nanoTime() - start);
+    }
+
+    private void reportStats() {
+        try {
+            final ServiceEmitter service = serviceEmitter.get();
+            stats.report(service.getService(), service.getHost()).forEach(statsEmitter::emit);
+        } catch (RuntimeException e) {
+            log.error(e, "Failed to report filtering emitter statistics.");
+        }
     }
 
     @Override
@@ -53,6 +110,10 @@ public class FilteringEmitter implements Emitter {
     @Override
     @LifecycleStop
     public void close() throws IOException {
+        if (exec != null) {
+            exec.shutdownNow();
+            reportStats();
+        }
         inner.close();
     }
 
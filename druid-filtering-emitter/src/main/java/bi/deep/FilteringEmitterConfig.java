@@ -15,8 +15,19 @@
  */
 package bi.deep;
 
+import bi.deep.async.OverflowPolicy;
+import bi.deep.cardinality.CardinalitySpec;
+import bi.deep.changes.ChangeSpec;
+import bi.deep.filtering.EventFilter;
+import bi.deep.filtering.FilterRules;
+import bi.deep.filtering.limits.LimitSpec;
+import bi.deep.filtering.rules.RuleSpec;
+import bi.deep.projection.ProjectionSpec;
+import bi.deep.routing.RouteSpec;
+import bi.deep.summary.SummarySpec;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import javax.validation.constraints.NotNull;
 
@@ -29,6 +40,14 @@ public class FilteringEmitterConfig {
     @NotNull
     private String emitter = "noop";
 
+    /**
+     * Emitters receiving the events passing the filter, each with its own rule. When set, events are sent to every
+     * matching route instead of to {@link #emitter}.
+     */
+    @JsonProperty
+    @NotNull
+    private List<RouteSpec> routes = Collections.emptyList();
+
     /**
      * Key in the EventMap to extract for filtering. By default, "metric" is used.
      * If given key is not in the event then the event passes.
@@ -53,17 +72,166 @@ public class FilteringEmitterConfig {
     @NotNull
     private Set<String> regexMatch = Collections.emptySet();
 
+    /**
+     * Rule over several event keys that events must match in addition to the filters on {@link #key}. Optional.
+     */
+    @JsonProperty
+    private RuleSpec rule = null;
+
+    /**
+     * Sampling and rate limits applied to the events passing the filters. The first matching limit applies.
+     */
+    @JsonProperty
+    @NotNull
+    private List<LimitSpec> limits = Collections.emptyList();
+
+    /**
+     * JSON file with the filtering rules, using the same names as these properties. When set, the file takes
+     * precedence over the filtering properties and is reloaded whenever it changes. Optional.
+     */
+    @JsonProperty
+    private String rulesFile = null;
+
+    /**
+     * How often the rules file is checked for changes, in milliseconds.
+     */
+    @JsonProperty
+    private long rulesFilePollMillis = 10_000;
+
+    /**
+     * Dimensions removed from metric events before they are forwarded.
+     */
+    @JsonProperty
+    @NotNull
+    private List<ProjectionSpec> projections = Collections.emptyList();
+
+    /**
+     * Upper bounds on the number of distinct series forwarded per metric.
+     */
+    @JsonProperty
+    @NotNull
+    private List<CardinalitySpec> cardinalityLimits = Collections.emptyList();
+
+    /**
+     * Gauge-style metric events forwarded only when their value changed or their heartbeat interval elapsed.
+     */
+    @JsonProperty
+    @NotNull
+    private List<ChangeSpec> changesOnly = Collections.emptyList();
+
+    /**
+     * Metric events folded into per-window summaries instead of being emitted one by one.
+     */
+    @JsonProperty
+    @NotNull
+    private List<SummarySpec> summaries = Collections.emptyList();
+
+    /**
+     * Maximum number of distinct key values whose filter decision is cached. Zero disables the cache.
+     */
+    @JsonProperty
+    private int decisionCacheSize = EventFilter.DEFAULT_CACHE_SIZE;
+
+    /**
+     * Alerts with the same service and description within this many milliseconds are collapsed into one alert. Zero
+     * disables the deduplication.
+     */
+    @JsonProperty
+    private long alertWindowMillis = 0;
+
+    /**
+     * Maximum number of distinct alerts deduplicated at once.
+     */
+    @JsonProperty
+    private int maxAlerts = 1000;
+
+    /**
+     * How often statistics of the emitter itself are reported as metrics, in milliseconds. Zero disables them.
+     */
+    @JsonProperty
+    private long statsPeriodMillis = 0;
+
+    /**
+     * Emit the events passing the filter on a dedicated thread instead of the caller's thread.
+     */
+    @JsonProperty
+    private boolean async = false;
+
+    /**
+     * Capacity of the asynchronous queue, rounded up to a power of two.
+     */
+    @JsonProperty
+    private int queueSize = 16384;
+
+    /**
+     * Maximum number of events handed over to the inner emitter in one batch.
+     */
+    @JsonProperty
+    private int batchSize = 512;
+
+    @JsonProperty
+    @NotNull
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+    /**
+     * Directory the events not fitting into the asynchronous queue are spilled to, or {@code null} to handle them with
+     * the overflow policy.
+     */
+    @JsonProperty
+    private String spillDirectory;
+
+    /**
+     * Size of each memory-mapped spill file.
+     */
+    @JsonProperty
+    private int spillSegmentBytes = 16 * 1024 * 1024;
+
+    /**
+     * Maximum size of the spill files of each emitter.
+     */
+    @JsonProperty
+    private long maxSpillBytes = 1024L * 1024 * 1024;
+
     public void validate() {
-        if (!allowList.isEmpty() && !blockList.isEmpty() && startsWith.isEmpty() && regexMatch.isEmpty()) {
-            throw new RuntimeException(
-                    "Defining both 'allowList' and 'blockList' without other filters is not supported.");
+        if (async && (queueSize < 1 || batchSize < 1)) {
+            throw new RuntimeException("Both 'queueSize' and 'batchSize' must be positive.");
         }
+        if (rulesFile != null && rulesFilePollMillis < 1) {
+            throw new RuntimeException("'rulesFilePollMillis' must be positive.");
+        }
+        if (spillDirectory != null && !async) {
+            throw new RuntimeException("'spillDirectory' requires 'async'.");
+        }
+        if (spillDirectory != null && (spillSegmentBytes < 64 || maxSpillBytes < spillSegmentBytes)) {
+            throw new RuntimeException("'maxSpillBytes' must fit at least one segment of 'spillSegmentBytes'.");
+        }
+        if (alertWindowMillis < 0 || maxAlerts < 1) {
+            throw new RuntimeException("'alertWindowMillis' must not be negative and 'maxAlerts' must be positive.");
+        }
+        if (statsPeriodMillis < 0) {
+            throw new RuntimeException("'statsPeriodMillis' must not be negative.");
+        }
+        if (routes.stream().map(RouteSpec::getEmitter).distinct().count() != routes.size()) {
+            throw new RuntimeException("Each emitter can be used by a single route only.");
+        }
+        getRules().validate();
+    }
+
+    /**
+     * Filtering rules defined by the properties.
+     */
+    public FilterRules getRules() {
+        return new FilterRules(key, allowList, blockList, startsWith, regexMatch, rule, limits);
     }
 
     public String getEmitter() {
         return emitter;
     }
 
+    public List<RouteSpec> getRoutes() {
+        return routes;
+    }
+
     public String getKey() {
         return key;
     }
@@ -83,4 +251,80 @@ public class FilteringEmitterConfig {
     public Set<String> getRegexMatchList() {
         return regexMatch;
     }
+
+    public RuleSpec getRule() {
+        return rule;
+    }
+
+    public List<LimitSpec> getLimits() {
+        return limits;
+    }
+
+    public String getRulesFile() {
+        return rulesFile;
+    }
+
+    public long getRulesFilePollMillis() {
+        return rulesFilePollMillis;
+    }
+
+    public List<ProjectionSpec> getProjections() {
+        return projections;
+    }
+
+    public List<CardinalitySpec> getCardinalityLimits() {
+        return cardinalityLimits;
+    }
+
+    public List<ChangeSpec> getChangesOnly() {
+        return changesOnly;
+    }
+
+    public List<SummarySpec> getSummaries() {
+        return summaries;
+    }
+
+    public int getDecisionCacheSize() {
+        return decisionCacheSize;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public int getSpillSegmentBytes() {
+        return spillSegmentBytes;
+    }
+
+    public long getMaxSpillBytes() {
+        return maxSpillBytes;
+    }
+
+    public long getAlertWindowMillis() {
+        return alertWindowMillis;
+    }
+
+    public int getMaxAlerts() {
+        return maxAlerts;
+    }
+
+    public long getStatsPeriodMillis() {
+        return statsPeriodMillis;
+    }
+
+    public boolean isAsync() {
+        return async;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
 }
@@ -15,21 +15,45 @@
  */
 package bi.deep;
 
-import bi.deep.filtering.EventFilter;
+import bi.deep.alerts.AlertDeduplicatingEmitter;
+import bi.deep.async.AsyncEmitter;
+import bi.deep.async.EventCodec;
+import bi.deep.async.SpillLog;
+import bi.deep.cardinality.CardinalityLimitingEmitter;
+import bi.deep.changes.ChangeOnlyEmitter;
+import bi.deep.filtering.ReloadingFilter;
+import bi.deep.projection.ProjectingEmitter;
+import bi.deep.routing.RouteSpec;
+import bi.deep.routing.RoutingEmitter;
+import bi.deep.stats.FilteringEmitterStats;
+import bi.deep.summary.SummarizingEmitter;
 import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Binder;
 import com.google.inject.Injector;
 import com.google.inject.Key;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
 import com.google.inject.name.Named;
 import com.google.inject.name.Names;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
 import org.apache.druid.guice.JsonConfigProvider;
 import org.apache.druid.guice.ManageLifecycle;
+import org.apache.druid.guice.annotations.Json;
+import org.apache.druid.guice.annotations.Self;
 import org.apache.druid.initialization.DruidModule;
+import org.apache.druid.java.util.common.lifecycle.Lifecycle;
 import org.apache.druid.java.util.common.logger.Logger;
 import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceEmitter;
+import org.apache.druid.server.DruidNode;
 
 public class FilteringEmitterModule implements DruidModule {
     private static final Logger log = new Logger(FilteringEmitterModule.class);
@@ -49,9 +73,158 @@ public class FilteringEmitterModule implements DruidModule {
     @Named("filtering")
     public Emitter getEmitter(FilteringEmitterConfig config, final Injector injector) {
         config.validate();
-        log.info("Creating Filtering Emitter with %s", config.getEmitter());
-        Emitter inner = injector.getInstance(Key.get(Emitter.class, Names.named(config.getEmitter())));
 
-        return new FilteringEmitter(inner, EventFilter.of(config));
+        FilteringEmitterStats stats = config.getStatsPeriodMillis() > 0 ? new FilteringEmitterStats() : null;
+
+        Emitter inner;
+        // Emitters the statistics are reported to, bypassing the queues and the decorators changing events
+        Emitter statsEmitter;
+        if (config.getRoutes().isEmpty()) {
+            log.info("Creating Filtering Emitter with %s", config.getEmitter());
+            statsEmitter = getNamedEmitter(config.getEmitter(), injector);
+            inner = getInnerEmitter(config, config.getEmitter(), statsEmitter, injector, stats);
+        } else {
+            log.info("Creating Filtering Emitter with routes %s", config.getRoutes());
+            List<RoutingEmitter.Route> routes = new ArrayList<>();
+            List<RoutingEmitter.Route> statsRoutes = new ArrayList<>();
+            for (RouteSpec route : config.getRoutes()) {
+                Predicate<Event> rule = route.getRule() == null ? null : route.getRule().compile();
+                Emitter emitter = getNamedEmitter(route.getEmitter(), injector);
+                statsRoutes.add(new RoutingEmitter.Route(route.getEmitter(), rule, emitter));
+                if (stats != null) {
+                    rule = stats.counting(
+                            FilteringEmitterStats.routeDimensions(route.getEmitter()),
+                            rule == null ? event -> true : rule);
+                }
+                routes.add(new RoutingEmitter.Route(
+                        route.getEmitter(),
+                        rule,
+                        getInnerEmitter(config, route.getEmitter(), emitter, injector, stats)));
+            }
+            inner = new RoutingEmitter(routes);
+            statsEmitter = new RoutingEmitter(statsRoutes);
+        }
+
+        if (!config.getSummaries().isEmpty()) {
+            log.info("Summarizing metrics with %s", config.getSummaries());
+            inner = new SummarizingEmitter(inner, config.getSummaries());
+        }
+
+        if (!config.getChangesOnly().isEmpty()) {
+            log.info("Forwarding metrics on change only with %s", config.getChangesOnly());
+            ChangeOnlyEmitter changesOnly = new ChangeOnlyEmitter(inner, config.getChangesOnly());
+            if (stats != null) {
+                stats.counter(
+                        "filteringEmitter/events/dropped",
+                        Collections.singletonMap(FilteringEmitterStats.STEP, "changesOnly"),
+                        changesOnly::getSuppressedCount);
+            }
+            inner = changesOnly;
+        }
+
+        if (!config.getCardinalityLimits().isEmpty()) {
+            log.info("Limiting series per metric with %s", config.getCardinalityLimits());
+            CardinalityLimitingEmitter limiting = new CardinalityLimitingEmitter(inner, config.getCardinalityLimits());
+            if (stats != null) {
+                stats.counter(
+                        "filteringEmitter/series/overflow",
+                        Collections.singletonMap(FilteringEmitterStats.STEP, "cardinalityLimits"),
+                        limiting::getOverflowCount);
+            }
+            inner = limiting;
+        }
+
+        if (!config.getProjections().isEmpty()) {
+            log.info("Projecting dimensions with %s", config.getProjections());
+            inner = new ProjectingEmitter(inner, config.getProjections());
+        }
+
+        if (config.getAlertWindowMillis() > 0) {
+            log.info("Deduplicating alerts within %d ms", config.getAlertWindowMillis());
+            inner = new AlertDeduplicatingEmitter(inner, config.getAlertWindowMillis(), config.getMaxAlerts());
+        }
+
+        Predicate<Event> filter = config.getRules().compile(config.getDecisionCacheSize(), stats);
+        log.info("Filtering events with %s", config.getRules());
+
+        if (config.getRulesFile() != null) {
+            log.info("Loading filtering rules from [%s]", config.getRulesFile());
+            ReloadingFilter reloading = new ReloadingFilter(
+                    filter,
+                    new File(config.getRulesFile()),
+                    injector.getInstance(Key.get(ObjectMapper.class, Json.class)),
+                    config.getRulesFilePollMillis(),
+                    config.getDecisionCacheSize(),
+                    stats);
+            try {
+                injector.getInstance(Lifecycle.class).addMaybeStartManagedInstance(reloading);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+            filter = reloading;
+        }
+
+        if (stats == null) {
+            return new FilteringEmitter(inner, filter);
+        }
+
+        log.info("Reporting filtering emitter statistics every %d ms", config.getStatsPeriodMillis());
+        Provider<ServiceEmitter> serviceEmitter = injector.getProvider(ServiceEmitter.class);
+        return new FilteringEmitter(
+                inner, filter, stats, statsEmitter, config.getStatsPeriodMillis(), serviceEmitter::get);
+    }
+
+    private static Emitter getNamedEmitter(String name, Injector injector) {
+        return injector.getInstance(Key.get(Emitter.class, Names.named(name)));
+    }
+
+    private static Emitter getInnerEmitter(
+            FilteringEmitterConfig config,
+            String name,
+            Emitter emitter,
+            Injector injector,
+            FilteringEmitterStats stats) {
+        if (config.isAsync()) {
+            log.info(
+                    "Emitting to [%s] asynchronously with queue size %d and overflow policy [%s]",
+                    name,
+                    config.getQueueSize(),
+                    config.getOverflowPolicy());
+            AsyncEmitter async = new AsyncEmitter(
+                    emitter,
+                    config.getQueueSize(),
+                    config.getBatchSize(),
+                    config.getOverflowPolicy(),
+                    getSpillLog(config, name, injector),
+                    new EventCodec(injector.getInstance(Key.get(ObjectMapper.class, Json.class))));
+            if (stats != null) {
+                Map<String, String> dimensions = FilteringEmitterStats.routeDimensions(name);
+                stats.gauge("filteringEmitter/queue/size", dimensions, async::getQueueSize);
+                stats.counter("filteringEmitter/queue/dropped", dimensions, async::getDroppedCount);
+                stats.gauge("filteringEmitter/queue/spilled", dimensions, async::getSpilledCount);
+            }
+            return async;
+        }
+
+        return emitter;
+    }
+
+    private static SpillLog getSpillLog(FilteringEmitterConfig config, String name, Injector injector) {
+        if (config.getSpillDirectory() == null) {
+            return null;
+        }
+
+        // Processes sharing the spill directory must not write to the same files, while a restarted process has to
+        // find its files again, so they are kept per host and port
+        DruidNode node = injector.getInstance(Key.get(DruidNode.class, Self.class));
+        File processDirectory = new File(
+                config.getSpillDirectory(), node.getHostAndPortToUse().replaceAll("[^A-Za-z0-9._-]", "_"));
+        File directory = new File(processDirectory, name);
+        log.info("Spilling events for [%s] to [%s], up to %,d bytes", name, directory, config.getMaxSpillBytes());
+        try {
+            return new SpillLog(directory, config.getSpillSegmentBytes(), config.getMaxSpillBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.alerts;
+
+import bi.deep.filtering.ServiceDimensions;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.druid.java.util.common.concurrent.Execs;
+import org.apache.druid.java.util.common.logger.Logger;
+import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.AlertEvent;
+
+/**
+ * Collapses alerts with the same service and description within a window. The first alert is passed to the inner
+ * emitter right away; repeats within the window are only counted, and when the window ends a single alert with the
+ * {@code occurrences} data field, the total number of alerts in the window, is emitted in their place. Other events
+ * are passed to the inner emitter as they are.
+ *
+ * <p>Windows expire on a time wheel: each open window sits in the slot of the tick it ends in, so expiring them only
+ * visits the slot of the current tick. At most {@code maxAlerts} windows are open at once; further distinct alerts
+ * are passed through without deduplication.
+ */
+public class AlertDeduplicatingEmitter implements Emitter {
+    public static final String OCCURRENCES = "occurrences";
+
+    private static final Logger log = new Logger(AlertDeduplicatingEmitter.class);
+    private static final int WHEEL_SLOTS = 64;
+
+    private final Emitter inner;
+    private final long windowMillis;
+    private final int maxAlerts;
+    private final LongSupplier clock;
+    private final long tickMillis;
+    private final ConcurrentHashMap<AlertKey, Window> windows = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Window>[] wheel;
+    private long lastTick;
+    private ScheduledExecutorService exec;
+
+    public AlertDeduplicatingEmitter(Emitter inner, long windowMillis, int maxAlerts) {
+        this(inner, windowMillis, maxAlerts, System::currentTimeMillis);
+    }
+
+    @SuppressWarnings("unchecked")
+    public AlertDeduplicatingEmitter(Emitter inner, long windowMillis, int maxAlerts, LongSupplier clock) {
+        this.inner = inner;
+        this.windowMillis = windowMillis;
+        this.maxAlerts = maxAlerts;
+        this.clock = clock;
+        // a window never spans more than one turn of the wheel
+        this.tickMillis = Math.max(1, (windowMillis + WHEEL_SLOTS - 1) / WHEEL_SLOTS);
+        this.wheel = new ConcurrentLinkedQueue[WHEEL_SLOTS];
+        for (int i = 0; i < WHEEL_SLOTS; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.lastTick = clock.getAsLong() / tickMillis;
+    }
+
+    @Override
+    public void start() {
+        inner.start();
+        exec = Execs.scheduledSingleThreaded("FilteringEmitter-alerts-%d");
+        exec.scheduleAtFixedRate(this::expireSafely, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void emit(Event event) {
+        if (!(event instanceof AlertEvent)) {
+            inner.emit(event);
+            return;
+        }
+
+        final AlertEvent alert = (AlertEvent) event;
+        final AlertKey key = new AlertKey(alert.getService(), alert.getDescription());
+
+        while (true) {
+            final Window window = windows.get(key);
+
+            if (window == null) {
+                if (windows.size() >= maxAlerts) {
+                    inner.emit(event);
+                    return;
+                }
+
+                final long expiresAt = clock.getAsLong() + windowMillis;
+                final Window opened = new Window(key, expiresAt);
+                if (windows.putIfAbsent(key, opened) == null) {
+                    // the slot of the first tick at or after the end of the window
+                    wheel[slot((expiresAt + tickMillis - 1) / tickMillis)].add(opened);
+                    inner.emit(event);
+                    return;
+                }
+            } else if (window.repeat(alert)) {
+                return;
+            } else {
+                // the window is being closed, open a new one
+                windows.remove(key, window);
+            }
+        }
+    }
+
+    /**
+     * Closes the windows which ended since the last call and emits their collapsed alerts.
+     */
+    public void expire() {
+        final long now = clock.getAsLong();
+        final long tick = now / tickMillis;
+
+        synchronized (wheel) {
+            for (long t = Math.max(lastTick + 1, tick - WHEEL_SLOTS + 1); t <= tick; t++) {
+                final ConcurrentLinkedQueue<Window> slot = wheel[slot(t)];
+                final int pending = slot.size();
+                for (int i = 0; i < pending; i++) {
+                    final Window window = slot.poll();
+                    if (window == null) {
+                        break;
+                    }
+                    if (window.expiresAt <= now) {
+                        close(window);
+                    } else {
+                        slot.add(window);
+                    }
+                }
+            }
+            lastTick = Math.max(lastTick, tick);
+        }
+    }
+
+    private void expireSafely() {
+        try {
+            expire();
+        } catch (RuntimeException e) {
+            log.error(e, "Failed to emit deduplicated alerts.");
+        }
+    }
+
+    private void close(Window window) {
+        windows.remove(window.key, window);
+        final AlertEvent collapsed = window.close();
+        if (collapsed != null) {
+            inner.emit(collapsed);
+        }
+    }
+
+    private static int slot(long tick) {
+        return (int) (tick % WHEEL_SLOTS);
+    }
+
+    /**
+     * Closes all open windows, emitting their collapsed alerts, and flushes the inner emitter.
+     */
+    @Override
+    public void flush() throws IOException {
+        closeAll();
+        inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (exec != null) {
+            exec.shutdownNow();
+        }
+        closeAll();
+        inner.close();
+    }
+
+    private void closeAll() {
+        synchronized (wheel) {
+            for (ConcurrentLinkedQueue<Window> slot : wheel) {
+                Window window;
+                while ((window = slot.poll()) != null) {
+                    close(window);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AlertDeduplicatingEmitter{" + "emitter=" + inner + "}";
+    }
+
+    private static class Window {
+        private final AlertKey key;
+        private final long expiresAt;
+        private int occurrences = 1;
+        private AlertEvent last;
+        private boolean closed;
+
+        private Window(AlertKey key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        private synchronized boolean repeat(AlertEvent alert) {
+            if (closed) {
+                return false;
+            }
+            occurrences++;
+            last = alert;
+            return true;
+        }
+
+        /**
+         * Returns the alert collapsing the repeats, or {@code null} when the alert was not repeated.
+         */
+        private synchronized AlertEvent close() {
+            closed = true;
+            if (last == null) {
+                return null;
+            }
+
+            final Map<String, Object> data = new LinkedHashMap<>(last.getDataMap());
+            data.put(OCCURRENCES, occurrences);
+            return new AlertEvent(
+                    last.getCreatedTime(),
+                    ServiceDimensions.of(last),
+                    last.getSeverity(),
+                    last.getDescription(),
+                    data);
+        }
+    }
+
+    private static class AlertKey {
+        private final String service;
+        private final String description;
+        private final int hash;
+
+        private AlertKey(String service, String description) {
+            this.service = service;
+            this.description = description;
+            this.hash = Objects.hash(service, description);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            AlertKey that = (AlertKey) o;
+            return Objects.equals(service, that.service) && Objects.equals(description, that.description);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
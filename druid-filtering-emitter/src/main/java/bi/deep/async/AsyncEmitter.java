@@ -0,0 +1,290 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.async;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.apache.druid.java.util.common.logger.Logger;
+import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Hands events over to a {@link RingBuffer} and emits them to the inner emitter in batches on a dedicated thread, so
+ * that a slow inner emitter does not stall the threads emitting metrics.
+ *
+ * <p>With a {@link SpillLog}, metric and alert events which do not fit into the queue are written to disk instead of
+ * being handled by the overflow policy. Once events were spilled, new events are spilled as well until the log is read
+ * back, which happens whenever the queue is empty, so that events reach the inner emitter in order.
+ */
+public class AsyncEmitter implements Emitter {
+    private static final Logger log = new Logger(AsyncEmitter.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final Emitter inner;
+    private final RingBuffer<Event> queue;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final SpillLog spill;
+    private final EventCodec codec;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread worker;
+
+    private volatile boolean running;
+
+    /**
+     * Queue position up to which every event was either handed over to the inner emitter or dropped.
+     */
+    private volatile long handedOver;
+
+    public AsyncEmitter(Emitter inner, int queueSize, int batchSize, OverflowPolicy overflowPolicy) {
+        this(inner, queueSize, batchSize, overflowPolicy, null, null);
+    }
+
+    /**
+     * @param spill log the events not fitting into the queue are written to, or {@code null}
+     * @param codec converts the events to the records of the log
+     */
+    public AsyncEmitter(
+            Emitter inner,
+            int queueSize,
+            int batchSize,
+            OverflowPolicy overflowPolicy,
+            SpillLog spill,
+            EventCodec codec) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, got " + batchSize);
+        }
+
+        this.inner = inner;
+        this.queue = new RingBuffer<>(queueSize);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.spill = spill;
+        this.codec = codec;
+        this.worker = new Thread(this::drainLoop, "FilteringEmitter-async");
+        this.worker.setDaemon(true);
+    }
+
+    @Override
+    public void start() {
+        inner.start();
+        running = true;
+        worker.start();
+    }
+
+    @Override
+    public void emit(Event event) {
+        if (spill != null && EventCodec.supports(event)) {
+            // events queued after spilled ones would overtake them
+            if (spill.isEmpty() && queue.offer(event)) {
+                return;
+            }
+            spill(event);
+            return;
+        }
+
+        if (queue.offer(event)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                do {
+                    if (queue.poll() != null) {
+                        onDropped();
+                    }
+                } while (!queue.offer(event));
+                break;
+            case BLOCK:
+                while (!queue.offer(event)) {
+                    if (!running) {
+                        onDropped();
+                        return;
+                    }
+                    LockSupport.unpark(worker);
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                break;
+            default:
+                onDropped();
+        }
+    }
+
+    private void spill(Event event) {
+        try {
+            if (spill.append(codec.encode(event))) {
+                return;
+            }
+        } catch (IOException e) {
+            log.error(e, "Failed to spill event.");
+        }
+        onDropped();
+    }
+
+    /**
+     * Waits until the events queued so far are handed over to the inner emitter, then flushes it. Spilled events are
+     * only written to disk, they are read back in the background.
+     */
+    @Override
+    public void flush() throws IOException {
+        awaitDrained(Long.MAX_VALUE);
+        if (spill != null) {
+            spill.force();
+        }
+        inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        awaitDrained(CLOSE_TIMEOUT_NANOS);
+        running = false;
+        LockSupport.unpark(worker);
+
+        try {
+            worker.join(TimeUnit.NANOSECONDS.toMillis(CLOSE_TIMEOUT_NANOS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (spill != null) {
+            if (worker.isAlive()) {
+                // the worker may still be reading the log, keep it mapped
+                spill.force();
+            } else {
+                spill.close();
+            }
+        }
+        inner.close();
+    }
+
+    /**
+     * Approximate number of queued events.
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Number of events spilled to disk and not read back yet.
+     */
+    public long getSpilledCount() {
+        return spill == null ? 0 : spill.getPendingCount();
+    }
+
+    /**
+     * Number of events dropped because the queue, or the spill log, was full.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void onDropped() {
+        if (dropped.getAndIncrement() == 0) {
+            if (spill == null) {
+                log.warn(
+                        "Queue of %,d events is full, dropping events with policy [%s].",
+                        queue.capacity(),
+                        overflowPolicy);
+            } else {
+                log.warn("Queue of %,d events and spill log are full, dropping events.", queue.capacity());
+            }
+        }
+    }
+
+    private void awaitDrained(long timeoutNanos) {
+        final long target = queue.producedCount();
+        final long deadline = System.nanoTime() + timeoutNanos;
+
+        while (running && worker.isAlive() && handedOver < target && deadline - System.nanoTime() > 0) {
+            LockSupport.unpark(worker);
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void drainLoop() {
+        final List<Event> batch = new ArrayList<>(batchSize);
+
+        while (running) {
+            if (queue.drainTo(batch, batchSize) == 0) {
+                handedOver = queue.consumedCount();
+                if (readSpilled(batch) > 0) {
+                    emitBatch(batch);
+                } else {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                }
+                continue;
+            }
+            final long consumed = queue.consumedCount();
+            emitBatch(batch);
+            handedOver = consumed;
+        }
+
+        while (queue.drainTo(batch, batchSize) > 0) {
+            emitBatch(batch);
+        }
+    }
+
+    /**
+     * Reads back up to a batch of spilled events, once the queue is empty. Records which cannot be decoded are skipped,
+     * so that a single bad record does not stop the worker.
+     */
+    private int readSpilled(List<Event> batch) {
+        if (spill == null) {
+            return 0;
+        }
+
+        byte[] record;
+        while (batch.size() < batchSize && (record = pollSpilled()) != null) {
+            try {
+                batch.add(codec.decode(record));
+            } catch (IOException | RuntimeException e) {
+                log.error(e, "Failed to read spilled event, skipping it.");
+            }
+        }
+        return batch.size();
+    }
+
+    private byte[] pollSpilled() {
+        try {
+            return spill.poll();
+        } catch (RuntimeException e) {
+            log.error(e, "Failed to read spill log, retrying later.");
+            return null;
+        }
+    }
+
+    private void emitBatch(List<Event> batch) {
+        for (Event event : batch) {
+            try {
+                inner.emit(event);
+            } catch (RuntimeException e) {
+                log.error(e, "Inner emitter failed to emit event, skipping it.");
+            }
+        }
+        batch.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncEmitter{" + "emitter=" + inner + ", queueSize=" + queue.capacity() + "}";
+    }
+}
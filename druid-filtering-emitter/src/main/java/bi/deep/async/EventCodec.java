@@ -0,0 +1,122 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.async;
+
+import bi.deep.filtering.ServiceDimensions;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.druid.java.util.common.DateTimes;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.AlertEvent;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Converts metric and alert events to JSON records and back, so that they can be written to a {@link SpillLog}. The
+ * records are built from the fields of the events and their service dimensions, such as the version, which are read
+ * with {@link ServiceDimensions}. Records written without the service dimensions are read back with the service and
+ * host only.
+ */
+public class EventCodec {
+    private static final TypeReference<Map<String, Object>> RECORD = new TypeReference<>() {};
+
+    private static final String METRICS = "metrics";
+    private static final String ALERTS = "alerts";
+    private static final String SERVICE_DIMS = "serviceDims";
+
+    private final ObjectMapper mapper;
+
+    public EventCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Whether the event can be encoded.
+     */
+    public static boolean supports(Event event) {
+        return event instanceof ServiceMetricEvent || event instanceof AlertEvent;
+    }
+
+    public byte[] encode(Event event) throws IOException {
+        final Map<String, Object> record = new LinkedHashMap<>();
+
+        if (event instanceof ServiceMetricEvent) {
+            final ServiceMetricEvent metricEvent = (ServiceMetricEvent) event;
+            record.put("type", METRICS);
+            record.put("feed", metricEvent.getFeed());
+            record.put("timestamp", metricEvent.getCreatedTime().getMillis());
+            record.put(SERVICE_DIMS, ServiceDimensions.of(metricEvent));
+            record.put("metric", metricEvent.getMetric());
+            record.put("value", metricEvent.getValue());
+            record.put("dimensions", metricEvent.getUserDims());
+        } else if (event instanceof AlertEvent) {
+            final AlertEvent alert = (AlertEvent) event;
+            record.put("type", ALERTS);
+            record.put("timestamp", alert.getCreatedTime().getMillis());
+            record.put(SERVICE_DIMS, ServiceDimensions.of(alert));
+            record.put("severity", alert.getSeverity().name());
+            record.put("description", alert.getDescription());
+            record.put("data", alert.getDataMap());
+        } else {
+            throw new IOException("Cannot encode events of type " + event.getClass().getName());
+        }
+
+        return mapper.writeValueAsBytes(record);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Event decode(byte[] bytes) throws IOException {
+        final Map<String, Object> record = mapper.readValue(bytes, RECORD);
+        final long timestamp = ((Number) record.get("timestamp")).longValue();
+        final ImmutableMap<String, String> serviceDims = serviceDims(record);
+
+        if (METRICS.equals(record.get("type"))) {
+            final ServiceMetricEvent.Builder builder = ServiceMetricEvent.builder();
+            ((Map<String, Object>) record.get("dimensions")).forEach(builder::setDimension);
+            return builder.setFeed((String) record.get("feed"))
+                    .setCreatedTime(DateTimes.utc(timestamp))
+                    .setMetric((String) record.get("metric"), (Number) record.get("value"))
+                    .build(serviceDims);
+        }
+
+        if (ALERTS.equals(record.get("type"))) {
+            return new AlertEvent(
+                    DateTimes.utc(timestamp),
+                    serviceDims,
+                    AlertEvent.Severity.valueOf((String) record.get("severity")),
+                    (String) record.get("description"),
+                    (Map<String, Object>) record.get("data"));
+        }
+
+        throw new IOException("Unknown record type " + record.get("type"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ImmutableMap<String, String> serviceDims(Map<String, Object> record) {
+        final Map<String, String> serviceDims = (Map<String, String>) record.get(SERVICE_DIMS);
+        if (serviceDims == null) {
+            return ImmutableMap.of(
+                    ServiceDimensions.SERVICE,
+                    (String) record.get(ServiceDimensions.SERVICE),
+                    ServiceDimensions.HOST,
+                    (String) record.get(ServiceDimensions.HOST));
+        }
+        return ImmutableMap.copyOf(serviceDims);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.async;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import org.apache.druid.java.util.common.StringUtils;
+
+/**
+ * What the asynchronous stage does with an event when its queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Drop the oldest queued event to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Drop the new event.
+     */
+    DROP_NEWEST,
+    /**
+     * Wait on the emitting thread until there is room in the queue.
+     */
+    BLOCK;
+
+    @JsonCreator
+    public static OverflowPolicy fromString(String name) {
+        return valueOf(StringUtils.toUpperCase(name));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.async;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue based on Dmitry Vyukov's array queue. Every slot carries a sequence number telling producers
+ * and consumers whether it is free or holds an element, so both sides only contend on a single CAS of their cursor.
+ *
+ * <p>The queue supports any number of producers. It is drained by the single emitting thread, but {@link #poll()} is
+ * safe to call from producers as well, which the drop-oldest policy relies on.
+ */
+public class RingBuffer<E> {
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, got " + capacity);
+        }
+
+        final int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds the element unless the queue is full.
+     */
+    public boolean offer(E element) {
+        long position = head.get();
+
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element, or returns {@code null} when the queue is empty.
+     */
+    public E poll() {
+        long position = tail.get();
+
+        while (true) {
+            final int index = (int) (position & mask);
+            final long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    final E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return element;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Moves up to {@code limit} elements into the given list.
+     *
+     * @return number of drained elements
+     */
+    public int drainTo(List<? super E> batch, int limit) {
+        int drained = 0;
+        E element;
+
+        while (drained < limit && (element = poll()) != null) {
+            batch.add(element);
+            drained++;
+        }
+
+        return drained;
+    }
+
+    /**
+     * Number of elements added to the queue so far.
+     */
+    public long producedCount() {
+        return head.get();
+    }
+
+    /**
+     * Number of elements removed from the queue so far.
+     */
+    public long consumedCount() {
+        return tail.get();
+    }
+
+    /**
+     * Approximate number of queued elements.
+     */
+    public int size() {
+        final long size = head.get() - tail.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
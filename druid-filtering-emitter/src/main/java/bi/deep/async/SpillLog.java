@@ -0,0 +1,270 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.async;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import org.apache.druid.java.util.common.ByteBufferUtils;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.java.util.common.ISE;
+import org.apache.druid.java.util.common.StringUtils;
+import org.apache.druid.java.util.common.logger.Logger;
+
+/**
+ * Append-only log of records kept in memory-mapped segment files of a directory, read back in the order they were
+ * appended. Records are appended to the last segment and read from the first one, which is deleted once read.
+ *
+ * <p>A record is stored as its length followed by its bytes. The length is written after the bytes, so a record is
+ * only visible once complete, and it is negated once the record was read. Segments left over by a previous process
+ * are therefore read again from the first unread record. The total size of the segments is capped; appending a record
+ * which does not fit fails instead.
+ *
+ * <p>A segment whose records cannot be read, for example because the file was truncated, is renamed with the
+ * {@code .corrupt} suffix and skipped, so that the records of the following segments are still read.
+ */
+public class SpillLog implements Closeable {
+    private static final Logger log = new Logger(SpillLog.class);
+
+    private static final String SUFFIX = ".log";
+    private static final String CORRUPT_SUFFIX = ".corrupt";
+
+    private final File directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private long totalBytes;
+    private long nextSequence;
+    private volatile long pending;
+
+    public SpillLog(File directory, int segmentBytes, long maxBytes) throws IOException {
+        if (segmentBytes < 64 || maxBytes < segmentBytes) {
+            throw new IAE("Segments of %,d bytes do not fit into %,d bytes", segmentBytes, maxBytes);
+        }
+
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(StringUtils.format("Cannot create directory [%s]", directory));
+        }
+        recover();
+    }
+
+    private void recover() throws IOException {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            final String name = file.getName();
+            final Segment segment = new Segment(file, (int) file.length());
+            pending += segment.recover();
+            segments.add(segment);
+            totalBytes += segment.capacity;
+            nextSequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length())) + 1;
+        }
+    }
+
+    /**
+     * Appends the record, returning {@code false} when it does not fit into the size cap.
+     */
+    public synchronized boolean append(byte[] record) throws IOException {
+        if (Integer.BYTES + record.length > segmentBytes) {
+            return false;
+        }
+
+        Segment tail = segments.peekLast();
+        if (tail == null || !tail.hasRoomFor(record)) {
+            if (totalBytes + segmentBytes > maxBytes) {
+                return false;
+            }
+            final File file = new File(directory, StringUtils.format("%020d%s", nextSequence++, SUFFIX));
+            tail = new Segment(file, segmentBytes);
+            segments.add(tail);
+            totalBytes += segmentBytes;
+        }
+
+        tail.append(record);
+        pending++;
+        return true;
+    }
+
+    /**
+     * Returns the oldest unread record, or {@code null} when all records were read.
+     */
+    public synchronized byte[] poll() {
+        while (true) {
+            final Segment head = segments.peekFirst();
+            if (head == null) {
+                return null;
+            }
+
+            final byte[] record;
+            try {
+                record = head.read();
+            } catch (RuntimeException e) {
+                log.error(
+                        e,
+                        "Cannot read spill file [%s], moving it aside with %,d unread records.",
+                        head.file,
+                        head.unread);
+                remove(head);
+                head.quarantine();
+                continue;
+            }
+
+            if (record != null) {
+                pending--;
+                return record;
+            }
+            if (head == segments.peekLast()) {
+                return null;
+            }
+
+            remove(head);
+            head.delete();
+        }
+    }
+
+    private void remove(Segment segment) {
+        segments.remove(segment);
+        totalBytes -= segment.capacity;
+        pending -= segment.unread;
+    }
+
+    /**
+     * Number of unread records.
+     */
+    public long getPendingCount() {
+        return pending;
+    }
+
+    public boolean isEmpty() {
+        return pending == 0;
+    }
+
+    /**
+     * Writes the appended records to the disk.
+     */
+    public synchronized void force() {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        for (Segment segment : segments) {
+            ByteBufferUtils.unmap(segment.buffer);
+        }
+        segments.clear();
+    }
+
+    private static class Segment {
+        private final File file;
+        private final int capacity;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int readPosition;
+        private long unread;
+
+        private Segment(File file, int capacity) throws IOException {
+            this.file = file;
+            this.capacity = capacity;
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(capacity);
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+
+        /**
+         * Finds the end of the records of a segment written by a previous process, returning the number of unread
+         * records.
+         */
+        private long recover() {
+            while (writePosition + Integer.BYTES <= capacity) {
+                final int length = buffer.getInt(writePosition);
+                final int size = Math.abs(length);
+                if (length == 0 || size < 0 || writePosition + Integer.BYTES + size > capacity) {
+                    break;
+                }
+                if (length > 0) {
+                    unread++;
+                }
+                writePosition += Integer.BYTES + size;
+            }
+            return unread;
+        }
+
+        private boolean hasRoomFor(byte[] record) {
+            return writePosition + Integer.BYTES + record.length <= capacity;
+        }
+
+        private void append(byte[] record) {
+            buffer.position(writePosition + Integer.BYTES);
+            buffer.put(record);
+            buffer.putInt(writePosition, record.length);
+            writePosition += Integer.BYTES + record.length;
+            unread++;
+        }
+
+        private byte[] read() {
+            while (readPosition < writePosition) {
+                final int length = buffer.getInt(readPosition);
+                final int position = readPosition + Integer.BYTES;
+                final int size = Math.abs(length);
+                if (size < 0 || size > writePosition - position) {
+                    throw new ISE("Corrupt record of %,d bytes at position %,d", length, readPosition);
+                }
+                readPosition = position + size;
+
+                if (length > 0) {
+                    final byte[] record = new byte[length];
+                    buffer.get(position, record);
+                    buffer.putInt(position - Integer.BYTES, -length);
+                    unread--;
+                    return record;
+                }
+            }
+            return null;
+        }
+
+        private void delete() {
+            ByteBufferUtils.unmap(buffer);
+            if (!file.delete()) {
+                log.warn("Cannot delete spill file [%s], its records were all read.", file);
+            }
+        }
+
+        private void quarantine() {
+            ByteBufferUtils.unmap(buffer);
+            final File corrupt = new File(file.getPath() + CORRUPT_SUFFIX);
+            if (!file.renameTo(corrupt)) {
+                log.warn("Cannot rename spill file [%s] to [%s].", file, corrupt);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.cardinality;
+
+import bi.deep.filtering.SeriesFingerprint;
+import bi.deep.filtering.ServiceDimensions;
+import bi.deep.filtering.rules.Rule;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Bounds the number of distinct series forwarded per metric. The first {@link CardinalitySpec} whose rule matches a
+ * metric event applies: the fingerprint of the event's dimensions is looked up in the set of series of its metric, and
+ * events of new series beyond {@link CardinalitySpec#getMaxSeries()} are dropped or rolled into a single series with
+ * every dimension set to {@code other}. Other events are passed to the inner emitter as they are.
+ */
+public class CardinalityLimitingEmitter implements Emitter {
+    public static final String OTHER = "other";
+
+    private final Emitter inner;
+    private final Guard[] guards;
+    private final LongSupplier clock;
+    private final LongAdder overflowed = new LongAdder();
+
+    public CardinalityLimitingEmitter(Emitter inner, List<CardinalitySpec> specs) {
+        this(inner, specs, System::currentTimeMillis);
+    }
+
+    public CardinalityLimitingEmitter(Emitter inner, List<CardinalitySpec> specs, LongSupplier clock) {
+        this.inner = inner;
+        this.guards = specs.stream().map(Guard::new).toArray(Guard[]::new);
+        this.clock = clock;
+    }
+
+    @Override
+    public void start() {
+        inner.start();
+    }
+
+    @Override
+    public void emit(Event event) {
+        if (event instanceof ServiceMetricEvent) {
+            final ServiceMetricEvent metricEvent = (ServiceMetricEvent) event;
+            for (Guard guard : guards) {
+                if (guard.appliesTo(metricEvent)) {
+                    final Map<String, Object> userDims = metricEvent.getUserDims();
+                    if (guard.admits(metricEvent, userDims, clock.getAsLong())) {
+                        inner.emit(event);
+                        return;
+                    }
+
+                    overflowed.increment();
+                    if (guard.overflow == SeriesOverflow.OTHER) {
+                        inner.emit(toOther(metricEvent, userDims));
+                    }
+                    return;
+                }
+            }
+        }
+        inner.emit(event);
+    }
+
+    private static ServiceMetricEvent toOther(ServiceMetricEvent event, Map<String, Object> userDims) {
+        final ServiceMetricEvent.Builder builder = ServiceMetricEvent.builder();
+        for (String dimension : userDims.keySet()) {
+            builder.setDimension(dimension, OTHER);
+        }
+        return builder.setFeed(event.getFeed())
+                .setCreatedTime(event.getCreatedTime())
+                .setMetric(event.getMetric(), event.getValue())
+                .build(ServiceDimensions.of(event));
+    }
+
+    /**
+     * Number of events of series beyond the limits, dropped or rolled into the {@code other} series.
+     */
+    public long getOverflowCount() {
+        return overflowed.sum();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inner.close();
+    }
+
+    @Override
+    public String toString() {
+        return "CardinalityLimitingEmitter{" + "emitter=" + inner + "}";
+    }
+
+    private static class Guard {
+        private final Rule rule;
+        private final int maxSeries;
+        private final long windowMillis;
+        private final SeriesOverflow overflow;
+        private final ConcurrentHashMap<String, SeriesSet> series = new ConcurrentHashMap<>();
+
+        private Guard(CardinalitySpec spec) {
+            this.rule = spec.getRule() == null ? null : spec.getRule().compile();
+            this.maxSeries = spec.getMaxSeries();
+            this.windowMillis = spec.getWindowMillis();
+            this.overflow = spec.getOverflow();
+        }
+
+        private boolean appliesTo(ServiceMetricEvent event) {
+            return rule == null || rule.test(event);
+        }
+
+        private boolean admits(ServiceMetricEvent event, Map<String, Object> userDims, long nowMillis) {
+            SeriesSet set = series.get(event.getMetric());
+            if (set == null) {
+                set = series.computeIfAbsent(event.getMetric(), m -> new SeriesSet(maxSeries, windowMillis, nowMillis));
+            }
+            return set.admit(SeriesFingerprint.ofDimensions(userDims), nowMillis);
+        }
+    }
+}
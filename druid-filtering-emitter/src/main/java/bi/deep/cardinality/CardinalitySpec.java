@@ -0,0 +1,111 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.cardinality;
+
+import bi.deep.filtering.rules.RuleSpec;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Objects;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Upper bound on the number of distinct series, combinations of dimension values, forwarded per metric within a
+ * window.
+ */
+public class CardinalitySpec {
+    public static final long DEFAULT_WINDOW_MILLIS = 3_600_000;
+
+    private final RuleSpec rule;
+    private final int maxSeries;
+    private final long windowMillis;
+    private final SeriesOverflow overflow;
+
+    @JsonCreator
+    public CardinalitySpec(
+            @JsonProperty("rule") RuleSpec rule,
+            @JsonProperty("maxSeries") Integer maxSeries,
+            @JsonProperty("windowMillis") Long windowMillis,
+            @JsonProperty("overflow") SeriesOverflow overflow) {
+        if (maxSeries == null || maxSeries < 1) {
+            throw new IAE("maxSeries must be positive, got %s", maxSeries);
+        }
+
+        this.rule = rule;
+        this.maxSeries = maxSeries;
+        this.windowMillis = windowMillis == null ? DEFAULT_WINDOW_MILLIS : windowMillis;
+        this.overflow = overflow == null ? SeriesOverflow.DROP : overflow;
+
+        if (this.windowMillis < 1) {
+            throw new IAE("windowMillis must be positive, got %d", this.windowMillis);
+        }
+    }
+
+    /**
+     * Metric events whose series are limited, or {@code null} for all metric events.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public RuleSpec getRule() {
+        return rule;
+    }
+
+    /**
+     * Number of distinct series forwarded per metric and window.
+     */
+    @JsonProperty
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    /**
+     * How often the series seen are forgotten, so that series no longer emitted free their place.
+     */
+    @JsonProperty
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @JsonProperty
+    public SeriesOverflow getOverflow() {
+        return overflow;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CardinalitySpec that = (CardinalitySpec) o;
+        return maxSeries == that.maxSeries
+                && windowMillis == that.windowMillis
+                && Objects.equals(rule, that.rule)
+                && overflow == that.overflow;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rule, maxSeries, windowMillis, overflow);
+    }
+
+    @Override
+    public String toString() {
+        return "CardinalitySpec{" + "rule=" + rule
+                + ", maxSeries=" + maxSeries
+                + ", windowMillis=" + windowMillis
+                + ", overflow=" + overflow
+                + '}';
+    }
+}
@@ -13,27 +13,26 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package bi.deep.filtering.steps;
+package bi.deep.cardinality;
 
-import static bi.deep.filtering.steps.TrinaryBool.*;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import org.apache.druid.java.util.common.StringUtils;
 
-import java.util.Set;
-
-public class StartsWithFilter implements FilterStep {
-    private final Set<String> prefixes;
-
-    public StartsWithFilter(Set<String> prefixes) {
-        this.prefixes = prefixes;
-    }
-
-    @Override
-    public TrinaryBool filter(String value) {
-        if (prefixes.isEmpty() || prefixes.stream().anyMatch(value::startsWith)) return TRUE;
-        else return MAYBE_FALSE;
-    }
+/**
+ * What the cardinality guard does with an event of a new series once a metric reached its series limit.
+ */
+public enum SeriesOverflow {
+    /**
+     * Drop the event.
+     */
+    DROP,
+    /**
+     * Forward the event with the value of each of its dimensions replaced by {@code other}.
+     */
+    OTHER;
 
-    @Override
-    public boolean isEnabled() {
-        return !prefixes.isEmpty();
+    @JsonCreator
+    public static SeriesOverflow fromString(String name) {
+        return valueOf(StringUtils.toUpperCase(name));
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.cardinality;
+
+import java.util.Arrays;
+
+/**
+ * Bounded open-addressing set of series fingerprints kept in a primitive array, forgotten at the end of each window.
+ */
+class SeriesSet {
+    private static final long EMPTY = 0;
+
+    private final long[] fingerprints;
+    private final int maxSize;
+    private final int mask;
+    private final long windowMillis;
+    private long windowStart;
+    private int size;
+
+    SeriesSet(int maxSize, long windowMillis, long nowMillis) {
+        // load factor of at most 0.5
+        final int capacity = Integer.highestOneBit(maxSize) << 2;
+        this.fingerprints = new long[capacity];
+        this.maxSize = maxSize;
+        this.mask = capacity - 1;
+        this.windowMillis = windowMillis;
+        this.windowStart = nowMillis;
+    }
+
+    /**
+     * Returns whether the series is in the set, adding it while the set is not full.
+     */
+    synchronized boolean admit(long fingerprint, long nowMillis) {
+        if (nowMillis - windowStart >= windowMillis) {
+            Arrays.fill(fingerprints, EMPTY);
+            size = 0;
+            windowStart = nowMillis;
+        }
+
+        // zero marks an empty slot
+        final long key = fingerprint == EMPTY ? 1 : fingerprint;
+        int index = (int) key & mask;
+        while (true) {
+            if (fingerprints[index] == key) {
+                return true;
+            }
+            if (fingerprints[index] == EMPTY) {
+                if (size >= maxSize) {
+                    return false;
+                }
+                fingerprints[index] = key;
+                size++;
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.changes;
+
+import bi.deep.filtering.SeriesFingerprint;
+import bi.deep.filtering.rules.Rule;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Passes the metric events matching a {@link ChangeSpec} to the inner emitter only when the value of their series
+ * (service, host, metric and dimensions) changed, or when its heartbeat interval elapsed since the series was last
+ * forwarded. Other events are passed to the inner emitter as they are.
+ */
+public class ChangeOnlyEmitter implements Emitter {
+    private final Emitter inner;
+    private final Tracker[] trackers;
+    private final LongSupplier clock;
+    private final LongAdder suppressed = new LongAdder();
+
+    public ChangeOnlyEmitter(Emitter inner, List<ChangeSpec> specs) {
+        this(inner, specs, System::nanoTime);
+    }
+
+    public ChangeOnlyEmitter(Emitter inner, List<ChangeSpec> specs, LongSupplier clock) {
+        this.inner = inner;
+        this.trackers = specs.stream().map(Tracker::new).toArray(Tracker[]::new);
+        this.clock = clock;
+    }
+
+    @Override
+    public void start() {
+        inner.start();
+    }
+
+    @Override
+    public void emit(Event event) {
+        if (event instanceof ServiceMetricEvent) {
+            final ServiceMetricEvent metricEvent = (ServiceMetricEvent) event;
+            for (Tracker tracker : trackers) {
+                if (tracker.appliesTo(metricEvent)) {
+                    if (tracker.changed(metricEvent, clock.getAsLong())) {
+                        inner.emit(event);
+                    } else {
+                        suppressed.increment();
+                    }
+                    return;
+                }
+            }
+        }
+        inner.emit(event);
+    }
+
+    /**
+     * Number of events not forwarded because their value did not change.
+     */
+    public long getSuppressedCount() {
+        return suppressed.sum();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inner.close();
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeOnlyEmitter{" + "emitter=" + inner + "}";
+    }
+
+    private static class Tracker {
+        private final Rule rule;
+        private final long heartbeatNanos;
+        private final LastValueTable table;
+
+        private Tracker(ChangeSpec spec) {
+            this.rule = spec.getRule() == null ? null : spec.getRule().compile();
+            this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(spec.getHeartbeatMillis());
+            this.table = new LastValueTable(spec.getMaxSeries());
+        }
+
+        private boolean appliesTo(ServiceMetricEvent event) {
+            return rule == null || rule.test(event);
+        }
+
+        private boolean changed(ServiceMetricEvent event, long nowNanos) {
+            return table.update(SeriesFingerprint.of(event), valueBits(event.getValue()), nowNanos, heartbeatNanos);
+        }
+
+        private static long valueBits(Number value) {
+            if (value instanceof Double || value instanceof Float) {
+                return Double.doubleToLongBits(value.doubleValue());
+            }
+            return value.longValue();
+        }
+    }
+}
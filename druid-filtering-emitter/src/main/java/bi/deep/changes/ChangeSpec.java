@@ -0,0 +1,97 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.changes;
+
+import bi.deep.filtering.rules.RuleSpec;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Objects;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Gauge-style metric events forwarded only when their value changed, or at least every {@link #getHeartbeatMillis()}.
+ */
+public class ChangeSpec {
+    public static final long DEFAULT_HEARTBEAT_MILLIS = 300_000;
+    public static final int DEFAULT_MAX_SERIES = 65_536;
+
+    private final RuleSpec rule;
+    private final long heartbeatMillis;
+    private final int maxSeries;
+
+    @JsonCreator
+    public ChangeSpec(
+            @JsonProperty("rule") RuleSpec rule,
+            @JsonProperty("heartbeatMillis") Long heartbeatMillis,
+            @JsonProperty("maxSeries") Integer maxSeries) {
+        this.rule = rule;
+        this.heartbeatMillis = heartbeatMillis == null ? DEFAULT_HEARTBEAT_MILLIS : heartbeatMillis;
+        this.maxSeries = maxSeries == null ? DEFAULT_MAX_SERIES : maxSeries;
+
+        if (this.heartbeatMillis < 1) {
+            throw new IAE("heartbeatMillis must be positive, got %d", this.heartbeatMillis);
+        }
+        if (this.maxSeries < 1) {
+            throw new IAE("maxSeries must be positive, got %d", this.maxSeries);
+        }
+    }
+
+    /**
+     * Metric events forwarded on change only, or {@code null} for all metric events.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public RuleSpec getRule() {
+        return rule;
+    }
+
+    @JsonProperty
+    public long getHeartbeatMillis() {
+        return heartbeatMillis;
+    }
+
+    /**
+     * Number of series whose last value is remembered.
+     */
+    @JsonProperty
+    public int getMaxSeries() {
+        return maxSeries;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ChangeSpec that = (ChangeSpec) o;
+        return heartbeatMillis == that.heartbeatMillis
+                && maxSeries == that.maxSeries
+                && Objects.equals(rule, that.rule);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rule, heartbeatMillis, maxSeries);
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeSpec{" + "rule=" + rule
+                + ", heartbeatMillis=" + heartbeatMillis
+                + ", maxSeries=" + maxSeries
+                + '}';
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.changes;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing table of the last forwarded value and forwarding time per series fingerprint, kept in primitive
+ * arrays. The table is split in stripes locked independently, so emitting threads only contend on the same stripe.
+ *
+ * <p>A full stripe is cleared instead of evicting single series; the next event of each cleared series is then simply
+ * forwarded again.
+ */
+class LastValueTable {
+    private static final int STRIPES = 16;
+    private static final long EMPTY = 0;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    LastValueTable(int maxSeries) {
+        final int perStripe = Math.max(1, (maxSeries + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    /**
+     * Records the value of the series and returns whether it should be forwarded: when the series is new, its value
+     * changed, or at least {@code heartbeatNanos} passed since it was last forwarded.
+     */
+    boolean update(long fingerprint, long valueBits, long nowNanos, long heartbeatNanos) {
+        // zero marks an empty slot
+        final long key = fingerprint == EMPTY ? 1 : fingerprint;
+        final Stripe stripe = stripes[(int) (key >>> 60) & (STRIPES - 1)];
+        synchronized (stripe) {
+            return stripe.update(key, valueBits, nowNanos, heartbeatNanos);
+        }
+    }
+
+    private static class Stripe {
+        private final long[] keys;
+        private final long[] values;
+        private final long[] forwardedAt;
+        private final int maxSize;
+        private final int mask;
+        private int size;
+
+        private Stripe(int maxSize) {
+            // load factor of at most 0.5
+            final int capacity = Integer.highestOneBit(maxSize) << 2;
+            this.keys = new long[capacity];
+            this.values = new long[capacity];
+            this.forwardedAt = new long[capacity];
+            this.maxSize = maxSize;
+            this.mask = capacity - 1;
+        }
+
+        private boolean update(long key, long valueBits, long nowNanos, long heartbeatNanos) {
+            int index = (int) key & mask;
+            while (true) {
+                if (keys[index] == key) {
+                    if (values[index] != valueBits || nowNanos - forwardedAt[index] >= heartbeatNanos) {
+                        values[index] = valueBits;
+                        forwardedAt[index] = nowNanos;
+                        return true;
+                    }
+                    return false;
+                }
+
+                if (keys[index] == EMPTY) {
+                    if (size >= maxSize) {
+                        clear();
+                        return update(key, valueBits, nowNanos, heartbeatNanos);
+                    }
+                    keys[index] = key;
+                    values[index] = valueBits;
+                    forwardedAt[index] = nowNanos;
+                    size++;
+                    return true;
+                }
+
+                index = (index + 1) & mask;
+            }
+        }
+
+        private void clear() {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
+}
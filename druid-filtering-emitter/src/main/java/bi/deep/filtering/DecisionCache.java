@@ -0,0 +1,77 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded concurrent cache of filter decisions keyed by the value of the filtering key. Druid emits a small and stable
+ * set of metric names, so the cache keeps the first {@code maxSize} values it sees and evaluates any further values
+ * without caching them, instead of evicting the hot ones.
+ */
+public class DecisionCache {
+    private final int maxSize;
+    private final ConcurrentHashMap<String, Boolean> decisions;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    public DecisionCache(int maxSize) {
+        this(maxSize, new LongAdder(), new LongAdder());
+    }
+
+    /**
+     * Creates a cache counting its lookups in the given counters, for example the ones reported by
+     * {@link bi.deep.stats.FilteringEmitterStats}.
+     */
+    public DecisionCache(int maxSize, LongAdder hits, LongAdder misses) {
+        this.maxSize = maxSize;
+        this.decisions = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+        this.hits = hits;
+        this.misses = misses;
+    }
+
+    /**
+     * Returns the cached decision, or {@code null} when the value was not seen yet.
+     */
+    public Boolean get(String value) {
+        final Boolean decision = decisions.get(value);
+        if (decision != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return decision;
+    }
+
+    public void put(String value, boolean decision) {
+        if (decisions.size() < maxSize) {
+            decisions.put(value, decision);
+        }
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
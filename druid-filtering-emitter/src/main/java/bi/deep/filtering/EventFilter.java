@@ -16,18 +16,32 @@
 package bi.deep.filtering;
 
 import bi.deep.FilteringEmitterConfig;
-import bi.deep.filtering.steps.*;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import org.apache.druid.java.util.emitter.core.Event;
 
+/**
+ * Applies the filters from top to bottom: {@code allowList}, {@code blockList}, {@code startsWith} and
+ * {@code regexMatch}. The first filter that matches the value decides, and when none matches the value is emitted only
+ * if the last defined filter is {@code blockList}.
+ *
+ * <p>The filters are compiled into a single matcher: the allowed and blocked names into one hash lookup, the prefixes
+ * into a {@link PrefixTrie} and the patterns into a {@link RegexSet}, so that the cost per event does not grow with the
+ * number of rules. Decisions are additionally memoized per value in a {@link DecisionCache}, so that each distinct
+ * metric name is only matched once.
+ */
 public class EventFilter implements Predicate<Event> {
-    private final String key;
-    private final List<FilterStep> steps;
+    public static final int DEFAULT_CACHE_SIZE = 1024;
+
+    private final EventKeyReader reader;
+    private final boolean enabled;
+    private final Map<String, Boolean> decisions = new HashMap<>();
+    private final PrefixTrie prefixes;
+    private final RegexSet patterns;
+    private final boolean fallback;
+    private final DecisionCache cache;
 
     public EventFilter(
             String key,
@@ -35,19 +49,45 @@ public class EventFilter implements Predicate<Event> {
             Set<String> blockList,
             Set<String> startsWithList,
             Set<String> regexList) {
+        this(key, allowList, blockList, startsWithList, regexList, DEFAULT_CACHE_SIZE);
+    }
+
+    public EventFilter(
+            String key,
+            Set<String> allowList,
+            Set<String> blockList,
+            Set<String> startsWithList,
+            Set<String> regexList,
+            int cacheSize) {
+        this(key, allowList, blockList, startsWithList, regexList, cacheSize > 0 ? new DecisionCache(cacheSize) : null);
+    }
+
+    /**
+     * @param cache cache of the decisions, or {@code null} to disable caching
+     */
+    public EventFilter(
+            String key,
+            Set<String> allowList,
+            Set<String> blockList,
+            Set<String> startsWithList,
+            Set<String> regexList,
+            DecisionCache cache) {
         if (!allowList.isEmpty() && !blockList.isEmpty() && startsWithList.isEmpty() && regexList.isEmpty()) {
             throw new RuntimeException(
                     "Defining both 'allowList' and 'blockList' without other filters is not supported.");
         }
 
-        this.key = key;
-        this.steps = Stream.of(
-                        new AllowedFilter(allowList),
-                        new BlockFilter(blockList),
-                        new StartsWithFilter(startsWithList),
-                        new RegexFilter(regexList))
-                .filter(FilterStep::isEnabled)
-                .collect(Collectors.toList());
+        this.reader = new EventKeyReader(key);
+        this.enabled =
+                !allowList.isEmpty() || !blockList.isEmpty() || !startsWithList.isEmpty() || !regexList.isEmpty();
+
+        allowList.forEach(value -> decisions.put(value, true));
+        blockList.forEach(value -> decisions.putIfAbsent(value, false));
+
+        this.prefixes = PrefixTrie.of(startsWithList);
+        this.patterns = new RegexSet(regexList);
+        this.fallback = startsWithList.isEmpty() && regexList.isEmpty() && !blockList.isEmpty();
+        this.cache = cache;
     }
 
     public static EventFilter of(FilteringEmitterConfig config) {
@@ -56,24 +96,42 @@ public class EventFilter implements Predicate<Event> {
                 config.getAllowList(),
                 config.getBlockList(),
                 config.getStartsWithList(),
-                config.getRegexMatchList());
+                config.getRegexMatchList(),
+                config.getDecisionCacheSize());
     }
 
     @Override
     public boolean test(Event event) {
-        if (steps.isEmpty()) return true;
+        if (!enabled) return true;
 
-        Map<String, Object> kv = event.toMap();
-        if (!kv.containsKey(key)) return true;
+        String value = reader.read(event);
+        if (value == null) return true;
+        if (cache == null) return matches(value);
 
-        String value = kv.get(key).toString();
+        Boolean cached = cache.get(value);
+        if (cached != null) return cached;
 
-        TrinaryBool result = TrinaryBool.MAYBE_FALSE;
-        for (FilterStep step : steps) {
-            result = step.filter(value);
-            if (result.isKnown()) return result.getValue();
-        }
+        boolean decision = matches(value);
+        cache.put(value, decision);
+        return decision;
+    }
+
+    /**
+     * Returns whether an event with the given value under the filtering key passes the filters.
+     */
+    public boolean matches(String value) {
+        Boolean decision = decisions.get(value);
+        if (decision != null) return decision;
+
+        if (prefixes.matchesPrefixOf(value) || patterns.matches(value)) return true;
+
+        return fallback;
+    }
 
-        return result.getValue();
+    /**
+     * Returns the decision cache, or {@code null} when caching is disabled.
+     */
+    public DecisionCache getCache() {
+        return cache;
     }
 }
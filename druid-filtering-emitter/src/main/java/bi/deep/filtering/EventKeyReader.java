@@ -0,0 +1,132 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering;
+
+import java.util.Map;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Reads the value of the filtering key from an event. Metric events are read through their getters, so the event map
+ * built by {@link Event#toMap()} is only created for other event types, and for metric event keys that are neither an
+ * event field nor a user dimension.
+ *
+ * <p>{@link ServiceMetricEvent#getUserDims()} copies the dimensions of the event on every call. Callers reading
+ * several keys of the same event call it once and pass the map to {@link #read(ServiceMetricEvent, Map)}. Reading
+ * any key but the metric name and value through {@link #read(Event)}, as the rules do, still copies the dimensions
+ * once per read.
+ */
+public final class EventKeyReader {
+    private enum Field {
+        METRIC,
+        VALUE,
+        FEED,
+        SERVICE,
+        HOST,
+        TIMESTAMP,
+        DIMENSION
+    }
+
+    private final String key;
+    private final Field field;
+
+    public EventKeyReader(String key) {
+        this.key = key;
+        this.field = fieldOf(key);
+    }
+
+    private static Field fieldOf(String key) {
+        switch (key) {
+            case "metric":
+                return Field.METRIC;
+            case "value":
+                return Field.VALUE;
+            case "feed":
+                return Field.FEED;
+            case "service":
+                return Field.SERVICE;
+            case "host":
+                return Field.HOST;
+            case "timestamp":
+                return Field.TIMESTAMP;
+            default:
+                return Field.DIMENSION;
+        }
+    }
+
+    /**
+     * Returns the value under the key as a string, or {@code null} when the event does not have the key.
+     */
+    public String read(Event event) {
+        if (event instanceof ServiceMetricEvent) {
+            return read((ServiceMetricEvent) event);
+        }
+
+        final Map<String, Object> kv = event.toMap();
+        final Object value = kv.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    private String read(ServiceMetricEvent event) {
+        switch (field) {
+            case METRIC:
+                return event.getMetric();
+            case VALUE:
+                return toString(event.getValue());
+            default:
+                return read(event, event.getUserDims());
+        }
+    }
+
+    /**
+     * Returns the value under the key as a string, or {@code null} when the event does not have the key.
+     *
+     * @param userDims the dimensions of the event, as returned by {@link ServiceMetricEvent#getUserDims()}
+     */
+    public String read(ServiceMetricEvent event, Map<String, Object> userDims) {
+        switch (field) {
+            case METRIC:
+                return event.getMetric();
+            case VALUE:
+                return toString(event.getValue());
+            default:
+                break;
+        }
+
+        final Object dimension = userDims.get(key);
+        if (dimension != null) {
+            return dimension.toString();
+        }
+
+        switch (field) {
+            case FEED:
+                return event.getFeed();
+            case SERVICE:
+                return event.getService();
+            case HOST:
+                return event.getHost();
+            case TIMESTAMP:
+                return toString(event.getCreatedTime());
+            default:
+                // Other service dimensions, such as the version, are only exposed through the event map
+                return toString(event.toMap().get(key));
+        }
+    }
+
+    private static String toString(Object value) {
+        return value == null ? null : value.toString();
+    }
+}
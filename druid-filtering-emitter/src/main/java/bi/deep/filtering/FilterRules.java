@@ -0,0 +1,202 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering;
+
+import bi.deep.filtering.limits.EventLimiter;
+import bi.deep.filtering.limits.LimitSpec;
+import bi.deep.filtering.rules.AndRuleSpec;
+import bi.deep.filtering.rules.RuleSpec;
+import bi.deep.stats.FilteringEmitterStats;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Settings deciding which events are emitted: the filters on a single key, the rule over several keys and the
+ * sampling and rate limits. They are either taken from the runtime properties or loaded from a rules file, which uses
+ * the same property names.
+ */
+public class FilterRules {
+    public static final String DEFAULT_KEY = "metric";
+
+    private final String key;
+    private final Set<String> allowList;
+    private final Set<String> blockList;
+    private final Set<String> startsWith;
+    private final Set<String> regexMatch;
+    private final RuleSpec rule;
+    private final List<LimitSpec> limits;
+
+    @JsonCreator
+    public FilterRules(
+            @JsonProperty("key") String key,
+            @JsonProperty("allowList") Set<String> allowList,
+            @JsonProperty("blockList") Set<String> blockList,
+            @JsonProperty("startsWith") Set<String> startsWith,
+            @JsonProperty("regexMatch") Set<String> regexMatch,
+            @JsonProperty("rule") RuleSpec rule,
+            @JsonProperty("limits") List<LimitSpec> limits) {
+        this.key = key == null ? DEFAULT_KEY : key;
+        this.allowList = allowList == null ? Collections.emptySet() : allowList;
+        this.blockList = blockList == null ? Collections.emptySet() : blockList;
+        this.startsWith = startsWith == null ? Collections.emptySet() : startsWith;
+        this.regexMatch = regexMatch == null ? Collections.emptySet() : regexMatch;
+        this.rule = rule;
+        this.limits = limits == null ? Collections.emptyList() : limits;
+    }
+
+    public void validate() {
+        if (!allowList.isEmpty() && !blockList.isEmpty() && startsWith.isEmpty() && regexMatch.isEmpty()) {
+            throw new RuntimeException(
+                    "Defining both 'allowList' and 'blockList' without other filters is not supported.");
+        }
+    }
+
+    /**
+     * Compiles the settings into the predicate applied to the emitted events.
+     */
+    public Predicate<Event> compile(int decisionCacheSize) {
+        return compile(decisionCacheSize, null);
+    }
+
+    /**
+     * Compiles the settings into the predicate applied to the emitted events, counting the events passed and dropped by
+     * each step, and the lookups of the decision cache, when {@code stats} is given.
+     */
+    public Predicate<Event> compile(int decisionCacheSize, FilteringEmitterStats stats) {
+        validate();
+
+        Predicate<Event> filter = counting(
+                stats,
+                "filter",
+                new EventFilter(
+                        key, allowList, blockList, startsWith, regexMatch, decisionCache(decisionCacheSize, stats)));
+        if (rule != null) {
+            filter = filter.and(counting(stats, "rule", compileRule(stats)));
+        }
+        if (!limits.isEmpty()) {
+            filter = filter.and(counting(stats, "limits", EventLimiter.of(limits, stats)));
+        }
+        return filter;
+    }
+
+    /**
+     * Compiles the rule, counting each field of a top-level {@code and} rule on its own when {@code stats} is given.
+     * The fields are counted where they are evaluated, cheapest first, so a field only counts the events passed by the
+     * fields evaluated before it.
+     */
+    private Predicate<Event> compileRule(FilteringEmitterStats stats) {
+        if (stats == null) {
+            return rule.compile();
+        }
+
+        if (rule instanceof AndRuleSpec) {
+            return ((AndRuleSpec) rule)
+                    .compile((index, field) -> stats.counting(FilteringEmitterStats.ruleDimensions(index), field));
+        }
+        return stats.counting(FilteringEmitterStats.ruleDimensions(0), rule.compile());
+    }
+
+    private static DecisionCache decisionCache(int size, FilteringEmitterStats stats) {
+        if (size <= 0) {
+            return null;
+        }
+        if (stats == null) {
+            return new DecisionCache(size);
+        }
+        return new DecisionCache(
+                size,
+                stats.counter("filteringEmitter/decisionCache/hits"),
+                stats.counter("filteringEmitter/decisionCache/misses"));
+    }
+
+    private static Predicate<Event> counting(FilteringEmitterStats stats, String step, Predicate<Event> predicate) {
+        return stats == null ? predicate : stats.counting(step, predicate);
+    }
+
+    @JsonProperty
+    public String getKey() {
+        return key;
+    }
+
+    @JsonProperty
+    public Set<String> getAllowList() {
+        return allowList;
+    }
+
+    @JsonProperty
+    public Set<String> getBlockList() {
+        return blockList;
+    }
+
+    @JsonProperty
+    public Set<String> getStartsWith() {
+        return startsWith;
+    }
+
+    @JsonProperty
+    public Set<String> getRegexMatch() {
+        return regexMatch;
+    }
+
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public RuleSpec getRule() {
+        return rule;
+    }
+
+    @JsonProperty
+    public List<LimitSpec> getLimits() {
+        return limits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        FilterRules that = (FilterRules) o;
+        return Objects.equals(key, that.key)
+                && Objects.equals(allowList, that.allowList)
+                && Objects.equals(blockList, that.blockList)
+                && Objects.equals(startsWith, that.startsWith)
+                && Objects.equals(regexMatch, that.regexMatch)
+                && Objects.equals(rule, that.rule)
+                && Objects.equals(limits, that.limits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, allowList, blockList, startsWith, regexMatch, rule, limits);
+    }
+
+    @Override
+    public String toString() {
+        return "FilterRules{" + "key='" + key + '\''
+                + ", allowList=" + allowList
+                + ", blockList=" + blockList
+                + ", startsWith=" + startsWith
+                + ", regexMatch=" + regexMatch
+                + ", rule=" + rule
+                + ", limits=" + limits
+                + '}';
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable character trie answering whether a value starts with any of the given prefixes. Lookup walks at most as
+ * many characters as the longest prefix, regardless of the number of prefixes.
+ */
+public final class PrefixTrie {
+    private static final PrefixTrie EMPTY = new PrefixTrie(null);
+
+    private final Node root;
+
+    private PrefixTrie(Node root) {
+        this.root = root;
+    }
+
+    public static PrefixTrie of(Collection<String> prefixes) {
+        if (prefixes.isEmpty()) {
+            return EMPTY;
+        }
+
+        final MutableNode root = new MutableNode();
+        for (String prefix : prefixes) {
+            MutableNode node = root;
+            for (int i = 0; i < prefix.length() && !node.terminal; i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new MutableNode());
+            }
+            node.terminal = true;
+        }
+
+        return new PrefixTrie(root.freeze());
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Returns true when the value starts with one of the prefixes.
+     */
+    public boolean matchesPrefixOf(String value) {
+        Node node = root;
+        if (node == null) {
+            return false;
+        }
+
+        for (int i = 0; !node.terminal; i++) {
+            if (i == value.length()) {
+                return false;
+            }
+
+            node = node.child(value.charAt(i));
+            if (node == null) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static final class Node {
+        private final boolean terminal;
+        private final char[] keys;
+        private final Node[] children;
+
+        private Node(boolean terminal, char[] keys, Node[] children) {
+            this.terminal = terminal;
+            this.keys = keys;
+            this.children = children;
+        }
+
+        private Node child(char c) {
+            final int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+    }
+
+    private static final class MutableNode {
+        private final TreeMap<Character, MutableNode> children = new TreeMap<>();
+        private boolean terminal;
+
+        private Node freeze() {
+            if (terminal) {
+                // Longer prefixes are shadowed by this one
+                return new Node(true, new char[0], new Node[0]);
+            }
+
+            final char[] keys = new char[children.size()];
+            final Node[] frozen = new Node[children.size()];
+            int i = 0;
+            for (Map.Entry<Character, MutableNode> entry : children.entrySet()) {
+                keys[i] = entry.getKey();
+                frozen[i] = entry.getValue().freeze();
+                i++;
+            }
+
+            return new Node(false, keys, frozen);
+        }
+    }
+}
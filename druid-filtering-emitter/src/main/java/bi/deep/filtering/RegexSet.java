@@ -0,0 +1,134 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * Set of regular expressions compiled once for matching whole values against all of them.
+ *
+ * <p>Patterns without metacharacters are matched with a hash lookup and patterns of the form {@code literal.*} with a
+ * {@link PrefixTrie}, unless the value contains a line terminator that {@code .} would not match. The remaining
+ * patterns are combined into a single alternation, so that a value is matched by one
+ * {@link java.util.regex.Matcher} instead of one per pattern. Patterns using back references keep their own
+ * {@link Pattern}, because combining them would shift their group numbers.
+ */
+public final class RegexSet {
+    private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(?:[1-9]|k<)");
+
+    private final Set<String> literals = new HashSet<>();
+    private final PrefixTrie prefixes;
+    private final List<Pattern> prefixPatterns = new ArrayList<>();
+    private final List<Pattern> patterns = new ArrayList<>();
+    private final int size;
+
+    public RegexSet(Collection<String> regexes) {
+        final List<String> prefixList = new ArrayList<>();
+        final List<String> combinable = new ArrayList<>();
+
+        for (String regex : regexes) {
+            // Fail on invalid patterns the same way regardless of how they are matched later
+            final Pattern pattern = Pattern.compile(regex);
+
+            if (isLiteral(regex)) {
+                literals.add(regex);
+            } else if (regex.endsWith(".*") && isLiteral(regex.substring(0, regex.length() - 2))) {
+                prefixList.add(regex.substring(0, regex.length() - 2));
+                prefixPatterns.add(pattern);
+            } else if (BACK_REFERENCE.matcher(regex).find()) {
+                patterns.add(pattern);
+            } else {
+                combinable.add(regex);
+            }
+        }
+
+        this.prefixes = PrefixTrie.of(prefixList);
+        this.size = regexes.size();
+
+        if (combinable.size() == 1) {
+            patterns.add(Pattern.compile(combinable.get(0)));
+        } else if (!combinable.isEmpty()) {
+            try {
+                patterns.add(Pattern.compile(
+                        combinable.stream().map(regex -> "(?:" + regex + ")").collect(Collectors.joining("|"))));
+            } catch (PatternSyntaxException e) {
+                // For example the same named group used in two patterns
+                combinable.forEach(regex -> patterns.add(Pattern.compile(regex)));
+            }
+        }
+    }
+
+    private static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if (METACHARACTERS.indexOf(regex.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns true when the whole value matches any of the patterns.
+     */
+    public boolean matches(String value) {
+        if (literals.contains(value)) {
+            return true;
+        }
+
+        if (!prefixes.isEmpty()) {
+            if (hasLineTerminator(value)) {
+                if (anyMatches(prefixPatterns, value)) {
+                    return true;
+                }
+            } else if (prefixes.matchesPrefixOf(value)) {
+                return true;
+            }
+        }
+
+        return anyMatches(patterns, value);
+    }
+
+    private static boolean anyMatches(List<Pattern> patterns, String value) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(value).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasLineTerminator(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
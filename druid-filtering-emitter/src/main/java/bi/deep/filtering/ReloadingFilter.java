@@ -0,0 +1,124 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering;
+
+import bi.deep.stats.FilteringEmitterStats;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.apache.druid.java.util.common.concurrent.Execs;
+import org.apache.druid.java.util.common.lifecycle.LifecycleStart;
+import org.apache.druid.java.util.common.lifecycle.LifecycleStop;
+import org.apache.druid.java.util.common.logger.Logger;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Filter whose {@link FilterRules} are loaded from a JSON file and reloaded when the file changes. A changed file is
+ * parsed, validated and compiled off the emitting threads, and only then swapped in atomically; invalid files are
+ * logged and the previous rules stay in place.
+ */
+public class ReloadingFilter implements Predicate<Event> {
+    private static final Logger log = new Logger(ReloadingFilter.class);
+
+    private final File file;
+    private final ObjectMapper mapper;
+    private final long pollMillis;
+    private final int decisionCacheSize;
+    private final FilteringEmitterStats stats;
+
+    private volatile Predicate<Event> current;
+    private long lastModified = -1;
+    private long lastLength = -1;
+    private ScheduledExecutorService exec;
+
+    /**
+     * @param initial filter used until the file is loaded for the first time
+     */
+    public ReloadingFilter(
+            Predicate<Event> initial, File file, ObjectMapper mapper, long pollMillis, int decisionCacheSize) {
+        this(initial, file, mapper, pollMillis, decisionCacheSize, null);
+    }
+
+    /**
+     * @param initial filter used until the file is loaded for the first time
+     * @param stats   statistics counting the events of the loaded rules, or {@code null}
+     */
+    public ReloadingFilter(
+            Predicate<Event> initial,
+            File file,
+            ObjectMapper mapper,
+            long pollMillis,
+            int decisionCacheSize,
+            FilteringEmitterStats stats) {
+        this.current = initial;
+        this.file = file;
+        this.mapper = mapper;
+        this.pollMillis = pollMillis;
+        this.decisionCacheSize = decisionCacheSize;
+        this.stats = stats;
+    }
+
+    @LifecycleStart
+    public void start() {
+        reload();
+        exec = Execs.scheduledSingleThreaded("FilteringEmitter-rules-%d");
+        exec.scheduleWithFixedDelay(this::reload, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @LifecycleStop
+    public void stop() {
+        if (exec != null) {
+            exec.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean test(Event event) {
+        return current.test(event);
+    }
+
+    /**
+     * Loads the file if it changed since the last call.
+     *
+     * @return true when new rules were swapped in
+     */
+    public synchronized boolean reload() {
+        final long modified = file.lastModified();
+        final long length = file.length();
+
+        if (modified == 0 || (modified == lastModified && length == lastLength)) {
+            // The file is missing or did not change
+            return false;
+        }
+
+        lastModified = modified;
+        lastLength = length;
+
+        try {
+            final FilterRules rules = mapper.readValue(file, FilterRules.class);
+            final Predicate<Event> compiled = rules.compile(decisionCacheSize, stats);
+            current = compiled;
+            log.info("Loaded filtering rules from [%s]: %s", file, rules);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.error(e, "Invalid filtering rules in [%s], keeping the previous rules.", file);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering;
+
+import java.util.Collection;
+import java.util.Map;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * 64-bit fingerprints of metric series, computed from the fields and dimensions of an event without building its
+ * event map. Dimensions are combined independently of their order.
+ */
+public final class SeriesFingerprint {
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private SeriesFingerprint() {}
+
+    /**
+     * Fingerprint of the service, host, metric name and dimensions of the event.
+     */
+    public static long of(ServiceMetricEvent event) {
+        return of(event, event.getUserDims());
+    }
+
+    /**
+     * Fingerprint of the service, host, metric name and dimensions of the event.
+     *
+     * @param userDims the dimensions of the event, as returned by {@link ServiceMetricEvent#getUserDims()}
+     */
+    public static long of(ServiceMetricEvent event, Map<String, Object> userDims) {
+        long hash = ofDimensions(userDims);
+        hash = mix(hash ^ hash(event.getService()));
+        hash = mix(hash ^ hash(event.getHost()));
+        return mix(hash ^ hash(event.getMetric()));
+    }
+
+    /**
+     * Fingerprint of the dimensions of an event only.
+     */
+    public static long ofDimensions(Map<String, Object> userDims) {
+        long hash = SEED;
+        for (Map.Entry<String, Object> dimension : userDims.entrySet()) {
+            hash += mix(hash(dimension.getKey()) * 31 + hash(dimension.getValue()));
+        }
+        return mix(hash);
+    }
+
+    private static long hash(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return hash((String) value);
+        }
+        if (value instanceof Object[]) {
+            long hash = 1;
+            for (Object element : (Object[]) value) {
+                hash = hash * 31 + hash(element);
+            }
+            return mix(hash);
+        }
+        if (value instanceof Collection) {
+            long hash = 1;
+            for (Object element : (Collection<?>) value) {
+                hash = hash * 31 + hash(element);
+            }
+            return mix(hash);
+        }
+        return hash(value.toString());
+    }
+
+    /**
+     * 64-bit FNV-1a of the characters of the string.
+     */
+    private static long hash(String value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Finalizer of MurmurHash3, spreading every input bit over the whole result.
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
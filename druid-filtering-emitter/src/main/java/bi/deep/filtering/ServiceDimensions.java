@@ -0,0 +1,90 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.AlertEvent;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Reads the service dimensions of metric and alert events, such as the service, host and version set by the service
+ * emitter, so that a rebuilt event keeps all of them. They are only exposed through the event map, so for metric events
+ * they are read once per service and host and cached, as the service emitter sets the same dimensions on all the events
+ * of a process.
+ */
+public final class ServiceDimensions {
+    public static final String SERVICE = "service";
+    public static final String HOST = "host";
+
+    private static final int MAX_CACHED = 1024;
+    private static final Set<String> METRIC_FIELDS = ImmutableSet.of("feed", "timestamp", "metric", "value");
+    private static final Set<String> ALERT_FIELDS =
+            ImmutableSet.of("feed", "timestamp", "severity", "description", "data");
+    private static final Map<List<String>, ImmutableMap<String, String>> CACHE = new ConcurrentHashMap<>();
+
+    private ServiceDimensions() {}
+
+    /**
+     * Returns the service dimensions of the event, always including the service and host.
+     */
+    public static ImmutableMap<String, String> of(ServiceMetricEvent event) {
+        final List<String> key = Arrays.asList(event.getService(), event.getHost());
+        final ImmutableMap<String, String> cached = CACHE.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        final ImmutableMap<String, String> dimensions =
+                read(event, event.getService(), event.getHost(), METRIC_FIELDS, event.getUserDims().keySet());
+        if (CACHE.size() < MAX_CACHED) {
+            CACHE.putIfAbsent(key, dimensions);
+        }
+        return dimensions;
+    }
+
+    /**
+     * Returns the service dimensions of the alert, always including the service and host.
+     */
+    public static ImmutableMap<String, String> of(AlertEvent event) {
+        return read(event, event.getService(), event.getHost(), ALERT_FIELDS, Collections.emptySet());
+    }
+
+    private static ImmutableMap<String, String> read(
+            Event event, String service, String host, Set<String> fields, Set<String> userDims) {
+        final ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+        builder.put(SERVICE, service).put(HOST, host);
+
+        for (Map.Entry<String, Object> entry : event.toMap().entrySet()) {
+            final String name = entry.getKey();
+            if (entry.getValue() != null
+                    && !SERVICE.equals(name)
+                    && !HOST.equals(name)
+                    && !fields.contains(name)
+                    && !userDims.contains(name)) {
+                builder.put(name, entry.getValue().toString());
+            }
+        }
+        return builder.build();
+    }
+}
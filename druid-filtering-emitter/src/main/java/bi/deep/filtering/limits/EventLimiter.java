@@ -0,0 +1,164 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.limits;
+
+import bi.deep.filtering.EventKeyReader;
+import bi.deep.filtering.rules.Rule;
+import bi.deep.stats.FilteringEmitterStats;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Samples and rate limits events according to a list of {@link LimitSpec}. The first limit whose rule matches an
+ * event decides; events not matching any limit pass. Counters and buckets are kept per key value in lock-free
+ * structures, so the emitting threads only contend when they emit the same key.
+ */
+public class EventLimiter implements Predicate<Event> {
+    private final Limit[] limits;
+    // Sampling and rate limit decision of each limit, counted per limit when statistics are enabled
+    private final Predicate<Event>[] decisions;
+    private final LongAdder dropped = new LongAdder();
+
+    public EventLimiter(List<LimitSpec> specs, LongSupplier clock) {
+        this(specs, clock, null);
+    }
+
+    /**
+     * @param stats statistics counting the events passed and dropped by each limit, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public EventLimiter(List<LimitSpec> specs, LongSupplier clock, FilteringEmitterStats stats) {
+        this.limits = new Limit[specs.size()];
+        this.decisions = new Predicate[specs.size()];
+        for (int i = 0; i < limits.length; i++) {
+            final Limit limit = new Limit(specs.get(i));
+            final Predicate<Event> allows = event -> limit.allows(event, clock);
+            limits[i] = limit;
+            decisions[i] = stats == null ? allows : stats.counting(FilteringEmitterStats.limitDimensions(i), allows);
+        }
+    }
+
+    public static EventLimiter of(List<LimitSpec> specs) {
+        return of(specs, null);
+    }
+
+    public static EventLimiter of(List<LimitSpec> specs, FilteringEmitterStats stats) {
+        return new EventLimiter(specs, System::nanoTime, stats);
+    }
+
+    @Override
+    public boolean test(Event event) {
+        for (int i = 0; i < limits.length; i++) {
+            if (limits[i].appliesTo(event)) {
+                if (decisions[i].test(event)) {
+                    return true;
+                }
+                dropped.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Number of events dropped by sampling or rate limits.
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    private static class Limit {
+        private final Rule rule;
+        private final EventKeyReader reader;
+        private final int sampleEvery;
+        private final double sampleProbability;
+        private final double ratePerSecond;
+        private final double burst;
+        private final int maxKeys;
+        private final ConcurrentHashMap<String, KeyState> states = new ConcurrentHashMap<>();
+        private volatile KeyState overflow;
+
+        private Limit(LimitSpec spec) {
+            this.rule = spec.getRule() == null ? null : spec.getRule().compile();
+            this.reader = new EventKeyReader(spec.getKey());
+            this.sampleEvery = spec.getSampleEvery();
+            this.sampleProbability = spec.getSampleProbability();
+            this.ratePerSecond = spec.getRatePerSecond();
+            this.burst = spec.getBurst();
+            this.maxKeys = spec.getMaxKeys();
+        }
+
+        private boolean appliesTo(Event event) {
+            return rule == null || rule.test(event);
+        }
+
+        private boolean allows(Event event, LongSupplier clock) {
+            final KeyState state = state(event, clock);
+
+            if (sampleEvery > 1 && state.seen.getAndIncrement() % sampleEvery != 0) {
+                return false;
+            }
+            if (sampleProbability < 1 && ThreadLocalRandom.current().nextDouble() >= sampleProbability) {
+                return false;
+            }
+            return state.bucket == null || state.bucket.tryAcquire(clock.getAsLong());
+        }
+
+        private KeyState state(Event event, LongSupplier clock) {
+            final String value = reader.read(event);
+            final String key = value == null ? "" : value;
+
+            final KeyState state = states.get(key);
+            if (state != null) {
+                return state;
+            }
+
+            if (states.size() < maxKeys) {
+                return states.computeIfAbsent(key, k -> newState(clock));
+            }
+
+            KeyState shared = overflow;
+            if (shared == null) {
+                synchronized (this) {
+                    shared = overflow;
+                    if (shared == null) {
+                        shared = overflow = newState(clock);
+                    }
+                }
+            }
+            return shared;
+        }
+
+        private KeyState newState(LongSupplier clock) {
+            return new KeyState(ratePerSecond > 0 ? new TokenBucket(ratePerSecond, burst, clock.getAsLong()) : null);
+        }
+    }
+
+    private static class KeyState {
+        private final AtomicLong seen = new AtomicLong();
+        private final TokenBucket bucket;
+
+        private KeyState(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+}
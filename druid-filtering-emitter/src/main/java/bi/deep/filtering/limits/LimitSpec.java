@@ -0,0 +1,162 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.limits;
+
+import bi.deep.filtering.rules.RuleSpec;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Objects;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Sampling and rate limit applied to the events matching {@link #getRule()}, separately for each value of
+ * {@link #getKey()}.
+ */
+public class LimitSpec {
+    public static final String DEFAULT_KEY = "metric";
+    public static final int DEFAULT_MAX_KEYS = 10_000;
+
+    private final RuleSpec rule;
+    private final String key;
+    private final int sampleEvery;
+    private final double sampleProbability;
+    private final double ratePerSecond;
+    private final double burst;
+    private final int maxKeys;
+
+    @JsonCreator
+    public LimitSpec(
+            @JsonProperty("rule") RuleSpec rule,
+            @JsonProperty("key") String key,
+            @JsonProperty("sampleEvery") Integer sampleEvery,
+            @JsonProperty("sampleProbability") Double sampleProbability,
+            @JsonProperty("ratePerSecond") Double ratePerSecond,
+            @JsonProperty("burst") Double burst,
+            @JsonProperty("maxKeys") Integer maxKeys) {
+        this.rule = rule;
+        this.key = key == null ? DEFAULT_KEY : key;
+        this.sampleEvery = sampleEvery == null ? 1 : sampleEvery;
+        this.sampleProbability = sampleProbability == null ? 1.0 : sampleProbability;
+        this.ratePerSecond = ratePerSecond == null ? 0 : ratePerSecond;
+        this.burst = burst == null ? Math.max(1, this.ratePerSecond) : burst;
+        this.maxKeys = maxKeys == null ? DEFAULT_MAX_KEYS : maxKeys;
+
+        if (this.sampleEvery < 1) {
+            throw new IAE("sampleEvery must be at least 1, got %d", this.sampleEvery);
+        }
+        if (!(this.sampleProbability > 0 && this.sampleProbability <= 1)) {
+            throw new IAE("sampleProbability must be in (0, 1], got %s", this.sampleProbability);
+        }
+        if (this.ratePerSecond < 0) {
+            throw new IAE("ratePerSecond must not be negative, got %s", this.ratePerSecond);
+        }
+        if (this.burst < 1) {
+            throw new IAE("burst must be at least 1, got %s", this.burst);
+        }
+        if (this.maxKeys < 1) {
+            throw new IAE("maxKeys must be at least 1, got %d", this.maxKeys);
+        }
+    }
+
+    /**
+     * Events the limit applies to, or {@code null} for all events.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public RuleSpec getRule() {
+        return rule;
+    }
+
+    /**
+     * Event key whose values are sampled and limited separately.
+     */
+    @JsonProperty
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Emit every N-th event per key.
+     */
+    @JsonProperty
+    public int getSampleEvery() {
+        return sampleEvery;
+    }
+
+    /**
+     * Probability of emitting an event.
+     */
+    @JsonProperty
+    public double getSampleProbability() {
+        return sampleProbability;
+    }
+
+    /**
+     * Average number of events per second and key, or zero when not limited.
+     */
+    @JsonProperty
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * Number of events per key allowed at once after a quiet period.
+     */
+    @JsonProperty
+    public double getBurst() {
+        return burst;
+    }
+
+    /**
+     * Maximum number of key values tracked separately. Further values share a single counter and bucket.
+     */
+    @JsonProperty
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LimitSpec that = (LimitSpec) o;
+        return sampleEvery == that.sampleEvery
+                && Double.compare(sampleProbability, that.sampleProbability) == 0
+                && Double.compare(ratePerSecond, that.ratePerSecond) == 0
+                && Double.compare(burst, that.burst) == 0
+                && maxKeys == that.maxKeys
+                && Objects.equals(rule, that.rule)
+                && Objects.equals(key, that.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rule, key, sampleEvery, sampleProbability, ratePerSecond, burst, maxKeys);
+    }
+
+    @Override
+    public String toString() {
+        return "LimitSpec{" + "rule=" + rule
+                + ", key='" + key + '\''
+                + ", sampleEvery=" + sampleEvery
+                + ", sampleProbability=" + sampleProbability
+                + ", ratePerSecond=" + ratePerSecond
+                + ", burst=" + burst
+                + ", maxKeys=" + maxKeys
+                + '}';
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.limits;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket implemented as the generic cell rate algorithm: instead of a token count the bucket keeps the
+ * theoretical arrival time of the next event, which a single CAS advances by one emission interval per event.
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong arrival;
+
+    /**
+     * @param ratePerSecond number of events allowed per second on average
+     * @param burst         number of events allowed at once after a quiet period
+     * @param nowNanos      current time
+     */
+    public TokenBucket(double ratePerSecond, double burst, long nowNanos) {
+        this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.toleranceNanos = Math.round(intervalNanos * (Math.max(1, burst) - 1));
+        this.arrival = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes a token if one is available at the given time.
+     */
+    public boolean tryAcquire(long nowNanos) {
+        while (true) {
+            final long current = arrival.get();
+
+            if (current - nowNanos > toleranceNanos) {
+                return false;
+            }
+
+            final long next = (current - nowNanos > 0 ? current : nowNanos) + intervalNanos;
+            if (arrival.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+}
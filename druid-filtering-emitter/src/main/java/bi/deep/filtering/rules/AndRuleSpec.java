@@ -0,0 +1,83 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.rules;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Matches events matching all of the given rules.
+ */
+public class AndRuleSpec implements RuleSpec {
+    private final List<RuleSpec> fields;
+
+    @JsonCreator
+    public AndRuleSpec(@JsonProperty("fields") List<RuleSpec> fields) {
+        if (fields == null || fields.isEmpty()) {
+            throw new IAE("Rule [and] must have at least one field");
+        }
+        this.fields = fields;
+    }
+
+    @JsonProperty
+    public List<RuleSpec> getFields() {
+        return fields;
+    }
+
+    @Override
+    public Rule compile() {
+        if (fields.size() == 1) {
+            return fields.get(0).compile();
+        }
+        return new CompositeRule(fields.stream().map(RuleSpec::compile).collect(Collectors.toList()), false);
+    }
+
+    /**
+     * Compiles the rule, passing each compiled field and its position in {@link #getFields()} through {@code wrapper}.
+     * The fields are still evaluated cheapest first, whatever the wrapper does.
+     */
+    public Predicate<Event> compile(BiFunction<Integer, Predicate<Event>, Predicate<Event>> wrapper) {
+        if (fields.size() == 1) {
+            return wrapper.apply(0, fields.get(0).compile());
+        }
+        return new CompositeRule(fields.stream().map(RuleSpec::compile).collect(Collectors.toList()), false, wrapper);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        AndRuleSpec that = (AndRuleSpec) o;
+        return Objects.equals(fields, that.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "AndRuleSpec{" + "fields=" + fields + '}';
+    }
+}
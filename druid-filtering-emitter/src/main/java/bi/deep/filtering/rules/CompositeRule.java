@@ -0,0 +1,72 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.rules;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Conjunction or disjunction of rules, evaluating the cheapest rules first and stopping at the first rule deciding the
+ * result.
+ */
+class CompositeRule implements Rule {
+    private final Predicate<Event>[] rules;
+    private final boolean shortCircuit;
+    private final int cost;
+
+    /**
+     * @param shortCircuit result returned as soon as one rule returns it: {@code false} for AND and {@code true} for OR
+     */
+    CompositeRule(List<Rule> rules, boolean shortCircuit) {
+        this(rules, shortCircuit, (index, rule) -> rule);
+    }
+
+    /**
+     * @param shortCircuit result returned as soon as one rule returns it: {@code false} for AND and {@code true} for OR
+     * @param wrapper applied to each rule and its position in {@code rules} once the rules are sorted, for example to
+     *     count the events each rule sees without changing the order they are evaluated in
+     */
+    @SuppressWarnings("unchecked")
+    CompositeRule(
+            List<Rule> rules, boolean shortCircuit, BiFunction<Integer, Predicate<Event>, Predicate<Event>> wrapper) {
+        this.rules = IntStream.range(0, rules.size())
+                .boxed()
+                .sorted(Comparator.comparingInt(index -> rules.get(index).getCost()))
+                .map(index -> wrapper.apply(index, rules.get(index)))
+                .toArray(Predicate[]::new);
+        this.shortCircuit = shortCircuit;
+        this.cost = rules.stream().mapToInt(Rule::getCost).sum();
+    }
+
+    @Override
+    public boolean test(Event event) {
+        for (Predicate<Event> rule : rules) {
+            if (rule.test(event) == shortCircuit) {
+                return shortCircuit;
+            }
+        }
+        return !shortCircuit;
+    }
+
+    @Override
+    public int getCost() {
+        return cost;
+    }
+}
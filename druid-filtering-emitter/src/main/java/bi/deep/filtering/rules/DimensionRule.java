@@ -0,0 +1,46 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.rules;
+
+import bi.deep.filtering.EventKeyReader;
+import java.util.function.Predicate;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Tests the value of a single event key. Events without the key do not match.
+ */
+class DimensionRule implements Rule {
+    private final EventKeyReader reader;
+    private final Predicate<String> predicate;
+    private final int cost;
+
+    DimensionRule(String dimension, Predicate<String> predicate, int cost) {
+        this.reader = new EventKeyReader(dimension);
+        this.predicate = predicate;
+        this.cost = cost;
+    }
+
+    @Override
+    public boolean test(Event event) {
+        final String value = reader.read(event);
+        return value != null && predicate.test(value);
+    }
+
+    @Override
+    public int getCost() {
+        return cost;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.rules;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Objects;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Matches events not matching the given rule.
+ */
+public class NotRuleSpec implements RuleSpec {
+    private final RuleSpec field;
+
+    @JsonCreator
+    public NotRuleSpec(@JsonProperty("field") RuleSpec field) {
+        if (field == null) {
+            throw new IAE("Rule [not] must have a field");
+        }
+        this.field = field;
+    }
+
+    @JsonProperty
+    public RuleSpec getField() {
+        return field;
+    }
+
+    @Override
+    public Rule compile() {
+        final Rule rule = field.compile();
+        return new Rule() {
+            @Override
+            public boolean test(Event event) {
+                return !rule.test(event);
+            }
+
+            @Override
+            public int getCost() {
+                return rule.getCost();
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        NotRuleSpec that = (NotRuleSpec) o;
+        return Objects.equals(field, that.field);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(field);
+    }
+
+    @Override
+    public String toString() {
+        return "NotRuleSpec{" + "field=" + field + '}';
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.rules;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Matches events matching any of the given rules.
+ */
+public class OrRuleSpec implements RuleSpec {
+    private final List<RuleSpec> fields;
+
+    @JsonCreator
+    public OrRuleSpec(@JsonProperty("fields") List<RuleSpec> fields) {
+        if (fields == null || fields.isEmpty()) {
+            throw new IAE("Rule [or] must have at least one field");
+        }
+        this.fields = fields;
+    }
+
+    @JsonProperty
+    public List<RuleSpec> getFields() {
+        return fields;
+    }
+
+    @Override
+    public Rule compile() {
+        if (fields.size() == 1) {
+            return fields.get(0).compile();
+        }
+        return new CompositeRule(fields.stream().map(RuleSpec::compile).collect(Collectors.toList()), true);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        OrRuleSpec that = (OrRuleSpec) o;
+        return Objects.equals(fields, that.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "OrRuleSpec{" + "fields=" + fields + '}';
+    }
+}
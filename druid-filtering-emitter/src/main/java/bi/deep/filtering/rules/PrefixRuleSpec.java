@@ -0,0 +1,76 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.rules;
+
+import bi.deep.filtering.PrefixTrie;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Objects;
+import java.util.Set;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Matches events whose value starts with one of the given prefixes.
+ */
+public class PrefixRuleSpec implements RuleSpec {
+    private final String dimension;
+    private final Set<String> values;
+
+    @JsonCreator
+    public PrefixRuleSpec(@JsonProperty("dimension") String dimension, @JsonProperty("values") Set<String> values) {
+        if (dimension == null) {
+            throw new IAE("Rule [prefix] must have a dimension");
+        }
+        if (values == null || values.isEmpty()) {
+            throw new IAE("Rule [prefix] must have at least one value");
+        }
+        this.dimension = dimension;
+        this.values = values;
+    }
+
+    @JsonProperty
+    public String getDimension() {
+        return dimension;
+    }
+
+    @JsonProperty
+    public Set<String> getValues() {
+        return values;
+    }
+
+    @Override
+    public Rule compile() {
+        return new DimensionRule(dimension, PrefixTrie.of(values)::matchesPrefixOf, 2);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PrefixRuleSpec that = (PrefixRuleSpec) o;
+        return Objects.equals(dimension, that.dimension) && Objects.equals(values, that.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dimension, values);
+    }
+
+    @Override
+    public String toString() {
+        return "PrefixRuleSpec{" + "dimension='" + dimension + '\'' + ", values=" + values + '}';
+    }
+}
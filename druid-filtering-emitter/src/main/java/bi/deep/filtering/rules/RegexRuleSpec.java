@@ -0,0 +1,76 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.rules;
+
+import bi.deep.filtering.RegexSet;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Collections;
+import java.util.Objects;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Matches events whose whole value matches the given regular expression.
+ */
+public class RegexRuleSpec implements RuleSpec {
+    private final String dimension;
+    private final String pattern;
+
+    @JsonCreator
+    public RegexRuleSpec(@JsonProperty("dimension") String dimension, @JsonProperty("pattern") String pattern) {
+        if (dimension == null) {
+            throw new IAE("Rule [regex] must have a dimension");
+        }
+        if (pattern == null) {
+            throw new IAE("Rule [regex] must have a pattern");
+        }
+        this.dimension = dimension;
+        this.pattern = pattern;
+    }
+
+    @JsonProperty
+    public String getDimension() {
+        return dimension;
+    }
+
+    @JsonProperty
+    public String getPattern() {
+        return pattern;
+    }
+
+    @Override
+    public Rule compile() {
+        return new DimensionRule(dimension, new RegexSet(Collections.singleton(pattern))::matches, 8);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RegexRuleSpec that = (RegexRuleSpec) o;
+        return Objects.equals(dimension, that.dimension) && Objects.equals(pattern, that.pattern);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(dimension, pattern);
+    }
+
+    @Override
+    public String toString() {
+        return "RegexRuleSpec{" + "dimension='" + dimension + '\'' + ", pattern=" + pattern + '}';
+    }
+}
@@ -13,11 +13,17 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package bi.deep.filtering.steps;
+package bi.deep.filtering.rules;
 
-public interface FilterStep {
+import java.util.function.Predicate;
+import org.apache.druid.java.util.emitter.core.Event;
 
-    boolean isEnabled();
-
-    TrinaryBool filter(String value);
+/**
+ * Compiled {@link RuleSpec}.
+ */
+public interface Rule extends Predicate<Event> {
+    /**
+     * Relative cost of evaluating the rule, used to evaluate cheaper rules first.
+     */
+    int getCost();
 }
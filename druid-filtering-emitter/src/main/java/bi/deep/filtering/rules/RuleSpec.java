@@ -0,0 +1,42 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.filtering.rules;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+/**
+ * JSON definition of a rule over one or more event keys, for example:
+ *
+ * <pre>{@code
+ * {"type": "not", "field": {"type": "and", "fields": [
+ *     {"type": "prefix", "dimension": "metric", "values": ["segment/"]},
+ *     {"type": "in", "dimension": "dataSource", "values": ["wikipedia"]}
+ * ]}}
+ * }</pre>
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+    @JsonSubTypes.Type(name = "and", value = AndRuleSpec.class),
+    @JsonSubTypes.Type(name = "or", value = OrRuleSpec.class),
+    @JsonSubTypes.Type(name = "not", value = NotRuleSpec.class),
+    @JsonSubTypes.Type(name = "in", value = InRuleSpec.class),
+    @JsonSubTypes.Type(name = "prefix", value = PrefixRuleSpec.class),
+    @JsonSubTypes.Type(name = "regex", value = RegexRuleSpec.class)
+})
+public interface RuleSpec {
+    Rule compile();
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.projection;
+
+import bi.deep.filtering.ServiceDimensions;
+import bi.deep.filtering.rules.Rule;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Removes dimensions from the metric events matching a {@link ProjectionSpec} before passing them to the inner
+ * emitter, so that dimensions never used downstream are not serialized and shipped.
+ *
+ * <p>Only the dimensions of the event are inspected, its full event map is never built. Events which keep all their
+ * dimensions, as well as other event types, are passed to the inner emitter as they are.
+ */
+public class ProjectingEmitter implements Emitter {
+    private final Emitter inner;
+    private final Projection[] projections;
+
+    public ProjectingEmitter(Emitter inner, List<ProjectionSpec> specs) {
+        this.inner = inner;
+        this.projections = specs.stream().map(Projection::new).toArray(Projection[]::new);
+    }
+
+    @Override
+    public void start() {
+        inner.start();
+    }
+
+    @Override
+    public void emit(Event event) {
+        if (event instanceof ServiceMetricEvent) {
+            final ServiceMetricEvent metricEvent = (ServiceMetricEvent) event;
+            for (Projection projection : projections) {
+                if (projection.appliesTo(metricEvent)) {
+                    inner.emit(projection.project(metricEvent));
+                    return;
+                }
+            }
+        }
+        inner.emit(event);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inner.close();
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectingEmitter{" + "emitter=" + inner + "}";
+    }
+
+    private static class Projection {
+        private final Rule rule;
+        private final ProjectionSpec spec;
+
+        private Projection(ProjectionSpec spec) {
+            this.rule = spec.getRule() == null ? null : spec.getRule().compile();
+            this.spec = spec;
+        }
+
+        private boolean appliesTo(ServiceMetricEvent event) {
+            return rule == null || rule.test(event);
+        }
+
+        private ServiceMetricEvent project(ServiceMetricEvent event) {
+            final Map<String, Object> dimensions = event.getUserDims();
+
+            boolean keepsAll = true;
+            for (String dimension : dimensions.keySet()) {
+                if (!spec.keeps(dimension)) {
+                    keepsAll = false;
+                    break;
+                }
+            }
+            if (keepsAll) {
+                return event;
+            }
+
+            final ServiceMetricEvent.Builder builder = ServiceMetricEvent.builder();
+            for (Map.Entry<String, Object> dimension : dimensions.entrySet()) {
+                if (spec.keeps(dimension.getKey())) {
+                    builder.setDimension(dimension.getKey(), dimension.getValue());
+                }
+            }
+
+            return builder.setFeed(event.getFeed())
+                    .setCreatedTime(event.getCreatedTime())
+                    .setMetric(event.getMetric(), event.getValue())
+                    .build(ServiceDimensions.of(event));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.projection;
+
+import bi.deep.filtering.rules.RuleSpec;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Collections;
+import java.util.Objects;
+import java.util.Set;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Dimensions kept in or removed from the metric events matching {@link #getRule()} before they are forwarded.
+ */
+public class ProjectionSpec {
+    private final RuleSpec rule;
+    private final Set<String> include;
+    private final Set<String> exclude;
+
+    @JsonCreator
+    public ProjectionSpec(
+            @JsonProperty("rule") RuleSpec rule,
+            @JsonProperty("include") Set<String> include,
+            @JsonProperty("exclude") Set<String> exclude) {
+        this.rule = rule;
+        this.include = include;
+        this.exclude = exclude == null ? Collections.emptySet() : exclude;
+
+        if (include != null && exclude != null) {
+            throw new IAE("Only one of include and exclude can be set");
+        }
+    }
+
+    /**
+     * Metric events to project, or {@code null} for all metric events.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public RuleSpec getRule() {
+        return rule;
+    }
+
+    /**
+     * Dimensions kept in the events, or {@code null} to keep all dimensions not in {@link #getExclude()}.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Set<String> getInclude() {
+        return include;
+    }
+
+    /**
+     * Dimensions removed from the events.
+     */
+    @JsonProperty
+    public Set<String> getExclude() {
+        return exclude;
+    }
+
+    /**
+     * Whether the projection keeps the given dimension.
+     */
+    public boolean keeps(String dimension) {
+        return include == null ? !exclude.contains(dimension) : include.contains(dimension);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProjectionSpec that = (ProjectionSpec) o;
+        return Objects.equals(rule, that.rule)
+                && Objects.equals(include, that.include)
+                && Objects.equals(exclude, that.exclude);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rule, include, exclude);
+    }
+
+    @Override
+    public String toString() {
+        return "ProjectionSpec{" + "rule=" + rule + ", include=" + include + ", exclude=" + exclude + '}';
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.routing;
+
+import bi.deep.filtering.rules.RuleSpec;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Objects;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Inner emitter receiving the events matching {@link #getRule()}.
+ */
+public class RouteSpec {
+    private final String emitter;
+    private final RuleSpec rule;
+
+    @JsonCreator
+    public RouteSpec(@JsonProperty("emitter") String emitter, @JsonProperty("rule") RuleSpec rule) {
+        if (emitter == null) {
+            throw new IAE("Route must have an emitter");
+        }
+        this.emitter = emitter;
+        this.rule = rule;
+    }
+
+    /**
+     * Name of the inner emitter, for example {@code logging} or {@code http}.
+     */
+    @JsonProperty
+    public String getEmitter() {
+        return emitter;
+    }
+
+    /**
+     * Events sent to the emitter, or {@code null} for all events.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public RuleSpec getRule() {
+        return rule;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RouteSpec routeSpec = (RouteSpec) o;
+        return Objects.equals(emitter, routeSpec.emitter) && Objects.equals(rule, routeSpec.rule);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(emitter, rule);
+    }
+
+    @Override
+    public String toString() {
+        return "RouteSpec{" + "emitter='" + emitter + '\'' + ", rule=" + rule + '}';
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.routing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import org.apache.druid.java.util.common.concurrent.Execs;
+import org.apache.druid.java.util.common.logger.Logger;
+import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+
+/**
+ * Dispatches each event to every route whose rule matches it. Flushing and closing is done for all routes in
+ * parallel, so that a slow emitter does not delay the others.
+ */
+public class RoutingEmitter implements Emitter {
+    private static final Logger log = new Logger(RoutingEmitter.class);
+
+    private final Route[] routes;
+    private ExecutorService exec;
+
+    public RoutingEmitter(List<Route> routes) {
+        this.routes = routes.toArray(new Route[0]);
+    }
+
+    @Override
+    public void start() {
+        exec = Execs.multiThreaded(routes.length, "FilteringEmitter-route-%d");
+        for (Route route : routes) {
+            route.emitter.start();
+        }
+    }
+
+    @Override
+    public void emit(Event event) {
+        for (Route route : routes) {
+            if (route.rule == null || route.rule.test(event)) {
+                try {
+                    route.emitter.emit(event);
+                } catch (RuntimeException e) {
+                    log.error(e, "Emitter [%s] failed to emit event.", route.name);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        forEachRoute(Emitter::flush);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            forEachRoute(Emitter::close);
+        } finally {
+            if (exec != null) {
+                exec.shutdownNow();
+            }
+        }
+    }
+
+    private void forEachRoute(EmitterAction action) throws IOException {
+        if (exec == null) {
+            for (Route route : routes) {
+                action.apply(route.emitter);
+            }
+            return;
+        }
+
+        final List<Future<?>> futures = new ArrayList<>(routes.length);
+        for (Route route : routes) {
+            futures.add(exec.submit(() -> {
+                action.apply(route.emitter);
+                return null;
+            }));
+        }
+
+        IOException failure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for emitter [" + routes[i].name + "]", e);
+            } catch (ExecutionException e) {
+                final IOException routeFailure =
+                        new IOException("Emitter [" + routes[i].name + "] failed", e.getCause());
+                if (failure == null) {
+                    failure = routeFailure;
+                } else {
+                    failure.addSuppressed(routeFailure);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        final List<String> names = new ArrayList<>(routes.length);
+        for (Route route : routes) {
+            names.add(route.name);
+        }
+        return "RoutingEmitter{" + "routes=" + names + "}";
+    }
+
+    private interface EmitterAction {
+        void apply(Emitter emitter) throws IOException;
+    }
+
+    public static class Route {
+        private final String name;
+        private final Predicate<Event> rule;
+        private final Emitter emitter;
+
+        /**
+         * @param rule events sent to the emitter, or {@code null} for all events
+         */
+        public Route(String name, Predicate<Event> rule, Emitter emitter) {
+            this.name = name;
+            this.rule = rule;
+            this.emitter = emitter;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.stats;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Counters and gauges describing the filtering emitter itself, reported periodically as metric events:
+ *
+ * <ul>
+ *   <li>{@code filteringEmitter/events/passed} and {@code filteringEmitter/events/dropped}: events passed and dropped
+ *       by each filtering step or route since the last report, with the {@code step} (and {@code route}) dimension.
+ *       Each field of a top-level {@code and} rule and each limit is also counted on its own, with the {@code rule}
+ *       or {@code limit} dimension holding its position in the configuration</li>
+ *   <li>{@code filteringEmitter/emit/time}: emit latency quantiles in nanoseconds, with the {@code quantile}
+ *       dimension</li>
+ *   <li>{@code filteringEmitter/queue/size}: depth of the asynchronous queues, with the {@code route} dimension</li>
+ *   <li>{@code filteringEmitter/queue/dropped}: events the asynchronous queues dropped since the last report because
+ *       they were full, with the {@code route} dimension</li>
+ *   <li>{@code filteringEmitter/queue/spilled}: events of the asynchronous queues spilled to disk and not read back
+ *       yet, with the {@code route} dimension</li>
+ *   <li>{@code filteringEmitter/decisionCache/hits} and {@code filteringEmitter/decisionCache/misses}: lookups of the
+ *       filter decision cache since the last report that did and did not find a cached decision</li>
+ * </ul>
+ */
+public class FilteringEmitterStats {
+    public static final String STEP = "step";
+    public static final String ROUTE = "route";
+    public static final String RULE = "rule";
+    public static final String LIMIT = "limit";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final String[] QUANTILE_NAMES = {"p50", "p90", "p99"};
+
+    private final Map<Map<String, String>, StepCounter> steps = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+    private final LatencyHistogram emitLatency = new LatencyHistogram();
+
+    /**
+     * Wraps the predicate counting the events it passes and drops. Predicates created with the same dimensions, for
+     * example after the rules were reloaded, share their counters.
+     */
+    public Predicate<Event> counting(Map<String, String> dimensions, Predicate<Event> predicate) {
+        final StepCounter counter = steps.computeIfAbsent(dimensions, dims -> new StepCounter());
+        return event -> {
+            if (predicate.test(event)) {
+                counter.passed.increment();
+                return true;
+            }
+            counter.dropped.increment();
+            return false;
+        };
+    }
+
+    public Predicate<Event> counting(String step, Predicate<Event> predicate) {
+        return counting(Collections.singletonMap(STEP, step), predicate);
+    }
+
+    /**
+     * Dimensions of the counters of a route and of its asynchronous queue.
+     */
+    public static Map<String, String> routeDimensions(String emitter) {
+        return ImmutableMap.of(STEP, ROUTE, ROUTE, emitter);
+    }
+
+    /**
+     * Dimensions of the counter of a single field of the {@code rule} step.
+     */
+    public static Map<String, String> ruleDimensions(int index) {
+        return ImmutableMap.of(STEP, RULE, RULE, String.valueOf(index));
+    }
+
+    /**
+     * Dimensions of the counter of a single limit of the {@code limits} step.
+     */
+    public static Map<String, String> limitDimensions(int index) {
+        return ImmutableMap.of(STEP, "limits", LIMIT, String.valueOf(index));
+    }
+
+    /**
+     * Reports the current value of the supplier.
+     */
+    public void gauge(String metric, Map<String, String> dimensions, LongSupplier supplier) {
+        gauges.add(new Gauge(metric, dimensions, supplier, false));
+    }
+
+    /**
+     * Reports the increase of an ever-growing counter since the last report.
+     */
+    public void counter(String metric, Map<String, String> dimensions, LongSupplier supplier) {
+        gauges.add(new Gauge(metric, dimensions, supplier, true));
+    }
+
+    /**
+     * Returns the counter reported as the given metric. Callers asking for the same metric, for example decision caches
+     * rebuilt after the rules were reloaded, share the counter.
+     */
+    public LongAdder counter(String metric) {
+        return counters.computeIfAbsent(metric, name -> new LongAdder());
+    }
+
+    public void recordEmitTime(long nanos) {
+        emitLatency.record(nanos);
+    }
+
+    /**
+     * Builds the metric events for the period since the last call.
+     */
+    public List<ServiceMetricEvent> report(String service, String host) {
+        final List<ServiceMetricEvent> events = new ArrayList<>();
+
+        steps.forEach((dimensions, counter) -> {
+            final long passed = counter.passed.sumThenReset();
+            final long dropped = counter.dropped.sumThenReset();
+            events.add(event(service, host, "filteringEmitter/events/passed", dimensions, passed));
+            events.add(event(service, host, "filteringEmitter/events/dropped", dimensions, dropped));
+        });
+
+        final LatencyHistogram.Snapshot latency = emitLatency.snapshotAndReset();
+        if (latency.getCount() > 0) {
+            for (int i = 0; i < QUANTILES.length; i++) {
+                events.add(event(
+                        service,
+                        host,
+                        "filteringEmitter/emit/time",
+                        Collections.singletonMap("quantile", QUANTILE_NAMES[i]),
+                        latency.getQuantile(QUANTILES[i])));
+            }
+            events.add(event(
+                    service,
+                    host,
+                    "filteringEmitter/emit/time",
+                    Collections.singletonMap("quantile", "max"),
+                    latency.getMax()));
+        }
+
+        counters.forEach((metric, counter) ->
+                events.add(event(service, host, metric, Collections.emptyMap(), counter.sumThenReset())));
+
+        for (Gauge gauge : gauges) {
+            events.add(event(service, host, gauge.metric, gauge.dimensions, gauge.read()));
+        }
+
+        return events;
+    }
+
+    private static ServiceMetricEvent event(
+            String service, String host, String metric, Map<String, String> dimensions, long value) {
+        final ServiceMetricEvent.Builder builder = ServiceMetricEvent.builder();
+        dimensions.forEach(builder::setDimension);
+        return builder.setMetric(metric, value).build(service, host);
+    }
+
+    private static class StepCounter {
+        private final LongAdder passed = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+    }
+
+    private static class Gauge {
+        private final String metric;
+        private final Map<String, String> dimensions;
+        private final LongSupplier supplier;
+        private final boolean delta;
+        private long last;
+
+        private Gauge(String metric, Map<String, String> dimensions, LongSupplier supplier, boolean delta) {
+            this.metric = metric;
+            this.dimensions = dimensions;
+            this.supplier = supplier;
+            this.delta = delta;
+        }
+
+        private synchronized long read() {
+            final long value = supplier.getAsLong();
+            if (!delta) {
+                return value;
+            }
+            final long increase = value - last;
+            last = value;
+            return increase;
+        }
+    }
+}
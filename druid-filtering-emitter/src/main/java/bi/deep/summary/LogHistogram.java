@@ -0,0 +1,104 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.summary;
+
+import java.util.Arrays;
+
+/**
+ * Compact mergeable quantile sketch. Positive values are counted in logarithmic buckets growing by {@link #GAMMA}, so
+ * every quantile is estimated within 1% of the real value; zero and negative values share a single bucket.
+ */
+final class LogHistogram {
+    static final double GAMMA = 1.02;
+
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final double MIN_POSITIVE = 1e-9;
+
+    private long zeroCount;
+    private long[] counts = new long[0];
+    private int offset;
+
+    void add(double value) {
+        if (!(value > MIN_POSITIVE)) {
+            zeroCount++;
+            return;
+        }
+
+        final int index = (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+        ensureIndex(index);
+        counts[index - offset]++;
+    }
+
+    void merge(LogHistogram other) {
+        zeroCount += other.zeroCount;
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                ensureIndex(other.offset + i);
+                counts[other.offset + i - offset] += other.counts[i];
+            }
+        }
+    }
+
+    void reset() {
+        zeroCount = 0;
+        Arrays.fill(counts, 0);
+    }
+
+    /**
+     * Estimates the value at the given quantile, or returns zero when the quantile falls into the bucket of
+     * non-positive values.
+     */
+    double quantile(double quantile, long total) {
+        final double rank = quantile * (total - 1);
+
+        long seen = zeroCount;
+        if (seen > rank) {
+            return 0;
+        }
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen > rank) {
+                return 2 * Math.pow(GAMMA, offset + i) / (1 + GAMMA);
+            }
+        }
+
+        return counts.length == 0 ? 0 : 2 * Math.pow(GAMMA, offset + counts.length - 1) / (1 + GAMMA);
+    }
+
+    private void ensureIndex(int index) {
+        if (counts.length == 0) {
+            counts = new long[16];
+            offset = index - 8;
+            return;
+        }
+
+        final int end = offset + counts.length;
+        if (index >= offset && index < end) {
+            return;
+        }
+
+        final int newOffset = Math.min(offset, index);
+        final int newEnd = Math.max(end, index + 1);
+        final int length = Math.max(newEnd - newOffset, counts.length * 2);
+        final int start = index < offset ? newEnd - length : newOffset;
+
+        final long[] grown = new long[length];
+        System.arraycopy(counts, 0, grown, offset - start, counts.length);
+        counts = grown;
+        offset = start;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.summary;
+
+/**
+ * Count, sum, minimum, maximum and quantile sketch of the values of one metric in the current window. Values are
+ * added to one of several stripes chosen by the emitting thread, so that threads emitting the same metric rarely
+ * contend on the same lock; the stripes are merged when the window is flushed.
+ */
+final class MetricSummary {
+    private static final int STRIPES =
+            Math.min(16, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    MetricSummary() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    void add(double value) {
+        stripes[(int) Thread.currentThread().getId() & (STRIPES - 1)].add(value);
+    }
+
+    /**
+     * Returns the values added since the last call, or {@code null} when there were none.
+     */
+    Stripe drain() {
+        final Stripe merged = new Stripe();
+        for (Stripe stripe : stripes) {
+            stripe.drainTo(merged);
+        }
+        return merged.count == 0 ? null : merged;
+    }
+
+    static final class Stripe {
+        private long count;
+        private double sum;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+        private LogHistogram histogram;
+
+        synchronized void add(double value) {
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            if (histogram == null) {
+                histogram = new LogHistogram();
+            }
+            histogram.add(value);
+        }
+
+        private synchronized void drainTo(Stripe target) {
+            if (count == 0) {
+                return;
+            }
+
+            target.count += count;
+            target.sum += sum;
+            target.min = Math.min(target.min, min);
+            target.max = Math.max(target.max, max);
+            if (target.histogram == null) {
+                target.histogram = new LogHistogram();
+            }
+            target.histogram.merge(histogram);
+
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+            histogram.reset();
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        double getSum() {
+            return sum;
+        }
+
+        double getMin() {
+            return min;
+        }
+
+        double getMax() {
+            return max;
+        }
+
+        /**
+         * Estimated value at the given quantile, clamped to the observed range.
+         */
+        double getQuantile(double quantile) {
+            return Math.max(min, Math.min(max, histogram.quantile(quantile, count)));
+        }
+    }
+}
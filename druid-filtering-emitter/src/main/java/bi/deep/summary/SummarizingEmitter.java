@@ -0,0 +1,239 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.summary;
+
+import bi.deep.filtering.EventKeyReader;
+import bi.deep.filtering.ServiceDimensions;
+import bi.deep.filtering.rules.Rule;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.druid.java.util.common.concurrent.Execs;
+import org.apache.druid.java.util.common.logger.Logger;
+import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Folds the metric events matching a {@link SummarySpec} into per-window summaries and emits them at the end of each
+ * window, per metric, service dimensions and summary dimensions. Other events are passed to the inner emitter as they
+ * are.
+ *
+ * <p>Every statistic of a window, the {@code count}, {@code sum}, {@code mean}, {@code min}, {@code max} and the
+ * quantiles (for example {@code p95}), is emitted as its own event of the summarized metric, with the statistic as the
+ * value and its name in the {@link #STAT} dimension.
+ */
+public class SummarizingEmitter implements Emitter {
+    public static final String STAT = "stat";
+
+    private static final Logger log = new Logger(SummarizingEmitter.class);
+
+    private final Emitter inner;
+    private final Summarizer[] summarizers;
+    private ScheduledExecutorService exec;
+
+    public SummarizingEmitter(Emitter inner, List<SummarySpec> specs) {
+        this.inner = inner;
+        this.summarizers = specs.stream().map(Summarizer::new).toArray(Summarizer[]::new);
+    }
+
+    @Override
+    public void start() {
+        inner.start();
+        exec = Execs.scheduledSingleThreaded("FilteringEmitter-summary-%d");
+        for (Summarizer summarizer : summarizers) {
+            exec.scheduleAtFixedRate(
+                    () -> flushWindow(summarizer),
+                    summarizer.windowMillis,
+                    summarizer.windowMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void emit(Event event) {
+        if (event instanceof ServiceMetricEvent) {
+            final ServiceMetricEvent metricEvent = (ServiceMetricEvent) event;
+            for (Summarizer summarizer : summarizers) {
+                if (summarizer.appliesTo(metricEvent)) {
+                    summarizer.add(metricEvent);
+                    return;
+                }
+            }
+        }
+        inner.emit(event);
+    }
+
+    /**
+     * Emits the summaries of the current windows and flushes the inner emitter.
+     */
+    @Override
+    public void flush() throws IOException {
+        for (Summarizer summarizer : summarizers) {
+            flushWindow(summarizer);
+        }
+        inner.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (exec != null) {
+            exec.shutdownNow();
+        }
+        for (Summarizer summarizer : summarizers) {
+            flushWindow(summarizer);
+        }
+        inner.close();
+    }
+
+    private void flushWindow(Summarizer summarizer) {
+        try {
+            summarizer.flush(inner);
+        } catch (RuntimeException e) {
+            log.error(e, "Failed to emit metric summaries.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SummarizingEmitter{" + "emitter=" + inner + "}";
+    }
+
+    private static class Summarizer {
+        private final Rule rule;
+        private final String[] dimensions;
+        private final EventKeyReader[] readers;
+        private final long windowMillis;
+        private final double[] quantiles;
+        private final String[] quantileNames;
+        private final ConcurrentHashMap<SummaryKey, MetricSummary> summaries = new ConcurrentHashMap<>();
+
+        private Summarizer(SummarySpec spec) {
+            this.rule = spec.getRule() == null ? null : spec.getRule().compile();
+            this.dimensions = spec.getDimensions().toArray(new String[0]);
+            this.readers = Arrays.stream(dimensions).map(EventKeyReader::new).toArray(EventKeyReader[]::new);
+            this.windowMillis = spec.getWindowMillis();
+            this.quantiles = spec.getQuantiles().stream().mapToDouble(Double::doubleValue).toArray();
+            this.quantileNames = spec.getQuantiles().stream().map(Summarizer::quantileName).toArray(String[]::new);
+        }
+
+        private static String quantileName(double quantile) {
+            return "p" + BigDecimal.valueOf(quantile).movePointRight(2).stripTrailingZeros().toPlainString();
+        }
+
+        private boolean appliesTo(ServiceMetricEvent event) {
+            return rule == null || rule.test(event);
+        }
+
+        private void add(ServiceMetricEvent event) {
+            final String[] values = new String[readers.length];
+            if (readers.length > 0) {
+                final Map<String, Object> userDims = event.getUserDims();
+                for (int i = 0; i < readers.length; i++) {
+                    values[i] = readers[i].read(event, userDims);
+                }
+            }
+
+            final SummaryKey key = new SummaryKey(ServiceDimensions.of(event), event.getMetric(), values);
+            summaries.computeIfAbsent(key, k -> new MetricSummary()).add(event.getValue().doubleValue());
+        }
+
+        private void flush(Emitter emitter) {
+            final List<Map.Entry<SummaryKey, MetricSummary>> idle = new ArrayList<>();
+
+            for (Map.Entry<SummaryKey, MetricSummary> entry : summaries.entrySet()) {
+                final MetricSummary.Stripe window = entry.getValue().drain();
+                if (window == null) {
+                    idle.add(entry);
+                } else {
+                    emit(emitter, entry.getKey(), window);
+                }
+            }
+
+            // Keys without events for a whole window are dropped, so that the map does not keep every key ever seen.
+            // Values added while a key was being removed are emitted right away instead of being lost.
+            for (Map.Entry<SummaryKey, MetricSummary> entry : idle) {
+                if (summaries.remove(entry.getKey(), entry.getValue())) {
+                    final MetricSummary.Stripe late = entry.getValue().drain();
+                    if (late != null) {
+                        emit(emitter, entry.getKey(), late);
+                    }
+                }
+            }
+        }
+
+        private void emit(Emitter emitter, SummaryKey key, MetricSummary.Stripe window) {
+            emitter.emit(toEvent(key, "count", window.getCount()));
+            emitter.emit(toEvent(key, "sum", window.getSum()));
+            emitter.emit(toEvent(key, "mean", window.getSum() / window.getCount()));
+            emitter.emit(toEvent(key, "min", window.getMin()));
+            emitter.emit(toEvent(key, "max", window.getMax()));
+            for (int i = 0; i < quantiles.length; i++) {
+                emitter.emit(toEvent(key, quantileNames[i], window.getQuantile(quantiles[i])));
+            }
+        }
+
+        private ServiceMetricEvent toEvent(SummaryKey key, String stat, Number value) {
+            final ServiceMetricEvent.Builder builder = ServiceMetricEvent.builder();
+
+            for (int i = 0; i < dimensions.length; i++) {
+                if (key.values[i] != null) {
+                    builder.setDimension(dimensions[i], key.values[i]);
+                }
+            }
+
+            return builder.setDimension(STAT, stat).setMetric(key.metric, value).build(key.serviceDims);
+        }
+    }
+
+    private static final class SummaryKey {
+        private final ImmutableMap<String, String> serviceDims;
+        private final String metric;
+        private final String[] values;
+        private final int hashCode;
+
+        private SummaryKey(ImmutableMap<String, String> serviceDims, String metric, String[] values) {
+            this.serviceDims = serviceDims;
+            this.metric = metric;
+            this.values = values;
+            this.hashCode = 31 * Objects.hash(serviceDims, metric) + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SummaryKey that = (SummaryKey) o;
+            return hashCode == that.hashCode
+                    && Objects.equals(metric, that.metric)
+                    && Objects.equals(serviceDims, that.serviceDims)
+                    && Arrays.equals(values, that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.summary;
+
+import bi.deep.filtering.rules.RuleSpec;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.apache.druid.java.util.common.IAE;
+
+/**
+ * Metric events folded into one summary event per window and combination of {@link #getDimensions()}, instead of
+ * being emitted one by one.
+ */
+public class SummarySpec {
+    public static final long DEFAULT_WINDOW_MILLIS = 60_000;
+    public static final List<Double> DEFAULT_QUANTILES = Arrays.asList(0.5, 0.95, 0.99);
+
+    private final RuleSpec rule;
+    private final List<String> dimensions;
+    private final long windowMillis;
+    private final List<Double> quantiles;
+
+    @JsonCreator
+    public SummarySpec(
+            @JsonProperty("rule") RuleSpec rule,
+            @JsonProperty("dimensions") List<String> dimensions,
+            @JsonProperty("windowMillis") Long windowMillis,
+            @JsonProperty("quantiles") List<Double> quantiles) {
+        this.rule = rule;
+        this.dimensions = dimensions == null ? Collections.emptyList() : dimensions;
+        this.windowMillis = windowMillis == null ? DEFAULT_WINDOW_MILLIS : windowMillis;
+        this.quantiles = quantiles == null ? DEFAULT_QUANTILES : quantiles;
+
+        if (this.windowMillis < 1) {
+            throw new IAE("windowMillis must be positive, got %d", this.windowMillis);
+        }
+        for (Double quantile : this.quantiles) {
+            if (quantile == null || quantile < 0 || quantile > 1) {
+                throw new IAE("Quantiles must be in [0, 1], got %s", quantile);
+            }
+        }
+    }
+
+    /**
+     * Metric events to summarize, or {@code null} for all metric events.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public RuleSpec getRule() {
+        return rule;
+    }
+
+    /**
+     * Dimensions kept in the summary events, in addition to the metric name, service and host.
+     */
+    @JsonProperty
+    public List<String> getDimensions() {
+        return dimensions;
+    }
+
+    @JsonProperty
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    @JsonProperty
+    public List<Double> getQuantiles() {
+        return quantiles;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SummarySpec that = (SummarySpec) o;
+        return windowMillis == that.windowMillis
+                && Objects.equals(rule, that.rule)
+                && Objects.equals(dimensions, that.dimensions)
+                && Objects.equals(quantiles, that.quantiles);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(rule, dimensions, windowMillis, quantiles);
+    }
+
+    @Override
+    public String toString() {
+        return "SummarySpec{" + "rule=" + rule
+                + ", dimensions=" + dimensions
+                + ", windowMillis=" + windowMillis
+                + ", quantiles=" + quantiles
+                + '}';
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.alerts.AlertDeduplicatingEmitter;
+import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import org.apache.druid.java.util.common.DateTimes;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.AlertEvent;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class AlertDeduplicatingEmitterTest {
+
+    private static Event makeAlert(String service, String description) {
+        return new AlertEvent(service, "localhost", description);
+    }
+
+    private static List<Object> occurrences(RecordingEmitter inner) {
+        return inner.events.stream()
+                .map(event -> event instanceof AlertEvent
+                        ? ((AlertEvent) event).getDataMap().get(AlertDeduplicatingEmitter.OCCURRENCES)
+                        : null)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testCollapsesRepeatsWithinWindow() {
+        RecordingEmitter inner = new RecordingEmitter();
+        AtomicLong now = new AtomicLong(1_000_000);
+        AlertDeduplicatingEmitter emitter = new AlertDeduplicatingEmitter(inner, 10_000, 100, now::get);
+
+        for (int i = 0; i < 1000; i++) {
+            emitter.emit(makeAlert("druid/coordinator", "Failed to load segment"));
+        }
+        emitter.emit(makeAlert("druid/historical", "Failed to load segment"));
+        emitter.emit(makeAlert("druid/coordinator", "Task failed"));
+
+        // the first alert of each kind is forwarded right away
+        Assert.assertEquals(3, inner.events.size());
+
+        now.addAndGet(9_000);
+        emitter.expire();
+        Assert.assertEquals(3, inner.events.size());
+
+        // windows end on the next tick of the time wheel, a 64th of the window
+        now.addAndGet(1_200);
+        emitter.expire();
+        Assert.assertEquals(4, inner.events.size());
+        AlertEvent collapsed = (AlertEvent) inner.events.get(3);
+        Assert.assertEquals("druid/coordinator", collapsed.getService());
+        Assert.assertEquals("Failed to load segment", collapsed.getDescription());
+        Assert.assertEquals(1000, collapsed.getDataMap().get(AlertDeduplicatingEmitter.OCCURRENCES));
+
+        // a new window starts after the previous one ended
+        emitter.emit(makeAlert("druid/coordinator", "Failed to load segment"));
+        Assert.assertEquals(5, inner.events.size());
+    }
+
+    @Test
+    public void testKeepsServiceDimensions() {
+        RecordingEmitter inner = new RecordingEmitter();
+        AtomicLong now = new AtomicLong();
+        AlertDeduplicatingEmitter emitter = new AlertDeduplicatingEmitter(inner, 10_000, 100, now::get);
+        ImmutableMap<String, String> serviceDims =
+                ImmutableMap.of("service", "druid/broker", "host", "broker-4:8082", "version", "36.0.0");
+
+        for (int i = 0; i < 2; i++) {
+            emitter.emit(new AlertEvent(
+                    DateTimes.nowUtc(), serviceDims, AlertEvent.Severity.ANOMALY, "Query failed", Map.of()));
+        }
+        now.addAndGet(11_000);
+        emitter.expire();
+
+        Assert.assertEquals(2, inner.events.size());
+        AlertEvent collapsed = (AlertEvent) inner.events.get(1);
+        Assert.assertEquals(2, collapsed.getDataMap().get(AlertDeduplicatingEmitter.OCCURRENCES));
+        Assert.assertEquals("druid/broker", collapsed.getService());
+        Assert.assertEquals("broker-4:8082", collapsed.getHost());
+        Assert.assertEquals("36.0.0", collapsed.toMap().get("version"));
+    }
+
+    @Test
+    public void testExpiresAfterLateTick() {
+        RecordingEmitter inner = new RecordingEmitter();
+        AtomicLong now = new AtomicLong();
+        AlertDeduplicatingEmitter emitter = new AlertDeduplicatingEmitter(inner, 10_000, 100, now::get);
+
+        emitter.emit(makeAlert("druid/broker", "Query failed"));
+        emitter.emit(makeAlert("druid/broker", "Query failed"));
+
+        // the expiry runs much later than the end of the window
+        now.addAndGet(100_000);
+        emitter.expire();
+
+        Assert.assertEquals(Arrays.asList(null, 2), occurrences(inner));
+    }
+
+    @Test
+    public void testMaxAlerts() {
+        RecordingEmitter inner = new RecordingEmitter();
+        AlertDeduplicatingEmitter emitter = new AlertDeduplicatingEmitter(inner, 10_000, 2, () -> 0);
+
+        for (int i = 0; i < 2; i++) {
+            emitter.emit(makeAlert("druid/broker", "a"));
+            emitter.emit(makeAlert("druid/broker", "b"));
+            emitter.emit(makeAlert("druid/broker", "c")); // over the limit, not deduplicated
+        }
+
+        Assert.assertEquals(4, inner.events.size());
+    }
+
+    @Test
+    public void testFlushAndOtherEvents() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        AlertDeduplicatingEmitter emitter = new AlertDeduplicatingEmitter(inner, 60_000, 100, () -> 0);
+
+        Event metric = ServiceMetricEvent.builder().setMetric("query/time", 1).build("druid/broker", "localhost");
+        emitter.emit(makeAlert("druid/broker", "Query failed"));
+        emitter.emit(makeAlert("druid/broker", "Query failed"));
+        emitter.emit(makeAlert("druid/broker", "Query failed"));
+        emitter.emit(metric);
+        emitter.flush();
+
+        Assert.assertEquals(3, inner.events.size());
+        Assert.assertSame(metric, inner.events.get(1));
+        Assert.assertEquals(Arrays.asList(null, null, 3), occurrences(inner));
+        Assert.assertTrue(inner.flushed);
+
+        // alerts which were not repeated are not emitted again
+        emitter.emit(makeAlert("druid/broker", "Other"));
+        emitter.close();
+        Assert.assertEquals(4, inner.events.size());
+        Assert.assertTrue(inner.closed);
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.async.AsyncEmitter;
+import bi.deep.async.EventCodec;
+import bi.deep.async.OverflowPolicy;
+import bi.deep.async.RingBuffer;
+import bi.deep.async.SpillLog;
+import com.google.common.collect.ImmutableMap;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.common.DateTimes;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.AlertEvent;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AsyncEmitterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Event makeEvent(String name) {
+        return ServiceMetricEvent.builder().setMetric(name, 1).build("test", "localhost");
+    }
+
+    @Test
+    public void testRingBuffer() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        Assert.assertEquals(4, buffer.capacity());
+
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(buffer.offer(i));
+        }
+        Assert.assertFalse(buffer.offer(4)); // full
+        Assert.assertEquals(4, buffer.size());
+
+        Assert.assertEquals(Integer.valueOf(0), buffer.poll());
+        Assert.assertTrue(buffer.offer(4)); // wraps around
+
+        List<Integer> drained = new ArrayList<>();
+        Assert.assertEquals(3, buffer.drainTo(drained, 3));
+        Assert.assertEquals(List.of(1, 2, 3), drained);
+        Assert.assertEquals(Integer.valueOf(4), buffer.poll());
+        Assert.assertNull(buffer.poll());
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testEmitsInOrder() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        AsyncEmitter emitter = new AsyncEmitter(inner, 16, 4, OverflowPolicy.DROP_NEWEST);
+        emitter.start();
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            emitter.emit(makeEvent("m" + i));
+            expected.add("m" + i);
+        }
+        emitter.flush();
+
+        Assert.assertEquals(expected, inner.metrics());
+        Assert.assertTrue(inner.flushed);
+        emitter.close();
+        Assert.assertTrue(inner.closed);
+    }
+
+    @Test
+    public void testDropNewest() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        AsyncEmitter emitter = new AsyncEmitter(inner, 4, 4, OverflowPolicy.DROP_NEWEST);
+
+        // nothing is drained before start, so the queue fills up
+        for (int i = 0; i < 6; i++) {
+            emitter.emit(makeEvent("m" + i));
+        }
+        emitter.start();
+        emitter.flush();
+
+        Assert.assertEquals(List.of("m0", "m1", "m2", "m3"), inner.metrics());
+        Assert.assertEquals(2, emitter.getDroppedCount());
+        emitter.close();
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        AsyncEmitter emitter = new AsyncEmitter(inner, 4, 4, OverflowPolicy.DROP_OLDEST);
+
+        for (int i = 0; i < 6; i++) {
+            emitter.emit(makeEvent("m" + i));
+        }
+        emitter.start();
+        emitter.flush();
+
+        Assert.assertEquals(List.of("m2", "m3", "m4", "m5"), inner.metrics());
+        Assert.assertEquals(2, emitter.getDroppedCount());
+        emitter.close();
+    }
+
+    @Test
+    public void testBlockWithSlowInnerEmitter() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter(1);
+        AsyncEmitter emitter = new AsyncEmitter(inner, 2, 2, OverflowPolicy.BLOCK);
+        emitter.start();
+
+        for (int i = 0; i < 20; i++) {
+            emitter.emit(makeEvent("m" + i));
+        }
+        emitter.flush();
+
+        Assert.assertEquals(20, inner.metrics().size());
+        Assert.assertEquals(0, emitter.getDroppedCount());
+        emitter.close();
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        AsyncEmitter emitter = new AsyncEmitter(inner, 64, 16, OverflowPolicy.BLOCK);
+        emitter.start();
+
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            final String prefix = "p" + p + "/";
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    emitter.emit(makeEvent(prefix + i));
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        emitter.flush();
+
+        Assert.assertEquals(4000, inner.metrics().stream().distinct().count());
+        emitter.close();
+    }
+
+    @Test
+    public void testCloseDrainsQueue() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        AsyncEmitter emitter = new AsyncEmitter(inner, 128, 8, OverflowPolicy.DROP_NEWEST);
+        emitter.start();
+
+        for (int i = 0; i < 100; i++) {
+            emitter.emit(makeEvent("m" + i));
+        }
+        emitter.close();
+
+        Assert.assertEquals(100, inner.metrics().size());
+        Assert.assertTrue(inner.closed);
+    }
+
+    @Test
+    public void testSpillLog() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        SpillLog spill = new SpillLog(directory, 1024, 4096);
+
+        int appended = 0;
+        while (spill.append(("event-" + appended).getBytes(StandardCharsets.UTF_8))) {
+            appended++;
+        }
+        Assert.assertEquals(4, directory.list().length); // capped at 4 segments
+        Assert.assertEquals(appended, spill.getPendingCount());
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("event-" + i, new String(spill.poll(), StandardCharsets.UTF_8));
+        }
+        spill.close();
+
+        // unread records are read again by the next log on the directory
+        SpillLog recovered = new SpillLog(directory, 1024, 4096);
+        Assert.assertEquals(appended - 10, recovered.getPendingCount());
+        for (int i = 10; i < appended; i++) {
+            Assert.assertEquals("event-" + i, new String(recovered.poll(), StandardCharsets.UTF_8));
+        }
+        Assert.assertNull(recovered.poll());
+        Assert.assertTrue(recovered.isEmpty());
+        Assert.assertEquals(1, directory.list().length); // read segments are deleted
+        recovered.close();
+    }
+
+    @Test
+    public void testSpillLogMovesCorruptSegmentAside() throws Exception {
+        File directory = temporaryFolder.newFolder();
+        SpillLog spill = new SpillLog(directory, 1024, 4096);
+        int appended = 0;
+        while (appended < 100 && spill.append(("event-" + appended).getBytes(StandardCharsets.UTF_8))) {
+            appended++;
+        }
+        File[] files = directory.listFiles();
+        Arrays.sort(files);
+        Assert.assertTrue(files.length > 1);
+
+        // the length of the first record now points past the end of the segment
+        try (RandomAccessFile raf = new RandomAccessFile(files[0], "rw")) {
+            raf.writeInt(1000);
+        }
+
+        String record = new String(spill.poll(), StandardCharsets.UTF_8);
+        int next = Integer.parseInt(record.substring("event-".length()));
+        Assert.assertTrue(next > 0);
+        Assert.assertEquals(appended - next - 1, spill.getPendingCount());
+        Assert.assertFalse(files[0].exists());
+        Assert.assertTrue(new File(files[0].getPath() + ".corrupt").exists());
+
+        for (int i = next + 1; i < appended; i++) {
+            Assert.assertEquals("event-" + i, new String(spill.poll(), StandardCharsets.UTF_8));
+        }
+        Assert.assertNull(spill.poll());
+        spill.close();
+    }
+
+    @Test
+    public void testEventCodec() throws Exception {
+        EventCodec codec = new EventCodec(new DefaultObjectMapper());
+
+        ServiceMetricEvent metric = ServiceMetricEvent.builder()
+                .setDimension("dataSource", "wiki")
+                .setCreatedTime(DateTimes.of("2024-01-01T00:00:00Z"))
+                .setMetric("query/time", 42)
+                .build("druid/broker", "localhost");
+        ServiceMetricEvent decodedMetric = (ServiceMetricEvent) codec.decode(codec.encode(metric));
+        Assert.assertEquals(metric.getCreatedTime(), decodedMetric.getCreatedTime());
+        Assert.assertEquals(metric.getService(), decodedMetric.getService());
+        Assert.assertEquals(metric.getHost(), decodedMetric.getHost());
+        Assert.assertEquals(metric.getMetric(), decodedMetric.getMetric());
+        Assert.assertEquals(42, decodedMetric.getValue().intValue());
+        Assert.assertEquals(metric.getUserDims(), decodedMetric.getUserDims());
+
+        AlertEvent alert = new AlertEvent(
+                DateTimes.of("2024-01-01T00:00:00Z"),
+                "druid/historical",
+                "localhost",
+                AlertEvent.Severity.SERVICE_FAILURE,
+                "Failed to load segment",
+                Map.of("segment", "wiki_2024"));
+        AlertEvent decodedAlert = (AlertEvent) codec.decode(codec.encode(alert));
+        Assert.assertEquals(alert.getCreatedTime(), decodedAlert.getCreatedTime());
+        Assert.assertEquals(alert.getSeverity(), decodedAlert.getSeverity());
+        Assert.assertEquals(alert.getDescription(), decodedAlert.getDescription());
+        Assert.assertEquals(alert.getDataMap(), decodedAlert.getDataMap());
+    }
+
+    @Test
+    public void testEventCodecKeepsServiceDimensions() throws Exception {
+        EventCodec codec = new EventCodec(new DefaultObjectMapper());
+        ImmutableMap<String, String> serviceDims =
+                ImmutableMap.of("service", "druid/broker", "host", "broker-3:8082", "version", "36.0.0");
+
+        ServiceMetricEvent metric = ServiceMetricEvent.builder()
+                .setDimension("dataSource", "wiki")
+                .setMetric("query/time", 42)
+                .build(serviceDims);
+        ServiceMetricEvent decodedMetric = (ServiceMetricEvent) codec.decode(codec.encode(metric));
+        Assert.assertEquals("druid/broker", decodedMetric.getService());
+        Assert.assertEquals("broker-3:8082", decodedMetric.getHost());
+        Assert.assertEquals("36.0.0", decodedMetric.toMap().get("version"));
+        Assert.assertEquals(Map.of("dataSource", "wiki"), decodedMetric.getUserDims());
+
+        AlertEvent alert = new AlertEvent(
+                DateTimes.of("2024-01-01T00:00:00Z"), serviceDims, AlertEvent.Severity.ANOMALY, "Slow query", Map.of());
+        AlertEvent decodedAlert = (AlertEvent) codec.decode(codec.encode(alert));
+        Assert.assertEquals("broker-3:8082", decodedAlert.getHost());
+        Assert.assertEquals("36.0.0", decodedAlert.toMap().get("version"));
+
+        // records spilled before the service dimensions were encoded
+        String legacyRecord = "{\"type\": \"metrics\", \"feed\": \"metrics\", \"timestamp\": 0,"
+                + " \"service\": \"druid/broker\", \"host\": \"localhost\", \"metric\": \"query/time\","
+                + " \"value\": 1, \"dimensions\": {}}";
+        ServiceMetricEvent legacy = (ServiceMetricEvent) codec.decode(legacyRecord.getBytes(StandardCharsets.UTF_8));
+        Assert.assertEquals("druid/broker", legacy.getService());
+        Assert.assertEquals("localhost", legacy.getHost());
+    }
+
+    @Test
+    public void testSkipsUnreadableSpilledRecords() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        EventCodec codec = new EventCodec(new DefaultObjectMapper());
+        SpillLog spill = new SpillLog(temporaryFolder.newFolder(), 1024, 1024 * 1024);
+        spill.append("not json".getBytes(StandardCharsets.UTF_8));
+        spill.append("{\"type\": \"alerts\", \"timestamp\": 0, \"severity\": \"unknown\"}"
+                .getBytes(StandardCharsets.UTF_8));
+        spill.append(codec.encode(makeEvent("m0")));
+        AsyncEmitter emitter = new AsyncEmitter(inner, 4, 4, OverflowPolicy.DROP_NEWEST, spill, codec);
+
+        emitter.start();
+        emitter.emit(makeEvent("m1"));
+        for (int i = 0; i < 500 && inner.events.size() < 2; i++) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(List.of("m0", "m1"), inner.metrics());
+        Assert.assertEquals(0, emitter.getSpilledCount());
+        emitter.close();
+    }
+
+    @Test
+    public void testSpillsWhenQueueIsFull() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        SpillLog spill = new SpillLog(temporaryFolder.newFolder(), 1024, 1024 * 1024);
+        AsyncEmitter emitter = new AsyncEmitter(
+                inner, 4, 4, OverflowPolicy.DROP_NEWEST, spill, new EventCodec(new DefaultObjectMapper()));
+
+        // nothing is drained before start, so the queue fills up and the rest is spilled
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            emitter.emit(makeEvent("m" + i));
+            expected.add("m" + i);
+        }
+        Assert.assertEquals(96, emitter.getSpilledCount());
+
+        emitter.start();
+        for (int i = 0; i < 500 && inner.events.size() < 100; i++) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(expected, inner.metrics());
+        Assert.assertEquals(0, emitter.getSpilledCount());
+        Assert.assertEquals(0, emitter.getDroppedCount());
+        emitter.close();
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.cardinality.CardinalityLimitingEmitter;
+import bi.deep.cardinality.CardinalitySpec;
+import bi.deep.cardinality.SeriesOverflow;
+import bi.deep.filtering.rules.PrefixRuleSpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CardinalityLimitingEmitterTest {
+
+    private static Event makeEvent(String name, String dataSource, String id) {
+        return ServiceMetricEvent.builder()
+                .setDimension("dataSource", dataSource)
+                .setDimension("id", id)
+                .setMetric(name, 1)
+                .build("druid/broker", "localhost");
+    }
+
+    private static CardinalitySpec queries(int maxSeries, SeriesOverflow overflow) {
+        return new CardinalitySpec(new PrefixRuleSpec("metric", Set.of("query/")), maxSeries, 60_000L, overflow);
+    }
+
+    @Test
+    public void testDropsSeriesBeyondLimit() {
+        RecordingEmitter inner = new RecordingEmitter();
+        CardinalityLimitingEmitter emitter =
+                new CardinalityLimitingEmitter(inner, List.of(queries(10, SeriesOverflow.DROP)), () -> 0);
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 100; i++) {
+                emitter.emit(makeEvent("query/time", "wiki", "q" + i));
+            }
+        }
+        // the limit is per metric
+        emitter.emit(makeEvent("query/bytes", "wiki", "q99"));
+        // not matching the rule
+        emitter.emit(makeEvent("jvm/gc/count", "wiki", "q99"));
+
+        Assert.assertEquals(3 * 10 + 2, inner.events.size());
+        Assert.assertEquals(3 * 90, emitter.getOverflowCount());
+    }
+
+    @Test
+    public void testRollsIntoOther() {
+        RecordingEmitter inner = new RecordingEmitter();
+        CardinalityLimitingEmitter emitter =
+                new CardinalityLimitingEmitter(inner, List.of(queries(1, SeriesOverflow.OTHER)), () -> 0);
+
+        emitter.emit(makeEvent("query/time", "wiki", "q1"));
+        emitter.emit(makeEvent("query/time", "wiki", "q2"));
+
+        Assert.assertEquals(2, inner.events.size());
+        ServiceMetricEvent other = (ServiceMetricEvent) inner.events.get(1);
+        Assert.assertEquals(Map.of("dataSource", "other", "id", "other"), other.getUserDims());
+        Assert.assertEquals("query/time", other.getMetric());
+        Assert.assertEquals(1, other.getValue().intValue());
+        Assert.assertEquals(1, emitter.getOverflowCount());
+    }
+
+    @Test
+    public void testOtherKeepsServiceDimensions() {
+        RecordingEmitter inner = new RecordingEmitter();
+        CardinalityLimitingEmitter emitter =
+                new CardinalityLimitingEmitter(inner, List.of(queries(1, SeriesOverflow.OTHER)), () -> 0);
+
+        for (String id : List.of("q1", "q2")) {
+            emitter.emit(ServiceMetricEvent.builder()
+                    .setDimension("id", id)
+                    .setMetric("query/time", 1)
+                    .build(ImmutableMap.of("service", "druid/broker", "host", "broker-2:8082", "version", "36.0.0")));
+        }
+
+        ServiceMetricEvent other = (ServiceMetricEvent) inner.events.get(1);
+        Assert.assertEquals(Map.of("id", "other"), other.getUserDims());
+        Assert.assertEquals("druid/broker", other.getService());
+        Assert.assertEquals("broker-2:8082", other.getHost());
+        Assert.assertEquals("36.0.0", other.toMap().get("version"));
+    }
+
+    @Test
+    public void testWindowForgetsSeries() {
+        RecordingEmitter inner = new RecordingEmitter();
+        AtomicLong now = new AtomicLong();
+        CardinalityLimitingEmitter emitter =
+                new CardinalityLimitingEmitter(inner, List.of(queries(1, SeriesOverflow.DROP)), now::get);
+
+        emitter.emit(makeEvent("query/time", "wiki", "q1"));
+        emitter.emit(makeEvent("query/time", "wiki", "q2"));
+        now.addAndGet(60_000);
+        emitter.emit(makeEvent("query/time", "wiki", "q2"));
+
+        Assert.assertEquals(2, inner.events.size());
+    }
+
+    @Test
+    public void testSerde() throws Exception {
+        ObjectMapper mapper = new DefaultObjectMapper();
+        CardinalitySpec spec = mapper.readValue(
+                "{\"rule\": {\"type\": \"prefix\", \"dimension\": \"metric\", \"values\": [\"query/\"]},"
+                        + " \"maxSeries\": 10, \"windowMillis\": 60000, \"overflow\": \"other\"}",
+                CardinalitySpec.class);
+
+        Assert.assertEquals(queries(10, SeriesOverflow.OTHER), spec);
+        Assert.assertEquals(spec, mapper.readValue(mapper.writeValueAsString(spec), CardinalitySpec.class));
+    }
+
+    @Test(expected = IAE.class)
+    public void testMaxSeriesRequired() {
+        new CardinalitySpec(null, null, null, null);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.changes.ChangeOnlyEmitter;
+import bi.deep.changes.ChangeSpec;
+import bi.deep.filtering.rules.PrefixRuleSpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChangeOnlyEmitterTest {
+
+    private static Event makeEvent(String name, String dataSource, Number value) {
+        return ServiceMetricEvent.builder()
+                .setDimension("dataSource", dataSource)
+                .setMetric(name, value)
+                .build("druid/historical", "localhost");
+    }
+
+    private static ChangeSpec segments(int maxSeries) {
+        return new ChangeSpec(new PrefixRuleSpec("metric", Set.of("segment/")), 60_000L, maxSeries);
+    }
+
+    @Test
+    public void testForwardsChangesOnly() {
+        RecordingEmitter inner = new RecordingEmitter();
+        ChangeOnlyEmitter emitter = new ChangeOnlyEmitter(inner, List.of(segments(100)), () -> 0);
+
+        emitter.emit(makeEvent("segment/count", "wiki", 10));
+        emitter.emit(makeEvent("segment/count", "wiki", 10));
+        emitter.emit(makeEvent("segment/count", "koalas", 10)); // another series
+        emitter.emit(makeEvent("segment/count", "wiki", 11));
+        emitter.emit(makeEvent("segment/count", "wiki", 11));
+        emitter.emit(makeEvent("segment/used", "wiki", 11)); // another metric
+        emitter.emit(makeEvent("query/time", "wiki", 5)); // not matching
+        emitter.emit(makeEvent("query/time", "wiki", 5));
+
+        Assert.assertEquals(
+                List.of("segment/count", "segment/count", "segment/count", "segment/used", "query/time", "query/time"),
+                inner.metrics());
+        Assert.assertEquals(2, emitter.getSuppressedCount());
+    }
+
+    @Test
+    public void testDoubleValues() {
+        RecordingEmitter inner = new RecordingEmitter();
+        ChangeOnlyEmitter emitter = new ChangeOnlyEmitter(inner, List.of(segments(100)), () -> 0);
+
+        emitter.emit(makeEvent("segment/loadQueue/size", "wiki", 0.5));
+        emitter.emit(makeEvent("segment/loadQueue/size", "wiki", 0.5));
+        emitter.emit(makeEvent("segment/loadQueue/size", "wiki", 0.25));
+
+        Assert.assertEquals(2, inner.events.size());
+    }
+
+    @Test
+    public void testHeartbeat() {
+        RecordingEmitter inner = new RecordingEmitter();
+        AtomicLong now = new AtomicLong();
+        ChangeOnlyEmitter emitter = new ChangeOnlyEmitter(inner, List.of(segments(100)), now::get);
+
+        emitter.emit(makeEvent("segment/count", "wiki", 10));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        emitter.emit(makeEvent("segment/count", "wiki", 10));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        emitter.emit(makeEvent("segment/count", "wiki", 10)); // heartbeat
+        now.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        emitter.emit(makeEvent("segment/count", "wiki", 10));
+
+        Assert.assertEquals(2, inner.events.size());
+    }
+
+    @Test
+    public void testFullTableForwardsAgain() {
+        RecordingEmitter inner = new RecordingEmitter();
+        ChangeOnlyEmitter emitter = new ChangeOnlyEmitter(inner, List.of(segments(16)), () -> 0);
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 1000; i++) {
+                emitter.emit(makeEvent("segment/count", "ds" + i, 1));
+            }
+        }
+
+        // the series do not fit into the table, which is cleared instead, so at most the series remembered last in each
+        // of its 16 stripes are suppressed
+        Assert.assertTrue(inner.events.size() >= 2000 - 16);
+    }
+
+    @Test
+    public void testSerde() throws Exception {
+        ObjectMapper mapper = new DefaultObjectMapper();
+        ChangeSpec spec = mapper.readValue(
+                "{\"rule\": {\"type\": \"prefix\", \"dimension\": \"metric\", \"values\": [\"segment/\"]},"
+                        + " \"heartbeatMillis\": 60000}",
+                ChangeSpec.class);
+
+        Assert.assertEquals(segments(ChangeSpec.DEFAULT_MAX_SERIES), spec);
+        Assert.assertEquals(spec, mapper.readValue(mapper.writeValueAsString(spec), ChangeSpec.class));
+    }
+
+    @Test(expected = IAE.class)
+    public void testInvalidHeartbeat() {
+        new ChangeSpec(null, 0L, null);
+    }
+}
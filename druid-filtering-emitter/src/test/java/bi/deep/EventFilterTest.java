@@ -15,12 +15,15 @@
  */
 package bi.deep;
 
+import bi.deep.filtering.DecisionCache;
 import bi.deep.filtering.EventFilter;
+import com.google.common.collect.ImmutableMap;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Set;
 import java.util.stream.Collectors;
 import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.AlertEvent;
 import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
 import org.junit.Assert;
 import org.junit.Test;
@@ -236,4 +239,148 @@ public class EventFilterTest {
         Assert.assertTrue(filter.test(e3)); // because 'a3' matches regex
         Assert.assertFalse(filter.test(e4)); // because 'b3' doesn't match regex
     }
+
+    @Test
+    public void testMetricEventFields() {
+        Event event = ServiceMetricEvent.builder()
+                .setDimension("dataSource", "wiki")
+                .setMetric("query/time", 42)
+                .build("druid/broker", "host-1");
+
+        Assert.assertTrue(builder().withKey("service").withAllowed("druid/broker").build().test(event));
+        Assert.assertFalse(builder().withKey("service").withAllowed("druid/historical").build().test(event));
+        Assert.assertTrue(builder().withKey("host").withAllowed("host-1").build().test(event));
+        Assert.assertTrue(builder().withKey("feed").withAllowed("metrics").build().test(event));
+        Assert.assertTrue(builder().withKey("value").withAllowed("42").build().test(event));
+        Assert.assertTrue(builder().withKey("dataSource").withAllowed("wiki").build().test(event));
+        Assert.assertFalse(builder().withKey("dataSource").withExcluded("wiki").build().test(event));
+        Assert.assertTrue(builder().withKey("taskId").withAllowed("abc").build().test(event)); // not in the event
+    }
+
+    @Test
+    public void testMetricEventMatchesEventMap() {
+        Event event = ServiceMetricEvent.builder()
+                .setDimension("dataSource", "wiki")
+                .setMetric("query/time", 42)
+                .build("druid/broker", "host-1");
+
+        for (String key : new String[] {"metric", "value", "feed", "service", "host", "timestamp", "dataSource"}) {
+            String expected = event.toMap().get(key).toString();
+            Assert.assertTrue(key, builder().withKey(key).withAllowed(expected).build().test(event));
+        }
+    }
+
+    @Test
+    public void testMetricEventServiceDimensions() {
+        Event event = ServiceMetricEvent.builder()
+                .setMetric("query/time", 42)
+                .build(ImmutableMap.of("service", "druid/broker", "host", "host-1", "version", "36.0.0"));
+
+        Assert.assertTrue(builder().withKey("version").withAllowed("36.0.0").build().test(event));
+        Assert.assertFalse(builder().withKey("version").withAllowed("35.0.0").build().test(event));
+        Assert.assertFalse(builder().withKey("version").withExcluded("36.0.0").build().test(event));
+        Assert.assertTrue(builder().withKey("version").withStartsWith("36.").build().test(event));
+    }
+
+    @Test
+    public void testOtherEventTypes() {
+        Event event = new AlertEvent("druid/broker", "host-1", "Something failed");
+
+        Assert.assertTrue(builder().withKey("description").withAllowed("Something failed").build().test(event));
+        Assert.assertFalse(builder().withKey("description").withExcluded("Something failed").build().test(event));
+        Assert.assertTrue(builder().withAllowed("abc").build().test(event)); // because alerts have no metric
+    }
+
+    @Test
+    public void testManyStartsWith() {
+        String[] prefixes = new String[200];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = "metric" + i + "/";
+        }
+        EventFilter filter = builder().withStartsWith(prefixes).build();
+
+        Assert.assertTrue(filter.matches("metric0/time"));
+        Assert.assertTrue(filter.matches("metric199/"));
+        Assert.assertTrue(filter.matches("metric10/count")); // 'metric1/' is a prefix as well, but not of this value
+        Assert.assertFalse(filter.matches("metric200/time"));
+        Assert.assertFalse(filter.matches("metric1"));
+        Assert.assertFalse(filter.matches(""));
+    }
+
+    @Test
+    public void testOverlappingStartsWith() {
+        EventFilter filter = builder().withStartsWith("jvm/", "jvm/gc/").build();
+
+        Assert.assertTrue(filter.matches("jvm/gc/count"));
+        Assert.assertTrue(filter.matches("jvm/mem/used"));
+        Assert.assertFalse(filter.matches("jvm"));
+
+        Assert.assertTrue(builder().withStartsWith("").build().matches("anything")); // empty prefix matches all
+    }
+
+    @Test
+    public void testManyRegexes() {
+        EventFilter filter = builder()
+                .withRegex(
+                        "query/time", // literal
+                        "jvm/.*", // prefix
+                        "segment/[a-z]+/count",
+                        "(?i)ingest/EVENTS/.+",
+                        "(?<name>task)/run/time",
+                        "(?<name>task)/action/.*", // same group name as above, kept as a separate pattern
+                        "(a+)/\\1") // back reference
+                .build();
+
+        Assert.assertTrue(filter.matches("query/time"));
+        Assert.assertFalse(filter.matches("query/timeout"));
+        Assert.assertTrue(filter.matches("jvm/gc/count"));
+        Assert.assertFalse(filter.matches("jvm/gc\ncount")); // '.' does not match line terminators
+        Assert.assertTrue(filter.matches("segment/used/count"));
+        Assert.assertFalse(filter.matches("segment/used1/count"));
+        Assert.assertTrue(filter.matches("ingest/events/processed"));
+        Assert.assertTrue(filter.matches("task/run/time"));
+        Assert.assertTrue(filter.matches("task/action/log/time"));
+        Assert.assertTrue(filter.matches("aa/aa"));
+        Assert.assertFalse(filter.matches("aa/a"));
+    }
+
+    @Test
+    public void testDecisionCache() {
+        EventFilter filter = new EventFilter(
+                "metric",
+                Collections.emptySet(),
+                Collections.singleton("a1"),
+                Collections.emptySet(),
+                Collections.singleton("a\\d+"),
+                2);
+        DecisionCache cache = filter.getCache();
+
+        Assert.assertFalse(filter.test(makeEvent("a1", 1)));
+        Assert.assertTrue(filter.test(makeEvent("a2", 1)));
+        Assert.assertFalse(filter.test(makeEvent("b1", 1))); // not cached, the cache is full
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+        Assert.assertEquals(2, cache.size());
+
+        Assert.assertFalse(filter.test(makeEvent("a1", 1)));
+        Assert.assertTrue(filter.test(makeEvent("a2", 1)));
+        Assert.assertFalse(filter.test(makeEvent("b1", 1)));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testDisabledDecisionCache() {
+        EventFilter filter = new EventFilter(
+                "metric",
+                Collections.singleton("a1"),
+                Collections.emptySet(),
+                Collections.emptySet(),
+                Collections.emptySet(),
+                0);
+
+        Assert.assertNull(filter.getCache());
+        Assert.assertTrue(filter.test(makeEvent("a1", 1)));
+        Assert.assertFalse(filter.test(makeEvent("a2", 1)));
+    }
 }
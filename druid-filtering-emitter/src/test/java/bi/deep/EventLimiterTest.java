@@ -0,0 +1,135 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.filtering.limits.EventLimiter;
+import bi.deep.filtering.limits.LimitSpec;
+import bi.deep.filtering.limits.TokenBucket;
+import bi.deep.filtering.rules.InRuleSpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class EventLimiterTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private static Event makeEvent(String name) {
+        return ServiceMetricEvent.builder().setMetric(name, 1).build("test", "localhost");
+    }
+
+    private static LimitSpec sampleEvery(int n) {
+        return new LimitSpec(null, null, n, null, null, null, null);
+    }
+
+    private static LimitSpec rate(double ratePerSecond, Double burst) {
+        return new LimitSpec(null, null, null, null, ratePerSecond, burst, null);
+    }
+
+    private static int countPassed(EventLimiter limiter, String name, int events) {
+        int passed = 0;
+        for (int i = 0; i < events; i++) {
+            if (limiter.test(makeEvent(name))) {
+                passed++;
+            }
+        }
+        return passed;
+    }
+
+    @Test
+    public void testSampleEvery() {
+        EventLimiter limiter = new EventLimiter(List.of(sampleEvery(10)), clock::get);
+
+        Assert.assertEquals(10, countPassed(limiter, "a", 100));
+        Assert.assertEquals(1, countPassed(limiter, "b", 5)); // counted per metric
+        Assert.assertEquals(94, limiter.getDroppedCount());
+    }
+
+    @Test
+    public void testRateLimit() {
+        EventLimiter limiter = new EventLimiter(List.of(rate(2, 5.0)), clock::get);
+
+        Assert.assertEquals(5, countPassed(limiter, "a", 100)); // burst
+        clock.addAndGet(SECOND);
+        Assert.assertEquals(2, countPassed(limiter, "a", 100));
+        clock.addAndGet(10 * SECOND);
+        Assert.assertEquals(5, countPassed(limiter, "a", 100)); // never more than the burst
+        Assert.assertEquals(5, countPassed(limiter, "b", 100)); // limited per metric
+    }
+
+    @Test
+    public void testTokenBucket() {
+        TokenBucket bucket = new TokenBucket(1000, 1, 0);
+
+        Assert.assertTrue(bucket.tryAcquire(0));
+        Assert.assertFalse(bucket.tryAcquire(0));
+        Assert.assertFalse(bucket.tryAcquire(SECOND / 1000 - 1));
+        Assert.assertTrue(bucket.tryAcquire(SECOND / 1000));
+    }
+
+    @Test
+    public void testFirstMatchingLimitApplies() {
+        InRuleSpec rule = new InRuleSpec("metric", Collections.singleton("query/time"));
+        LimitSpec queries = new LimitSpec(rule, null, 2, null, null, null, null);
+        EventLimiter limiter = new EventLimiter(List.of(queries, sampleEvery(5)), clock::get);
+
+        Assert.assertEquals(5, countPassed(limiter, "query/time", 10));
+        Assert.assertEquals(2, countPassed(limiter, "jvm/gc/count", 10));
+    }
+
+    @Test
+    public void testNoLimits() {
+        EventLimiter limiter = new EventLimiter(Collections.emptyList(), clock::get);
+        Assert.assertEquals(10, countPassed(limiter, "a", 10));
+    }
+
+    @Test
+    public void testMaxKeys() {
+        EventLimiter limiter =
+                new EventLimiter(List.of(new LimitSpec(null, null, null, null, 1.0, 1.0, 1)), clock::get);
+
+        Assert.assertEquals(1, countPassed(limiter, "a", 10));
+        Assert.assertEquals(1, countPassed(limiter, "b", 10));
+        Assert.assertEquals(0, countPassed(limiter, "c", 10)); // shares the bucket with 'b'
+    }
+
+    @Test
+    public void testSerde() throws Exception {
+        ObjectMapper mapper = new DefaultObjectMapper();
+        LimitSpec spec = mapper.readValue(
+                "{\"rule\": {\"type\": \"in\", \"dimension\": \"metric\", \"values\": [\"query/time\"]},"
+                        + " \"ratePerSecond\": 10}",
+                LimitSpec.class);
+
+        Assert.assertEquals("metric", spec.getKey());
+        Assert.assertEquals(1, spec.getSampleEvery());
+        Assert.assertEquals(10, spec.getBurst(), 0);
+        Assert.assertEquals(spec, mapper.readValue(mapper.writeValueAsString(spec), LimitSpec.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProbability() {
+        new LimitSpec(null, null, null, 0.0, null, null, null);
+    }
+}
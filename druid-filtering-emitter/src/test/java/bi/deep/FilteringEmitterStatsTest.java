@@ -0,0 +1,242 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.filtering.FilterRules;
+import bi.deep.filtering.limits.LimitSpec;
+import bi.deep.filtering.rules.AndRuleSpec;
+import bi.deep.filtering.rules.InRuleSpec;
+import bi.deep.filtering.rules.RegexRuleSpec;
+import bi.deep.stats.FilteringEmitterStats;
+import bi.deep.stats.LatencyHistogram;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceEmitter;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FilteringEmitterStatsTest {
+
+    private static Event makeEvent(String name) {
+        return ServiceMetricEvent.builder().setMetric(name, 1).build("test", "localhost");
+    }
+
+    private static long value(List<ServiceMetricEvent> events, String metric, String dimension, String dimValue) {
+        return events.stream()
+                .filter(event -> event.getMetric().equals(metric))
+                .filter(event -> dimValue.equals(event.getUserDims().get(dimension)))
+                .mapToLong(event -> event.getValue().longValue())
+                .sum();
+    }
+
+    private static long sum(List<ServiceMetricEvent> events, String metric) {
+        return events.stream()
+                .filter(event -> event.getMetric().equals(metric))
+                .mapToLong(event -> event.getValue().longValue())
+                .sum();
+    }
+
+    @Test
+    public void testCountingPerPeriod() {
+        FilteringEmitterStats stats = new FilteringEmitterStats();
+        Predicate<Event> filter = stats.counting("filter", event -> ((ServiceMetricEvent) event)
+                .getMetric()
+                .startsWith("a"));
+
+        filter.test(makeEvent("a/1"));
+        filter.test(makeEvent("a/2"));
+        filter.test(makeEvent("b/1"));
+
+        List<ServiceMetricEvent> events = stats.report("svc", "host");
+        Assert.assertEquals(2, value(events, "filteringEmitter/events/passed", FilteringEmitterStats.STEP, "filter"));
+        Assert.assertEquals(1, value(events, "filteringEmitter/events/dropped", FilteringEmitterStats.STEP, "filter"));
+        Assert.assertEquals("svc", events.get(0).getService());
+        Assert.assertEquals("host", events.get(0).getHost());
+
+        // counters are reset after each report
+        events = stats.report("svc", "host");
+        Assert.assertEquals(0, value(events, "filteringEmitter/events/passed", FilteringEmitterStats.STEP, "filter"));
+    }
+
+    @Test
+    public void testCountersShareDimensions() {
+        FilteringEmitterStats stats = new FilteringEmitterStats();
+        stats.counting("rule", event -> true).test(makeEvent("a"));
+        stats.counting("rule", event -> true).test(makeEvent("b"));
+
+        List<ServiceMetricEvent> events = stats.report("svc", "host");
+        Assert.assertEquals(2, value(events, "filteringEmitter/events/passed", FilteringEmitterStats.STEP, "rule"));
+    }
+
+    @Test
+    public void testGaugeAndCounter() {
+        FilteringEmitterStats stats = new FilteringEmitterStats();
+        AtomicLong size = new AtomicLong(5);
+        AtomicLong dropped = new AtomicLong(3);
+        Map<String, String> dims = Map.of(FilteringEmitterStats.ROUTE, "logging");
+        stats.gauge("filteringEmitter/queue/size", dims, size::get);
+        stats.counter("filteringEmitter/queue/dropped", dims, dropped::get);
+
+        List<ServiceMetricEvent> events = stats.report("svc", "host");
+        Assert.assertEquals(5, value(events, "filteringEmitter/queue/size", FilteringEmitterStats.ROUTE, "logging"));
+        Assert.assertEquals(3, value(events, "filteringEmitter/queue/dropped", FilteringEmitterStats.ROUTE, "logging"));
+
+        size.set(2);
+        dropped.addAndGet(4);
+        events = stats.report("svc", "host");
+        Assert.assertEquals(2, value(events, "filteringEmitter/queue/size", FilteringEmitterStats.ROUTE, "logging"));
+        Assert.assertEquals(4, value(events, "filteringEmitter/queue/dropped", FilteringEmitterStats.ROUTE, "logging"));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        Assert.assertEquals(1000, snapshot.getCount());
+        Assert.assertEquals(1_000_000, snapshot.getMax());
+        // buckets are powers of two, so quantiles are within a factor of two
+        long p50 = snapshot.getQuantile(0.5);
+        Assert.assertTrue(p50 >= 250_000 && p50 <= 1_000_000);
+        Assert.assertTrue(snapshot.getQuantile(0.99) <= 1_000_000);
+
+        Assert.assertEquals(0, histogram.snapshotAndReset().getCount());
+    }
+
+    @Test
+    public void testReportsOnClose() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        RecordingEmitter sink = new RecordingEmitter();
+        FilteringEmitterStats stats = new FilteringEmitterStats();
+        ServiceEmitter service = new ServiceEmitter("svc", "host", inner);
+        FilteringEmitter emitter = new FilteringEmitter(
+                inner,
+                stats.counting("filter", event -> ((ServiceMetricEvent) event).getMetric().equals("keep")),
+                stats,
+                sink,
+                60_000,
+                () -> service);
+        emitter.start();
+
+        emitter.emit(makeEvent("keep"));
+        emitter.emit(makeEvent("drop"));
+        emitter.close();
+
+        // statistics bypass the inner emitter and are reported to the sink directly
+        Assert.assertEquals(List.of("keep"), inner.metrics());
+        List<String> metrics = sink.metrics();
+        Assert.assertTrue(metrics.contains("filteringEmitter/events/passed"));
+        Assert.assertTrue(metrics.contains("filteringEmitter/emit/time"));
+        Assert.assertEquals(
+                List.of("p50", "p90", "p99", "max"),
+                sink.events.stream()
+                        .map(event -> (ServiceMetricEvent) event)
+                        .filter(event -> event.getMetric().equals("filteringEmitter/emit/time"))
+                        .map(event -> event.getUserDims().get("quantile"))
+                        .collect(Collectors.toList()));
+        Assert.assertTrue(inner.closed);
+    }
+
+    @Test
+    public void testCountsEachRuleField() {
+        FilteringEmitterStats stats = new FilteringEmitterStats();
+        FilterRules rules = new FilterRules(
+                null,
+                null,
+                null,
+                null,
+                null,
+                new AndRuleSpec(List.of(
+                        new RegexRuleSpec("metric", "a|b"), new InRuleSpec("metric", Set.of("a", "c")))),
+                null);
+        Predicate<Event> filter = rules.compile(0, stats);
+
+        Assert.assertTrue(filter.test(makeEvent("a")));
+        Assert.assertFalse(filter.test(makeEvent("b")));
+        Assert.assertFalse(filter.test(makeEvent("c")));
+        Assert.assertFalse(filter.test(makeEvent("d")));
+
+        List<ServiceMetricEvent> events = stats.report("svc", "host");
+        // the cheaper second field is still evaluated first and sees every event
+        Assert.assertEquals(2, value(events, "filteringEmitter/events/passed", FilteringEmitterStats.RULE, "1"));
+        Assert.assertEquals(2, value(events, "filteringEmitter/events/dropped", FilteringEmitterStats.RULE, "1"));
+        // the first field only sees the events passed by the second one
+        Assert.assertEquals(1, value(events, "filteringEmitter/events/passed", FilteringEmitterStats.RULE, "0"));
+        Assert.assertEquals(1, value(events, "filteringEmitter/events/dropped", FilteringEmitterStats.RULE, "0"));
+    }
+
+    @Test
+    public void testCountsDecisionCacheLookups() {
+        FilteringEmitterStats stats = new FilteringEmitterStats();
+        FilterRules rules = new FilterRules(null, Set.of("a"), null, null, null, null, null);
+
+        for (int reload = 0; reload < 2; reload++) {
+            Predicate<Event> filter = rules.compile(10, stats);
+            Assert.assertTrue(filter.test(makeEvent("a")));
+            Assert.assertTrue(filter.test(makeEvent("a")));
+            Assert.assertFalse(filter.test(makeEvent("b")));
+        }
+
+        // caches compiled after a reload share the counters
+        List<ServiceMetricEvent> events = stats.report("svc", "host");
+        Assert.assertEquals(
+                2,
+                events.stream()
+                        .filter(event -> event.getMetric().startsWith("filteringEmitter/decisionCache/"))
+                        .count());
+        Assert.assertEquals(2, sum(events, "filteringEmitter/decisionCache/hits"));
+        Assert.assertEquals(4, sum(events, "filteringEmitter/decisionCache/misses"));
+
+        Assert.assertEquals(0, sum(stats.report("svc", "host"), "filteringEmitter/decisionCache/hits"));
+    }
+
+    @Test
+    public void testCountsEachLimit() {
+        FilteringEmitterStats stats = new FilteringEmitterStats();
+        FilterRules rules = new FilterRules(
+                null,
+                null,
+                null,
+                null,
+                null,
+                null,
+                List.of(
+                        new LimitSpec(new InRuleSpec("metric", Set.of("a")), null, 2, null, null, null, null),
+                        new LimitSpec(null, null, 1, null, null, null, null)));
+        Predicate<Event> filter = rules.compile(0, stats);
+
+        for (int i = 0; i < 4; i++) {
+            filter.test(makeEvent("a"));
+        }
+        filter.test(makeEvent("b"));
+        filter.test(makeEvent("b"));
+
+        List<ServiceMetricEvent> events = stats.report("svc", "host");
+        Assert.assertEquals(2, value(events, "filteringEmitter/events/passed", FilteringEmitterStats.LIMIT, "0"));
+        Assert.assertEquals(2, value(events, "filteringEmitter/events/dropped", FilteringEmitterStats.LIMIT, "0"));
+        Assert.assertEquals(2, value(events, "filteringEmitter/events/passed", FilteringEmitterStats.LIMIT, "1"));
+        Assert.assertEquals(0, value(events, "filteringEmitter/events/dropped", FilteringEmitterStats.LIMIT, "1"));
+    }
+}
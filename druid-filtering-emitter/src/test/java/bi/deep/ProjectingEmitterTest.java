@@ -0,0 +1,142 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.filtering.rules.PrefixRuleSpec;
+import bi.deep.projection.ProjectingEmitter;
+import bi.deep.projection.ProjectionSpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.AlertEvent;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProjectingEmitterTest {
+
+    private static ServiceMetricEvent makeEvent(String name) {
+        return ServiceMetricEvent.builder()
+                .setDimension("dataSource", "wiki")
+                .setDimension("id", "abc")
+                .setDimension("segment", "wiki_2024")
+                .setMetric(name, 42)
+                .build("druid/historical", "localhost");
+    }
+
+    private static ServiceMetricEvent emitted(RecordingEmitter inner, int index) {
+        return (ServiceMetricEvent) inner.events.get(index);
+    }
+
+    @Test
+    public void testExclude() {
+        RecordingEmitter inner = new RecordingEmitter();
+        ProjectingEmitter emitter = new ProjectingEmitter(
+                inner, List.of(new ProjectionSpec(null, null, Set.of("id", "segment"))));
+
+        ServiceMetricEvent event = makeEvent("query/time");
+        emitter.emit(event);
+
+        ServiceMetricEvent projected = emitted(inner, 0);
+        Assert.assertEquals(Map.of("dataSource", "wiki"), projected.getUserDims());
+        Assert.assertEquals("query/time", projected.getMetric());
+        Assert.assertEquals(42, projected.getValue().intValue());
+        Assert.assertEquals("druid/historical", projected.getService());
+        Assert.assertEquals("localhost", projected.getHost());
+        Assert.assertEquals(event.getCreatedTime(), projected.getCreatedTime());
+        Assert.assertEquals(event.getFeed(), projected.getFeed());
+    }
+
+    @Test
+    public void testKeepsServiceDimensions() {
+        RecordingEmitter inner = new RecordingEmitter();
+        ProjectingEmitter emitter = new ProjectingEmitter(
+                inner, List.of(new ProjectionSpec(null, Set.of("dataSource"), null)));
+
+        emitter.emit(ServiceMetricEvent.builder()
+                .setDimension("dataSource", "wiki")
+                .setDimension("id", "abc")
+                .setMetric("query/time", 42)
+                .build(ImmutableMap.of("service", "druid/broker", "host", "broker-1:8082", "version", "36.0.0")));
+
+        ServiceMetricEvent projected = emitted(inner, 0);
+        Assert.assertEquals(Map.of("dataSource", "wiki"), projected.getUserDims());
+        Assert.assertEquals("druid/broker", projected.getService());
+        Assert.assertEquals("broker-1:8082", projected.getHost());
+        Assert.assertEquals("36.0.0", projected.toMap().get("version"));
+    }
+
+    @Test
+    public void testFirstMatchingProjectionApplies() {
+        RecordingEmitter inner = new RecordingEmitter();
+        ProjectingEmitter emitter = new ProjectingEmitter(
+                inner,
+                List.of(
+                        new ProjectionSpec(new PrefixRuleSpec("metric", Set.of("query/")), Set.of("dataSource"), null),
+                        new ProjectionSpec(null, null, Set.of("segment"))));
+
+        emitter.emit(makeEvent("query/time"));
+        emitter.emit(makeEvent("segment/scan/pending"));
+
+        Assert.assertEquals(Map.of("dataSource", "wiki"), emitted(inner, 0).getUserDims());
+        Assert.assertEquals(Map.of("dataSource", "wiki", "id", "abc"), emitted(inner, 1).getUserDims());
+    }
+
+    @Test
+    public void testUnchangedEventsPassAsTheyAre() {
+        RecordingEmitter inner = new RecordingEmitter();
+        ProjectingEmitter emitter = new ProjectingEmitter(
+                inner,
+                List.of(new ProjectionSpec(
+                        new PrefixRuleSpec("metric", Set.of("query/")), null, Set.of("remoteAddress"))));
+
+        ServiceMetricEvent kept = makeEvent("query/time");
+        ServiceMetricEvent unmatched = makeEvent("jvm/gc/count");
+        Event alert = new AlertEvent("druid/historical", "localhost", "Something failed");
+        emitter.emit(kept);
+        emitter.emit(unmatched);
+        emitter.emit(alert);
+
+        Assert.assertSame(kept, inner.events.get(0));
+        Assert.assertSame(unmatched, inner.events.get(1));
+        Assert.assertSame(alert, inner.events.get(2));
+    }
+
+    @Test
+    public void testSerde() throws Exception {
+        ObjectMapper mapper = new DefaultObjectMapper();
+        ProjectionSpec spec = mapper.readValue(
+                "{\"rule\": {\"type\": \"prefix\", \"dimension\": \"metric\", \"values\": [\"query/\"]},"
+                        + " \"include\": [\"dataSource\"]}",
+                ProjectionSpec.class);
+
+        Assert.assertEquals(
+                new ProjectionSpec(new PrefixRuleSpec("metric", Set.of("query/")), Set.of("dataSource"), null), spec);
+        Assert.assertEquals(spec, mapper.readValue(mapper.writeValueAsString(spec), ProjectionSpec.class));
+        Assert.assertTrue(spec.keeps("dataSource"));
+        Assert.assertFalse(spec.keeps("id"));
+    }
+
+    @Test(expected = IAE.class)
+    public void testIncludeAndExclude() {
+        new ProjectionSpec(null, Set.of("dataSource"), Set.of("id"));
+    }
+}
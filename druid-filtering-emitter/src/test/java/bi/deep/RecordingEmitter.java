@@ -0,0 +1,72 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.apache.druid.java.util.emitter.core.Emitter;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+
+/**
+ * Emitter keeping the emitted events in memory, optionally emitting slowly.
+ */
+class RecordingEmitter implements Emitter {
+    final List<Event> events = new CopyOnWriteArrayList<>();
+    private final long delayMillis;
+    boolean flushed;
+    boolean closed;
+
+    RecordingEmitter() {
+        this(0);
+    }
+
+    RecordingEmitter(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void emit(Event event) {
+        if (delayMillis > 0) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        events.add(event);
+    }
+
+    @Override
+    public void flush() {
+        flushed = true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    List<String> metrics() {
+        return events.stream()
+                .map(event -> ((ServiceMetricEvent) event).getMetric())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.filtering.FilterRules;
+import bi.deep.filtering.ReloadingFilter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Set;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReloadingFilterTest {
+    private static final ObjectMapper MAPPER = new DefaultObjectMapper();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Event makeEvent(String name) {
+        return ServiceMetricEvent.builder().setMetric(name, 1).build("test", "localhost");
+    }
+
+    private static void write(File file, String json, long modified) throws IOException {
+        Files.write(file.toPath(), json.getBytes(StandardCharsets.UTF_8));
+        Assert.assertTrue(file.setLastModified(modified));
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "rules.json");
+        ReloadingFilter filter = new ReloadingFilter(event -> true, file, MAPPER, 60_000, 16);
+
+        Assert.assertFalse(filter.reload()); // no file yet
+        Assert.assertTrue(filter.test(makeEvent("b")));
+
+        write(file, "{\"allowList\": [\"a\"]}", 1_000_000);
+        Assert.assertTrue(filter.reload());
+        Assert.assertTrue(filter.test(makeEvent("a")));
+        Assert.assertFalse(filter.test(makeEvent("b")));
+        Assert.assertFalse(filter.reload()); // not changed
+
+        write(file, "{\"startsWith\": [\"b\"]}", 2_000_000);
+        Assert.assertTrue(filter.reload());
+        Assert.assertFalse(filter.test(makeEvent("a")));
+        Assert.assertTrue(filter.test(makeEvent("b")));
+    }
+
+    @Test
+    public void testInvalidRulesKeepPreviousRules() throws Exception {
+        File file = new File(temporaryFolder.getRoot(), "rules.json");
+        ReloadingFilter filter = new ReloadingFilter(event -> true, file, MAPPER, 60_000, 16);
+
+        write(file, "{\"allowList\": [\"a\"]}", 1_000_000);
+        Assert.assertTrue(filter.reload());
+
+        write(file, "{\"allowList\": [\"b\"], \"blockList\": [\"a\"]}", 2_000_000); // not allowed together
+        Assert.assertFalse(filter.reload());
+        Assert.assertTrue(filter.test(makeEvent("a")));
+
+        write(file, "{\"regexMatch\": [\"(\"]}", 3_000_000); // invalid pattern
+        Assert.assertFalse(filter.reload());
+        Assert.assertTrue(filter.test(makeEvent("a")));
+
+        write(file, "{\"allowList\": ", 4_000_000); // truncated file
+        Assert.assertFalse(filter.reload());
+        Assert.assertTrue(filter.test(makeEvent("a")));
+        Assert.assertFalse(filter.test(makeEvent("b")));
+    }
+
+    @Test
+    public void testRulesSerde() throws Exception {
+        FilterRules rules = MAPPER.readValue(
+                "{\"key\": \"service\", \"blockList\": [\"druid/router\"],"
+                        + " \"rule\": {\"type\": \"in\", \"dimension\": \"metric\", \"values\": [\"query/time\"]},"
+                        + " \"limits\": [{\"sampleEvery\": 10}]}",
+                FilterRules.class);
+
+        Assert.assertEquals("service", rules.getKey());
+        Assert.assertEquals(Set.of("druid/router"), rules.getBlockList());
+        Assert.assertEquals(1, rules.getLimits().size());
+        Assert.assertEquals(rules, MAPPER.readValue(MAPPER.writeValueAsString(rules), FilterRules.class));
+    }
+}
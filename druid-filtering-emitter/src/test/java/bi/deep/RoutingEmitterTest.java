@@ -0,0 +1,151 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.filtering.rules.PrefixRuleSpec;
+import bi.deep.routing.RouteSpec;
+import bi.deep.routing.RoutingEmitter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RoutingEmitterTest {
+
+    private static Event makeEvent(String name) {
+        return ServiceMetricEvent.builder().setMetric(name, 1).build("test", "localhost");
+    }
+
+    private static RoutingEmitter.Route prefixRoute(String name, String prefix, RecordingEmitter emitter) {
+        return new RoutingEmitter.Route(
+                name, new PrefixRuleSpec("metric", Collections.singleton(prefix)).compile(), emitter);
+    }
+
+    @Test
+    public void testRoutes() throws Exception {
+        RecordingEmitter jvm = new RecordingEmitter();
+        RecordingEmitter query = new RecordingEmitter();
+        RecordingEmitter all = new RecordingEmitter();
+        RoutingEmitter emitter = new RoutingEmitter(List.of(
+                prefixRoute("jvm", "jvm/", jvm),
+                prefixRoute("query", "query/", query),
+                new RoutingEmitter.Route("all", null, all)));
+        emitter.start();
+
+        emitter.emit(makeEvent("jvm/gc/count"));
+        emitter.emit(makeEvent("query/time"));
+        emitter.emit(makeEvent("segment/count"));
+
+        Assert.assertEquals(List.of("jvm/gc/count"), jvm.metrics());
+        Assert.assertEquals(List.of("query/time"), query.metrics());
+        Assert.assertEquals(List.of("jvm/gc/count", "query/time", "segment/count"), all.metrics());
+
+        emitter.flush();
+        Assert.assertTrue(jvm.flushed && query.flushed && all.flushed);
+        emitter.close();
+        Assert.assertTrue(jvm.closed && query.closed && all.closed);
+    }
+
+    @Test
+    public void testSlowRouteDoesNotDelayOthers() throws Exception {
+        RecordingEmitter fast = new RecordingEmitter();
+        RecordingEmitter slow = new RecordingEmitter() {
+            @Override
+            public void flush() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.flush();
+            }
+        };
+        RecordingEmitter another = new RecordingEmitter() {
+            @Override
+            public void flush() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.flush();
+            }
+        };
+        RoutingEmitter emitter = new RoutingEmitter(List.of(
+                new RoutingEmitter.Route("fast", null, fast),
+                new RoutingEmitter.Route("slow", null, slow),
+                new RoutingEmitter.Route("another", null, another)));
+        emitter.start();
+
+        long start = System.nanoTime();
+        emitter.flush();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        Assert.assertTrue(fast.flushed && slow.flushed && another.flushed);
+        Assert.assertTrue("Flushes should run in parallel, took " + elapsedMillis + "ms", elapsedMillis < 1000);
+        emitter.close();
+    }
+
+    @Test
+    public void testFailingRoute() throws Exception {
+        RecordingEmitter healthy = new RecordingEmitter();
+        RecordingEmitter failing = new RecordingEmitter() {
+            @Override
+            public void emit(Event event) {
+                throw new IllegalStateException("down");
+            }
+
+            @Override
+            public void flush() {
+                throw new IllegalStateException("down");
+            }
+        };
+        RoutingEmitter emitter = new RoutingEmitter(List.of(
+                new RoutingEmitter.Route("failing", null, failing),
+                new RoutingEmitter.Route("healthy", null, healthy)));
+        emitter.start();
+
+        emitter.emit(makeEvent("jvm/gc/count"));
+        Assert.assertEquals(List.of("jvm/gc/count"), healthy.metrics());
+
+        try {
+            emitter.flush();
+            Assert.fail("Expected the failure of the route to be reported");
+        } catch (IOException e) {
+            Assert.assertTrue(e.getMessage().contains("failing"));
+        }
+        Assert.assertTrue(healthy.flushed);
+        emitter.close();
+    }
+
+    @Test
+    public void testSerde() throws Exception {
+        ObjectMapper mapper = new DefaultObjectMapper();
+        RouteSpec route = mapper.readValue(
+                "{\"emitter\": \"http\", \"rule\": {\"type\": \"prefix\", \"dimension\": \"metric\","
+                        + " \"values\": [\"query/\"]}}",
+                RouteSpec.class);
+
+        Assert.assertEquals("http", route.getEmitter());
+        Assert.assertEquals(new PrefixRuleSpec("metric", Collections.singleton("query/")), route.getRule());
+        Assert.assertEquals(route, mapper.readValue(mapper.writeValueAsString(route), RouteSpec.class));
+    }
+}
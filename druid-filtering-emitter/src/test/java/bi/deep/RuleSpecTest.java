@@ -0,0 +1,112 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.filtering.rules.AndRuleSpec;
+import bi.deep.filtering.rules.InRuleSpec;
+import bi.deep.filtering.rules.NotRuleSpec;
+import bi.deep.filtering.rules.OrRuleSpec;
+import bi.deep.filtering.rules.PrefixRuleSpec;
+import bi.deep.filtering.rules.RegexRuleSpec;
+import bi.deep.filtering.rules.Rule;
+import bi.deep.filtering.rules.RuleSpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RuleSpecTest {
+    private static final ObjectMapper MAPPER = new DefaultObjectMapper();
+
+    private static Event makeEvent(String service, String metric, String dataSource) {
+        ServiceMetricEvent.Builder builder = ServiceMetricEvent.builder();
+        if (dataSource != null) {
+            builder.setDimension("dataSource", dataSource);
+        }
+        return builder.setMetric(metric, 1).build(service, "localhost");
+    }
+
+    @Test
+    public void testSerde() throws Exception {
+        String json = "{\"type\": \"not\", \"field\": {\"type\": \"and\", \"fields\": ["
+                + "{\"type\": \"prefix\", \"dimension\": \"metric\", \"values\": [\"segment/\"]},"
+                + "{\"type\": \"in\", \"dimension\": \"dataSource\", \"values\": [\"wiki\"]},"
+                + "{\"type\": \"regex\", \"dimension\": \"service\", \"pattern\": \"druid/.*\"}]}}";
+
+        RuleSpec expected = new NotRuleSpec(new AndRuleSpec(Arrays.asList(
+                new PrefixRuleSpec("metric", Collections.singleton("segment/")),
+                new InRuleSpec("dataSource", Collections.singleton("wiki")),
+                new RegexRuleSpec("service", "druid/.*"))));
+
+        RuleSpec spec = MAPPER.readValue(json, RuleSpec.class);
+        Assert.assertEquals(expected, spec);
+        Assert.assertEquals(spec, MAPPER.readValue(MAPPER.writeValueAsString(spec), RuleSpec.class));
+    }
+
+    @Test
+    public void testDropMetricsForDataSource() {
+        Rule rule = new NotRuleSpec(new AndRuleSpec(Arrays.asList(
+                        new PrefixRuleSpec("metric", Collections.singleton("segment/")),
+                        new InRuleSpec("dataSource", new HashSet<>(Arrays.asList("wiki", "koalas"))))))
+                .compile();
+
+        Assert.assertFalse(rule.test(makeEvent("druid/historical", "segment/scan/pending", "wiki")));
+        Assert.assertFalse(rule.test(makeEvent("druid/historical", "segment/count", "koalas")));
+        Assert.assertTrue(rule.test(makeEvent("druid/historical", "segment/count", "other")));
+        Assert.assertTrue(rule.test(makeEvent("druid/historical", "query/time", "wiki")));
+        Assert.assertTrue(rule.test(makeEvent("druid/historical", "segment/count", null))); // no dataSource
+    }
+
+    @Test
+    public void testOr() {
+        Rule rule = new OrRuleSpec(Arrays.asList(
+                        new RegexRuleSpec("service", "druid/(broker|router)"),
+                        new InRuleSpec("metric", Collections.singleton("query/time"))))
+                .compile();
+
+        Assert.assertTrue(rule.test(makeEvent("druid/broker", "jvm/gc/count", null)));
+        Assert.assertTrue(rule.test(makeEvent("druid/historical", "query/time", null)));
+        Assert.assertFalse(rule.test(makeEvent("druid/historical", "jvm/gc/count", null)));
+    }
+
+    @Test
+    public void testCheapestFirst() {
+        Rule regex = new RegexRuleSpec("service", "druid/.*").compile();
+        Rule in = new InRuleSpec("metric", Collections.singleton("query/time")).compile();
+        Assert.assertTrue(in.getCost() < regex.getCost());
+
+        Rule and = new AndRuleSpec(Arrays.asList(
+                        new RegexRuleSpec("service", "druid/.*"),
+                        new InRuleSpec("metric", Collections.singleton("query/time"))))
+                .compile();
+        Assert.assertEquals(in.getCost() + regex.getCost(), and.getCost());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyAnd() {
+        new AndRuleSpec(Collections.emptyList());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInWithoutValues() {
+        new InRuleSpec("metric", Collections.emptySet());
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import bi.deep.filtering.rules.InRuleSpec;
+import bi.deep.summary.SummarizingEmitter;
+import bi.deep.summary.SummarySpec;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.emitter.core.Event;
+import org.apache.druid.java.util.emitter.service.AlertEvent;
+import org.apache.druid.java.util.emitter.service.ServiceMetricEvent;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SummarizingEmitterTest {
+
+    private static Event makeEvent(String name, String dataSource, Number value) {
+        return ServiceMetricEvent.builder()
+                .setDimension("dataSource", dataSource)
+                .setMetric(name, value)
+                .build("druid/historical", "localhost");
+    }
+
+    private static SummarySpec queryTime(List<String> dimensions) {
+        return new SummarySpec(
+                new InRuleSpec("metric", Collections.singleton("query/time")), dimensions, 60_000L, null);
+    }
+
+    private static Map<String, Object> dims(Event event) {
+        return ((ServiceMetricEvent) event).getUserDims();
+    }
+
+    /**
+     * Returns the value of each statistic emitted for the given data source, or for all events when it is null.
+     */
+    private static Map<Object, Number> stats(RecordingEmitter inner, String dataSource) {
+        return inner.events.stream()
+                .filter(event -> dims(event).containsKey(SummarizingEmitter.STAT))
+                .filter(event -> dataSource == null || dataSource.equals(dims(event).get("dataSource")))
+                .collect(Collectors.toMap(
+                        event -> dims(event).get(SummarizingEmitter.STAT),
+                        event -> ((ServiceMetricEvent) event).getValue()));
+    }
+
+    @Test
+    public void testSummarizesMatchingEvents() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        SummarizingEmitter emitter = new SummarizingEmitter(inner, List.of(queryTime(List.of("dataSource"))));
+
+        for (int i = 1; i <= 1000; i++) {
+            emitter.emit(makeEvent("query/time", "wiki", i));
+        }
+        emitter.emit(makeEvent("query/time", "koalas", 7));
+        emitter.emit(makeEvent("jvm/gc/count", "wiki", 1)); // not summarized
+        Assert.assertEquals(List.of("jvm/gc/count"), inner.metrics());
+
+        emitter.flush();
+        Assert.assertTrue(inner.flushed);
+
+        // count, sum, mean, min, max and three quantiles per data source
+        List<Event> summaries = inner.events.subList(1, inner.events.size());
+        Assert.assertEquals(16, summaries.size());
+
+        for (Event event : summaries) {
+            ServiceMetricEvent summary = (ServiceMetricEvent) event;
+            Assert.assertEquals("query/time", summary.getMetric());
+            Assert.assertEquals("druid/historical", summary.getService());
+            Assert.assertEquals(Set.of("dataSource", SummarizingEmitter.STAT), dims(summary).keySet());
+        }
+
+        Map<Object, Number> wiki = stats(inner, "wiki");
+        Assert.assertEquals(1000L, wiki.get("count"));
+        Assert.assertEquals(500500.0, wiki.get("sum"));
+        Assert.assertEquals(500.5, wiki.get("mean").doubleValue(), 1e-9);
+        Assert.assertEquals(1.0, wiki.get("min"));
+        Assert.assertEquals(1000.0, wiki.get("max"));
+        Assert.assertEquals(500, wiki.get("p50").doubleValue(), 500 * 0.02);
+        Assert.assertEquals(950, wiki.get("p95").doubleValue(), 950 * 0.02);
+        Assert.assertEquals(990, wiki.get("p99").doubleValue(), 990 * 0.02);
+
+        // the window was flushed
+        emitter.flush();
+        Assert.assertEquals(17, inner.events.size());
+    }
+
+    @Test
+    public void testDimensionsNotKeptAreMerged() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        SummarizingEmitter emitter = new SummarizingEmitter(inner, List.of(queryTime(Collections.emptyList())));
+
+        emitter.emit(makeEvent("query/time", "wiki", 10));
+        emitter.emit(makeEvent("query/time", "koalas", 30));
+        emitter.flush();
+
+        Assert.assertEquals(8, inner.events.size());
+        Assert.assertFalse(dims(inner.events.get(0)).containsKey("dataSource"));
+        Assert.assertEquals(2L, stats(inner, null).get("count"));
+        Assert.assertEquals(20.0, stats(inner, null).get("mean").doubleValue(), 1e-9);
+    }
+
+    @Test
+    public void testKeepsServiceDimensions() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        SummarizingEmitter emitter = new SummarizingEmitter(inner, List.of(queryTime(Collections.emptyList())));
+
+        emitter.emit(ServiceMetricEvent.builder()
+                .setDimension("dataSource", "wiki")
+                .setMetric("query/time", 10)
+                .build(ImmutableMap.of("service", "druid/broker", "host", "broker-5:8082", "version", "36.0.0")));
+        emitter.flush();
+
+        Assert.assertEquals(8, inner.events.size());
+        for (Event event : inner.events) {
+            ServiceMetricEvent summary = (ServiceMetricEvent) event;
+            Assert.assertEquals("druid/broker", summary.getService());
+            Assert.assertEquals("broker-5:8082", summary.getHost());
+            Assert.assertEquals("36.0.0", summary.toMap().get("version"));
+        }
+    }
+
+    @Test
+    public void testOtherEventsPassThrough() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        SummarizingEmitter emitter = new SummarizingEmitter(inner, List.of(new SummarySpec(null, null, null, null)));
+
+        Event alert = new AlertEvent("druid/historical", "localhost", "Something failed");
+        emitter.emit(alert);
+        Assert.assertEquals(List.of(alert), inner.events);
+    }
+
+    @Test
+    public void testConcurrentEmitters() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        SummarizingEmitter emitter = new SummarizingEmitter(inner, List.of(queryTime(Collections.emptyList())));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    emitter.emit(makeEvent("query/time", "wiki", 1));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        emitter.close();
+
+        Assert.assertEquals(8, inner.events.size());
+        Assert.assertEquals(40_000L, stats(inner, null).get("count"));
+        Assert.assertTrue(inner.closed);
+    }
+
+    @Test
+    public void testSerde() throws Exception {
+        ObjectMapper mapper = new DefaultObjectMapper();
+        SummarySpec spec = mapper.readValue(
+                "{\"rule\": {\"type\": \"in\", \"dimension\": \"metric\", \"values\": [\"query/time\"]},"
+                        + " \"dimensions\": [\"dataSource\"], \"quantiles\": [0.5, 0.999]}",
+                SummarySpec.class);
+
+        Assert.assertEquals(SummarySpec.DEFAULT_WINDOW_MILLIS, spec.getWindowMillis());
+        Assert.assertEquals(List.of(0.5, 0.999), spec.getQuantiles());
+        Assert.assertEquals(spec, mapper.readValue(mapper.writeValueAsString(spec), SummarySpec.class));
+    }
+
+    @Test
+    public void testQuantileNames() throws Exception {
+        RecordingEmitter inner = new RecordingEmitter();
+        SummarySpec spec = new SummarySpec(null, null, null, List.of(0.5, 0.999, 1.0));
+        SummarizingEmitter emitter = new SummarizingEmitter(inner, List.of(spec));
+
+        emitter.emit(makeEvent("query/time", "wiki", 3));
+        emitter.flush();
+
+        List<Object> quantiles = stats(inner, null).keySet().stream()
+                .map(String.class::cast)
+                .filter(name -> name.startsWith("p"))
+                .sorted()
+                .collect(Collectors.toList());
+        Assert.assertEquals(List.of("p100", "p50", "p99.9"), quantiles);
+        Assert.assertEquals(3.0, stats(inner, null).get("p50"));
+    }
+}
@@ -15,25 +15,42 @@
  */
 package bi.deep;
 
+import bi.deep.aggregation.match.aggregator.SameOrFewAggregatorFactory;
+import bi.deep.aggregation.match.aggregator.SameOrFewComplexMetricSerde;
+import bi.deep.aggregation.match.aggregator.SameOrFewState;
 import bi.deep.aggregation.match.aggregator.ValueMatchAggregatorFactory;
+import bi.deep.aggregation.match.aggregator.ValueMatchComplexMetricSerde;
+import bi.deep.aggregation.match.aggregator.ValueMatchState;
+import bi.deep.aggregation.match.sql.SameOrFewSqlAggregator;
 import bi.deep.aggregation.match.sql.ValueMatchSqlAggregator;
 import com.fasterxml.jackson.databind.Module;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Binder;
 import java.util.Collections;
 import java.util.List;
 import org.apache.druid.initialization.DruidModule;
+import org.apache.druid.segment.serde.ComplexMetrics;
 import org.apache.druid.sql.guice.SqlBindings;
 
 public class ValueMatchModule implements DruidModule {
     @Override
     public void configure(Binder binder) {
+        registerSerde();
         SqlBindings.addAggregator(binder, ValueMatchSqlAggregator.class);
+        SqlBindings.addAggregator(binder, SameOrFewSqlAggregator.class);
     }
 
     @Override
     public List<? extends Module> getJacksonModules() {
         return Collections.singletonList(
-                new SimpleModule(getClass().getSimpleName()).registerSubtypes(ValueMatchAggregatorFactory.class));
+                new SimpleModule(getClass().getSimpleName())
+                        .registerSubtypes(ValueMatchAggregatorFactory.class, SameOrFewAggregatorFactory.class));
+    }
+
+    @VisibleForTesting
+    public static void registerSerde() {
+        ComplexMetrics.registerSerde(ValueMatchState.TYPE_NAME, new ValueMatchComplexMetricSerde());
+        ComplexMetrics.registerSerde(SameOrFewState.TYPE_NAME, new SameOrFewComplexMetricSerde());
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import javax.annotation.Nullable;
+import org.apache.druid.data.input.InputRow;
+import org.apache.druid.segment.column.ColumnBuilder;
+import org.apache.druid.segment.data.GenericIndexed;
+import org.apache.druid.segment.data.ObjectStrategy;
+import org.apache.druid.segment.serde.ComplexColumnPartSupplier;
+import org.apache.druid.segment.serde.ComplexMetricExtractor;
+import org.apache.druid.segment.serde.ComplexMetricSerde;
+
+/**
+ * Serde of a complex type whose states are stored in their binary form, one {@link GenericIndexed} entry per row.
+ * Subclasses only tell how a state is read, written and built from an input value.
+ */
+public abstract class BinaryStateComplexMetricSerde<T> extends ComplexMetricSerde {
+    private final Comparator<T> comparator =
+            Comparator.nullsFirst((lhs, rhs) -> ByteBuffer.wrap(toBytes(lhs)).compareTo(ByteBuffer.wrap(toBytes(rhs))));
+
+    private final ObjectStrategy<T> strategy = new ObjectStrategy<T>() {
+        @Override
+        public Class<? extends T> getClazz() {
+            return getStateClass();
+        }
+
+        @Override
+        public T fromByteBuffer(ByteBuffer buffer, int numBytes) {
+            return read(buffer, buffer.position());
+        }
+
+        @Override
+        public byte[] toBytes(@Nullable T val) {
+            return BinaryStateComplexMetricSerde.this.toBytes(val == null ? from(null) : val);
+        }
+
+        @Override
+        public int compare(T o1, T o2) {
+            return comparator.compare(o1, o2);
+        }
+    };
+
+    protected abstract Class<T> getStateClass();
+
+    /**
+     * Reads the state stored at the given position.
+     */
+    protected abstract T read(ByteBuffer buffer, int position);
+
+    protected abstract byte[] toBytes(T state);
+
+    /**
+     * Converts an input value into a state, {@code null} into the empty state.
+     */
+    protected abstract T from(@Nullable Object value);
+
+    @Override
+    public ComplexMetricExtractor<T> getExtractor() {
+        return new ComplexMetricExtractor<T>() {
+            @Override
+            public Class<T> extractedClass() {
+                return getStateClass();
+            }
+
+            @Override
+            public T extractValue(InputRow inputRow, String metricName) {
+                return from(inputRow.getRaw(metricName));
+            }
+        };
+    }
+
+    @Override
+    public void deserializeColumn(ByteBuffer buffer, ColumnBuilder builder) {
+        final GenericIndexed<T> column = GenericIndexed.read(buffer, getObjectStrategy(), builder.getFileMapper());
+        builder.setComplexColumnSupplier(new ComplexColumnPartSupplier(getTypeName(), column));
+    }
+
+    @Override
+    public ObjectStrategy<T> getObjectStrategy() {
+        return strategy;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.druid.query.aggregation.Aggregator;
+import org.apache.druid.segment.ColumnValueSelector;
+
+/**
+ * Heap aggregator keeping up to {@code maxValues} distinct values. The values are bounded by {@code maxSize} the same
+ * way as in {@link SameOrFewBufferAggregator}, by adding up their encoded sizes to the size of the buffer header, so
+ * that the result does not depend on which of the two aggregators ran.
+ */
+public class SameOrFewAggregator implements Aggregator {
+    private final ColumnValueSelector<?> selector;
+    private final int maxValues;
+    private final int maxSize;
+    private final List<Object> values;
+    private int size;
+    private boolean overflow;
+
+    public SameOrFewAggregator(final ColumnValueSelector<?> selector, final int maxValues, final int maxSize) {
+        this.selector = selector;
+        this.maxValues = maxValues;
+        this.maxSize = maxSize;
+        this.values = new ArrayList<>();
+        this.size = SameOrFewBufferAggregator.getHeaderSize(maxValues);
+    }
+
+    @Override
+    public synchronized void aggregate() {
+        if (overflow) {
+            return;
+        }
+
+        final Object obj = selector.getObject();
+
+        if (obj instanceof SameOrFewState) {
+            final SameOrFewState state = (SameOrFewState) obj;
+
+            if (state.isOverflow()) {
+                setOverflow();
+            } else {
+                state.getValues().forEach(this::add);
+            }
+        } else if (obj != null && ValueMatchCodec.isSupported(obj)) {
+            add(ValueMatchCodec.unwrap(obj));
+        }
+    }
+
+    private void add(Object value) {
+        if (overflow || SameOrFewState.contains(values, value)) {
+            return;
+        }
+
+        final int valueSize = values.size() == maxValues ? -1 : ValueMatchCodec.sizeOf(value);
+
+        if (valueSize < 0 || size + valueSize > maxSize) {
+            setOverflow();
+        } else {
+            values.add(value);
+            size += valueSize;
+        }
+    }
+
+    private void setOverflow() {
+        overflow = true;
+        values.clear();
+    }
+
+    @Override
+    public synchronized Object get() {
+        if (overflow) {
+            return SameOrFewState.overflow();
+        }
+
+        return values.isEmpty() ? SameOrFewState.empty() : SameOrFewState.of(values);
+    }
+
+    @Override
+    public float getFloat() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public long getLong() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public double getDouble() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+}
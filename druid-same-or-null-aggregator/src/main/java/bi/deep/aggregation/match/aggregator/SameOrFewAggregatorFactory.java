@@ -0,0 +1,284 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.apache.commons.lang.StringUtils;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.query.aggregation.AggregateCombiner;
+import org.apache.druid.query.aggregation.Aggregator;
+import org.apache.druid.query.aggregation.AggregatorFactory;
+import org.apache.druid.query.aggregation.BufferAggregator;
+import org.apache.druid.query.aggregation.ObjectAggregateCombiner;
+import org.apache.druid.query.cache.CacheKeyBuilder;
+import org.apache.druid.segment.ColumnSelectorFactory;
+import org.apache.druid.segment.ColumnValueSelector;
+import org.apache.druid.segment.NilColumnValueSelector;
+import org.apache.druid.segment.column.ColumnType;
+
+/**
+ * Sibling of {@link ValueMatchAggregatorFactory} that keeps up to {@code maxValues} distinct values instead of
+ * collapsing at the first difference. The result lists the distinct values, or is {@code null} when there were none or
+ * more than {@code maxValues} of them, or when they did not fit into {@code maxSize} bytes.
+ */
+@JsonTypeName("sameOrFew")
+public class SameOrFewAggregatorFactory extends AggregatorFactory {
+    private static final byte CACHE_ID = 0x71;
+    private static final int DEFAULT_MAX_VALUES = 10;
+    private static final int DEFAULT_MAX_SIZE = 1024;
+    private static final int DEFAULT_VALUE_SIZE = 64;
+
+    private final String name;
+    private final String fieldName;
+    private final int maxValues;
+    private final int maxSize;
+    private final ColumnType outputType;
+
+    @JsonCreator
+    public SameOrFewAggregatorFactory(
+            @JsonProperty("name") @Nullable final String name,
+            @JsonProperty("fieldName") final String fieldName,
+            @JsonProperty("maxValues") @Nullable final Integer maxValues,
+            @JsonProperty("maxSize") @Nullable final Integer maxSize,
+            @JsonProperty("outputType") @Nullable ColumnType outputType) {
+
+        if (StringUtils.isBlank(fieldName)) {
+            throw new IAE("Must have a valid, non-null aggregator fieldName");
+        }
+
+        this.fieldName = fieldName;
+        this.name = Optional.ofNullable(name).orElse(fieldName);
+        this.maxValues = Optional.ofNullable(maxValues).orElse(DEFAULT_MAX_VALUES);
+        this.maxSize = Optional.ofNullable(maxSize).orElseGet(() -> getDefaultMaxSize(this.maxValues));
+        this.outputType = Optional.ofNullable(outputType).orElse(ColumnType.UNKNOWN_COMPLEX);
+
+        if (this.maxValues < 1) {
+            throw new IAE("maxValues must be positive, got [%s]", this.maxValues);
+        }
+
+        if (this.maxSize <= SameOrFewBufferAggregator.getHeaderSize(this.maxValues)) {
+            throw new IAE(
+                    "maxSize [%s] is too small to hold [%s] values, must be greater than [%s]",
+                    this.maxSize,
+                    this.maxValues,
+                    SameOrFewBufferAggregator.getHeaderSize(this.maxValues));
+        }
+    }
+
+    /**
+     * Default buffer size: 1024 bytes, or more when {@code maxValues} leaves less than {@value #DEFAULT_VALUE_SIZE}
+     * bytes per value after the header. SQL never sets {@code maxSize}, so this is also the size used there.
+     */
+    static int getDefaultMaxSize(int maxValues) {
+        return Math.max(
+                DEFAULT_MAX_SIZE, SameOrFewBufferAggregator.getHeaderSize(maxValues) + maxValues * DEFAULT_VALUE_SIZE);
+    }
+
+    @Override
+    public Aggregator factorize(final ColumnSelectorFactory metricFactory) {
+        final ColumnValueSelector<?> selector = metricFactory.makeColumnValueSelector(getFieldName());
+
+        if (selector instanceof NilColumnValueSelector) {
+            return new NoopValueMatchAggregator();
+        }
+
+        return new SameOrFewAggregator(selector, maxValues, maxSize);
+    }
+
+    @Override
+    public BufferAggregator factorizeBuffered(ColumnSelectorFactory metricFactory) {
+        final ColumnValueSelector<?> selector = metricFactory.makeColumnValueSelector(getFieldName());
+
+        if (selector instanceof NilColumnValueSelector) {
+            return new NoopValueMatchBufferAggregator();
+        }
+
+        return new SameOrFewBufferAggregator(selector, maxValues, maxSize);
+    }
+
+    /**
+     * Orders results by the number of distinct values, overflowed results last.
+     */
+    @Override
+    public Comparator<Object> getComparator() {
+        return Comparator.comparingInt(SameOrFewAggregatorFactory::rank);
+    }
+
+    private static int rank(@Nullable Object object) {
+        if (object instanceof SameOrFewState) {
+            final SameOrFewState state = (SameOrFewState) object;
+            return state.isOverflow() ? Integer.MAX_VALUE : state.getValues().size();
+        }
+
+        return object instanceof Object[] ? ((Object[]) object).length : 0;
+    }
+
+    @Override
+    public Object combine(@Nullable Object lhs, @Nullable Object rhs) {
+        return SameOrFewState.from(lhs).merge(SameOrFewState.from(rhs), maxValues, maxSize);
+    }
+
+    @Override
+    public AggregatorFactory getCombiningFactory() {
+        return new SameOrFewAggregatorFactory(getName(), getName(), maxValues, maxSize, outputType);
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public AggregateCombiner makeAggregateCombiner() {
+        return new ObjectAggregateCombiner<SameOrFewState>() {
+            private SameOrFewState state = SameOrFewState.empty();
+
+            @Override
+            public void reset(ColumnValueSelector selector) {
+                state = SameOrFewState.from(selector.getObject());
+            }
+
+            @Override
+            public void fold(ColumnValueSelector selector) {
+                if (!state.isOverflow()) {
+                    state = state.merge(SameOrFewState.from(selector.getObject()), maxValues, maxSize);
+                }
+            }
+
+            @Override
+            public SameOrFewState getObject() {
+                return state;
+            }
+
+            @Override
+            public Class<SameOrFewState> classOfObject() {
+                return SameOrFewState.class;
+            }
+        };
+    }
+
+    @Override
+    public Object deserialize(Object object) {
+        return SameOrFewState.deserialize(object);
+    }
+
+    @Nullable
+    @Override
+    public Object finalizeComputation(@Nullable Object object) {
+        return object instanceof SameOrFewState ? ((SameOrFewState) object).getResult() : object;
+    }
+
+    @Override
+    @JsonProperty
+    public String getName() {
+        return name;
+    }
+
+    @JsonProperty
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    @JsonProperty
+    public int getMaxValues() {
+        return maxValues;
+    }
+
+    @JsonProperty
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @JsonProperty
+    public ColumnType getOutputType() {
+        return outputType;
+    }
+
+    @Override
+    public List<String> requiredFields() {
+        return Collections.singletonList(fieldName);
+    }
+
+    @Override
+    public AggregatorFactory withName(String newName) {
+        return new SameOrFewAggregatorFactory(newName, getFieldName(), maxValues, maxSize, outputType);
+    }
+
+    @Override
+    public ColumnType getIntermediateType() {
+        return SameOrFewState.TYPE;
+    }
+
+    @Override
+    public ColumnType getResultType() {
+        return getOutputType();
+    }
+
+    @Override
+    public int getMaxIntermediateSize() {
+        return getMaxSize();
+    }
+
+    @Override
+    public byte[] getCacheKey() {
+        return new CacheKeyBuilder(CACHE_ID)
+                .appendString("sameOrFew")
+                .appendString(name)
+                .appendString(fieldName)
+                .appendInt(maxValues)
+                .appendInt(maxSize)
+                .appendString(outputType.toString())
+                .build();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final SameOrFewAggregatorFactory that = (SameOrFewAggregatorFactory) o;
+
+        return maxValues == that.maxValues
+                && maxSize == that.maxSize
+                && Objects.equals(name, that.name)
+                && Objects.equals(fieldName, that.fieldName)
+                && Objects.equals(outputType, that.outputType);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, fieldName, maxValues, maxSize, outputType);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{"
+                + "name=" + name
+                + ", fieldName=" + fieldName
+                + ", maxValues=" + maxValues
+                + ", maxSize=" + maxSize
+                + ", resultType=" + outputType
+                + "}";
+    }
+}
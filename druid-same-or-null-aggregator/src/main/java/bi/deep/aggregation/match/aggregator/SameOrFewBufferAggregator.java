@@ -0,0 +1,175 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.druid.query.aggregation.BufferAggregator;
+import org.apache.druid.segment.ColumnValueSelector;
+
+/**
+ * Buffer aggregator keeping up to {@code maxValues} distinct values. Every stored value has its
+ * {@link ValueMatchFingerprint} in a fixed-size table, so a row is only compared in full with values sharing its
+ * fingerprint.
+ *
+ * <p>Layout: {@code [flags: byte][count: int][dataEnd: int][fingerprint: long * maxValues][offset: int * maxValues]
+ * [values]}, where offsets and {@code dataEnd} are relative to the slot position.
+ */
+public class SameOrFewBufferAggregator implements BufferAggregator {
+    private static final byte OVERFLOW = 1;
+
+    private static final int FLAGS_OFFSET = 0; // 1 byte for flags
+    private static final int COUNT_OFFSET = 1; // 4 bytes for the number of stored values
+    private static final int DATA_END_OFFSET = 5; // 4 bytes for the end of the stored values
+    private static final int FINGERPRINTS_OFFSET = 9; // Start of the fingerprint table
+
+    private final ColumnValueSelector<?> selector;
+    private final int maxValues;
+    private final int maxSize;
+    private final int offsetsOffset;
+    private final int dataOffset;
+
+    public SameOrFewBufferAggregator(final ColumnValueSelector<?> selector, final int maxValues, final int maxSize) {
+        this.selector = selector;
+        this.maxValues = maxValues;
+        this.maxSize = maxSize;
+        this.offsetsOffset = FINGERPRINTS_OFFSET + maxValues * Long.BYTES;
+        this.dataOffset = offsetsOffset + maxValues * Integer.BYTES;
+    }
+
+    /**
+     * Size of the slot without any stored values.
+     */
+    public static int getHeaderSize(int maxValues) {
+        return FINGERPRINTS_OFFSET + maxValues * (Long.BYTES + Integer.BYTES);
+    }
+
+    @Override
+    public void init(ByteBuffer buf, int position) {
+        buf.put(position + FLAGS_OFFSET, (byte) 0);
+        buf.putInt(position + COUNT_OFFSET, 0);
+        buf.putInt(position + DATA_END_OFFSET, dataOffset);
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int position) {
+        if (isOverflow(buf, position)) {
+            return;
+        }
+
+        final Object obj = selector.getObject();
+
+        if (obj instanceof SameOrFewState) {
+            final SameOrFewState state = (SameOrFewState) obj;
+
+            if (state.isOverflow()) {
+                buf.put(position + FLAGS_OFFSET, OVERFLOW);
+                return;
+            }
+
+            for (Object value : state.getValues()) {
+                if (!add(buf, position, value)) {
+                    return;
+                }
+            }
+        } else if (obj != null && ValueMatchCodec.isSupported(obj)) {
+            add(buf, position, obj);
+        }
+    }
+
+    /**
+     * Adds the value unless it is already stored.
+     *
+     * @return {@code false} when the slot overflowed
+     */
+    private boolean add(ByteBuffer buf, int position, Object value) {
+        final long fingerprint = ValueMatchFingerprint.of(value);
+        final int count = buf.getInt(position + COUNT_OFFSET);
+
+        for (int i = 0; i < count; i++) {
+            if (buf.getLong(position + FINGERPRINTS_OFFSET + i * Long.BYTES) == fingerprint
+                    && ValueMatchCodec.matches(buf, position + getValueOffset(buf, position, i), value)) {
+                return true;
+            }
+        }
+
+        final int dataEnd = buf.getInt(position + DATA_END_OFFSET);
+        final int written =
+                count == maxValues ? -1 : ValueMatchCodec.write(buf, position + dataEnd, value, maxSize - dataEnd);
+
+        if (written < 0) {
+            buf.put(position + FLAGS_OFFSET, OVERFLOW);
+            return false;
+        }
+
+        buf.putLong(position + FINGERPRINTS_OFFSET + count * Long.BYTES, fingerprint);
+        buf.putInt(position + offsetsOffset + count * Integer.BYTES, dataEnd);
+        buf.putInt(position + COUNT_OFFSET, count + 1);
+        buf.putInt(position + DATA_END_OFFSET, dataEnd + written);
+        return true;
+    }
+
+    private int getValueOffset(ByteBuffer buf, int position, int index) {
+        return buf.getInt(position + offsetsOffset + index * Integer.BYTES);
+    }
+
+    private static boolean isOverflow(ByteBuffer buf, int position) {
+        return buf.get(position + FLAGS_OFFSET) == OVERFLOW;
+    }
+
+    @Override
+    public void relocate(int oldPosition, int newPosition, ByteBuffer oldBuffer, ByteBuffer newBuffer) {
+        final int dataEnd = oldBuffer.getInt(oldPosition + DATA_END_OFFSET);
+        for (int i = 0; i < dataEnd; i++) {
+            newBuffer.put(newPosition + i, oldBuffer.get(oldPosition + i));
+        }
+    }
+
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        if (isOverflow(buf, position)) {
+            return SameOrFewState.overflow();
+        }
+
+        final int count = buf.getInt(position + COUNT_OFFSET);
+        if (count == 0) {
+            return SameOrFewState.empty();
+        }
+
+        final List<Object> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(ValueMatchCodec.read(buf, position + getValueOffset(buf, position, i)));
+        }
+
+        return SameOrFewState.of(values);
+    }
+
+    @Override
+    public float getFloat(final ByteBuffer buffer, final int position) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public long getLong(final ByteBuffer buffer, final int position) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public void close() {
+        // NO-OP
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+
+/**
+ * Serde of the {@link SameOrFewState#TYPE_NAME} complex type, storing states in their binary form.
+ */
+public class SameOrFewComplexMetricSerde extends BinaryStateComplexMetricSerde<SameOrFewState> {
+    @Override
+    public String getTypeName() {
+        return SameOrFewState.TYPE_NAME;
+    }
+
+    @Override
+    protected Class<SameOrFewState> getStateClass() {
+        return SameOrFewState.class;
+    }
+
+    @Override
+    protected SameOrFewState read(ByteBuffer buffer, int position) {
+        return SameOrFewState.read(buffer, position);
+    }
+
+    @Override
+    protected byte[] toBytes(SameOrFewState state) {
+        return state.toBytes();
+    }
+
+    @Override
+    protected SameOrFewState from(@Nullable Object value) {
+        return SameOrFewState.from(value);
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.segment.column.ColumnType;
+
+/**
+ * Intermediate result of the sameOrFew aggregator: the distinct values seen so far, or an overflow marker once there
+ * were more distinct values than the aggregator keeps.
+ *
+ * <p>Binary layout: {@code [overflow: byte][count: int][value * count]}, with values encoded by
+ * {@link ValueMatchCodec}.
+ */
+public final class SameOrFewState {
+    public static final String TYPE_NAME = "sameOrFew";
+    public static final ColumnType TYPE = ColumnType.ofComplex(TYPE_NAME);
+
+    private static final byte OVERFLOW_FLAG = 1;
+    private static final int FLAGS_OFFSET = 0;
+    private static final int COUNT_OFFSET = 1;
+    private static final int VALUES_OFFSET = 5;
+
+    private static final SameOrFewState EMPTY_STATE = new SameOrFewState(Collections.emptyList(), false);
+    private static final SameOrFewState OVERFLOW_STATE = new SameOrFewState(Collections.emptyList(), true);
+
+    private final List<Object> values;
+    private final boolean overflow;
+
+    private SameOrFewState(List<Object> values, boolean overflow) {
+        this.values = values;
+        this.overflow = overflow;
+    }
+
+    public static SameOrFewState empty() {
+        return EMPTY_STATE;
+    }
+
+    public static SameOrFewState overflow() {
+        return OVERFLOW_STATE;
+    }
+
+    /**
+     * Creates a state holding the given distinct values.
+     */
+    public static SameOrFewState of(List<?> values) {
+        final List<Object> unwrapped = new ArrayList<>(values.size());
+        for (Object value : values) {
+            unwrapped.add(ValueMatchCodec.unwrap(value));
+        }
+
+        return new SameOrFewState(Collections.unmodifiableList(unwrapped), false);
+    }
+
+    /**
+     * Converts an aggregated object into a state. Plain values are treated as a single value, {@code null} means that
+     * no value was seen.
+     */
+    public static SameOrFewState from(@Nullable Object object) {
+        if (object == null) {
+            return EMPTY_STATE;
+        }
+
+        return object instanceof SameOrFewState
+                ? (SameOrFewState) object
+                : of(Collections.singletonList(object));
+    }
+
+    /**
+     * Reads a state from its serialized form: raw bytes, or a base64 string as written by {@link #toBytes()} to JSON.
+     */
+    public static SameOrFewState deserialize(Object object) {
+        if (object instanceof SameOrFewState) {
+            return (SameOrFewState) object;
+        }
+
+        if (object instanceof byte[]) {
+            return read(ByteBuffer.wrap((byte[]) object), 0);
+        }
+
+        if (object instanceof String) {
+            return read(ByteBuffer.wrap(Base64.getDecoder().decode((String) object)), 0);
+        }
+
+        throw new IAE("Cannot deserialize [%s] to a sameOrFew state", object.getClass().getName());
+    }
+
+    /**
+     * Reads the serialized state stored at the given position.
+     */
+    static SameOrFewState read(ByteBuffer buf, int position) {
+        if ((buf.get(position + FLAGS_OFFSET) & OVERFLOW_FLAG) != 0) {
+            return OVERFLOW_STATE;
+        }
+
+        final int count = buf.getInt(position + COUNT_OFFSET);
+        if (count == 0) {
+            return EMPTY_STATE;
+        }
+
+        final List<Object> values = new ArrayList<>(count);
+        int valuePosition = position + VALUES_OFFSET;
+
+        for (int i = 0; i < count; i++) {
+            values.add(ValueMatchCodec.read(buf, valuePosition));
+            valuePosition += ValueMatchCodec.size(buf, valuePosition);
+        }
+
+        return new SameOrFewState(Collections.unmodifiableList(values), false);
+    }
+
+    @JsonValue
+    public byte[] toBytes() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(overflow ? OVERFLOW_FLAG : 0);
+        out.writeBytes(ByteBuffer.allocate(Integer.BYTES).putInt(values.size()).array());
+
+        for (Object value : values) {
+            out.writeBytes(ValueMatchCodec.toBytes(value));
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Merges two states, overflowing once more than {@code maxValues} distinct values were seen in total, or once they
+     * no longer fit into {@code maxSize} bytes, the same bound as {@link SameOrFewBufferAggregator}.
+     */
+    public SameOrFewState merge(SameOrFewState other, int maxValues, int maxSize) {
+        if (overflow || other.values.isEmpty()) {
+            return other.overflow ? OVERFLOW_STATE : this;
+        }
+
+        if (other.overflow) {
+            return OVERFLOW_STATE;
+        }
+
+        final List<Object> merged = new ArrayList<>(values);
+        for (Object value : other.values) {
+            if (!contains(merged, value)) {
+                if (merged.size() == maxValues) {
+                    return OVERFLOW_STATE;
+                }
+
+                merged.add(value);
+            }
+        }
+
+        if (merged.size() == values.size()) {
+            return this;
+        }
+
+        return fits(merged, maxValues, maxSize)
+                ? new SameOrFewState(Collections.unmodifiableList(merged), false)
+                : OVERFLOW_STATE;
+    }
+
+    /**
+     * Whether the values fit into a {@link SameOrFewBufferAggregator} slot of {@code maxSize} bytes.
+     */
+    private static boolean fits(List<Object> values, int maxValues, int maxSize) {
+        long size = SameOrFewBufferAggregator.getHeaderSize(maxValues);
+
+        for (Object value : values) {
+            final int valueSize = ValueMatchCodec.sizeOf(value);
+
+            if (valueSize < 0) {
+                return false;
+            }
+
+            size += valueSize;
+        }
+
+        return size <= maxSize;
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+
+    public boolean isOverflow() {
+        return overflow;
+    }
+
+    public boolean isEmpty() {
+        return !overflow && values.isEmpty();
+    }
+
+    /**
+     * Returns the finalized result: the distinct values in their natural order, or {@code null} when there were none
+     * or too many of them. The two cannot be told apart once finalized; {@link #isOverflow()} and {@link #isEmpty()}
+     * keep them apart in the intermediate state.
+     */
+    @Nullable
+    public Object[] getResult() {
+        if (isEmpty() || overflow) {
+            return null;
+        }
+
+        final Object[] result = values.toArray();
+        Arrays.sort(result, SameOrFewState::compareValues);
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object o1, Object o2) {
+        if (o1.getClass() == o2.getClass() && o1 instanceof Comparable) {
+            return ((Comparable<Object>) o1).compareTo(o2);
+        }
+
+        return String.valueOf(o1).compareTo(String.valueOf(o2));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final SameOrFewState that = (SameOrFewState) o;
+
+        if (overflow != that.overflow || values.size() != that.values.size()) {
+            return false;
+        }
+
+        // Distinct values are compared regardless of the order they were seen in
+        for (Object value : that.values) {
+            if (!contains(values, value)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = Boolean.hashCode(overflow);
+        for (Object value : values) {
+            hash += Arrays.deepHashCode(new Object[] {value});
+        }
+        return hash;
+    }
+
+    /**
+     * Whether the list holds the value, comparing arrays by content like {@link Objects#deepEquals}.
+     */
+    static boolean contains(List<Object> values, Object value) {
+        for (Object other : values) {
+            if (Objects.deepEquals(other, value)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + "values=" + values + ", overflow=" + overflow + "}";
+    }
+}
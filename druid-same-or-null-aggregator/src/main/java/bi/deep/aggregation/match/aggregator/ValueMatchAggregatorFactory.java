@@ -31,11 +31,22 @@ import org.apache.druid.query.aggregation.Aggregator;
 import org.apache.druid.query.aggregation.AggregatorFactory;
 import org.apache.druid.query.aggregation.BufferAggregator;
 import org.apache.druid.query.aggregation.ObjectAggregateCombiner;
+import org.apache.druid.query.aggregation.VectorAggregator;
 import org.apache.druid.query.cache.CacheKeyBuilder;
+import org.apache.druid.query.dimension.DefaultDimensionSpec;
+import org.apache.druid.segment.ColumnInspector;
 import org.apache.druid.segment.ColumnSelectorFactory;
 import org.apache.druid.segment.ColumnValueSelector;
+import org.apache.druid.segment.DimensionDictionarySelector;
+import org.apache.druid.segment.DimensionHandlerUtils;
+import org.apache.druid.segment.DimensionSelector;
 import org.apache.druid.segment.NilColumnValueSelector;
+import org.apache.druid.segment.column.ColumnCapabilities;
 import org.apache.druid.segment.column.ColumnType;
+import org.apache.druid.segment.column.ValueType;
+import org.apache.druid.segment.vector.SingleValueDimensionVectorSelector;
+import org.apache.druid.segment.vector.VectorColumnSelectorFactory;
+import org.apache.druid.segment.vector.VectorValueSelector;
 
 @JsonTypeName("sameOrNull")
 public class ValueMatchAggregatorFactory extends AggregatorFactory {
@@ -60,6 +71,14 @@ public class ValueMatchAggregatorFactory extends AggregatorFactory {
         this.fieldName = fieldName;
         this.name = Optional.ofNullable(name).orElse(fieldName);
         this.maxSize = Optional.ofNullable(maxSize).orElse(1024);
+
+        if (this.maxSize < ValueMatchBufferBuildAggregator.MIN_SIZE) {
+            throw new IAE(
+                    "maxSize must be at least [%s] bytes, got [%s]",
+                    ValueMatchBufferBuildAggregator.MIN_SIZE,
+                    this.maxSize);
+        }
+
         this.outputType = Optional.ofNullable(outputType).orElse(ColumnType.UNKNOWN_COMPLEX);
     }
 
@@ -67,23 +86,181 @@ public class ValueMatchAggregatorFactory extends AggregatorFactory {
     public Aggregator factorize(final ColumnSelectorFactory metricFactory) {
         final ColumnValueSelector<?> selector = metricFactory.makeColumnValueSelector(getFieldName());
 
-        return selector instanceof NilColumnValueSelector
-                ? new NoopValueMatchAggregator()
-                : new ValueMatchBuildAggregator(selector);
+        if (selector instanceof NilColumnValueSelector) {
+            return new NoopValueMatchAggregator();
+        }
+
+        final ValueType primitiveType = getPrimitiveType(metricFactory);
+
+        if (primitiveType == null) {
+            final DimensionSelector dictionarySelector = makeDictionarySelector(metricFactory);
+
+            if (dictionarySelector == null) {
+                return outputType.isNumeric()
+                        ? new ValueMatchNumericAggregator(selector)
+                        : new ValueMatchBuildAggregator(selector, getMaxSize());
+            }
+
+            if (!hasSingleValueDictionary(dictionarySelector)) {
+                return new ValueMatchStringAggregator(dictionarySelector);
+            }
+
+            final String value = dictionarySelector.lookupName(0);
+
+            return value == null ? new NoopValueMatchAggregator() : new ValueMatchConstantAggregator(value);
+        }
+
+        switch (primitiveType) {
+            case LONG:
+                return new ValueMatchLongAggregator(selector);
+            case DOUBLE:
+                return new ValueMatchDoubleAggregator(selector);
+            default:
+                return new ValueMatchFloatAggregator(selector);
+        }
     }
 
     @Override
     public BufferAggregator factorizeBuffered(ColumnSelectorFactory metricFactory) {
         final ColumnValueSelector<?> selector = metricFactory.makeColumnValueSelector(getFieldName());
 
-        return selector instanceof NilColumnValueSelector
-                ? new NoopValueMatchBufferAggregator()
-                : new ValueMatchBufferBuildAggregator(selector);
+        if (selector instanceof NilColumnValueSelector) {
+            return new NoopValueMatchBufferAggregator();
+        }
+
+        final ValueType primitiveType = getPrimitiveType(metricFactory);
+
+        if (primitiveType == null) {
+            final DimensionSelector dictionarySelector = makeDictionarySelector(metricFactory);
+
+            if (dictionarySelector == null) {
+                return outputType.isNumeric()
+                        ? new ValueMatchNumericBufferAggregator(selector)
+                        : new ValueMatchBufferBuildAggregator(selector, getMaxIntermediateSize());
+            }
+
+            if (!hasSingleValueDictionary(dictionarySelector)) {
+                return new ValueMatchStringBufferAggregator(dictionarySelector);
+            }
+
+            final String value = dictionarySelector.lookupName(0);
+
+            return value == null ? new NoopValueMatchBufferAggregator() : new ValueMatchConstantBufferAggregator(value);
+        }
+
+        switch (primitiveType) {
+            case LONG:
+                return new ValueMatchLongBufferAggregator(selector);
+            case DOUBLE:
+                return new ValueMatchDoubleBufferAggregator(selector);
+            default:
+                return new ValueMatchFloatBufferAggregator(selector);
+        }
+    }
+
+    @Override
+    public boolean canVectorize(ColumnInspector columnInspector) {
+        final ColumnCapabilities capabilities = columnInspector.getColumnCapabilities(getFieldName());
+
+        return capabilities == null
+                || getPrimitiveType(columnInspector) != null
+                || isSingleValueDictionaryString(capabilities);
+    }
+
+    @Override
+    public VectorAggregator factorizeVector(VectorColumnSelectorFactory selectorFactory) {
+        if (selectorFactory.getColumnCapabilities(getFieldName()) == null) {
+            return new NoopValueMatchVectorAggregator();
+        }
+
+        final ValueType primitiveType = getPrimitiveType(selectorFactory);
+
+        if (primitiveType == null) {
+            final SingleValueDimensionVectorSelector dictionarySelector =
+                    selectorFactory.makeSingleValueDimensionSelector(DefaultDimensionSpec.of(getFieldName()));
+
+            if (!hasSingleValueDictionary(dictionarySelector)) {
+                return new ValueMatchStringVectorAggregator(dictionarySelector);
+            }
+
+            final String value = dictionarySelector.lookupName(0);
+
+            return value == null
+                    ? new NoopValueMatchVectorAggregator()
+                    : new ValueMatchConstantVectorAggregator(value);
+        }
+
+        final VectorValueSelector selector = selectorFactory.makeValueSelector(getFieldName());
+
+        switch (primitiveType) {
+            case LONG:
+                return new ValueMatchLongVectorAggregator(selector);
+            case DOUBLE:
+                return new ValueMatchDoubleVectorAggregator(selector);
+            default:
+                return new ValueMatchFloatVectorAggregator(selector);
+        }
+    }
+
+    /**
+     * Returns a selector whose dictionary ids can stand in for the values themselves, or {@code null} when the column
+     * is not a single-valued dictionary-encoded string column.
+     */
+    @Nullable
+    private DimensionSelector makeDictionarySelector(final ColumnSelectorFactory metricFactory) {
+        final ColumnCapabilities capabilities = metricFactory.getColumnCapabilities(getFieldName());
+
+        if (capabilities == null || !isSingleValueDictionaryString(capabilities)) {
+            return null;
+        }
+
+        final DimensionSelector selector = metricFactory.makeDimensionSelector(DefaultDimensionSpec.of(getFieldName()));
+
+        return selector.nameLookupPossibleInAdvance() ? selector : null;
+    }
+
+    /**
+     * Whether the segment dictionary of the column holds exactly one value. Every row of the segment then contains that
+     * value, so the per-segment result is known without reading the column.
+     */
+    private static boolean hasSingleValueDictionary(final DimensionDictionarySelector selector) {
+        return selector.getValueCardinality() == 1;
+    }
+
+    /**
+     * Single-valued string columns with unique dictionary values can be compared by their dictionary ids.
+     */
+    private static boolean isSingleValueDictionaryString(final ColumnCapabilities capabilities) {
+        return capabilities.is(ValueType.STRING)
+                && capabilities.isDictionaryEncoded().isTrue()
+                && capabilities.areDictionaryValuesUnique().isTrue()
+                && capabilities.hasMultipleValues().isFalse();
+    }
+
+    /**
+     * Returns the primitive type to compare values with, or {@code null} when the generic object-based aggregators
+     * have to be used. Primitive comparison is possible for numeric columns when the requested output type is either
+     * numeric as well or left at its default. Values are always compared in the column type, so that a {@code LONG}
+     * output over a {@code DOUBLE} column does not see 1.2 and 1.7 as the same value; the conversion to the output type
+     * happens in {@link #finalizeComputation}.
+     */
+    @Nullable
+    private ValueType getPrimitiveType(final ColumnInspector inspector) {
+        final ColumnCapabilities capabilities = inspector.getColumnCapabilities(getFieldName());
+
+        if (capabilities == null || !capabilities.isNumeric()) {
+            return null;
+        }
+
+        return outputType.isNumeric() || ColumnType.UNKNOWN_COMPLEX.equals(outputType) ? capabilities.getType() : null;
     }
 
     @Override
     public Comparator<Object> getComparator() {
-        return (o1, o2) -> {
+        return (lhs, rhs) -> {
+            final Object o1 = finalizeComputation(lhs);
+            final Object o2 = finalizeComputation(rhs);
+
             if (o1 == o2) {
                 return 0;
             }
@@ -99,72 +276,62 @@ public class ValueMatchAggregatorFactory extends AggregatorFactory {
         };
     }
 
-    @Nullable
     @Override
     public Object combine(@Nullable Object lhs, @Nullable Object rhs) {
-        if (lhs == null) return rhs;
-        if (rhs == null) return lhs;
-
-        return Objects.equals(lhs, rhs) ? lhs : null;
+        return ValueMatchState.from(lhs).merge(ValueMatchState.from(rhs));
     }
 
     @Override
     public AggregatorFactory getCombiningFactory() {
-        return new ValueMatchAggregatorFactory(getName(), getName(), getMaxIntermediateSize(), getResultType());
+        return new ValueMatchAggregatorFactory(getName(), getName(), getMaxSize(), getResultType());
     }
 
     @SuppressWarnings("rawtypes")
     @Override
     public AggregateCombiner makeAggregateCombiner() {
-        return new ObjectAggregateCombiner() {
-            @Nullable
-            private Object currentValue = null;
-
-            private boolean isDifferent = false;
+        return new ObjectAggregateCombiner<ValueMatchState>() {
+            private ValueMatchState state = ValueMatchState.empty();
 
             @Override
             public void reset(ColumnValueSelector selector) {
-                currentValue = selector.getObject();
-                isDifferent = false;
+                state = ValueMatchState.from(selector.getObject());
             }
 
             @Override
             public void fold(ColumnValueSelector selector) {
-                if (isDifferent) {
-                    return;
-                }
-
-                final Object value = selector.getObject();
-
-                if (currentValue == null) {
-                    currentValue = value;
-                } else if (!Objects.equals(currentValue, value)) {
-                    isDifferent = true;
+                if (!state.isDifferent()) {
+                    state = state.merge(ValueMatchState.from(selector.getObject()));
                 }
             }
 
-            @Nullable
             @Override
-            public Object getObject() {
-                return isDifferent ? null : currentValue;
+            public ValueMatchState getObject() {
+                return state;
             }
 
             @Override
-            public Class<?> classOfObject() {
-                return Object.class;
+            public Class<ValueMatchState> classOfObject() {
+                return ValueMatchState.class;
             }
         };
     }
 
     @Override
     public Object deserialize(Object object) {
-        return object;
+        return ValueMatchState.deserialize(object);
     }
 
+    /**
+     * Returns the matched value, converted to {@code outputType} when that is numeric.
+     */
     @Nullable
     @Override
     public Object finalizeComputation(@Nullable Object object) {
-        return object;
+        final Object value = object instanceof ValueMatchState ? ((ValueMatchState) object).getValue() : object;
+
+        return value != null && outputType.isNumeric()
+                ? DimensionHandlerUtils.convertObjectToType(value, outputType)
+                : value;
     }
 
     @Override
@@ -195,12 +362,12 @@ public class ValueMatchAggregatorFactory extends AggregatorFactory {
 
     @Override
     public AggregatorFactory withName(String newName) {
-        return new ValueMatchAggregatorFactory(newName, getFieldName(), getMaxIntermediateSize(), getResultType());
+        return new ValueMatchAggregatorFactory(newName, getFieldName(), getMaxSize(), getResultType());
     }
 
     @Override
     public ColumnType getIntermediateType() {
-        return getResultType();
+        return ValueMatchState.TYPE;
     }
 
     @Override
@@ -208,9 +375,13 @@ public class ValueMatchAggregatorFactory extends AggregatorFactory {
         return getOutputType();
     }
 
+    /**
+     * A numeric {@code outputType} only ever keeps a state byte and an 8-byte value, see
+     * {@link ValueMatchNumericBufferAggregator}, and {@code maxSize} is not used by the buffered aggregators.
+     */
     @Override
     public int getMaxIntermediateSize() {
-        return getMaxSize();
+        return outputType.isNumeric() ? ValueMatchNumericBufferAggregator.SIZE : getMaxSize();
     }
 
     @Override
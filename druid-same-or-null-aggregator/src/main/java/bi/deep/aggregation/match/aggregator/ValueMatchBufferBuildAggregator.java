@@ -15,116 +15,165 @@
  */
 package bi.deep.aggregation.match.aggregator;
 
-import java.io.Serializable;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.DIFFERENT;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.EMPTY;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.OVERFLOW;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.STATE_OFFSET;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE_OFFSET;
+
 import java.nio.ByteBuffer;
-import java.util.Arrays;
+import java.util.Objects;
 import javax.annotation.Nullable;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.druid.query.aggregation.BufferAggregator;
 import org.apache.druid.segment.ColumnValueSelector;
-import org.apache.druid.segment.nested.StructuredData;
 
+/**
+ * Generic sameOrNull buffer aggregator. The slot keeps a {@link ValueMatchFingerprint} next to the value, so rows are
+ * first compared by fingerprint and the stored value is only looked at when the fingerprints match.
+ *
+ * <p>Layout: {@code [state: byte][fingerprint: long][value]}. The fingerprint is valid in the {@code VALUE} and
+ * {@code OVERFLOW} states.
+ */
 public class ValueMatchBufferBuildAggregator implements BufferAggregator {
-    private static final int NIL = -1;
-    private static final byte TRUE = 1;
-    private static final byte FALSE = 0;
+    private static final int FINGERPRINT_OFFSET = VALUE_OFFSET; // 8 bytes for the fingerprint
+    private static final int STORED_VALUE_OFFSET = FINGERPRINT_OFFSET + Long.BYTES; // Start of the stored value
 
-    private static final int FLAG_OFFSET = 0; // 1 byte for isDifferent flag
-    private static final int LENGTH_OFFSET = 1; // 4 bytes for object byte length
-    private static final int VALUE_OFFSET = 5; // Start of object bytes
+    /**
+     * Smallest slot that still holds the state and the fingerprint; the value itself then always overflows.
+     */
+    static final int MIN_SIZE = STORED_VALUE_OFFSET;
 
     private final ColumnValueSelector<?> selector;
+    private final int maxSize;
+
+    // Last decoded Java-serialized value, reused while rows keep hitting the same slot
+    @Nullable
+    private ByteBuffer cachedBuffer;
+
+    private int cachedPosition;
+
+    @Nullable
+    private Object cachedValue;
 
-    public ValueMatchBufferBuildAggregator(final ColumnValueSelector<?> selector) {
+    public ValueMatchBufferBuildAggregator(final ColumnValueSelector<?> selector, final int maxSize) {
         this.selector = selector;
+        this.maxSize = maxSize;
     }
 
     @Override
     public void init(ByteBuffer buffer, int position) {
-        buffer.put(position + FLAG_OFFSET, FALSE); // isDifferent = false
-        buffer.putInt(position + LENGTH_OFFSET, NIL); // No object stored
+        buffer.put(position + STATE_OFFSET, EMPTY);
+        invalidate(buffer, position);
     }
 
     @Override
     public void aggregate(ByteBuffer buf, int position) {
-        byte isDifferent = buf.get(position + FLAG_OFFSET);
+        final byte state = buf.get(position + STATE_OFFSET);
 
-        if (isDifferent == TRUE) {
+        if (state == DIFFERENT) {
             return; // Already different, exit early
         }
 
-        Object obj = selector.getObject();
+        final Object obj = selector.getObject();
 
         if (obj == null) {
             return; // Ignore nulls objects
         }
 
-        if (obj instanceof StructuredData) {
-            obj = ((StructuredData) obj).getValue();
+        if (obj instanceof ValueMatchState) {
+            merge(buf, position, state, (ValueMatchState) obj);
+        } else if (ValueMatchCodec.isSupported(obj)) {
+            add(buf, position, state, obj);
         }
+    }
 
-        if (!(obj instanceof Serializable)) {
-            return; // Ignore non-serializable objects
+    private void merge(ByteBuffer buf, int position, byte state, ValueMatchState other) {
+        if (other.isDifferent()) {
+            buf.put(position + STATE_OFFSET, DIFFERENT);
+        } else if (other.isOverflow()) {
+            final long fingerprint = other.getFingerprint();
+
+            if (state == EMPTY) {
+                buf.putLong(position + FINGERPRINT_OFFSET, fingerprint);
+                buf.put(position + STATE_OFFSET, OVERFLOW);
+            } else if (buf.getLong(position + FINGERPRINT_OFFSET) != fingerprint) {
+                buf.put(position + STATE_OFFSET, DIFFERENT);
+            } else {
+                buf.put(position + STATE_OFFSET, OVERFLOW);
+            }
+        } else if (!other.isEmpty()) {
+            add(buf, position, state, other.getValue());
         }
+    }
 
-        byte[] objBytes = SerializationUtils.serialize((Serializable) obj); // Serialize object
-        int storedLength = buf.getInt(position + LENGTH_OFFSET);
-
-        if (storedLength == NIL) {
-            // First value, store it
-            buf.putInt(position + LENGTH_OFFSET, objBytes.length);
-            buf.position(position + VALUE_OFFSET);
-            buf.put(objBytes);
-        } else {
-            // Compare stored bytes with new value
-            byte[] storedBytes = new byte[storedLength];
-            buf.position(position + VALUE_OFFSET);
-            buf.get(storedBytes);
-
-            if (!Arrays.equals(storedBytes, objBytes)) {
-                buf.put(position + FLAG_OFFSET, TRUE); // Different value found, set flag
-            }
+    private void add(ByteBuffer buf, int position, byte state, Object value) {
+        final long fingerprint = ValueMatchFingerprint.of(value);
+
+        if (state == EMPTY) {
+            // First value, store it unless it does not fit into the slot
+            final int written =
+                    ValueMatchCodec.write(buf, position + STORED_VALUE_OFFSET, value, maxSize - STORED_VALUE_OFFSET);
+            buf.putLong(position + FINGERPRINT_OFFSET, fingerprint);
+            buf.put(position + STATE_OFFSET, written < 0 ? OVERFLOW : VALUE);
+            invalidate(buf, position);
+        } else if (buf.getLong(position + FINGERPRINT_OFFSET) != fingerprint) {
+            buf.put(position + STATE_OFFSET, DIFFERENT);
+        } else if (state == VALUE && !matchesStored(buf, position, value)) {
+            buf.put(position + STATE_OFFSET, DIFFERENT);
         }
     }
 
-    @Override
-    public void relocate(int oldPosition, int newPosition, ByteBuffer oldBuffer, ByteBuffer newBuffer) {
-        // Copy isDifferent flag (1 byte)
-        byte isDifferent = oldBuffer.get(oldPosition + FLAG_OFFSET);
-        newBuffer.put(newPosition + FLAG_OFFSET, isDifferent);
-
-        // Copy length (4 bytes)
-        int length = oldBuffer.getInt(oldPosition + LENGTH_OFFSET);
-        newBuffer.putInt(newPosition + LENGTH_OFFSET, length);
-
-        if (length != NIL) {
-            // Copy actual serialized object bytes
-            byte[] objectBytes = new byte[length];
-            oldBuffer.position(oldPosition + VALUE_OFFSET);
-            oldBuffer.get(objectBytes);
-
-            newBuffer.position(newPosition + VALUE_OFFSET);
-            newBuffer.put(objectBytes);
+    /**
+     * Full comparison after a fingerprint match. Values are compared in place; values stored with the Java
+     * serialization fallback are decoded once and kept while the same slot is aggregated.
+     */
+    private boolean matchesStored(ByteBuffer buf, int position, Object value) {
+        final int valuePosition = position + STORED_VALUE_OFFSET;
+
+        if (!ValueMatchCodec.isObject(buf, valuePosition)) {
+            return ValueMatchCodec.matches(buf, valuePosition, value);
+        }
+
+        if (cachedBuffer != buf || cachedPosition != position) {
+            cachedValue = ValueMatchCodec.read(buf, valuePosition);
+            cachedBuffer = buf;
+            cachedPosition = position;
         }
+
+        return Objects.deepEquals(cachedValue, ValueMatchCodec.unwrap(value))
+                || ValueMatchCodec.matches(buf, valuePosition, value);
     }
 
-    @Nullable
-    @Override
-    public Object get(ByteBuffer buf, int position) {
-        if (buf.get(position + FLAG_OFFSET) == TRUE) {
-            return null; // Different values found, return null
+    private void invalidate(ByteBuffer buf, int position) {
+        if (cachedBuffer == buf && cachedPosition == position) {
+            cachedBuffer = null;
+            cachedValue = null;
         }
+    }
 
-        int length = buf.getInt(position + LENGTH_OFFSET);
-        if (length == NIL) {
-            return null; // No object stored
+    @Override
+    public void relocate(int oldPosition, int newPosition, ByteBuffer oldBuffer, ByteBuffer newBuffer) {
+        for (int i = 0; i < maxSize; i++) {
+            newBuffer.put(newPosition + i, oldBuffer.get(oldPosition + i));
         }
 
-        byte[] bytes = new byte[length];
-        buf.position(position + VALUE_OFFSET);
-        buf.get(bytes);
+        invalidate(oldBuffer, oldPosition);
+        invalidate(newBuffer, newPosition);
+    }
 
-        return SerializationUtils.deserialize(bytes);
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        switch (state) {
+            case VALUE:
+                return ValueMatchState.of(ValueMatchCodec.read(buf, position + STORED_VALUE_OFFSET));
+            case OVERFLOW:
+                return ValueMatchState.overflow(buf.getLong(position + FINGERPRINT_OFFSET));
+            default:
+                return ValueMatchState.ofState(state);
+        }
     }
 
     @Override
@@ -15,53 +15,48 @@
  */
 package bi.deep.aggregation.match.aggregator;
 
-import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
-import javax.annotation.Nullable;
 import org.apache.druid.query.aggregation.Aggregator;
 import org.apache.druid.segment.ColumnValueSelector;
 
+/**
+ * Generic sameOrNull heap aggregator. The first value is bounded the same way as in
+ * {@link ValueMatchBufferBuildAggregator}: when it does not fit into {@code maxSize} it is kept as an overflow, so that
+ * the result does not depend on which of the two aggregators ran.
+ */
 public class ValueMatchBuildAggregator implements Aggregator {
     private final ColumnValueSelector<?> selector;
-    private final AtomicReference<Object> currentValue;
-    private final AtomicBoolean isDifferent;
+    private final int maxValueBytes;
+    private ValueMatchState state;
 
-    public ValueMatchBuildAggregator(final ColumnValueSelector<?> selector) {
+    public ValueMatchBuildAggregator(final ColumnValueSelector<?> selector, final int maxSize) {
         this.selector = selector;
-        this.currentValue = new AtomicReference<>();
-        this.isDifferent = new AtomicBoolean(false);
+        this.maxValueBytes = maxSize - ValueMatchBufferBuildAggregator.MIN_SIZE;
+        this.state = ValueMatchState.empty();
     }
 
     @Override
-    public void aggregate() {
-        if (isDifferent.get()) {
+    public synchronized void aggregate() {
+        if (state.isDifferent()) {
             return;
         }
 
         final Object obj = selector.getObject();
+        final ValueMatchState next;
 
-        if (obj == null) {
+        if (obj instanceof ValueMatchState) {
+            next = state.merge((ValueMatchState) obj);
+        } else if (obj != null && ValueMatchCodec.isSupported(obj)) {
+            next = state.add(obj);
+        } else {
             return;
         }
 
-        currentValue.updateAndGet(value -> {
-            if (value == null) {
-                return obj; // initialize
-            }
-
-            if (!isDifferent.get() && !Objects.equals(value, obj)) {
-                isDifferent.set(true);
-            }
-
-            return value; // Retain value
-        });
+        state = state.isEmpty() ? next.limit(maxValueBytes) : next;
     }
 
-    @Nullable
     @Override
-    public Object get() {
-        return isDifferent.get() ? null : currentValue.get();
+    public synchronized Object get() {
+        return state;
     }
 
     @Override
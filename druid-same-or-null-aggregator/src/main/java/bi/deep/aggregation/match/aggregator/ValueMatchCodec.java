@@ -0,0 +1,559 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import org.apache.commons.lang3.SerializationUtils;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.java.util.common.ISE;
+import org.apache.druid.segment.column.TypeStrategies;
+import org.apache.druid.segment.nested.StructuredData;
+
+/**
+ * Binary encoding of a single sameOrNull value: a type tag followed by the value. Numbers and strings are written with
+ * the matching {@link org.apache.druid.segment.column.TypeStrategy}, booleans as a single byte, and lists, arrays and
+ * maps as their number of elements followed by each element (each key and value for maps) encoded the same way, so
+ * that nested values are compared in place without decoding them. Leaf values of other types, which Druid columns do
+ * not produce, fall back to Java serialization.
+ */
+final class ValueMatchCodec {
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte FLOAT = 3;
+    private static final byte STRING = 4;
+    private static final byte OBJECT = 5;
+    private static final byte NULL = 6;
+    private static final byte INT = 7;
+    private static final byte BOOLEAN = 8;
+    private static final byte LIST = 9;
+    private static final byte ARRAY = 10;
+    private static final byte MAP = 11;
+
+    private static final int TAG_SIZE = 1;
+
+    private static final int[] UTF8_LEAD = {0, 0x00, 0xC0, 0xE0, 0xF0};
+
+    private ValueMatchCodec() {}
+
+    static Object unwrap(Object value) {
+        return value instanceof StructuredData ? ((StructuredData) value).getValue() : value;
+    }
+
+    static boolean isSupported(Object value) {
+        final Object unwrapped = unwrap(value);
+
+        return unwrapped instanceof List
+                || unwrapped instanceof Map
+                || unwrapped instanceof Object[]
+                || unwrapped instanceof Serializable;
+    }
+
+    /**
+     * Returns the number of bytes the value takes once encoded, or a negative number if it cannot be encoded.
+     */
+    static int sizeOf(@Nullable Object value) {
+        final Object unwrapped = value == null ? null : unwrap(value);
+
+        if (unwrapped == null) {
+            return TAG_SIZE;
+        } else if (unwrapped instanceof Long || unwrapped instanceof Double) {
+            return TAG_SIZE + Long.BYTES;
+        } else if (unwrapped instanceof Integer || unwrapped instanceof Float) {
+            return TAG_SIZE + Integer.BYTES;
+        } else if (unwrapped instanceof Boolean) {
+            return TAG_SIZE + Byte.BYTES;
+        } else if (unwrapped instanceof String) {
+            return TAG_SIZE + TypeStrategies.STRING.estimateSizeBytes((String) unwrapped);
+        } else if (unwrapped instanceof List) {
+            return sizeOfElements((List<?>) unwrapped);
+        } else if (unwrapped instanceof Object[]) {
+            return sizeOfElements(Arrays.asList((Object[]) unwrapped));
+        } else if (unwrapped instanceof Map) {
+            int size = TAG_SIZE + Integer.BYTES;
+
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) unwrapped).entrySet()) {
+                final int keySize = sizeOf(entry.getKey());
+                final int valueSize = sizeOf(entry.getValue());
+
+                if (keySize < 0 || valueSize < 0) {
+                    return -1;
+                }
+
+                size += keySize + valueSize;
+            }
+
+            return size;
+        } else if (unwrapped instanceof Serializable) {
+            return TAG_SIZE + Integer.BYTES + SerializationUtils.serialize((Serializable) unwrapped).length;
+        }
+
+        return -1;
+    }
+
+    private static int sizeOfElements(List<?> elements) {
+        int size = TAG_SIZE + Integer.BYTES;
+
+        for (Object element : elements) {
+            final int elementSize = sizeOf(element);
+
+            if (elementSize < 0) {
+                return -1;
+            }
+
+            size += elementSize;
+        }
+
+        return size;
+    }
+
+    /**
+     * Writes the value at the given position.
+     *
+     * @return number of bytes written, or a negative number if the value does not fit into {@code maxBytes} or cannot
+     *     be encoded
+     */
+    static int write(ByteBuffer buf, int position, @Nullable Object value, int maxBytes) {
+        if (maxBytes < TAG_SIZE) {
+            return -1;
+        }
+
+        final Object unwrapped = value == null ? null : unwrap(value);
+        final int valuePosition = position + TAG_SIZE;
+        final int maxValueBytes = maxBytes - TAG_SIZE;
+        final byte tag;
+        final int written;
+
+        if (unwrapped == null) {
+            tag = NULL;
+            written = 0;
+        } else if (unwrapped instanceof Long) {
+            tag = LONG;
+            written = TypeStrategies.LONG.write(buf, valuePosition, (Long) unwrapped, maxValueBytes);
+        } else if (unwrapped instanceof Double) {
+            tag = DOUBLE;
+            written = TypeStrategies.DOUBLE.write(buf, valuePosition, (Double) unwrapped, maxValueBytes);
+        } else if (unwrapped instanceof Float) {
+            tag = FLOAT;
+            written = TypeStrategies.FLOAT.write(buf, valuePosition, (Float) unwrapped, maxValueBytes);
+        } else if (unwrapped instanceof String) {
+            tag = STRING;
+            written = TypeStrategies.STRING.write(buf, valuePosition, (String) unwrapped, maxValueBytes);
+        } else if (unwrapped instanceof Integer) {
+            tag = INT;
+            written = writeInt(buf, valuePosition, (Integer) unwrapped, maxValueBytes);
+        } else if (unwrapped instanceof Boolean) {
+            tag = BOOLEAN;
+            written = writeBoolean(buf, valuePosition, (Boolean) unwrapped, maxValueBytes);
+        } else if (unwrapped instanceof List) {
+            tag = LIST;
+            written = writeElements(buf, valuePosition, (List<?>) unwrapped, maxValueBytes);
+        } else if (unwrapped instanceof Object[]) {
+            tag = ARRAY;
+            written = writeElements(buf, valuePosition, Arrays.asList((Object[]) unwrapped), maxValueBytes);
+        } else if (unwrapped instanceof Map) {
+            tag = MAP;
+            written = writeEntries(buf, valuePosition, (Map<?, ?>) unwrapped, maxValueBytes);
+        } else if (unwrapped instanceof Serializable) {
+            tag = OBJECT;
+            written = writeObject(buf, valuePosition, (Serializable) unwrapped, maxValueBytes);
+        } else {
+            return -1;
+        }
+
+        if (written < 0) {
+            return -1;
+        }
+
+        buf.put(position, tag);
+        return TAG_SIZE + written;
+    }
+
+    private static int writeInt(ByteBuffer buf, int position, int value, int maxBytes) {
+        if (maxBytes < Integer.BYTES) {
+            return -1;
+        }
+
+        buf.putInt(position, value);
+        return Integer.BYTES;
+    }
+
+    private static int writeBoolean(ByteBuffer buf, int position, boolean value, int maxBytes) {
+        if (maxBytes < Byte.BYTES) {
+            return -1;
+        }
+
+        buf.put(position, value ? (byte) 1 : (byte) 0);
+        return Byte.BYTES;
+    }
+
+    private static int writeElements(ByteBuffer buf, int position, List<?> elements, int maxBytes) {
+        if (maxBytes < Integer.BYTES) {
+            return -1;
+        }
+
+        int offset = Integer.BYTES;
+
+        for (Object element : elements) {
+            final int written = write(buf, position + offset, element, maxBytes - offset);
+
+            if (written < 0) {
+                return -1;
+            }
+
+            offset += written;
+        }
+
+        buf.putInt(position, elements.size());
+        return offset;
+    }
+
+    private static int writeEntries(ByteBuffer buf, int position, Map<?, ?> map, int maxBytes) {
+        if (maxBytes < Integer.BYTES) {
+            return -1;
+        }
+
+        int offset = Integer.BYTES;
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            final int keyWritten = write(buf, position + offset, entry.getKey(), maxBytes - offset);
+
+            if (keyWritten < 0) {
+                return -1;
+            }
+
+            offset += keyWritten;
+
+            final int valueWritten = write(buf, position + offset, entry.getValue(), maxBytes - offset);
+
+            if (valueWritten < 0) {
+                return -1;
+            }
+
+            offset += valueWritten;
+        }
+
+        buf.putInt(position, map.size());
+        return offset;
+    }
+
+    private static int writeObject(ByteBuffer buf, int position, Serializable value, int maxBytes) {
+        final byte[] bytes = SerializationUtils.serialize(value);
+
+        if (Integer.BYTES + bytes.length > maxBytes) {
+            return -1;
+        }
+
+        buf.putInt(position, bytes.length);
+        buf.put(position + Integer.BYTES, bytes);
+        return Integer.BYTES + bytes.length;
+    }
+
+    @Nullable
+    static Object read(ByteBuffer buf, int position) {
+        final byte tag = buf.get(position);
+        final int valuePosition = position + TAG_SIZE;
+
+        switch (tag) {
+            case NULL:
+                return null;
+            case LONG:
+                return TypeStrategies.LONG.read(buf, valuePosition);
+            case DOUBLE:
+                return TypeStrategies.DOUBLE.read(buf, valuePosition);
+            case FLOAT:
+                return TypeStrategies.FLOAT.read(buf, valuePosition);
+            case STRING:
+                return TypeStrategies.STRING.read(buf, valuePosition);
+            case INT:
+                return buf.getInt(valuePosition);
+            case BOOLEAN:
+                return buf.get(valuePosition) != 0;
+            case LIST:
+                return readElements(buf, valuePosition);
+            case ARRAY:
+                return readElements(buf, valuePosition).toArray();
+            case MAP:
+                return readEntries(buf, valuePosition);
+            case OBJECT:
+                return SerializationUtils.deserialize(readObjectBytes(buf, valuePosition));
+            default:
+                throw new ISE("Unknown sameOrNull value type [%s]", tag);
+        }
+    }
+
+    private static List<Object> readElements(ByteBuffer buf, int position) {
+        final int count = buf.getInt(position);
+        final List<Object> elements = new ArrayList<>(count);
+        int offset = position + Integer.BYTES;
+
+        for (int i = 0; i < count; i++) {
+            elements.add(read(buf, offset));
+            offset = end(buf, offset);
+        }
+
+        return elements;
+    }
+
+    private static Map<Object, Object> readEntries(ByteBuffer buf, int position) {
+        final int count = buf.getInt(position);
+        final Map<Object, Object> map = new LinkedHashMap<>();
+        int offset = position + Integer.BYTES;
+
+        for (int i = 0; i < count; i++) {
+            final Object key = read(buf, offset);
+            offset = end(buf, offset);
+            map.put(key, read(buf, offset));
+            offset = end(buf, offset);
+        }
+
+        return map;
+    }
+
+    /**
+     * Returns the number of bytes taken by the value stored at the given position.
+     */
+    static int size(ByteBuffer buf, int position) {
+        return end(buf, position) - position;
+    }
+
+    /**
+     * Returns the position right after the value stored at the given position.
+     */
+    private static int end(ByteBuffer buf, int position) {
+        final int valuePosition = position + TAG_SIZE;
+
+        switch (buf.get(position)) {
+            case NULL:
+                return valuePosition;
+            case LONG:
+            case DOUBLE:
+                return valuePosition + Long.BYTES;
+            case INT:
+            case FLOAT:
+                return valuePosition + Integer.BYTES;
+            case BOOLEAN:
+                return valuePosition + Byte.BYTES;
+            case STRING:
+            case OBJECT:
+                return valuePosition + Integer.BYTES + buf.getInt(valuePosition);
+            case LIST:
+            case ARRAY:
+                return skip(buf, valuePosition, buf.getInt(valuePosition));
+            case MAP:
+                return skip(buf, valuePosition, 2 * buf.getInt(valuePosition));
+            default:
+                throw new ISE("Unknown sameOrNull value type [%s]", buf.get(position));
+        }
+    }
+
+    private static int skip(ByteBuffer buf, int position, int values) {
+        int offset = position + Integer.BYTES;
+
+        for (int i = 0; i < values; i++) {
+            offset = end(buf, offset);
+        }
+
+        return offset;
+    }
+
+    /**
+     * Compares the value stored at the given position with the given one without decoding it. Only maps stored in
+     * another iteration order than the given one, and Java-serialized values, are decoded.
+     */
+    static boolean matches(ByteBuffer buf, int position, Object value) {
+        return match(buf, position, value) >= 0;
+    }
+
+    /**
+     * Returns the position right after the stored value when it matches the given one, or a negative number.
+     */
+    private static int match(ByteBuffer buf, int position, @Nullable Object value) {
+        final Object unwrapped = value == null ? null : unwrap(value);
+        final int valuePosition = position + TAG_SIZE;
+
+        switch (buf.get(position)) {
+            case NULL:
+                return unwrapped == null ? valuePosition : -1;
+            case LONG:
+                return unwrapped instanceof Long && buf.getLong(valuePosition) == (Long) unwrapped
+                        ? valuePosition + Long.BYTES
+                        : -1;
+            case DOUBLE:
+                return unwrapped instanceof Double
+                                && Double.doubleToLongBits(buf.getDouble(valuePosition))
+                                        == Double.doubleToLongBits((Double) unwrapped)
+                        ? valuePosition + Double.BYTES
+                        : -1;
+            case FLOAT:
+                return unwrapped instanceof Float
+                                && Float.floatToIntBits(buf.getFloat(valuePosition))
+                                        == Float.floatToIntBits((Float) unwrapped)
+                        ? valuePosition + Float.BYTES
+                        : -1;
+            case INT:
+                return unwrapped instanceof Integer && buf.getInt(valuePosition) == (Integer) unwrapped
+                        ? valuePosition + Integer.BYTES
+                        : -1;
+            case BOOLEAN:
+                return unwrapped instanceof Boolean && (buf.get(valuePosition) != 0) == (Boolean) unwrapped
+                        ? valuePosition + Byte.BYTES
+                        : -1;
+            case STRING:
+                return unwrapped instanceof String && matchesUtf8(buf, valuePosition, (String) unwrapped)
+                        ? valuePosition + Integer.BYTES + buf.getInt(valuePosition)
+                        : -1;
+            case LIST:
+                return unwrapped instanceof List ? matchElements(buf, valuePosition, (List<?>) unwrapped) : -1;
+            case ARRAY:
+                return unwrapped instanceof Object[] ? matchElements(buf, valuePosition, (Object[]) unwrapped) : -1;
+            case MAP:
+                return unwrapped instanceof Map ? matchEntries(buf, valuePosition, (Map<?, ?>) unwrapped) : -1;
+            default:
+                return Objects.deepEquals(read(buf, position), unwrapped) ? end(buf, position) : -1;
+        }
+    }
+
+    private static int matchElements(ByteBuffer buf, int position, List<?> elements) {
+        if (buf.getInt(position) != elements.size()) {
+            return -1;
+        }
+
+        int offset = position + Integer.BYTES;
+
+        for (Object element : elements) {
+            offset = match(buf, offset, element);
+
+            if (offset < 0) {
+                return -1;
+            }
+        }
+
+        return offset;
+    }
+
+    private static int matchElements(ByteBuffer buf, int position, Object[] elements) {
+        if (buf.getInt(position) != elements.length) {
+            return -1;
+        }
+
+        int offset = position + Integer.BYTES;
+
+        for (Object element : elements) {
+            offset = match(buf, offset, element);
+
+            if (offset < 0) {
+                return -1;
+            }
+        }
+
+        return offset;
+    }
+
+    private static int matchEntries(ByteBuffer buf, int position, Map<?, ?> map) {
+        if (buf.getInt(position) != map.size()) {
+            return -1;
+        }
+
+        int offset = position + Integer.BYTES;
+
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            final int keyEnd = match(buf, offset, entry.getKey());
+            offset = keyEnd < 0 ? -1 : match(buf, keyEnd, entry.getValue());
+
+            if (offset < 0) {
+                // Equal maps may iterate in another order, compare the decoded map then
+                return map.equals(readEntries(buf, position)) ? skip(buf, position, 2 * map.size()) : -1;
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Whether the value at the given position is stored with the Java serialization fallback.
+     */
+    static boolean isObject(ByteBuffer buf, int position) {
+        return buf.get(position) == OBJECT;
+    }
+
+    /**
+     * Compares a string with the UTF-8 bytes written by {@link TypeStrategies#STRING}, encoding it on the fly instead
+     * of decoding the stored value.
+     */
+    private static boolean matchesUtf8(ByteBuffer buf, int position, String value) {
+        int offset = position + Integer.BYTES;
+        final int end = offset + buf.getInt(position);
+
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            final int codePoint;
+
+            if (Character.isHighSurrogate(c)
+                    && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, value.charAt(++i));
+            } else if (Character.isSurrogate(c)) {
+                codePoint = '?'; // Unpaired surrogates are replaced when encoding to UTF-8
+            } else {
+                codePoint = c;
+            }
+
+            final int size = codePoint < 0x80 ? 1 : codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+
+            if (offset + size > end) {
+                return false;
+            }
+
+            for (int k = 0; k < size; k++) {
+                final int shift = 6 * (size - 1 - k);
+                final int expected =
+                        k == 0 ? UTF8_LEAD[size] | (codePoint >> shift) : 0x80 | ((codePoint >> shift) & 0x3F);
+
+                if (buf.get(offset++) != (byte) expected) {
+                    return false;
+                }
+            }
+        }
+
+        return offset == end;
+    }
+
+    private static byte[] readObjectBytes(ByteBuffer buf, int position) {
+        final byte[] bytes = new byte[buf.getInt(position)];
+        buf.get(position + Integer.BYTES, bytes);
+        return bytes;
+    }
+
+    static byte[] toBytes(Object value) {
+        final int size = sizeOf(value);
+
+        if (size < 0) {
+            throw new IAE("Cannot encode sameOrNull value of type [%s]", value.getClass().getName());
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate(size);
+        write(buf, 0, value, size);
+        return buf.array();
+    }
+}
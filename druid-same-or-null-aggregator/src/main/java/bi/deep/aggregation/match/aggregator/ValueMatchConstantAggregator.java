@@ -0,0 +1,60 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import org.apache.druid.query.aggregation.Aggregator;
+
+/**
+ * Heap counterpart of {@link ValueMatchConstantBufferAggregator}.
+ */
+public class ValueMatchConstantAggregator implements Aggregator {
+    private final Object value;
+    private boolean seen;
+
+    public ValueMatchConstantAggregator(final Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public void aggregate() {
+        seen = true;
+    }
+
+    @Override
+    public Object get() {
+        return seen ? ValueMatchState.of(value) : ValueMatchState.empty();
+    }
+
+    @Override
+    public float getFloat() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public long getLong() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public double getDouble() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.EMPTY;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.STATE_OFFSET;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+import org.apache.druid.query.aggregation.VectorAggregator;
+
+/**
+ * Vectorized counterpart of {@link ValueMatchConstantBufferAggregator}.
+ */
+public class ValueMatchConstantVectorAggregator implements VectorAggregator {
+    private final Object value;
+
+    public ValueMatchConstantVectorAggregator(final Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public void init(ByteBuffer buf, int position) {
+        buf.put(position + STATE_OFFSET, EMPTY);
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int position, int startRow, int endRow) {
+        if (startRow < endRow) {
+            buf.put(position + STATE_OFFSET, VALUE);
+        }
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int numRows, int[] positions, @Nullable int[] rows, int positionOffset) {
+        for (int i = 0; i < numRows; i++) {
+            buf.put(positions[i] + positionOffset + STATE_OFFSET, VALUE);
+        }
+    }
+
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        return buf.get(position + STATE_OFFSET) == VALUE ? ValueMatchState.of(value) : ValueMatchState.empty();
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.DIFFERENT;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.EMPTY;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.STATE_OFFSET;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE_OFFSET;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+import org.apache.druid.query.aggregation.VectorAggregator;
+import org.apache.druid.segment.vector.VectorValueSelector;
+
+public class ValueMatchDoubleVectorAggregator implements VectorAggregator {
+    private final VectorValueSelector selector;
+
+    public ValueMatchDoubleVectorAggregator(final VectorValueSelector selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public void init(ByteBuffer buf, int position) {
+        buf.put(position + STATE_OFFSET, EMPTY);
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int position, int startRow, int endRow) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        if (state == DIFFERENT) {
+            return; // Already different, exit early
+        }
+
+        final double[] vector = selector.getDoubleVector();
+        final boolean[] nulls = selector.getNullVector();
+        int row = startRow;
+
+        if (state == EMPTY) {
+            while (row < endRow && nulls != null && nulls[row]) {
+                row++;
+            }
+
+            if (row == endRow) {
+                return; // Only nulls in this batch
+            }
+
+            buf.put(position + STATE_OFFSET, VALUE);
+            buf.putDouble(position + VALUE_OFFSET, vector[row++]);
+        }
+
+        final double stored = buf.getDouble(position + VALUE_OFFSET);
+
+        if (nulls == null) {
+            for (; row < endRow; row++) {
+                if (Double.doubleToLongBits(vector[row]) != Double.doubleToLongBits(stored)) {
+                    buf.put(position + STATE_OFFSET, DIFFERENT);
+                    return;
+                }
+            }
+        } else {
+            for (; row < endRow; row++) {
+                if (!nulls[row] && Double.doubleToLongBits(vector[row]) != Double.doubleToLongBits(stored)) {
+                    buf.put(position + STATE_OFFSET, DIFFERENT);
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int numRows, int[] positions, @Nullable int[] rows, int positionOffset) {
+        final double[] vector = selector.getDoubleVector();
+        final boolean[] nulls = selector.getNullVector();
+
+        for (int i = 0; i < numRows; i++) {
+            final int row = rows != null ? rows[i] : i;
+
+            if (nulls != null && nulls[row]) {
+                continue;
+            }
+
+            final int position = positions[i] + positionOffset;
+            final byte state = buf.get(position + STATE_OFFSET);
+
+            if (state == EMPTY) {
+                buf.put(position + STATE_OFFSET, VALUE);
+                buf.putDouble(position + VALUE_OFFSET, vector[row]);
+            } else if (state == VALUE) {
+                final double stored = buf.getDouble(position + VALUE_OFFSET);
+
+                if (Double.doubleToLongBits(stored) != Double.doubleToLongBits(vector[row])) {
+                    buf.put(position + STATE_OFFSET, DIFFERENT);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        return state == VALUE
+                ? ValueMatchState.of(buf.getDouble(position + VALUE_OFFSET))
+                : ValueMatchState.ofState(state);
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/**
+ * 64-bit fingerprint of a sameOrNull value, computed by walking the value instead of serializing it. Equal values
+ * always get equal fingerprints: strings, numbers, lists, arrays and maps are hashed by content (maps independently
+ * of their iteration order), anything else by its {@link Object#hashCode()}.
+ */
+final class ValueMatchFingerprint {
+    private static final long OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long PRIME = 0x100000001B3L;
+
+    private static final long NULL = 0;
+    private static final long LONG = 1;
+    private static final long DOUBLE = 2;
+    private static final long FLOAT = 3;
+    private static final long STRING = 4;
+    private static final long LIST = 5;
+    private static final long ARRAY = 6;
+    private static final long MAP = 7;
+    private static final long OBJECT = 8;
+
+    private ValueMatchFingerprint() {}
+
+    static long of(@Nullable Object value) {
+        final Object unwrapped = value == null ? null : ValueMatchCodec.unwrap(value);
+
+        if (unwrapped == null) {
+            return finish(step(OFFSET_BASIS, NULL));
+        }
+
+        if (unwrapped instanceof String) {
+            final String string = (String) unwrapped;
+            long hash = step(step(OFFSET_BASIS, STRING), string.length());
+
+            for (int i = 0; i < string.length(); i++) {
+                hash = step(hash, string.charAt(i));
+            }
+
+            return finish(hash);
+        }
+
+        if (unwrapped instanceof Long) {
+            return finish(step(step(OFFSET_BASIS, LONG), (Long) unwrapped));
+        }
+
+        if (unwrapped instanceof Double) {
+            return finish(step(step(OFFSET_BASIS, DOUBLE), Double.doubleToLongBits((Double) unwrapped)));
+        }
+
+        if (unwrapped instanceof Float) {
+            return finish(step(step(OFFSET_BASIS, FLOAT), Float.floatToIntBits((Float) unwrapped)));
+        }
+
+        if (unwrapped instanceof List) {
+            final List<?> list = (List<?>) unwrapped;
+            long hash = step(step(OFFSET_BASIS, LIST), list.size());
+
+            for (Object element : list) {
+                hash = step(hash, of(element));
+            }
+
+            return finish(hash);
+        }
+
+        if (unwrapped instanceof Object[]) {
+            final Object[] array = (Object[]) unwrapped;
+            long hash = step(step(OFFSET_BASIS, ARRAY), array.length);
+
+            for (Object element : array) {
+                hash = step(hash, of(element));
+            }
+
+            return finish(hash);
+        }
+
+        if (unwrapped instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) unwrapped;
+            long entries = 0;
+
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                entries += finish(step(of(entry.getKey()), of(entry.getValue())));
+            }
+
+            return finish(step(step(step(OFFSET_BASIS, MAP), map.size()), entries));
+        }
+
+        return finish(step(step(OFFSET_BASIS, OBJECT), unwrapped.hashCode()));
+    }
+
+    private static long step(long hash, long value) {
+        return (hash ^ value) * PRIME;
+    }
+
+    /**
+     * MurmurHash3 finalizer, spreading the bits of the FNV-style accumulator.
+     */
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB93FE53E86A5L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.DIFFERENT;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.EMPTY;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.STATE_OFFSET;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE_OFFSET;
+
+import java.nio.ByteBuffer;
+import org.apache.druid.query.aggregation.BufferAggregator;
+import org.apache.druid.query.monomorphicprocessing.RuntimeShapeInspector;
+import org.apache.druid.segment.BaseFloatColumnValueSelector;
+
+/**
+ * Allocation-free {@link BufferAggregator} for float columns, keeping a state flag followed by the raw value.
+ */
+public class ValueMatchFloatBufferAggregator implements BufferAggregator {
+    private final BaseFloatColumnValueSelector selector;
+
+    public ValueMatchFloatBufferAggregator(final BaseFloatColumnValueSelector selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public void init(ByteBuffer buf, int position) {
+        buf.put(position + STATE_OFFSET, EMPTY);
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        if (state == DIFFERENT || selector.isNull()) {
+            return;
+        }
+
+        final float value = selector.getFloat();
+
+        if (state == EMPTY) {
+            buf.put(position + STATE_OFFSET, VALUE);
+            buf.putFloat(position + VALUE_OFFSET, value);
+        } else {
+            final float stored = buf.getFloat(position + VALUE_OFFSET);
+
+            if (Float.floatToIntBits(stored) != Float.floatToIntBits(value)) {
+                buf.put(position + STATE_OFFSET, DIFFERENT);
+            }
+        }
+    }
+
+    private float getStored(ByteBuffer buf, int position) {
+        return buf.getFloat(position + VALUE_OFFSET);
+    }
+
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        return state == VALUE ? ValueMatchState.of(getStored(buf, position)) : ValueMatchState.ofState(state);
+    }
+
+    @Override
+    public boolean isNull(ByteBuffer buf, int position) {
+        return buf.get(position + STATE_OFFSET) != VALUE;
+    }
+
+    @Override
+    public float getFloat(ByteBuffer buf, int position) {
+        return getStored(buf, position);
+    }
+
+    @Override
+    public double getDouble(ByteBuffer buf, int position) {
+        return getStored(buf, position);
+    }
+
+    @Override
+    public long getLong(ByteBuffer buf, int position) {
+        return (long) getStored(buf, position);
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+
+    @Override
+    public void inspectRuntimeShape(RuntimeShapeInspector inspector) {
+        inspector.visit("selector", selector);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import org.apache.druid.query.aggregation.Aggregator;
+import org.apache.druid.segment.BaseLongColumnValueSelector;
+
+public class ValueMatchLongAggregator implements Aggregator {
+    private final BaseLongColumnValueSelector selector;
+    private long value;
+    private boolean hasValue;
+    private boolean isDifferent;
+
+    public ValueMatchLongAggregator(final BaseLongColumnValueSelector selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public void aggregate() {
+        if (isDifferent || selector.isNull()) {
+            return;
+        }
+
+        final long current = selector.getLong();
+
+        if (!hasValue) {
+            value = current;
+            hasValue = true;
+        } else if (value != current) {
+            isDifferent = true;
+        }
+    }
+
+    @Override
+    public Object get() {
+        if (isDifferent) {
+            return ValueMatchState.different();
+        }
+
+        return hasValue ? ValueMatchState.of(value) : ValueMatchState.empty();
+    }
+
+    @Override
+    public boolean isNull() {
+        return !hasValue || isDifferent;
+    }
+
+    @Override
+    public float getFloat() {
+        return (float) value;
+    }
+
+    @Override
+    public long getLong() {
+        return value;
+    }
+
+    @Override
+    public double getDouble() {
+        return (double) value;
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import org.apache.druid.query.aggregation.Aggregator;
+import org.apache.druid.segment.ColumnValueSelector;
+
+/**
+ * Heap counterpart of {@link ValueMatchNumericBufferAggregator}: values are compared as the numbers they hold, see
+ * {@link ValueMatchNumericBufferAggregator#toNumber(Object)}, and any value that is not a number makes the result
+ * different.
+ */
+public class ValueMatchNumericAggregator implements Aggregator {
+    private final ColumnValueSelector<?> selector;
+    private ValueMatchState state;
+
+    public ValueMatchNumericAggregator(final ColumnValueSelector<?> selector) {
+        this.selector = selector;
+        this.state = ValueMatchState.empty();
+    }
+
+    @Override
+    public synchronized void aggregate() {
+        if (state.isDifferent()) {
+            return;
+        }
+
+        final Object obj = selector.getObject();
+
+        if (obj instanceof ValueMatchState) {
+            final ValueMatchState other = (ValueMatchState) obj;
+            state = other.getValue() == null ? state.merge(other) : add(other.getValue());
+        } else if (obj != null) {
+            state = add(obj);
+        }
+    }
+
+    private ValueMatchState add(Object value) {
+        final Number number = ValueMatchNumericBufferAggregator.toNumber(value);
+
+        return number == null ? ValueMatchState.different() : state.add(number);
+    }
+
+    @Override
+    public synchronized Object get() {
+        return state;
+    }
+
+    @Override
+    public float getFloat() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public long getLong() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public double getDouble() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.DIFFERENT;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.EMPTY;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.OVERFLOW;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.STATE_OFFSET;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE_OFFSET;
+
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Longs;
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+import org.apache.druid.query.aggregation.BufferAggregator;
+import org.apache.druid.query.monomorphicprocessing.RuntimeShapeInspector;
+import org.apache.druid.segment.ColumnValueSelector;
+
+/**
+ * Fixed-size {@link BufferAggregator} for a numeric {@code outputType} over non-numeric inputs, most notably the
+ * {@code sameOrNull} states merged by the combining factory. Numbers are compared in their own type and strings are
+ * parsed exactly, see {@link #toNumber(Object)}, so that the slot never needs more than a state byte and 8 bytes of
+ * value. Any other value makes the result different.
+ *
+ * <p>Layout: {@code [state: byte][value: 8 bytes]}. The {@code VALUE} state holds a long, {@link #DOUBLE_VALUE} and
+ * {@link #FLOAT_VALUE} hold a double or a float, and {@code OVERFLOW} holds the fingerprint of the oversized value.
+ */
+public class ValueMatchNumericBufferAggregator implements BufferAggregator {
+    static final int SIZE = VALUE_OFFSET + Long.BYTES;
+
+    private static final byte DOUBLE_VALUE = 4;
+    private static final byte FLOAT_VALUE = 5;
+
+    private final ColumnValueSelector<?> selector;
+
+    public ValueMatchNumericBufferAggregator(final ColumnValueSelector<?> selector) {
+        this.selector = selector;
+    }
+
+    @Override
+    public void init(ByteBuffer buf, int position) {
+        buf.put(position + STATE_OFFSET, EMPTY);
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        if (state == DIFFERENT) {
+            return;
+        }
+
+        final Object obj = selector.getObject();
+
+        if (obj == null) {
+            return;
+        }
+
+        if (!(obj instanceof ValueMatchState)) {
+            add(buf, position, state, obj);
+            return;
+        }
+
+        final ValueMatchState other = (ValueMatchState) obj;
+
+        if (other.isDifferent()) {
+            buf.put(position + STATE_OFFSET, DIFFERENT);
+        } else if (other.isOverflow()) {
+            mergeOverflow(buf, position, state, other.getFingerprint());
+        } else if (!other.isEmpty()) {
+            add(buf, position, state, other.getValue());
+        }
+    }
+
+    private void add(ByteBuffer buf, int position, byte state, Object value) {
+        final Number number = toNumber(value);
+
+        if (number == null) {
+            buf.put(position + STATE_OFFSET, DIFFERENT);
+            return;
+        }
+
+        final byte valueState = stateOf(number);
+        final long bits = bitsOf(number);
+
+        if (state == EMPTY) {
+            buf.put(position + STATE_OFFSET, valueState);
+            buf.putLong(position + VALUE_OFFSET, bits);
+        } else if (state == OVERFLOW) {
+            if (buf.getLong(position + VALUE_OFFSET) != ValueMatchFingerprint.of(number)) {
+                buf.put(position + STATE_OFFSET, DIFFERENT);
+            }
+        } else if (state != valueState || buf.getLong(position + VALUE_OFFSET) != bits) {
+            buf.put(position + STATE_OFFSET, DIFFERENT);
+        }
+    }
+
+    private void mergeOverflow(ByteBuffer buf, int position, byte state, long fingerprint) {
+        if (state == EMPTY) {
+            buf.put(position + STATE_OFFSET, OVERFLOW);
+            buf.putLong(position + VALUE_OFFSET, fingerprint);
+        } else if (state == OVERFLOW) {
+            if (buf.getLong(position + VALUE_OFFSET) != fingerprint) {
+                buf.put(position + STATE_OFFSET, DIFFERENT);
+            }
+        } else if (ValueMatchFingerprint.of(getStored(buf, position)) == fingerprint) {
+            buf.put(position + STATE_OFFSET, OVERFLOW);
+            buf.putLong(position + VALUE_OFFSET, fingerprint);
+        } else {
+            buf.put(position + STATE_OFFSET, DIFFERENT);
+        }
+    }
+
+    /**
+     * Returns the value as a number compared in its own type, or {@code null} when it is not a number. Strings are
+     * parsed exactly, as a long when they hold one and as a double otherwise, so that strings holding different
+     * numbers, such as {@code "1.2"} and {@code "1.7"}, never end up equal.
+     */
+    @Nullable
+    static Number toNumber(Object value) {
+        if (value instanceof Long || value instanceof Double || value instanceof Float) {
+            return (Number) value;
+        }
+
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+
+        if (value instanceof String) {
+            final Long longValue = Longs.tryParse((String) value);
+            return longValue != null ? longValue : Doubles.tryParse((String) value);
+        }
+
+        return null;
+    }
+
+    private static byte stateOf(Number number) {
+        if (number instanceof Double) {
+            return DOUBLE_VALUE;
+        }
+
+        return number instanceof Float ? FLOAT_VALUE : VALUE;
+    }
+
+    private static long bitsOf(Number number) {
+        if (number instanceof Double) {
+            return Double.doubleToLongBits((Double) number);
+        }
+
+        return number instanceof Float ? Float.floatToIntBits((Float) number) : number.longValue();
+    }
+
+    private static Number getStored(ByteBuffer buf, int position) {
+        final long bits = buf.getLong(position + VALUE_OFFSET);
+
+        switch (buf.get(position + STATE_OFFSET)) {
+            case DOUBLE_VALUE:
+                return Double.longBitsToDouble(bits);
+            case FLOAT_VALUE:
+                return Float.intBitsToFloat((int) bits);
+            default:
+                return bits;
+        }
+    }
+
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        switch (state) {
+            case VALUE:
+            case DOUBLE_VALUE:
+            case FLOAT_VALUE:
+                return ValueMatchState.of(getStored(buf, position));
+            case OVERFLOW:
+                return ValueMatchState.overflow(buf.getLong(position + VALUE_OFFSET));
+            default:
+                return ValueMatchState.ofState(state);
+        }
+    }
+
+    @Override
+    public boolean isNull(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        return state != VALUE && state != DOUBLE_VALUE && state != FLOAT_VALUE;
+    }
+
+    @Override
+    public float getFloat(ByteBuffer buf, int position) {
+        return getStored(buf, position).floatValue();
+    }
+
+    @Override
+    public double getDouble(ByteBuffer buf, int position) {
+        return getStored(buf, position).doubleValue();
+    }
+
+    @Override
+    public long getLong(ByteBuffer buf, int position) {
+        return getStored(buf, position).longValue();
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+
+    @Override
+    public void inspectRuntimeShape(RuntimeShapeInspector inspector) {
+        inspector.visit("selector", selector);
+    }
+}
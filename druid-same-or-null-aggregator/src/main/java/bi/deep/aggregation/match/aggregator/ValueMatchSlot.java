@@ -13,27 +13,19 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package bi.deep.filtering.steps;
+package bi.deep.aggregation.match.aggregator;
 
-import static bi.deep.filtering.steps.TrinaryBool.*;
-
-import java.util.Set;
-
-public class AllowedFilter implements FilterStep {
-    private final Set<String> allowed;
-
-    public AllowedFilter(Set<String> allowed) {
-        this.allowed = allowed;
-    }
+/**
+ * Layout shared by the fixed-size buffer and vector aggregators: one state byte followed by the stored value.
+ */
+final class ValueMatchSlot {
+    static final byte EMPTY = 0;
+    static final byte VALUE = 1;
+    static final byte DIFFERENT = 2;
+    static final byte OVERFLOW = 3;
 
-    @Override
-    public TrinaryBool filter(String value) {
-        if (allowed.contains(value)) return TRUE;
-        else return MAYBE_FALSE;
-    }
+    static final int STATE_OFFSET = 0; // 1 byte for the state
+    static final int VALUE_OFFSET = 1; // Start of the stored value
 
-    @Override
-    public boolean isEnabled() {
-        return !allowed.isEmpty();
-    }
+    private ValueMatchSlot() {}
 }
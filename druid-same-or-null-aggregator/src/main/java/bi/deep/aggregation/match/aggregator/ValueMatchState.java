@@ -0,0 +1,338 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.DIFFERENT;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.EMPTY;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.OVERFLOW;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.STATE_OFFSET;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE_OFFSET;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.google.common.collect.ImmutableMap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Objects;
+import javax.annotation.Nullable;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.segment.column.ColumnType;
+
+/**
+ * Intermediate result of the sameOrNull aggregator. Besides the matched value it keeps apart the states that all
+ * finalize to {@code null}: no value was seen, different values were seen, or the value did not fit into the
+ * aggregator's {@code maxSize}.
+ *
+ * <p>Binary layout: {@code [state: byte][value]}, where the value is only present in the {@code VALUE} state and is
+ * encoded by {@link ValueMatchCodec}. The {@code OVERFLOW} state stores the {@link ValueMatchFingerprint} of the value
+ * instead, so that oversized values can still be told apart from different ones.
+ */
+public final class ValueMatchState {
+    public static final String TYPE_NAME = "sameOrNull";
+    public static final ColumnType TYPE = ColumnType.ofComplex(TYPE_NAME);
+
+    private static final String JSON_TYPE = "type";
+    private static final String JSON_VERSION = "version";
+    private static final String JSON_STATE = "state";
+    private static final int JSON_FORMAT_VERSION = 1;
+
+    private static final ValueMatchState EMPTY_STATE = new ValueMatchState(EMPTY, null, 0);
+    private static final ValueMatchState DIFFERENT_STATE = new ValueMatchState(DIFFERENT, null, 0);
+
+    private final byte state;
+
+    @Nullable
+    private final Object value;
+
+    private final long fingerprint;
+
+    private ValueMatchState(byte state, @Nullable Object value, long fingerprint) {
+        this.state = state;
+        this.value = value;
+        this.fingerprint = fingerprint;
+    }
+
+    public static ValueMatchState empty() {
+        return EMPTY_STATE;
+    }
+
+    public static ValueMatchState different() {
+        return DIFFERENT_STATE;
+    }
+
+    public static ValueMatchState overflow(long fingerprint) {
+        return new ValueMatchState(OVERFLOW, null, fingerprint);
+    }
+
+    public static ValueMatchState of(Object value) {
+        return new ValueMatchState(VALUE, ValueMatchCodec.unwrap(value), 0);
+    }
+
+    /**
+     * Converts an aggregated object into a state. Plain values are treated as a single matched value, {@code null}
+     * means that no value was seen.
+     */
+    public static ValueMatchState from(@Nullable Object object) {
+        if (object == null) {
+            return EMPTY_STATE;
+        }
+
+        return object instanceof ValueMatchState ? (ValueMatchState) object : of(object);
+    }
+
+    /**
+     * Reads a state from its serialized form: raw bytes, or the marked JSON object written by {@link #toJson()}.
+     *
+     * <p>Anything else is taken as an intermediate result of older versions, which passed the matched value itself
+     * around, so that results of not yet upgraded servers can still be merged during a rolling upgrade. Those could
+     * not tell "different values" apart from "no value", so a {@code null} there is read as an empty state.
+     */
+    public static ValueMatchState deserialize(@Nullable Object object) {
+        if (object instanceof ValueMatchState) {
+            return (ValueMatchState) object;
+        }
+
+        if (object instanceof byte[]) {
+            return fromBytes((byte[]) object);
+        }
+
+        if (isJson(object)) {
+            return fromJson((Map<?, ?>) object);
+        }
+
+        if (object instanceof Integer || object instanceof Short || object instanceof Byte) {
+            return of(((Number) object).longValue()); // JSON reads small longs back as ints
+        }
+
+        return from(object);
+    }
+
+    private static boolean isJson(@Nullable Object object) {
+        if (!(object instanceof Map)) {
+            return false;
+        }
+
+        final Map<?, ?> map = (Map<?, ?>) object;
+
+        return map.size() == 3
+                && TYPE_NAME.equals(map.get(JSON_TYPE))
+                && map.get(JSON_VERSION) instanceof Number
+                && map.containsKey(JSON_STATE);
+    }
+
+    private static ValueMatchState fromJson(Map<?, ?> json) {
+        final int version = ((Number) json.get(JSON_VERSION)).intValue();
+
+        if (version != JSON_FORMAT_VERSION) {
+            throw new IAE("Unknown sameOrNull format version [%s]", version);
+        }
+
+        final Object state = json.get(JSON_STATE);
+
+        if (state instanceof byte[]) {
+            return fromBytes((byte[]) state);
+        }
+
+        if (state instanceof String) {
+            return fromBytes(Base64.getDecoder().decode((String) state));
+        }
+
+        throw new IAE("Cannot read sameOrNull state from [%s]", state);
+    }
+
+    public static ValueMatchState fromBytes(byte[] bytes) {
+        return read(ByteBuffer.wrap(bytes), 0);
+    }
+
+    /**
+     * Reads the state stored at the given position, in the layout shared with the buffer aggregators.
+     */
+    static ValueMatchState read(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        switch (state) {
+            case VALUE:
+                return of(ValueMatchCodec.read(buf, position + VALUE_OFFSET));
+            case OVERFLOW:
+                return overflow(buf.getLong(position + VALUE_OFFSET));
+            default:
+                return ofState(state);
+        }
+    }
+
+    /**
+     * Returns the shared instance of a state without a value.
+     */
+    static ValueMatchState ofState(byte state) {
+        switch (state) {
+            case EMPTY:
+                return EMPTY_STATE;
+            case DIFFERENT:
+                return DIFFERENT_STATE;
+            default:
+                throw new IAE("Unknown sameOrNull state [%s]", state);
+        }
+    }
+
+    /**
+     * JSON form of the state: {@link #toBytes()} wrapped in an object marked with the type name and format version,
+     * so that it cannot be mistaken for a plain value passed around by older versions.
+     */
+    @JsonValue
+    public Map<String, Object> toJson() {
+        return ImmutableMap.of(JSON_TYPE, TYPE_NAME, JSON_VERSION, JSON_FORMAT_VERSION, JSON_STATE, toBytes());
+    }
+
+    public byte[] toBytes() {
+        if (state == OVERFLOW) {
+            return ByteBuffer.allocate(VALUE_OFFSET + Long.BYTES)
+                    .put(STATE_OFFSET, state)
+                    .putLong(VALUE_OFFSET, fingerprint)
+                    .array();
+        }
+
+        if (state != VALUE) {
+            return new byte[] {state};
+        }
+
+        final byte[] valueBytes = ValueMatchCodec.toBytes(value);
+        final byte[] bytes = new byte[VALUE_OFFSET + valueBytes.length];
+        bytes[STATE_OFFSET] = VALUE;
+        System.arraycopy(valueBytes, 0, bytes, VALUE_OFFSET, valueBytes.length);
+        return bytes;
+    }
+
+    /**
+     * Turns a matched value that takes more than the given number of bytes once encoded into an overflow, the same
+     * way the buffer aggregators do when the value does not fit into their slot.
+     */
+    ValueMatchState limit(int maxValueBytes) {
+        if (state != VALUE) {
+            return this;
+        }
+
+        final int size = ValueMatchCodec.sizeOf(value);
+
+        return size < 0 || size > maxValueBytes ? overflow(ValueMatchFingerprint.of(value)) : this;
+    }
+
+    /**
+     * Adds a single value to the state.
+     */
+    public ValueMatchState add(@Nullable Object other) {
+        if (other == null) {
+            return this;
+        }
+
+        switch (state) {
+            case EMPTY:
+                return of(other);
+            case VALUE:
+                return Objects.deepEquals(value, ValueMatchCodec.unwrap(other)) ? this : DIFFERENT_STATE;
+            case OVERFLOW:
+                return ValueMatchFingerprint.of(other) == fingerprint ? this : DIFFERENT_STATE;
+            default:
+                return this;
+        }
+    }
+
+    /**
+     * Merges two states. Different values win over everything else and an empty state is the identity. An overflow
+     * wins over a matched value when their fingerprints agree.
+     */
+    public ValueMatchState merge(ValueMatchState other) {
+        switch (other.state) {
+            case EMPTY:
+                return this;
+            case VALUE:
+                return add(other.value);
+            case DIFFERENT:
+                return DIFFERENT_STATE;
+            default:
+                return mergeOverflow(other);
+        }
+    }
+
+    private ValueMatchState mergeOverflow(ValueMatchState overflow) {
+        switch (state) {
+            case EMPTY:
+                return overflow;
+            case VALUE:
+                return ValueMatchFingerprint.of(value) == overflow.fingerprint ? overflow : DIFFERENT_STATE;
+            case OVERFLOW:
+                return fingerprint == overflow.fingerprint ? this : DIFFERENT_STATE;
+            default:
+                return this;
+        }
+    }
+
+    public boolean isEmpty() {
+        return state == EMPTY;
+    }
+
+    public boolean isDifferent() {
+        return state == DIFFERENT;
+    }
+
+    public boolean isOverflow() {
+        return state == OVERFLOW;
+    }
+
+    /**
+     * Returns the finalized result: the matched value, or {@code null} in every other state.
+     */
+    @Nullable
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * Fingerprint of the oversized value, only set in the overflow state.
+     */
+    long getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        final ValueMatchState that = (ValueMatchState) o;
+
+        return state == that.state && fingerprint == that.fingerprint && Objects.deepEquals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(state, fingerprint) * 31 + Arrays.deepHashCode(new Object[] {value});
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{"
+                + "state=" + state
+                + ", value=" + value
+                + ", fingerprint=" + fingerprint
+                + "}";
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import javax.annotation.Nullable;
+import org.apache.druid.query.aggregation.Aggregator;
+import org.apache.druid.segment.DimensionSelector;
+import org.apache.druid.segment.IdLookup;
+import org.apache.druid.segment.data.IndexedInts;
+
+/**
+ * Heap counterpart of {@link ValueMatchStringBufferAggregator}, comparing dictionary ids instead of strings.
+ */
+public class ValueMatchStringAggregator implements Aggregator {
+    private static final int NO_ID = -1;
+
+    private final DimensionSelector selector;
+
+    @Nullable
+    private final IdLookup idLookup;
+
+    private final int nullId;
+    private int storedId = NO_ID;
+    private boolean isDifferent;
+
+    public ValueMatchStringAggregator(final DimensionSelector selector) {
+        this.selector = selector;
+        this.idLookup = selector.idLookup();
+        this.nullId = idLookup != null ? idLookup.lookupId(null) : NO_ID;
+    }
+
+    private boolean isNullId(int id) {
+        return idLookup != null ? id == nullId : selector.lookupName(id) == null;
+    }
+
+    @Override
+    public void aggregate() {
+        if (isDifferent) {
+            return;
+        }
+
+        final IndexedInts row = selector.getRow();
+
+        if (row.size() != 1) {
+            return; // Ignore empty rows
+        }
+
+        final int id = row.get(0);
+
+        if (id == storedId || isNullId(id)) {
+            return;
+        }
+
+        if (storedId == NO_ID) {
+            storedId = id;
+        } else {
+            isDifferent = true;
+        }
+    }
+
+    @Override
+    public Object get() {
+        if (isDifferent) {
+            return ValueMatchState.different();
+        }
+
+        return storedId == NO_ID ? ValueMatchState.empty() : ValueMatchState.of(selector.lookupName(storedId));
+    }
+
+    @Override
+    public float getFloat() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public long getLong() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public double getDouble() {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.DIFFERENT;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.EMPTY;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.STATE_OFFSET;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE_OFFSET;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+import org.apache.druid.query.aggregation.BufferAggregator;
+import org.apache.druid.query.monomorphicprocessing.RuntimeShapeInspector;
+import org.apache.druid.segment.DimensionSelector;
+import org.apache.druid.segment.IdLookup;
+import org.apache.druid.segment.data.IndexedInts;
+
+/**
+ * {@link BufferAggregator} for single-valued dictionary-encoded string columns. It keeps the dictionary id of the
+ * first value and compares ids on every row; the id is resolved to the string only in {@link #get(ByteBuffer, int)}.
+ */
+public class ValueMatchStringBufferAggregator implements BufferAggregator {
+    private static final int NO_ID = -1;
+
+    private final DimensionSelector selector;
+
+    @Nullable
+    private final IdLookup idLookup;
+
+    private final int nullId;
+
+    public ValueMatchStringBufferAggregator(final DimensionSelector selector) {
+        this.selector = selector;
+        this.idLookup = selector.idLookup();
+        this.nullId = idLookup != null ? idLookup.lookupId(null) : NO_ID;
+    }
+
+    private boolean isNullId(int id) {
+        return idLookup != null ? id == nullId : selector.lookupName(id) == null;
+    }
+
+    @Override
+    public void init(ByteBuffer buf, int position) {
+        buf.put(position + STATE_OFFSET, EMPTY);
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        if (state == DIFFERENT) {
+            return; // Already different, exit early
+        }
+
+        final IndexedInts row = selector.getRow();
+
+        if (row.size() != 1) {
+            return; // Ignore empty rows
+        }
+
+        final int id = row.get(0);
+
+        if (state == EMPTY) {
+            if (!isNullId(id)) {
+                buf.put(position + STATE_OFFSET, VALUE);
+                buf.putInt(position + VALUE_OFFSET, id);
+            }
+        } else if (buf.getInt(position + VALUE_OFFSET) != id && !isNullId(id)) {
+            buf.put(position + STATE_OFFSET, DIFFERENT);
+        }
+    }
+
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        return state == VALUE
+                ? ValueMatchState.of(selector.lookupName(buf.getInt(position + VALUE_OFFSET)))
+                : ValueMatchState.ofState(state);
+    }
+
+    @Override
+    public float getFloat(ByteBuffer buf, int position) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public long getLong(ByteBuffer buf, int position) {
+        throw new UnsupportedOperationException("Not implemented");
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+
+    @Override
+    public void inspectRuntimeShape(RuntimeShapeInspector inspector) {
+        inspector.visit("selector", selector);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.DIFFERENT;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.EMPTY;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.STATE_OFFSET;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE;
+import static bi.deep.aggregation.match.aggregator.ValueMatchSlot.VALUE_OFFSET;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+import org.apache.druid.query.aggregation.VectorAggregator;
+import org.apache.druid.segment.IdLookup;
+import org.apache.druid.segment.vector.SingleValueDimensionVectorSelector;
+
+/**
+ * {@link VectorAggregator} for dictionary-encoded string columns. Values are compared by their dictionary ids, which
+ * are only resolved to the actual string in {@link #get(ByteBuffer, int)}.
+ */
+public class ValueMatchStringVectorAggregator implements VectorAggregator {
+    private static final int NO_ID = -1;
+
+    private final SingleValueDimensionVectorSelector selector;
+
+    @Nullable
+    private final IdLookup idLookup;
+
+    private final int nullId;
+
+    public ValueMatchStringVectorAggregator(final SingleValueDimensionVectorSelector selector) {
+        this.selector = selector;
+        this.idLookup = selector.idLookup();
+        this.nullId = idLookup != null ? idLookup.lookupId(null) : NO_ID;
+    }
+
+    private boolean isNullId(int id) {
+        return idLookup != null ? id == nullId : selector.lookupName(id) == null;
+    }
+
+    @Override
+    public void init(ByteBuffer buf, int position) {
+        buf.put(position + STATE_OFFSET, EMPTY);
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int position, int startRow, int endRow) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        if (state == DIFFERENT) {
+            return; // Already different, exit early
+        }
+
+        final int[] vector = selector.getRowVector();
+        int row = startRow;
+
+        if (state == EMPTY) {
+            while (row < endRow && isNullId(vector[row])) {
+                row++;
+            }
+
+            if (row == endRow) {
+                return; // Only nulls in this batch
+            }
+
+            buf.put(position + STATE_OFFSET, VALUE);
+            buf.putInt(position + VALUE_OFFSET, vector[row++]);
+        }
+
+        final int stored = buf.getInt(position + VALUE_OFFSET);
+
+        for (; row < endRow; row++) {
+            if (vector[row] != stored && !isNullId(vector[row])) {
+                buf.put(position + STATE_OFFSET, DIFFERENT);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int numRows, int[] positions, @Nullable int[] rows, int positionOffset) {
+        final int[] vector = selector.getRowVector();
+
+        for (int i = 0; i < numRows; i++) {
+            final int id = vector[rows != null ? rows[i] : i];
+            final int position = positions[i] + positionOffset;
+            final byte state = buf.get(position + STATE_OFFSET);
+
+            if (state == DIFFERENT || isNullId(id)) {
+                continue;
+            }
+
+            if (state == EMPTY) {
+                buf.put(position + STATE_OFFSET, VALUE);
+                buf.putInt(position + VALUE_OFFSET, id);
+            } else if (buf.getInt(position + VALUE_OFFSET) != id) {
+                buf.put(position + STATE_OFFSET, DIFFERENT);
+            }
+        }
+    }
+
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        final byte state = buf.get(position + STATE_OFFSET);
+
+        return state == VALUE
+                ? ValueMatchState.of(selector.lookupName(buf.getInt(position + VALUE_OFFSET)))
+                : ValueMatchState.ofState(state);
+    }
+
+    @Override
+    public void close() {
+        // No-op
+    }
+}
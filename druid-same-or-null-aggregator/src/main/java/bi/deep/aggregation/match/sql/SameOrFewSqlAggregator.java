@@ -0,0 +1,108 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.sql;
+
+import bi.deep.aggregation.match.aggregator.SameOrFewAggregatorFactory;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.SqlFunctionCategory;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlReturnTypeInference;
+import org.apache.calcite.sql.type.SqlTypeFamily;
+import org.apache.druid.segment.column.ColumnType;
+import org.apache.druid.sql.calcite.aggregation.Aggregation;
+import org.apache.druid.sql.calcite.aggregation.Aggregations;
+import org.apache.druid.sql.calcite.aggregation.SqlAggregator;
+import org.apache.druid.sql.calcite.expression.DruidExpression;
+import org.apache.druid.sql.calcite.expression.OperatorConversions;
+import org.apache.druid.sql.calcite.planner.Calcites;
+import org.apache.druid.sql.calcite.planner.PlannerContext;
+import org.apache.druid.sql.calcite.rel.InputAccessor;
+import org.apache.druid.sql.calcite.rel.VirtualColumnRegistry;
+
+public class SameOrFewSqlAggregator implements SqlAggregator {
+    private static final String NAME = "SAME_OR_FEW";
+
+    /**
+     * Nullable array of the operand's type.
+     */
+    private static final SqlReturnTypeInference RETURN_TYPE_INFERENCE = opBinding -> {
+        final RelDataTypeFactory typeFactory = opBinding.getTypeFactory();
+
+        return typeFactory.createTypeWithNullability(
+                typeFactory.createArrayType(opBinding.getOperandType(0), -1), true);
+    };
+
+    private static final SqlAggFunction FUNCTION_INSTANCE = OperatorConversions.aggregatorBuilder(NAME)
+            .operandNames("column", "maxValues")
+            .operandTypes(SqlTypeFamily.ANY, SqlTypeFamily.EXACT_NUMERIC)
+            .literalOperands(1)
+            .returnTypeInference(RETURN_TYPE_INFERENCE)
+            .requiredOperandCount(1)
+            .functionCategory(SqlFunctionCategory.USER_DEFINED_FUNCTION)
+            .build();
+
+    @Override
+    public SqlAggFunction calciteFunction() {
+        return FUNCTION_INSTANCE;
+    }
+
+    @Nullable
+    @Override
+    public Aggregation toDruidAggregation(
+            final PlannerContext plannerContext,
+            final VirtualColumnRegistry virtualColumnRegistry,
+            final String name,
+            final AggregateCall aggregateCall,
+            final InputAccessor inputAccessor,
+            final List<Aggregation> existingAggregations,
+            final boolean finalizeAggregations) {
+        final List<DruidExpression> arguments =
+                Aggregations.getArgumentsForSimpleAggregator(plannerContext, aggregateCall, inputAccessor);
+
+        if (arguments == null) {
+            return null;
+        }
+
+        final Integer maxValues;
+        if (aggregateCall.getArgList().size() > 1) {
+            final RexNode maxValuesArg = inputAccessor.getField(aggregateCall.getArgList().get(1));
+
+            if (!maxValuesArg.isA(SqlKind.LITERAL)) {
+                return null;
+            }
+
+            maxValues = ((Number) RexLiteral.value(maxValuesArg)).intValue();
+        } else {
+            maxValues = null;
+        }
+
+        final DruidExpression arg = arguments.get(0);
+        final RelDataType argType = inputAccessor.getField(aggregateCall.getArgList().get(0)).getType();
+        final String fieldName = arg.isDirectColumnAccess()
+                ? arg.getDirectColumn()
+                : virtualColumnRegistry.getOrCreateVirtualColumnForExpression(arg, argType);
+        final ColumnType valueType = Calcites.getColumnTypeForRelDataType(aggregateCall.getType());
+
+        return Aggregation.create(new SameOrFewAggregatorFactory(name, fieldName, maxValues, null, valueType));
+    }
+}
@@ -22,6 +22,7 @@ import javax.annotation.Nullable;
 import org.apache.calcite.rel.core.AggregateCall;
 import org.apache.calcite.sql.SqlAggFunction;
 import org.apache.calcite.sql.SqlFunctionCategory;
+import org.apache.calcite.sql.type.ReturnTypes;
 import org.apache.calcite.sql.type.SqlTypeFamily;
 import org.apache.druid.segment.column.ColumnType;
 import org.apache.druid.sql.calcite.aggregation.Aggregation;
@@ -39,7 +40,7 @@ public class ValueMatchSqlAggregator implements SqlAggregator {
     private static final SqlAggFunction FUNCTION_INSTANCE = OperatorConversions.aggregatorBuilder(NAME)
             .operandNames("column")
             .operandTypes(SqlTypeFamily.ANY)
-            .returnTypeInference(Calcites.complexReturnTypeWithNullability(ColumnType.UNKNOWN_COMPLEX, true))
+            .returnTypeInference(ReturnTypes.ARG0_FORCE_NULLABLE)
             .requiredOperandCount(1)
             .functionCategory(SqlFunctionCategory.USER_DEFINED_FUNCTION)
             .build();
@@ -70,6 +71,7 @@ public class ValueMatchSqlAggregator implements SqlAggregator {
         final String fieldName = arg.isDirectColumnAccess()
                 ? arg.getDirectColumn()
                 : virtualColumnRegistry.getOrCreateVirtualColumnForExpression(arg, aggregateCall.getType());
+        // The call has the operand's type, so numeric operands plan to the primitive-specialized aggregators
         final ColumnType valueType = Calcites.getColumnTypeForRelDataType(aggregateCall.getType());
 
         return Aggregation.create(new ValueMatchAggregatorFactory(name, fieldName, null, valueType));
@@ -0,0 +1,142 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.Arrays;
+import java.util.Collections;
+import nl.jqno.equalsverifier.EqualsVerifier;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.common.IAE;
+import org.apache.druid.query.aggregation.AggregateCombiner;
+import org.apache.druid.query.aggregation.TestObjectColumnSelector;
+import org.apache.druid.segment.column.ColumnType;
+import org.junit.jupiter.api.Test;
+
+class SameOrFewAggregatorFactoryTest {
+    private final SameOrFewAggregatorFactory factory = new SameOrFewAggregatorFactory("few", "myField", 2, null, null);
+
+    @Test
+    void testEquals() {
+        EqualsVerifier.forClass(SameOrFewAggregatorFactory.class)
+                .withNonnullFields("name", "fieldName", "outputType")
+                .usingGetClass()
+                .verify();
+    }
+
+    @Test
+    void testDefaults() {
+        final SameOrFewAggregatorFactory defaults = new SameOrFewAggregatorFactory(null, "myField", null, null, null);
+
+        assertEquals("myField", defaults.getName());
+        assertEquals(10, defaults.getMaxValues());
+        assertEquals(1024, defaults.getMaxIntermediateSize());
+        assertEquals(ColumnType.UNKNOWN_COMPLEX, defaults.getResultType());
+        assertEquals(SameOrFewState.TYPE, defaults.getIntermediateType());
+    }
+
+    @Test
+    void testInvalidParameters() {
+        assertThrows(IAE.class, () -> new SameOrFewAggregatorFactory("few", "myField", 0, null, null));
+        assertThrows(IAE.class, () -> new SameOrFewAggregatorFactory("few", "myField", 100, 512, null));
+    }
+
+    @Test
+    void testDefaultMaxSizeFollowsMaxValues() {
+        final SameOrFewAggregatorFactory many = new SameOrFewAggregatorFactory("few", "myField", 100, null, null);
+
+        assertEquals(9 + 100 * 12 + 100 * 64, many.getMaxSize());
+        assertEquals(1024, new SameOrFewAggregatorFactory("few", "myField", 10, null, null).getMaxSize());
+    }
+
+    @Test
+    void testArrayValuesCompareByContent() {
+        final SameOrFewState state = SameOrFewState.of(Collections.singletonList(new Object[] {"a", 1L}));
+        final SameOrFewState same = SameOrFewState.of(Collections.singletonList(new Object[] {"a", 1L}));
+
+        assertEquals(state, same);
+        assertEquals(state.hashCode(), same.hashCode());
+        assertEquals(1, ((SameOrFewState) factory.combine(state, same)).getValues().size());
+    }
+
+    @Test
+    void testCombine() {
+        final SameOrFewState single = SameOrFewState.of(Collections.singletonList("a"));
+
+        assertEquals(single, factory.combine(null, single));
+        assertEquals(
+                SameOrFewState.of(Arrays.asList("a", "b")),
+                factory.combine(SameOrFewState.of(Arrays.asList("a")), SameOrFewState.of(Arrays.asList("b", "a"))));
+        assertEquals(
+                SameOrFewState.overflow(),
+                factory.combine(SameOrFewState.of(Arrays.asList("a", "b")), SameOrFewState.of(Arrays.asList("c"))));
+        assertEquals(
+                SameOrFewState.overflow(),
+                factory.combine(SameOrFewState.overflow(), SameOrFewState.of(Arrays.asList("a"))));
+    }
+
+    @Test
+    void testAggregateCombiner() {
+        final AggregateCombiner<?> combiner = factory.makeAggregateCombiner();
+
+        combiner.reset(new TestObjectColumnSelector<>(new Object[] {SameOrFewState.of(Arrays.asList(1L))}));
+        combiner.fold(new TestObjectColumnSelector<>(new Object[] {SameOrFewState.empty()}));
+        combiner.fold(new TestObjectColumnSelector<>(new Object[] {SameOrFewState.of(Arrays.asList(2L))}));
+
+        assertArrayEquals(new Object[] {1L, 2L}, (Object[]) factory.finalizeComputation(combiner.getObject()));
+    }
+
+    @Test
+    void testFinalizeComputation() {
+        assertNull(factory.finalizeComputation(SameOrFewState.empty()));
+        assertNull(factory.finalizeComputation(SameOrFewState.overflow()));
+        assertArrayEquals(
+                new Object[] {"x"},
+                (Object[]) factory.finalizeComputation(SameOrFewState.of(Collections.singletonList("x"))));
+    }
+
+    @Test
+    void testDeserialize() throws Exception {
+        final ObjectMapper mapper = new DefaultObjectMapper();
+
+        for (SameOrFewState state : new SameOrFewState[] {
+            SameOrFewState.empty(),
+            SameOrFewState.overflow(),
+            SameOrFewState.of(Arrays.asList(1L, 2.5, 3.5f, "text", true))
+        }) {
+            final Object json = mapper.readValue(mapper.writeValueAsString(state), Object.class);
+
+            assertEquals(state, factory.deserialize(json));
+            assertEquals(state, factory.deserialize(state.toBytes()));
+        }
+    }
+
+    @Test
+    void testSerde() throws Exception {
+        final ObjectMapper mapper = new DefaultObjectMapper();
+        mapper.registerSubtypes(SameOrFewAggregatorFactory.class);
+
+        final SameOrFewAggregatorFactory other =
+                new SameOrFewAggregatorFactory("few", "myField", 3, 2048, ColumnType.STRING_ARRAY);
+
+        assertEquals(other, mapper.readValue(mapper.writeValueAsString(other), SameOrFewAggregatorFactory.class));
+    }
+}
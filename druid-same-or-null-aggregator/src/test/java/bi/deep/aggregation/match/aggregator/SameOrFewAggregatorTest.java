@@ -0,0 +1,147 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.apache.druid.segment.ColumnValueSelector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class SameOrFewAggregatorTest {
+    @Mock
+    private ColumnValueSelector<Object> selector;
+
+    @Test
+    void testBufferKeepsDistinctValues() {
+        final SameOrFewBufferAggregator aggregator = new SameOrFewBufferAggregator(selector, 3, 256);
+        final ByteBuffer buffer = ByteBuffer.allocate(512);
+        aggregator.init(buffer, 128);
+
+        assertEquals(SameOrFewState.empty(), aggregator.get(buffer, 128));
+
+        when(selector.getObject()).thenReturn("pl", "de", null, "pl", 5L, "de");
+        for (int i = 0; i < 6; i++) {
+            aggregator.aggregate(buffer, 128);
+        }
+
+        final SameOrFewState state = (SameOrFewState) aggregator.get(buffer, 128);
+        assertEquals(SameOrFewState.of(Arrays.asList("pl", "de", 5L)), state);
+        assertArrayEquals(new Object[] {5L, "de", "pl"}, state.getResult());
+    }
+
+    @Test
+    void testBufferOverflowsBeyondMaxValues() {
+        final SameOrFewBufferAggregator aggregator = new SameOrFewBufferAggregator(selector, 2, 256);
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        aggregator.init(buffer, 0);
+
+        when(selector.getObject()).thenReturn("a", "b", "c");
+        for (int i = 0; i < 3; i++) {
+            aggregator.aggregate(buffer, 0);
+        }
+
+        assertEquals(SameOrFewState.overflow(), aggregator.get(buffer, 0));
+        assertNull(SameOrFewState.overflow().getResult());
+    }
+
+    @Test
+    void testBufferOverflowsBeyondMaxSize() {
+        final SameOrFewBufferAggregator aggregator =
+                new SameOrFewBufferAggregator(selector, 2, SameOrFewBufferAggregator.getHeaderSize(2) + 8);
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        aggregator.init(buffer, 0);
+
+        when(selector.getObject()).thenReturn("longer than the slot");
+        aggregator.aggregate(buffer, 0);
+
+        assertEquals(SameOrFewState.overflow(), aggregator.get(buffer, 0));
+    }
+
+    @Test
+    void testBufferMergesStatesAndRelocates() {
+        final SameOrFewBufferAggregator aggregator = new SameOrFewBufferAggregator(selector, 3, 256);
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        final ByteBuffer relocated = ByteBuffer.allocate(512);
+        aggregator.init(buffer, 0);
+
+        when(selector.getObject())
+                .thenReturn(SameOrFewState.of(Arrays.asList("a", "b")), SameOrFewState.of(Arrays.asList("b", "c")));
+        aggregator.aggregate(buffer, 0);
+        aggregator.relocate(0, 100, buffer, relocated);
+        aggregator.aggregate(relocated, 100);
+
+        assertEquals(SameOrFewState.of(Arrays.asList("a", "b", "c")), aggregator.get(relocated, 100));
+    }
+
+    @Test
+    void testHeapAggregator() {
+        try (SameOrFewAggregator aggregator = new SameOrFewAggregator(selector, 2, 256)) {
+            assertEquals(SameOrFewState.empty(), aggregator.get());
+
+            when(selector.getObject()).thenReturn("a", "a", "b");
+            for (int i = 0; i < 3; i++) {
+                aggregator.aggregate();
+            }
+            assertEquals(SameOrFewState.of(Arrays.asList("a", "b")), aggregator.get());
+
+            when(selector.getObject()).thenReturn(SameOrFewState.of(Arrays.asList("c")));
+            aggregator.aggregate();
+            assertEquals(SameOrFewState.overflow(), aggregator.get());
+        }
+    }
+
+    @Test
+    void testHeapOverflowsBeyondMaxSizeLikeBuffer() {
+        final int maxSize = SameOrFewBufferAggregator.getHeaderSize(3) + 16;
+        final SameOrFewBufferAggregator bufferAggregator = new SameOrFewBufferAggregator(selector, 3, maxSize);
+        final ByteBuffer buffer = ByteBuffer.allocate(maxSize);
+        bufferAggregator.init(buffer, 0);
+
+        try (SameOrFewAggregator aggregator = new SameOrFewAggregator(selector, 3, maxSize)) {
+            // "a" takes 6 bytes encoded, "longer" 11, so the two do not fit into 16 bytes
+            when(selector.getObject()).thenReturn("a", "a", "longer", "longer");
+            aggregator.aggregate();
+            bufferAggregator.aggregate(buffer, 0);
+            assertEquals(SameOrFewState.of(Arrays.asList("a")), aggregator.get());
+
+            aggregator.aggregate();
+            bufferAggregator.aggregate(buffer, 0);
+            assertEquals(SameOrFewState.overflow(), aggregator.get());
+            assertEquals(bufferAggregator.get(buffer, 0), aggregator.get());
+        }
+    }
+
+    @Test
+    void testMergeOverflowsBeyondMaxSize() {
+        final int maxSize = SameOrFewBufferAggregator.getHeaderSize(3) + 16;
+
+        assertEquals(
+                SameOrFewState.of(Arrays.asList("a", "b")),
+                SameOrFewState.of(Arrays.asList("a")).merge(SameOrFewState.of(Arrays.asList("b")), 3, maxSize));
+        assertEquals(
+                SameOrFewState.overflow(),
+                SameOrFewState.of(Arrays.asList("a")).merge(SameOrFewState.of(Arrays.asList("longer")), 3, maxSize));
+    }
+}
@@ -15,13 +15,24 @@
  */
 package bi.deep.aggregation.match.aggregator;
 
+import com.google.common.collect.ImmutableMap;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.junit.jupiter.params.provider.Arguments;
 
 public class TestDataProvider {
 
+    /**
+     * Finalizes the intermediate result returned by the aggregators.
+     */
+    @Nullable
+    static Object finalized(@Nullable Object intermediate) {
+        return ValueMatchState.from(intermediate).getValue();
+    }
+
     public static Stream<Object> provideMixedTypeValues() {
         return Stream.of(
                 "String", // String type
@@ -29,6 +40,8 @@ public class TestDataProvider {
                 45.67f, // Float type
                 89.12, // Double type
                 true, // Boolean type
+                Arrays.asList("a", 1L, null), // List type
+                ImmutableMap.of("key", Arrays.asList(1L, 2L)), // Map type
                 new Data("data") // Object with no comparator
                 );
     }
@@ -40,6 +53,8 @@ public class TestDataProvider {
                 Arguments.of(45.67f, 45.68f), // Float type
                 Arguments.of(89.12, 89.13), // Double type
                 Arguments.of(true, false), // Boolean type
+                Arguments.of(Arrays.asList("a", 1L), Arrays.asList("a", 2L)), // List type
+                Arguments.of(ImmutableMap.of("key", 1L), ImmutableMap.of("key", 1.0)), // Map type
                 Arguments.of(new Data("data"), new Data("data1")) // Object with no comparator
                 );
     }
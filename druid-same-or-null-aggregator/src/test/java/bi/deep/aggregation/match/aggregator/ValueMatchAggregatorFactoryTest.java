@@ -15,20 +15,42 @@
  */
 package bi.deep.aggregation.match.aggregator;
 
+import static bi.deep.aggregation.match.aggregator.TestDataProvider.finalized;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import javax.annotation.Nullable;
 import nl.jqno.equalsverifier.EqualsVerifier;
+import org.apache.druid.jackson.DefaultObjectMapper;
+import org.apache.druid.java.util.common.IAE;
 import org.apache.druid.java.util.common.granularity.Granularities;
 import org.apache.druid.query.Druids;
 import org.apache.druid.query.aggregation.AggregateCombiner;
 import org.apache.druid.query.aggregation.Aggregator;
+import org.apache.druid.query.aggregation.AggregatorFactory;
+import org.apache.druid.query.aggregation.BufferAggregator;
 import org.apache.druid.query.aggregation.CountAggregatorFactory;
 import org.apache.druid.query.aggregation.TestDoubleColumnSelectorImpl;
 import org.apache.druid.query.aggregation.TestObjectColumnSelector;
+import org.apache.druid.query.dimension.DefaultDimensionSpec;
 import org.apache.druid.query.timeseries.TimeseriesQuery;
 import org.apache.druid.query.timeseries.TimeseriesQueryQueryToolChest;
+import org.apache.druid.segment.ColumnSelectorFactory;
+import org.apache.druid.segment.ColumnValueSelector;
+import org.apache.druid.segment.DimensionSelector;
+import org.apache.druid.segment.column.ColumnCapabilitiesImpl;
 import org.apache.druid.segment.column.ColumnType;
 import org.apache.druid.segment.column.RowSignature;
 import org.junit.jupiter.api.Test;
@@ -46,7 +68,7 @@ class ValueMatchAggregatorFactoryTest {
     @Test
     void testGuessAggregatorHeapFootprint() {
         ValueMatchAggregatorFactory factory =
-                new ValueMatchAggregatorFactory("myFactory", "myField", 512, ColumnType.LONG);
+                new ValueMatchAggregatorFactory("myFactory", "myField", 512, ColumnType.STRING);
 
         assertEquals(512, factory.guessAggregatorHeapFootprint(1));
         assertEquals(512, factory.guessAggregatorHeapFootprint(100));
@@ -66,8 +88,13 @@ class ValueMatchAggregatorFactoryTest {
     @Test
     void testMaxIntermediateSize() {
         ValueMatchAggregatorFactory factory =
-                new ValueMatchAggregatorFactory("myFactory", "myField", 512, ColumnType.LONG);
+                new ValueMatchAggregatorFactory("myFactory", "myField", 512, ColumnType.STRING);
         assertEquals(512, factory.getMaxIntermediateSize());
+
+        ValueMatchAggregatorFactory numericFactory =
+                new ValueMatchAggregatorFactory("myFactory", "myField", 512, ColumnType.LONG);
+        assertEquals(9, numericFactory.getMaxIntermediateSize());
+        assertEquals(512, ((ValueMatchAggregatorFactory) numericFactory.getCombiningFactory()).getMaxSize());
     }
 
     @Test
@@ -85,7 +112,7 @@ class ValueMatchAggregatorFactoryTest {
                 RowSignature.builder()
                         .addTimeColumn()
                         .add("count", ColumnType.LONG)
-                        .add("myFactory", ColumnType.STRING)
+                        .add("myFactory", null)
                         .build(),
                 new TimeseriesQueryQueryToolChest().resultArraySignature(query));
     }
@@ -97,13 +124,276 @@ class ValueMatchAggregatorFactoryTest {
         final double[] values = new double[] {1, 2, 3, 4, 5, 6};
         final TestDoubleColumnSelectorImpl selector = new TestDoubleColumnSelectorImpl(values);
 
-        try (final Aggregator agg1 = new ValueMatchBuildAggregator(selector)) {
-            assertNull(factory.combine(null, agg1.get()));
-            assertNull(factory.combine(agg1.get(), null));
+        try (final Aggregator agg1 = new ValueMatchBuildAggregator(selector, 512)) {
+            assertNull(factory.finalizeComputation(factory.combine(null, agg1.get())));
+            assertNull(factory.finalizeComputation(factory.combine(agg1.get(), null)));
 
             AggregateCombiner<?> ac = factory.makeAggregateCombiner();
             ac.fold(new TestObjectColumnSelector<>(new Object[] {10}));
             assertNotNull(ac.getObject());
         }
     }
+
+    @Test
+    void testCombineKeepsDifferentState() {
+        final ValueMatchAggregatorFactory factory = new ValueMatchAggregatorFactory("myFactory", "myField", 512, null);
+
+        assertEquals(
+                ValueMatchState.different(),
+                factory.combine(ValueMatchState.different(), ValueMatchState.of("value")));
+        assertEquals(
+                ValueMatchState.different(),
+                factory.combine(ValueMatchState.of("value"), ValueMatchState.different()));
+        assertEquals(ValueMatchState.of("value"), factory.combine(null, ValueMatchState.of("value")));
+        assertEquals(ValueMatchState.different(), factory.combine(ValueMatchState.of(1L), ValueMatchState.of(2L)));
+        final ValueMatchState overflow = ValueMatchState.overflow(ValueMatchFingerprint.of("value"));
+        assertEquals(overflow, factory.combine(overflow, ValueMatchState.of("value")));
+        assertEquals(ValueMatchState.different(), factory.combine(ValueMatchState.of("other"), overflow));
+    }
+
+    @Test
+    void testDeserialize() throws Exception {
+        final ValueMatchAggregatorFactory factory = new ValueMatchAggregatorFactory("myFactory", "myField", 512, null);
+        final ObjectMapper mapper = new DefaultObjectMapper();
+
+        for (ValueMatchState state : new ValueMatchState[] {
+            ValueMatchState.empty(),
+            ValueMatchState.different(),
+            ValueMatchState.overflow(42L),
+            ValueMatchState.of(42L),
+            ValueMatchState.of(1.5),
+            ValueMatchState.of(2.5f),
+            ValueMatchState.of("value"),
+            ValueMatchState.of(true),
+            ValueMatchState.of(Arrays.asList("a", 1L, null)),
+            ValueMatchState.of(new Object[] {"a", 2.5}),
+            ValueMatchState.of(ImmutableMap.of("key", Arrays.asList(1L, 2L)))
+        }) {
+            final Object json = mapper.readValue(mapper.writeValueAsString(state), Object.class);
+
+            assertEquals(state, factory.deserialize(json));
+            assertEquals(state, factory.deserialize(state.toBytes()));
+        }
+    }
+
+    @Test
+    void testDeserializeLegacyValues() {
+        final ValueMatchAggregatorFactory factory = new ValueMatchAggregatorFactory("myFactory", "myField", 512, null);
+
+        assertEquals(ValueMatchState.of("value"), factory.deserialize("value"));
+        assertEquals(ValueMatchState.of("abcd"), factory.deserialize("abcd"));
+
+        final String encoded = Base64.getEncoder().encodeToString(ValueMatchState.of(42L).toBytes());
+        assertEquals(ValueMatchState.of(encoded), factory.deserialize(encoded), "Strings are never decoded");
+        assertEquals(ValueMatchState.of(42L), factory.deserialize(42));
+        assertEquals(ValueMatchState.of(1.5), factory.deserialize(1.5));
+        assertEquals(ValueMatchState.of(Arrays.asList("a", "b")), factory.deserialize(Arrays.asList("a", "b")));
+        assertEquals(ValueMatchState.empty(), factory.deserialize(null));
+    }
+
+    @Test
+    void testArrayValuesCompareByContent() {
+        final ValueMatchAggregatorFactory factory = new ValueMatchAggregatorFactory("myFactory", "myField", 512, null);
+        final ValueMatchState state = ValueMatchState.of(new Object[] {"a", 1L});
+
+        assertEquals(state, factory.combine(state, ValueMatchState.of(new Object[] {"a", 1L})));
+        assertEquals(state, ValueMatchState.of(new Object[] {"a", 1L}));
+        assertEquals(state.hashCode(), ValueMatchState.of(new Object[] {"a", 1L}).hashCode());
+        assertEquals(ValueMatchState.different(), state.add(new Object[] {"a", 2L}));
+    }
+
+    @Test
+    void testRejectsTooSmallMaxSize() {
+        assertThrows(IAE.class, () -> new ValueMatchAggregatorFactory("myFactory", "myField", 8, null));
+        assertEquals(9, new ValueMatchAggregatorFactory("myFactory", "myField", 9, null).getMaxSize());
+    }
+
+    @Test
+    void testFactorizePrimitiveAggregators() {
+        final ColumnSelectorFactory columnFactory = mockColumnFactory(ColumnType.LONG);
+        final ValueMatchAggregatorFactory factory = new ValueMatchAggregatorFactory("myFactory", "myField", null, null);
+
+        assertInstanceOf(ValueMatchLongAggregator.class, factory.factorize(columnFactory));
+        assertInstanceOf(ValueMatchLongBufferAggregator.class, factory.factorizeBuffered(columnFactory));
+
+        final ValueMatchAggregatorFactory doubleFactory =
+                new ValueMatchAggregatorFactory("myFactory", "myField", null, ColumnType.DOUBLE);
+
+        assertInstanceOf(ValueMatchLongAggregator.class, doubleFactory.factorize(columnFactory));
+        assertInstanceOf(ValueMatchLongBufferAggregator.class, doubleFactory.factorizeBuffered(columnFactory));
+        assertEquals(42.0, doubleFactory.finalizeComputation(ValueMatchState.of(42L)));
+    }
+
+    @Test
+    void testNumericOutputComparesInColumnType() {
+        final ColumnSelectorFactory columnFactory = mockColumnFactory(ColumnType.DOUBLE);
+        final ValueMatchAggregatorFactory factory =
+                new ValueMatchAggregatorFactory("myFactory", "myField", null, ColumnType.LONG);
+        final BufferAggregator aggregator = factory.factorizeBuffered(columnFactory);
+        final ColumnValueSelector<?> selector = columnFactory.makeColumnValueSelector("myField");
+        final ByteBuffer buffer = ByteBuffer.allocate(factory.getMaxIntermediateSize());
+
+        assertInstanceOf(ValueMatchDoubleBufferAggregator.class, aggregator);
+
+        when(selector.getDouble()).thenReturn(1.2, 1.7);
+        aggregator.init(buffer, 0);
+        aggregator.aggregate(buffer, 0);
+        assertEquals(1L, factory.finalizeComputation(aggregator.get(buffer, 0)));
+
+        aggregator.aggregate(buffer, 0);
+        assertNull(factory.finalizeComputation(aggregator.get(buffer, 0)));
+    }
+
+    @Test
+    void testNumericOutputCombinesInFixedSize() {
+        final ValueMatchAggregatorFactory factory =
+                new ValueMatchAggregatorFactory("myFactory", "myField", null, ColumnType.LONG);
+        final AggregatorFactory combiningFactory = factory.getCombiningFactory();
+        final ColumnSelectorFactory columnFactory = mock(ColumnSelectorFactory.class);
+        final ColumnValueSelector<?> selector = mock(ColumnValueSelector.class);
+        final ByteBuffer buffer = ByteBuffer.allocate(combiningFactory.getMaxIntermediateSize());
+
+        when(columnFactory.makeColumnValueSelector("myFactory")).thenAnswer(invocation -> selector);
+        when(selector.getObject()).thenReturn(ValueMatchState.of(1.2), null, ValueMatchState.of(1.2));
+
+        final BufferAggregator aggregator = combiningFactory.factorizeBuffered(columnFactory);
+        assertInstanceOf(ValueMatchNumericBufferAggregator.class, aggregator);
+
+        aggregator.init(buffer, 0);
+        aggregator.aggregate(buffer, 0);
+        aggregator.aggregate(buffer, 0);
+        aggregator.aggregate(buffer, 0);
+        assertEquals(ValueMatchState.of(1.2), aggregator.get(buffer, 0));
+        assertEquals(1L, combiningFactory.finalizeComputation(aggregator.get(buffer, 0)));
+
+        when(selector.getObject()).thenReturn(ValueMatchState.of(1.7));
+        aggregator.aggregate(buffer, 0);
+        assertEquals(ValueMatchState.different(), aggregator.get(buffer, 0));
+
+        when(selector.getObject()).thenReturn(ValueMatchState.of(1L), ValueMatchState.of(1.0));
+        aggregator.init(buffer, 0);
+        aggregator.aggregate(buffer, 0);
+        aggregator.aggregate(buffer, 0);
+        assertEquals(ValueMatchState.different(), aggregator.get(buffer, 0));
+    }
+
+    @Test
+    void testNumericOutputParsesStringsExactly() {
+        final ValueMatchAggregatorFactory factory =
+                new ValueMatchAggregatorFactory("myFactory", "myField", null, ColumnType.LONG);
+        final ColumnSelectorFactory columnFactory = mock(ColumnSelectorFactory.class);
+        final ColumnValueSelector<?> selector = mock(ColumnValueSelector.class);
+        final ByteBuffer buffer = ByteBuffer.allocate(factory.getMaxIntermediateSize());
+
+        when(columnFactory.makeColumnValueSelector("myField")).thenAnswer(invocation -> selector);
+
+        final Aggregator aggregator = factory.factorize(columnFactory);
+        final BufferAggregator bufferAggregator = factory.factorizeBuffered(columnFactory);
+        assertInstanceOf(ValueMatchNumericAggregator.class, aggregator);
+        assertInstanceOf(ValueMatchNumericBufferAggregator.class, bufferAggregator);
+        bufferAggregator.init(buffer, 0);
+
+        when(selector.getObject()).thenReturn("1.2", "1.2", "1.7", "1.7");
+        aggregator.aggregate();
+        bufferAggregator.aggregate(buffer, 0);
+        assertEquals(ValueMatchState.of(1.2), aggregator.get());
+        assertEquals(ValueMatchState.of(1.2), bufferAggregator.get(buffer, 0));
+
+        aggregator.aggregate();
+        bufferAggregator.aggregate(buffer, 0);
+        assertEquals(ValueMatchState.different(), aggregator.get());
+        assertEquals(ValueMatchState.different(), bufferAggregator.get(buffer, 0));
+
+        // values that are not numbers make the result different instead of being skipped
+        final Aggregator other = factory.factorize(columnFactory);
+        bufferAggregator.init(buffer, 0);
+        when(selector.getObject()).thenReturn("42", "42", "n/a", "n/a");
+        other.aggregate();
+        bufferAggregator.aggregate(buffer, 0);
+        assertEquals(42L, factory.finalizeComputation(other.get()));
+        assertEquals(42L, factory.finalizeComputation(bufferAggregator.get(buffer, 0)));
+
+        other.aggregate();
+        bufferAggregator.aggregate(buffer, 0);
+        assertEquals(ValueMatchState.different(), other.get());
+        assertEquals(ValueMatchState.different(), bufferAggregator.get(buffer, 0));
+    }
+
+    @Test
+    void testFactorizeGenericAggregators() {
+        final ColumnSelectorFactory columnFactory = mockColumnFactory(ColumnType.FLOAT);
+        final ValueMatchAggregatorFactory factory =
+                new ValueMatchAggregatorFactory("myFactory", "myField", null, ColumnType.STRING);
+
+        assertInstanceOf(ValueMatchBuildAggregator.class, factory.factorize(columnFactory));
+        assertInstanceOf(ValueMatchBufferBuildAggregator.class, factory.factorizeBuffered(columnFactory));
+    }
+
+    @Test
+    void testCanVectorize() {
+        final ValueMatchAggregatorFactory factory = new ValueMatchAggregatorFactory("myFactory", "myField", null, null);
+
+        assertTrue(factory.canVectorize(mockColumnFactory(ColumnType.LONG)));
+        assertTrue(factory.canVectorize(mock(ColumnSelectorFactory.class)));
+
+        final ColumnSelectorFactory stringFactory = mock(ColumnSelectorFactory.class);
+        when(stringFactory.getColumnCapabilities("myField"))
+                .thenReturn(ColumnCapabilitiesImpl.createSimpleSingleValueStringColumnCapabilities()
+                        .setDictionaryEncoded(true)
+                        .setDictionaryValuesUnique(true));
+        assertTrue(factory.canVectorize(stringFactory));
+
+        final ColumnSelectorFactory multiValueFactory = mock(ColumnSelectorFactory.class);
+        when(multiValueFactory.getColumnCapabilities("myField"))
+                .thenReturn(ColumnCapabilitiesImpl.createSimpleSingleValueStringColumnCapabilities()
+                        .setHasMultipleValues(true));
+        assertFalse(factory.canVectorize(multiValueFactory));
+    }
+
+    @Test
+    void testFactorizeSingleValueDictionary() {
+        final ValueMatchAggregatorFactory factory = new ValueMatchAggregatorFactory("myFactory", "myField", null, null);
+
+        final BufferAggregator aggregator = factory.factorizeBuffered(mockDictionaryColumnFactory(1, "constant"));
+        assertInstanceOf(ValueMatchConstantBufferAggregator.class, aggregator);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(factory.getMaxIntermediateSize());
+        aggregator.init(buffer, 0);
+        assertNull(finalized(aggregator.get(buffer, 0)));
+
+        aggregator.aggregate(buffer, 0);
+        assertEquals("constant", finalized(aggregator.get(buffer, 0)));
+
+        assertInstanceOf(ValueMatchConstantAggregator.class, factory.factorize(mockDictionaryColumnFactory(1, "x")));
+        assertInstanceOf(NoopValueMatchAggregator.class, factory.factorize(mockDictionaryColumnFactory(1, null)));
+        assertInstanceOf(ValueMatchStringAggregator.class, factory.factorize(mockDictionaryColumnFactory(2, "x")));
+    }
+
+    private static ColumnSelectorFactory mockDictionaryColumnFactory(int cardinality, @Nullable String firstValue) {
+        final ColumnSelectorFactory columnFactory = mock(ColumnSelectorFactory.class);
+        final DimensionSelector selector = mock(DimensionSelector.class);
+
+        when(columnFactory.makeColumnValueSelector("myField")).thenReturn(selector);
+        when(columnFactory.makeDimensionSelector(DefaultDimensionSpec.of("myField"))).thenReturn(selector);
+        when(columnFactory.getColumnCapabilities("myField"))
+                .thenReturn(ColumnCapabilitiesImpl.createSimpleSingleValueStringColumnCapabilities()
+                        .setDictionaryEncoded(true)
+                        .setDictionaryValuesUnique(true));
+        when(selector.nameLookupPossibleInAdvance()).thenReturn(true);
+        when(selector.getValueCardinality()).thenReturn(cardinality);
+        when(selector.lookupName(0)).thenReturn(firstValue);
+
+        return columnFactory;
+    }
+
+    private static ColumnSelectorFactory mockColumnFactory(ColumnType columnType) {
+        final ColumnSelectorFactory columnFactory = mock(ColumnSelectorFactory.class);
+        final ColumnValueSelector<?> selector = mock(ColumnValueSelector.class);
+
+        when(columnFactory.makeColumnValueSelector("myField")).thenAnswer(invocation -> selector);
+        when(columnFactory.getColumnCapabilities("myField"))
+                .thenReturn(ColumnCapabilitiesImpl.createSimpleNumericColumnCapabilities(columnType));
+
+        return columnFactory;
+    }
 }
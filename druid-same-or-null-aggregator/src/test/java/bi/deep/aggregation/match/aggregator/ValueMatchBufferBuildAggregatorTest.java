@@ -17,20 +17,21 @@ package bi.deep.aggregation.match.aggregator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
-import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.Mockito.when;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.stream.IntStream;
-import org.apache.commons.lang.SerializationUtils;
 import org.apache.druid.segment.ColumnValueSelector;
-import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -39,7 +40,6 @@ class ValueMatchBufferBuildAggregatorTest extends TestDataProvider {
     @Mock
     private ColumnValueSelector<Object> valueSelector;
 
-    @InjectMocks
     private ValueMatchBufferBuildAggregator aggregator;
 
     private ByteBuffer buffer;
@@ -47,14 +47,14 @@ class ValueMatchBufferBuildAggregatorTest extends TestDataProvider {
 
     @BeforeEach
     void setUp() {
-        aggregator = new ValueMatchBufferBuildAggregator(valueSelector);
+        aggregator = new ValueMatchBufferBuildAggregator(valueSelector, 1024);
         buffer = ByteBuffer.allocate(1024);
         aggregator.init(buffer, position);
     }
 
     @Test
     void testInitialStateIsNull() {
-        assertNull(aggregator.get(buffer, position), "Initial state should be null");
+        assertEquals(ValueMatchState.empty(), aggregator.get(buffer, position), "Initial state should be empty");
     }
 
     @Test
@@ -65,7 +65,7 @@ class ValueMatchBufferBuildAggregatorTest extends TestDataProvider {
         when(valueSelector.getObject()).thenReturn(null);
         aggregator.aggregate(buffer, position);
 
-        assertEquals("hello", aggregator.get(buffer, position), "Null values should be ignored");
+        assertEquals("hello", finalized(aggregator.get(buffer, position)), "Null values should be ignored");
     }
 
     @Test
@@ -73,15 +73,78 @@ class ValueMatchBufferBuildAggregatorTest extends TestDataProvider {
         when(valueSelector.getObject()).thenReturn("testValue");
 
         aggregator.aggregate(buffer, position);
-        Object storedValue = aggregator.get(buffer, position);
+        ValueMatchState stored = (ValueMatchState) aggregator.get(buffer, position);
 
-        assertEquals("testValue", storedValue, "Before serialization");
+        assertEquals("testValue", stored.getValue(), "Before serialization");
 
-        // Serialize the stored object
-        byte[] serialized = SerializationUtils.serialize((String) storedValue);
-        Object deserialized = SerializationUtils.deserialize(serialized);
+        ValueMatchState deserialized = ValueMatchState.fromBytes(stored.toBytes());
 
-        assertEquals("testValue", deserialized, "After deserialization");
+        assertEquals(stored, deserialized, "After deserialization");
+    }
+
+    @Test
+    void testOversizedValueOverflows() {
+        final ValueMatchBufferBuildAggregator small = new ValueMatchBufferBuildAggregator(valueSelector, 16);
+        small.init(buffer, position);
+
+        when(valueSelector.getObject()).thenReturn("longer than the slot");
+        small.aggregate(buffer, position);
+        small.aggregate(buffer, position);
+
+        final long fingerprint = ValueMatchFingerprint.of("longer than the slot");
+        assertEquals(ValueMatchState.overflow(fingerprint), small.get(buffer, position));
+
+        when(valueSelector.getObject()).thenReturn("another long value");
+        small.aggregate(buffer, position);
+
+        assertEquals(ValueMatchState.different(), small.get(buffer, position), "Fingerprints should still differ");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "ascii", "zażółć gęślą jaźń", "\u65e5\u672c\u8a9e", "emoji \ud83d\ude00"})
+    void testComparesStringsInPlace(String value) {
+        when(valueSelector.getObject()).thenReturn(value);
+        aggregator.aggregate(buffer, position);
+        aggregator.aggregate(buffer, position);
+
+        assertEquals(ValueMatchState.of(value), aggregator.get(buffer, position));
+    }
+
+    @Test
+    void testComparesNestedValues() {
+        final Map<String, Object> one = new LinkedHashMap<>();
+        one.put("a", Arrays.asList(1L, 2L));
+        one.put("b", "text");
+        final Map<String, Object> same = new LinkedHashMap<>();
+        same.put("b", "text");
+        same.put("a", Arrays.asList(1L, 2L));
+
+        when(valueSelector.getObject()).thenReturn(one);
+        aggregator.aggregate(buffer, position);
+        when(valueSelector.getObject()).thenReturn(same);
+        aggregator.aggregate(buffer, position);
+
+        assertEquals(ValueMatchState.of(one), aggregator.get(buffer, position));
+
+        when(valueSelector.getObject()).thenReturn(Collections.singletonMap("a", Arrays.asList(1L, 3L)));
+        aggregator.aggregate(buffer, position);
+
+        assertEquals(ValueMatchState.different(), aggregator.get(buffer, position));
+    }
+
+    @Test
+    void testMergesIntermediateStates() {
+        when(valueSelector.getObject()).thenReturn(ValueMatchState.of(5L));
+        aggregator.aggregate(buffer, position);
+        when(valueSelector.getObject()).thenReturn(ValueMatchState.empty());
+        aggregator.aggregate(buffer, position);
+
+        assertEquals(ValueMatchState.of(5L), aggregator.get(buffer, position));
+
+        when(valueSelector.getObject()).thenReturn(ValueMatchState.different());
+        aggregator.aggregate(buffer, position);
+
+        assertEquals(ValueMatchState.different(), aggregator.get(buffer, position));
     }
 
     @ParameterizedTest
@@ -90,7 +153,7 @@ class ValueMatchBufferBuildAggregatorTest extends TestDataProvider {
         when(valueSelector.getObject()).thenReturn(value);
         aggregator.aggregate(buffer, position);
 
-        Object result = aggregator.get(buffer, position);
+        Object result = finalized(aggregator.get(buffer, position));
         assertNotNull(result, "Result should not be null after aggregation.");
         assertEquals(value, result, "The aggregated value should match the selector's value.");
     }
@@ -103,7 +166,7 @@ class ValueMatchBufferBuildAggregatorTest extends TestDataProvider {
             aggregator.aggregate(buffer, position);
         });
 
-        Object result = aggregator.get(buffer, position);
+        Object result = finalized(aggregator.get(buffer, position));
         assertNotNull(result, "Result should not be null after aggregation.");
         assertEquals(value, result, "The aggregated value should match the selector's value.");
     }
@@ -118,6 +181,6 @@ class ValueMatchBufferBuildAggregatorTest extends TestDataProvider {
         aggregator.aggregate(buffer, position);
 
         Object result = aggregator.get(buffer, position);
-        Assertions.assertNull(result, "Result should be null after aggregation.");
+        assertEquals(ValueMatchState.different(), result, "Result should be different after aggregation.");
     }
 }
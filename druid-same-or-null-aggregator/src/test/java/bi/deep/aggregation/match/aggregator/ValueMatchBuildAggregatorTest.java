@@ -17,11 +17,14 @@ package bi.deep.aggregation.match.aggregator;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
 import java.util.stream.IntStream;
 import org.apache.druid.segment.ColumnValueSelector;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -36,11 +39,11 @@ class ValueMatchBuildAggregatorTest extends TestDataProvider {
     @ParameterizedTest
     @MethodSource("provideMixedTypeValues")
     void testAggregateWithSingleValue(Object value) {
-        try (ValueMatchBuildAggregator aggregator = new ValueMatchBuildAggregator(valueSelector)) {
+        try (ValueMatchBuildAggregator aggregator = new ValueMatchBuildAggregator(valueSelector, 1024)) {
             when(valueSelector.getObject()).thenReturn(value);
             aggregator.aggregate();
 
-            Object result = aggregator.get();
+            Object result = finalized(aggregator.get());
             assertNotNull(result, "Result should not be null after aggregation.");
             assertEquals(value, result, "The aggregated value should match the selector's value.");
         }
@@ -49,13 +52,13 @@ class ValueMatchBuildAggregatorTest extends TestDataProvider {
     @ParameterizedTest
     @MethodSource("provideMixedTypeValues")
     void testAggregateWithSameValue(Object value) {
-        try (ValueMatchBuildAggregator aggregator = new ValueMatchBuildAggregator(valueSelector)) {
+        try (ValueMatchBuildAggregator aggregator = new ValueMatchBuildAggregator(valueSelector, 1024)) {
             IntStream.range(1, 10).forEach(index -> {
                 when(valueSelector.getObject()).thenReturn(value);
                 aggregator.aggregate();
             });
 
-            Object result = aggregator.get();
+            Object result = finalized(aggregator.get());
             assertNotNull(result, "Result should not be null after aggregation.");
             assertEquals(value, result, "The aggregated value should match the selector's value.");
         }
@@ -64,15 +67,37 @@ class ValueMatchBuildAggregatorTest extends TestDataProvider {
     @ParameterizedTest
     @MethodSource("provideMixedTypeDifferentValues")
     void testAggregateWithDifferentValue(Object one, Object two) {
-        try (ValueMatchBuildAggregator aggregator = new ValueMatchBuildAggregator(valueSelector)) {
+        try (ValueMatchBuildAggregator aggregator = new ValueMatchBuildAggregator(valueSelector, 1024)) {
             when(valueSelector.getObject()).thenReturn(one);
             aggregator.aggregate();
 
             when(valueSelector.getObject()).thenReturn(two);
             aggregator.aggregate();
 
-            Object result = aggregator.get();
+            Object result = finalized(aggregator.get());
             Assertions.assertNull(result, "Result should be null after aggregation.");
         }
     }
+
+    @Test
+    void testOversizedValueOverflowsLikeBufferAggregator() {
+        final ValueMatchBufferBuildAggregator bufferAggregator = new ValueMatchBufferBuildAggregator(valueSelector, 16);
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        bufferAggregator.init(buffer, 0);
+
+        try (ValueMatchBuildAggregator aggregator = new ValueMatchBuildAggregator(valueSelector, 16)) {
+            when(valueSelector.getObject()).thenReturn("longer than the slot");
+            aggregator.aggregate();
+            aggregator.aggregate();
+            bufferAggregator.aggregate(buffer, 0);
+
+            assertTrue(((ValueMatchState) aggregator.get()).isOverflow());
+            assertEquals(bufferAggregator.get(buffer, 0), aggregator.get());
+
+            when(valueSelector.getObject()).thenReturn("another long value");
+            aggregator.aggregate();
+
+            assertEquals(ValueMatchState.different(), aggregator.get());
+        }
+    }
 }
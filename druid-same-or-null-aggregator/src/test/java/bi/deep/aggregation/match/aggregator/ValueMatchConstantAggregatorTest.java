@@ -0,0 +1,61 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.TestDataProvider.finalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.Test;
+
+class ValueMatchConstantAggregatorTest {
+    private final ByteBuffer buffer = ByteBuffer.allocate(16);
+
+    @Test
+    void testBufferReturnsValueOnlyWhenRowsWereSeen() {
+        ValueMatchConstantBufferAggregator aggregator = new ValueMatchConstantBufferAggregator("pl");
+        aggregator.init(buffer, 4);
+        assertNull(finalized(aggregator.get(buffer, 4)));
+
+        aggregator.aggregate(buffer, 4);
+        assertEquals("pl", finalized(aggregator.get(buffer, 4)));
+    }
+
+    @Test
+    void testVector() {
+        ValueMatchConstantVectorAggregator aggregator = new ValueMatchConstantVectorAggregator("pl");
+        aggregator.init(buffer, 0);
+        aggregator.init(buffer, 8);
+
+        aggregator.aggregate(buffer, 0, 0, 0);
+        assertNull(finalized(aggregator.get(buffer, 0)));
+
+        aggregator.aggregate(buffer, 1, new int[] {8}, null, 0);
+        assertNull(finalized(aggregator.get(buffer, 0)));
+        assertEquals("pl", finalized(aggregator.get(buffer, 8)));
+    }
+
+    @Test
+    void testHeap() {
+        try (ValueMatchConstantAggregator aggregator = new ValueMatchConstantAggregator("pl")) {
+            assertNull(finalized(aggregator.get()));
+
+            aggregator.aggregate();
+            assertEquals("pl", finalized(aggregator.get()));
+        }
+    }
+}
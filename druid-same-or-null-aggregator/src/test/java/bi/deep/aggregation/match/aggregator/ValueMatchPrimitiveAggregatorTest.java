@@ -0,0 +1,146 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.TestDataProvider.finalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import org.apache.druid.segment.ColumnValueSelector;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ValueMatchPrimitiveAggregatorTest {
+    @Mock
+    private ColumnValueSelector<Object> valueSelector;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(16);
+    private final int position = 3;
+
+    @Test
+    void testLongBufferSameValue() {
+        ValueMatchLongBufferAggregator aggregator = new ValueMatchLongBufferAggregator(valueSelector);
+        aggregator.init(buffer, position);
+        assertNull(finalized(aggregator.get(buffer, position)), "Initial state should be null");
+
+        when(valueSelector.getLong()).thenReturn(42L);
+        aggregator.aggregate(buffer, position);
+        aggregator.aggregate(buffer, position);
+
+        assertEquals(42L, finalized(aggregator.get(buffer, position)));
+        assertEquals(42L, aggregator.getLong(buffer, position));
+        assertFalse(aggregator.isNull(buffer, position));
+    }
+
+    @Test
+    void testLongBufferIgnoresNulls() {
+        ValueMatchLongBufferAggregator aggregator = new ValueMatchLongBufferAggregator(valueSelector);
+        aggregator.init(buffer, position);
+
+        when(valueSelector.getLong()).thenReturn(7L);
+        aggregator.aggregate(buffer, position);
+        when(valueSelector.isNull()).thenReturn(true);
+        aggregator.aggregate(buffer, position);
+
+        assertEquals(7L, finalized(aggregator.get(buffer, position)), "Null values should be ignored");
+    }
+
+    @Test
+    void testLongBufferDifferentValue() {
+        ValueMatchLongBufferAggregator aggregator = new ValueMatchLongBufferAggregator(valueSelector);
+        aggregator.init(buffer, position);
+
+        when(valueSelector.getLong()).thenReturn(1L, 2L, 1L);
+        aggregator.aggregate(buffer, position);
+        aggregator.aggregate(buffer, position);
+        aggregator.aggregate(buffer, position);
+
+        assertNull(finalized(aggregator.get(buffer, position)));
+        assertTrue(aggregator.isNull(buffer, position));
+    }
+
+    @Test
+    void testDoubleBuffer() {
+        ValueMatchDoubleBufferAggregator aggregator = new ValueMatchDoubleBufferAggregator(valueSelector);
+        aggregator.init(buffer, position);
+
+        when(valueSelector.getDouble()).thenReturn(89.12, 89.12, 89.13);
+        aggregator.aggregate(buffer, position);
+        aggregator.aggregate(buffer, position);
+        assertEquals(89.12, finalized(aggregator.get(buffer, position)));
+
+        aggregator.aggregate(buffer, position);
+        assertNull(finalized(aggregator.get(buffer, position)));
+    }
+
+    @Test
+    void testFloatBuffer() {
+        ValueMatchFloatBufferAggregator aggregator = new ValueMatchFloatBufferAggregator(valueSelector);
+        aggregator.init(buffer, position);
+
+        when(valueSelector.getFloat()).thenReturn(45.67f, 45.67f, 45.68f);
+        aggregator.aggregate(buffer, position);
+        aggregator.aggregate(buffer, position);
+        assertEquals(45.67f, finalized(aggregator.get(buffer, position)));
+
+        aggregator.aggregate(buffer, position);
+        assertNull(finalized(aggregator.get(buffer, position)));
+    }
+
+    @Test
+    void testLongHeap() {
+        try (ValueMatchLongAggregator aggregator = new ValueMatchLongAggregator(valueSelector)) {
+            assertNull(finalized(aggregator.get()));
+
+            when(valueSelector.getLong()).thenReturn(5L, 5L, 6L);
+            aggregator.aggregate();
+            aggregator.aggregate();
+            assertEquals(5L, finalized(aggregator.get()));
+
+            aggregator.aggregate();
+            assertNull(finalized(aggregator.get()));
+        }
+    }
+
+    @Test
+    void testDoubleHeap() {
+        try (ValueMatchDoubleAggregator aggregator = new ValueMatchDoubleAggregator(valueSelector)) {
+            when(valueSelector.getDouble()).thenReturn(1.5, 2.5);
+            aggregator.aggregate();
+            assertEquals(1.5, finalized(aggregator.get()));
+
+            aggregator.aggregate();
+            assertNull(finalized(aggregator.get()));
+        }
+    }
+
+    @Test
+    void testFloatHeap() {
+        try (ValueMatchFloatAggregator aggregator = new ValueMatchFloatAggregator(valueSelector)) {
+            when(valueSelector.getFloat()).thenReturn(1.5f, 1.5f);
+            aggregator.aggregate();
+            aggregator.aggregate();
+            assertEquals(1.5f, finalized(aggregator.get()));
+        }
+    }
+}
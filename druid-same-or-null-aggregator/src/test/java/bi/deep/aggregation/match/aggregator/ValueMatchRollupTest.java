@@ -0,0 +1,129 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import bi.deep.ValueMatchModule;
+import com.google.common.collect.ImmutableMap;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.druid.data.input.MapBasedInputRow;
+import org.apache.druid.data.input.Row;
+import org.apache.druid.data.input.impl.DimensionsSpec;
+import org.apache.druid.data.input.impl.TimestampSpec;
+import org.apache.druid.java.util.common.DateTimes;
+import org.apache.druid.java.util.common.granularity.Granularities;
+import org.apache.druid.query.aggregation.AggregateCombiner;
+import org.apache.druid.query.aggregation.CountAggregatorFactory;
+import org.apache.druid.query.aggregation.TestObjectColumnSelector;
+import org.apache.druid.segment.incremental.IncrementalIndex;
+import org.apache.druid.segment.incremental.IncrementalIndexSchema;
+import org.apache.druid.segment.incremental.OnheapIncrementalIndex;
+import org.apache.druid.segment.serde.ComplexMetrics;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ValueMatchRollupTest {
+    private static final long TIMESTAMP = DateTimes.of("2025-01-01").getMillis();
+    private static final List<String> DIMENSIONS = Collections.singletonList("user");
+
+    private final ValueMatchAggregatorFactory factory =
+            new ValueMatchAggregatorFactory("country_same", "country", null, null);
+
+    @BeforeAll
+    static void registerSerde() {
+        ValueMatchModule.registerSerde();
+    }
+
+    @Test
+    void testRollupKeepsConstantAttribute() {
+        final IncrementalIndex index = new OnheapIncrementalIndex.Builder()
+                .setIndexSchema(new IncrementalIndexSchema.Builder()
+                        .withTimestampSpec(new TimestampSpec("__time", "millis", null))
+                        .withDimensionsSpec(DimensionsSpec.builder()
+                                .setDimensions(DimensionsSpec.getDefaultSchemas(DIMENSIONS))
+                                .build())
+                        .withQueryGranularity(Granularities.DAY)
+                        .withMetrics(new CountAggregatorFactory("cnt"), factory)
+                        .withRollup(true)
+                        .build())
+                .setMaxRowCount(1000)
+                .build();
+
+        index.add(new MapBasedInputRow(TIMESTAMP, DIMENSIONS, ImmutableMap.of("user", "a", "country", "pl")));
+        index.add(new MapBasedInputRow(TIMESTAMP + 1, DIMENSIONS, ImmutableMap.of("user", "a", "country", "pl")));
+        index.add(new MapBasedInputRow(TIMESTAMP, DIMENSIONS, ImmutableMap.of("user", "b", "country", "pl")));
+        index.add(new MapBasedInputRow(TIMESTAMP + 1, DIMENSIONS, ImmutableMap.of("user", "b", "country", "de")));
+        index.add(new MapBasedInputRow(TIMESTAMP, DIMENSIONS, ImmutableMap.of("user", "c")));
+
+        final Map<String, Object> rolledUp = new HashMap<>();
+        for (Row row : index) {
+            rolledUp.put(row.getDimension("user").get(0), row.getRaw("country_same"));
+        }
+
+        assertEquals(3, index.size());
+        assertEquals(ValueMatchState.of("pl"), rolledUp.get("a"));
+        assertEquals(ValueMatchState.different(), rolledUp.get("b"));
+        assertEquals(ValueMatchState.empty(), rolledUp.get("c"));
+    }
+
+    @Test
+    void testAggregateCombinerMergesRolledUpRows() {
+        final AggregateCombiner<?> combiner = factory.makeAggregateCombiner();
+
+        combiner.reset(new TestObjectColumnSelector<>(new Object[] {ValueMatchState.of("pl")}));
+        combiner.fold(new TestObjectColumnSelector<>(new Object[] {ValueMatchState.empty()}));
+        combiner.fold(new TestObjectColumnSelector<>(new Object[] {ValueMatchState.of("pl")}));
+        assertEquals(ValueMatchState.of("pl"), combiner.getObject());
+
+        combiner.fold(new TestObjectColumnSelector<>(new Object[] {ValueMatchState.different()}));
+        combiner.fold(new TestObjectColumnSelector<>(new Object[] {ValueMatchState.of("pl")}));
+        assertEquals(ValueMatchState.different(), combiner.getObject());
+
+        combiner.reset(new TestObjectColumnSelector<>(new Object[] {null}));
+        assertEquals(ValueMatchState.empty(), combiner.getObject());
+    }
+
+    @Test
+    void testSerde() {
+        assertInstanceOf(
+                ValueMatchComplexMetricSerde.class, ComplexMetrics.getSerdeForType(ValueMatchState.TYPE_NAME));
+
+        final ValueMatchComplexMetricSerde serde = new ValueMatchComplexMetricSerde();
+        final MapBasedInputRow row = new MapBasedInputRow(TIMESTAMP, DIMENSIONS, ImmutableMap.of("country", "pl"));
+
+        assertEquals(ValueMatchState.of("pl"), serde.getExtractor().extractValue(row, "country"));
+        assertEquals(ValueMatchState.empty(), serde.getExtractor().extractValue(row, "missing"));
+
+        for (ValueMatchState state : new ValueMatchState[] {
+            ValueMatchState.empty(),
+            ValueMatchState.different(),
+            ValueMatchState.overflow(7L),
+            ValueMatchState.of(3L),
+            ValueMatchState.of("pl"),
+            ValueMatchState.of(Collections.singletonList("nested"))
+        }) {
+            final byte[] bytes = serde.getObjectStrategy().toBytes(state);
+
+            assertEquals(state, serde.getObjectStrategy().fromByteBuffer(ByteBuffer.wrap(bytes), bytes.length));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.TestDataProvider.finalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import org.apache.druid.segment.DimensionSelector;
+import org.apache.druid.segment.IdLookup;
+import org.apache.druid.segment.data.ArrayBasedIndexedInts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ValueMatchStringAggregatorTest {
+    private static final int NULL_ID = 0;
+
+    @Mock
+    private DimensionSelector selector;
+
+    @Mock
+    private IdLookup idLookup;
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(16);
+    private final int position = 0;
+
+    @BeforeEach
+    void setUp() {
+        when(selector.idLookup()).thenReturn(idLookup);
+        when(idLookup.lookupId(null)).thenReturn(NULL_ID);
+    }
+
+    @Test
+    void testBufferSameIds() {
+        ValueMatchStringBufferAggregator aggregator = new ValueMatchStringBufferAggregator(selector);
+        aggregator.init(buffer, position);
+
+        when(selector.getRow())
+                .thenReturn(row(NULL_ID), row(3), row(3), new ArrayBasedIndexedInts(new int[0]), row(NULL_ID));
+        for (int i = 0; i < 5; i++) {
+            aggregator.aggregate(buffer, position);
+        }
+
+        verify(selector, never()).lookupName(3);
+
+        when(selector.lookupName(3)).thenReturn("pl");
+        assertEquals("pl", finalized(aggregator.get(buffer, position)));
+    }
+
+    @Test
+    void testBufferDifferentIds() {
+        ValueMatchStringBufferAggregator aggregator = new ValueMatchStringBufferAggregator(selector);
+        aggregator.init(buffer, position);
+
+        when(selector.getRow()).thenReturn(row(3), row(4));
+        aggregator.aggregate(buffer, position);
+        aggregator.aggregate(buffer, position);
+
+        assertNull(finalized(aggregator.get(buffer, position)));
+    }
+
+    @Test
+    void testHeapSameIds() {
+        try (ValueMatchStringAggregator aggregator = new ValueMatchStringAggregator(selector)) {
+            assertNull(finalized(aggregator.get()));
+
+            when(selector.getRow()).thenReturn(row(5), row(NULL_ID), row(5));
+            aggregator.aggregate();
+            aggregator.aggregate();
+            aggregator.aggregate();
+
+            when(selector.lookupName(5)).thenReturn("de");
+            assertEquals("de", finalized(aggregator.get()));
+        }
+    }
+
+    @Test
+    void testHeapDifferentIds() {
+        try (ValueMatchStringAggregator aggregator = new ValueMatchStringAggregator(selector)) {
+            when(selector.getRow()).thenReturn(row(5), row(6));
+            aggregator.aggregate();
+            aggregator.aggregate();
+
+            assertNull(finalized(aggregator.get()));
+        }
+    }
+
+    private static ArrayBasedIndexedInts row(int id) {
+        return new ArrayBasedIndexedInts(new int[] {id});
+    }
+}
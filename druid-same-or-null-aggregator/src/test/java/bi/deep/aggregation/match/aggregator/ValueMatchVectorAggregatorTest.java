@@ -0,0 +1,128 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.aggregator;
+
+import static bi.deep.aggregation.match.aggregator.TestDataProvider.finalized;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import org.apache.druid.segment.IdLookup;
+import org.apache.druid.segment.vector.SingleValueDimensionVectorSelector;
+import org.apache.druid.segment.vector.VectorValueSelector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class ValueMatchVectorAggregatorTest {
+    @Mock
+    private VectorValueSelector valueSelector;
+
+    @Mock
+    private SingleValueDimensionVectorSelector dimensionSelector;
+
+    @Mock
+    private IdLookup idLookup;
+
+    private ByteBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = ByteBuffer.allocate(64);
+    }
+
+    @Test
+    void testLongSameValues() {
+        ValueMatchLongVectorAggregator aggregator = new ValueMatchLongVectorAggregator(valueSelector);
+        aggregator.init(buffer, 0);
+
+        when(valueSelector.getLongVector()).thenReturn(new long[] {0, 7, 7, 7});
+        when(valueSelector.getNullVector()).thenReturn(new boolean[] {true, false, false, false});
+        aggregator.aggregate(buffer, 0, 0, 4);
+
+        assertEquals(7L, finalized(aggregator.get(buffer, 0)));
+    }
+
+    @Test
+    void testLongDifferentValues() {
+        ValueMatchLongVectorAggregator aggregator = new ValueMatchLongVectorAggregator(valueSelector);
+        aggregator.init(buffer, 0);
+
+        when(valueSelector.getLongVector()).thenReturn(new long[] {7, 7, 8, 7});
+        aggregator.aggregate(buffer, 0, 0, 4);
+
+        assertNull(finalized(aggregator.get(buffer, 0)));
+    }
+
+    @Test
+    void testDoubleGrouped() {
+        ValueMatchDoubleVectorAggregator aggregator = new ValueMatchDoubleVectorAggregator(valueSelector);
+        aggregator.init(buffer, 0);
+        aggregator.init(buffer, 16);
+
+        when(valueSelector.getDoubleVector()).thenReturn(new double[] {1.5, 2.5, 1.5, 3.5});
+        aggregator.aggregate(buffer, 4, new int[] {0, 16, 0, 16}, null, 0);
+
+        assertEquals(1.5, finalized(aggregator.get(buffer, 0)));
+        assertNull(finalized(aggregator.get(buffer, 16)));
+    }
+
+    @Test
+    void testFloatAcrossBatches() {
+        ValueMatchFloatVectorAggregator aggregator = new ValueMatchFloatVectorAggregator(valueSelector);
+        aggregator.init(buffer, 0);
+
+        when(valueSelector.getFloatVector()).thenReturn(new float[] {1.5f, 1.5f}, new float[] {1.5f, 2.5f});
+        aggregator.aggregate(buffer, 0, 0, 2);
+        assertEquals(1.5f, finalized(aggregator.get(buffer, 0)));
+
+        aggregator.aggregate(buffer, 0, 0, 2);
+        assertNull(finalized(aggregator.get(buffer, 0)));
+    }
+
+    @Test
+    void testStringComparesDictionaryIds() {
+        when(dimensionSelector.idLookup()).thenReturn(idLookup);
+        when(idLookup.lookupId(null)).thenReturn(0);
+        when(dimensionSelector.lookupName(2)).thenReturn("pl");
+
+        ValueMatchStringVectorAggregator aggregator = new ValueMatchStringVectorAggregator(dimensionSelector);
+        aggregator.init(buffer, 0);
+
+        when(dimensionSelector.getRowVector()).thenReturn(new int[] {0, 2, 0, 2});
+        aggregator.aggregate(buffer, 0, 0, 4);
+
+        assertEquals("pl", finalized(aggregator.get(buffer, 0)));
+    }
+
+    @Test
+    void testStringDifferentIds() {
+        when(dimensionSelector.idLookup()).thenReturn(idLookup);
+        when(idLookup.lookupId(null)).thenReturn(0);
+
+        ValueMatchStringVectorAggregator aggregator = new ValueMatchStringVectorAggregator(dimensionSelector);
+        aggregator.init(buffer, 0);
+
+        when(dimensionSelector.getRowVector()).thenReturn(new int[] {2, 2, 3});
+        aggregator.aggregate(buffer, 0, 0, 3);
+
+        assertNull(finalized(aggregator.get(buffer, 0)));
+    }
+}
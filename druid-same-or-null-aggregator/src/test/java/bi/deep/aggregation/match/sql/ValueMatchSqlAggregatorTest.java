@@ -0,0 +1,75 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep.aggregation.match.sql;
+
+import bi.deep.ValueMatchModule;
+import com.google.common.collect.ImmutableList;
+import org.apache.druid.initialization.DruidModule;
+import org.apache.druid.segment.column.ColumnType;
+import org.apache.druid.segment.column.RowSignature;
+import org.apache.druid.sql.calcite.BaseCalciteQueryTest;
+import org.apache.druid.sql.calcite.SqlTestFrameworkConfig;
+import org.apache.druid.sql.calcite.TempDirProducer;
+import org.apache.druid.sql.calcite.util.DruidModuleCollection;
+import org.apache.druid.sql.calcite.util.SqlTestFramework.StandardComponentSupplier;
+import org.junit.jupiter.api.Test;
+
+@SqlTestFrameworkConfig.ComponentSupplier(ValueMatchSqlAggregatorTest.ValueMatchComponentSupplier.class)
+public class ValueMatchSqlAggregatorTest extends BaseCalciteQueryTest {
+
+    protected static class ValueMatchComponentSupplier extends StandardComponentSupplier {
+        public ValueMatchComponentSupplier(TempDirProducer tempFolderProducer) {
+            super(tempFolderProducer);
+        }
+
+        @Override
+        public DruidModule getCoreModule() {
+            return DruidModuleCollection.of(super.getCoreModule(), new ValueMatchModule());
+        }
+    }
+
+    @Test
+    public void testSameOrNullOnDoubleColumn() {
+        // m2 is a DOUBLE column of the standard "foo" datasource, holding 2.0 in the row where dim1 = '10.1'
+        testBuilder()
+                .sql("SELECT SAME_OR_NULL(m2), SAME_OR_NULL(m2) + 1 FROM druid.foo WHERE dim1 = '10.1'")
+                .expectedSignature(RowSignature.builder()
+                        .add("EXPR$0", ColumnType.DOUBLE)
+                        .add("EXPR$1", ColumnType.DOUBLE)
+                        .build())
+                .expectedResults(ImmutableList.of(new Object[] {2.0, 3.0}))
+                .run();
+    }
+
+    @Test
+    public void testSameOrNullOnDoubleColumnWithDifferentValues() {
+        testBuilder()
+                .sql("SELECT SAME_OR_NULL(m2) FROM druid.foo")
+                .expectedSignature(RowSignature.builder().add("EXPR$0", ColumnType.DOUBLE).build())
+                .expectedResults(ImmutableList.of(new Object[] {null}))
+                .run();
+    }
+
+    @Test
+    public void testSameOrNullOnDoubleColumnCastToBigint() {
+        // Values are compared as doubles; the cast only applies to the matched value
+        testBuilder()
+                .sql("SELECT CAST(SAME_OR_NULL(m2) AS BIGINT) FROM druid.foo WHERE m2 = 3.0")
+                .expectedSignature(RowSignature.builder().add("EXPR$0", ColumnType.LONG).build())
+                .expectedResults(ImmutableList.of(new Object[] {3L}))
+                .run();
+    }
+}
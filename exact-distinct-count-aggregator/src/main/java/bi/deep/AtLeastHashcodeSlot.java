@@ -0,0 +1,149 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+
+/**
+ * Fixed-size open-addressing set of row hashcodes used by the {@code atLeast} mode of the buffer and vector
+ * aggregators. Once {@code atLeast} distinct hashcodes were added the slot is marked as saturated and ignores further
+ * values.
+ *
+ * <p>Layout: {@code [flags: byte][size: int][table: int * tableSize]}. Zero marks an empty table entry, so a real
+ * zero hashcode is tracked with a dedicated flag bit.
+ */
+public final class AtLeastHashcodeSlot {
+    private static final byte SATURATED = 0x01;
+    private static final byte CONTAINS_ZERO = 0x02;
+
+    private static final int FLAGS_OFFSET = 0;
+    private static final int SIZE_OFFSET = 1;
+    private static final int TABLE_OFFSET = 5;
+
+    private final int atLeast;
+    private final int mask;
+
+    public AtLeastHashcodeSlot(int atLeast) {
+        this.atLeast = atLeast;
+        this.mask = tableSize(atLeast) - 1;
+    }
+
+    /**
+     * Power of two keeping the load factor of the table at or below 0.5.
+     */
+    private static int tableSize(int atLeast) {
+        return Integer.highestOneBit(atLeast) << 2;
+    }
+
+    public static int getMaxIntermediateSize(int atLeast) {
+        return TABLE_OFFSET + tableSize(atLeast) * Integer.BYTES;
+    }
+
+    public void init(ByteBuffer buf, int position) {
+        buf.put(position + FLAGS_OFFSET, (byte) 0);
+        buf.putInt(position + SIZE_OFFSET, 0);
+        for (int i = 0; i <= mask; i++) {
+            buf.putInt(position + TABLE_OFFSET + i * Integer.BYTES, 0);
+        }
+    }
+
+    public boolean isSaturated(ByteBuffer buf, int position) {
+        return (buf.get(position + FLAGS_OFFSET) & SATURATED) != 0;
+    }
+
+    /**
+     * Adds the hashcode to the slot, marking it as saturated once {@code atLeast} distinct values were seen.
+     */
+    public void add(ByteBuffer buf, int position, int hashcode) {
+        final byte flags = buf.get(position + FLAGS_OFFSET);
+
+        if ((flags & SATURATED) != 0) {
+            return;
+        }
+
+        if (hashcode == 0) {
+            if ((flags & CONTAINS_ZERO) == 0) {
+                buf.put(position + FLAGS_OFFSET, (byte) (flags | CONTAINS_ZERO));
+                incrementSize(buf, position);
+            }
+            return;
+        }
+
+        int index = mix(hashcode) & mask;
+        while (true) {
+            final int entryPosition = position + TABLE_OFFSET + index * Integer.BYTES;
+            final int entry = buf.getInt(entryPosition);
+
+            if (entry == hashcode) {
+                return;
+            }
+
+            if (entry == 0) {
+                buf.putInt(entryPosition, hashcode);
+                incrementSize(buf, position);
+                return;
+            }
+
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void incrementSize(ByteBuffer buf, int position) {
+        final int size = buf.getInt(position + SIZE_OFFSET) + 1;
+        buf.putInt(position + SIZE_OFFSET, size);
+
+        if (size >= atLeast) {
+            buf.put(position + FLAGS_OFFSET, (byte) (buf.get(position + FLAGS_OFFSET) | SATURATED));
+        }
+    }
+
+    /**
+     * Returns the saturated marker, or the set of collected hashcodes when the threshold was not reached.
+     */
+    public Object get(ByteBuffer buf, int position) {
+        final byte flags = buf.get(position + FLAGS_OFFSET);
+
+        if ((flags & SATURATED) != 0) {
+            return atLeast;
+        }
+
+        final HashSet<Integer> registry = new HashSet<>();
+        if ((flags & CONTAINS_ZERO) != 0) {
+            registry.add(0);
+        }
+
+        for (int i = 0; i <= mask; i++) {
+            final int entry = buf.getInt(position + TABLE_OFFSET + i * Integer.BYTES);
+            if (entry != 0) {
+                registry.add(entry);
+            }
+        }
+
+        return registry;
+    }
+
+    public void relocate(int oldPosition, int newPosition, ByteBuffer oldBuffer, ByteBuffer newBuffer) {
+        final int size = getMaxIntermediateSize(atLeast);
+        for (int i = 0; i < size; i++) {
+            newBuffer.put(newPosition + i, oldBuffer.get(oldPosition + i));
+        }
+    }
+
+    private static int mix(int hashcode) {
+        return hashcode ^ (hashcode >>> 16);
+    }
+}
@@ -17,6 +17,7 @@ package bi.deep;
 
 import java.util.List;
 import java.util.Set;
+import javax.annotation.Nullable;
 import org.apache.druid.query.aggregation.Aggregator;
 import org.apache.druid.segment.DimensionSelector;
 import org.slf4j.LoggerFactory;
@@ -26,22 +27,29 @@ public class ExactDistinctCountAggregator implements Aggregator {
     private final HashcodeRegistry hashcodeRegistry;
     private final Integer maxNumberOfValues;
     private final boolean failOnLimitExceeded;
+
+    @Nullable
+    private final Integer atLeast;
+
     private boolean achievedLimit;
+    private boolean saturated;
 
     public ExactDistinctCountAggregator(
             List<DimensionSelector> selectors,
             Set<Integer> set,
             Integer maxNumberOfValues,
-            boolean failOnLimitExceeded) {
+            boolean failOnLimitExceeded,
+            @Nullable Integer atLeast) {
         this.selectors = selectors;
         this.maxNumberOfValues = maxNumberOfValues;
         this.failOnLimitExceeded = failOnLimitExceeded;
+        this.atLeast = atLeast;
         this.hashcodeRegistry = new HashcodeRegistry(set);
     }
 
     @Override
     public void aggregate() {
-        if (achievedLimit) {
+        if (achievedLimit || saturated) {
             return;
         }
 
@@ -59,11 +67,15 @@ public class ExactDistinctCountAggregator implements Aggregator {
         }
 
         hashcodeRegistry.add(selectors);
+
+        if (atLeast != null && hashcodeRegistry.size() >= atLeast) {
+            saturated = true;
+        }
     }
 
     @Override
     public Object get() {
-        return hashcodeRegistry.getRegistry();
+        return saturated ? atLeast : hashcodeRegistry.getRegistry();
     }
 
     @Override
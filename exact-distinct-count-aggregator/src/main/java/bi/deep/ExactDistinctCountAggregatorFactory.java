@@ -28,9 +28,14 @@ import javax.validation.ValidationException;
 import org.apache.druid.java.util.common.StringUtils;
 import org.apache.druid.query.aggregation.*;
 import org.apache.druid.query.dimension.DefaultDimensionSpec;
+import org.apache.druid.segment.ColumnInspector;
 import org.apache.druid.segment.ColumnSelectorFactory;
 import org.apache.druid.segment.DimensionSelector;
+import org.apache.druid.segment.column.ColumnCapabilities;
 import org.apache.druid.segment.column.ColumnType;
+import org.apache.druid.segment.column.ValueType;
+import org.apache.druid.segment.vector.VectorColumnSelectorFactory;
+import org.apache.druid.segment.vector.VectorObjectSelector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,14 +44,28 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
     private final List<String> fieldNames;
     private final Integer maxNumberOfValues;
     private final Boolean failOnLimitExceeded;
+
+    /**
+     * Optional threshold. Once this many distinct values are seen the aggregator stops collecting them and reports the
+     * threshold itself instead of the whole set.
+     */
+    @Nullable
+    private final Integer atLeast;
+
     private static final Logger LOG = LoggerFactory.getLogger(ExactDistinctCountAggregatorFactory.class);
 
+    public ExactDistinctCountAggregatorFactory(
+            String name, List<String> fieldNames, Integer maxNumberOfValues, Boolean failOnLimitExceeded) {
+        this(name, fieldNames, maxNumberOfValues, failOnLimitExceeded, null);
+    }
+
     @JsonCreator
     public ExactDistinctCountAggregatorFactory(
             @JsonProperty("name") String name,
             @JsonProperty("fieldNames") List<String> fieldNames,
             @JsonProperty("maxNumberOfValues") Integer maxNumberOfValues,
-            @JsonProperty("failOnLimitExceeded") Boolean failOnLimitExceeded) {
+            @JsonProperty("failOnLimitExceeded") Boolean failOnLimitExceeded,
+            @JsonProperty("atLeast") @Nullable Integer atLeast) {
         Preconditions.checkNotNull(name);
         Preconditions.checkNotNull(fieldNames);
         Preconditions.checkArgument(!fieldNames.isEmpty());
@@ -61,6 +80,13 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
         this.failOnLimitExceeded = failOnLimitExceeded != null && failOnLimitExceeded;
 
         this.maxNumberOfValues = maxNumberOfValues != null ? maxNumberOfValues : 10000;
+
+        if (atLeast != null && (atLeast <= 0 || atLeast > this.maxNumberOfValues)) {
+            throw new ValidationException(
+                    "Invalid atLeast -> '" + atLeast + "', must be between 1 and maxNumberOfValues");
+        }
+
+        this.atLeast = atLeast;
     }
 
     @Override
@@ -78,20 +104,59 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
             selectors.add(selector);
         }
 
-        return new ExactDistinctCountAggregator(selectors, Sets.newHashSet(), maxNumberOfValues, failOnLimitExceeded);
+        return new ExactDistinctCountAggregator(
+                selectors, Sets.newHashSet(), maxNumberOfValues, failOnLimitExceeded, atLeast);
     }
 
     @Override
     @Nonnull
     public BufferAggregator factorizeBuffered(@Nonnull ColumnSelectorFactory columnFactory) {
-        throw new UnsupportedOperationException("Not supported for groupBy and topN queries");
+        if (atLeast == null) {
+            throw new UnsupportedOperationException("Not supported for groupBy and topN queries");
+        }
+
+        List<DimensionSelector> selectors = new ArrayList<>();
+
+        for (String fieldName : fieldNames) {
+            selectors.add(makeDimensionSelector(columnFactory, fieldName));
+        }
+
+        return new ExactDistinctCountAtLeastBufferAggregator(selectors, atLeast);
+    }
+
+    @Override
+    public boolean canVectorize(ColumnInspector columnInspector) {
+        if (atLeast == null) {
+            return false;
+        }
+
+        for (String fieldName : fieldNames) {
+            ColumnCapabilities capabilities = columnInspector.getColumnCapabilities(fieldName);
+
+            if (capabilities != null && !capabilities.is(ValueType.STRING)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public VectorAggregator factorizeVector(VectorColumnSelectorFactory selectorFactory) {
+        List<VectorObjectSelector> selectors = new ArrayList<>();
+
+        for (String fieldName : fieldNames) {
+            selectors.add(selectorFactory.makeObjectSelector(fieldName));
+        }
+
+        return new ExactDistinctCountAtLeastVectorAggregator(selectors, atLeast);
     }
 
     @Override
     @Nonnull
     public AggregatorFactory withName(@Nonnull String newName) {
         return new ExactDistinctCountAggregatorFactory(
-                newName, getFieldNames(), maxNumberOfValues, failOnLimitExceeded);
+                newName, getFieldNames(), maxNumberOfValues, failOnLimitExceeded, atLeast);
     }
 
     private DimensionSelector makeDimensionSelector(final ColumnSelectorFactory columnFactory, String fieldName) {
@@ -106,6 +171,10 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
 
     @Override
     public Object combine(Object lhs, Object rhs) {
+        if (atLeast != null && (lhs instanceof Number || rhs instanceof Number)) {
+            return atLeast;
+        }
+
         Set<Object> combinedSet = Sets.newHashSet();
         if (lhs != null) {
             LOG.debug(lhs.toString());
@@ -116,13 +185,18 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
             LOG.debug(rhs.toString());
             combinedSet.addAll((Collection<?>) rhs);
         }
+
+        if (atLeast != null && combinedSet.size() >= atLeast) {
+            return atLeast;
+        }
         return combinedSet;
     }
 
     @Override
     @Nonnull
     public AggregatorFactory getCombiningFactory() {
-        return new ExactDistinctCountAggregatorFactory(name, fieldNames, maxNumberOfValues, failOnLimitExceeded);
+        return new ExactDistinctCountAggregatorFactory(
+                name, fieldNames, maxNumberOfValues, failOnLimitExceeded, atLeast);
     }
 
     @Override
@@ -138,8 +212,8 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
     @Override
     @Nonnull
     public List<AggregatorFactory> getRequiredColumns() {
-        return ImmutableList.of(
-                new ExactDistinctCountAggregatorFactory(name, fieldNames, maxNumberOfValues, failOnLimitExceeded));
+        return ImmutableList.of(new ExactDistinctCountAggregatorFactory(
+                name, fieldNames, maxNumberOfValues, failOnLimitExceeded, atLeast));
     }
 
     @Override
@@ -173,6 +247,12 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
         return failOnLimitExceeded;
     }
 
+    @Nullable
+    @JsonProperty
+    public Integer getAtLeast() {
+        return atLeast;
+    }
+
     @Override
     @Nonnull
     @JsonProperty
@@ -192,11 +272,14 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
         byte[] bitMapFactoryCacheKey = StringUtils.toUtf8(this.getClass().getSimpleName());
         byte[] maxValuesBytes = StringUtils.toUtf8(maxNumberOfValues.toString());
         byte[] failOnLimitExceededBytes = StringUtils.toUtf8(failOnLimitExceeded.toString());
-        return ByteBuffer.allocate(4
+        // atLeast is only appended when set, so that the keys of queries not using it stay the same
+        byte[] atLeastBytes = atLeast == null ? new byte[0] : StringUtils.toUtf8(String.valueOf(atLeast));
+        ByteBuffer cacheKey = ByteBuffer.allocate((atLeast == null ? 4 : 5)
                         + fieldNameBytes.length
                         + bitMapFactoryCacheKey.length
                         + maxValuesBytes.length
-                        + failOnLimitExceededBytes.length)
+                        + failOnLimitExceededBytes.length
+                        + atLeastBytes.length)
                 .put(AggregatorUtil.DISTINCT_COUNT_CACHE_KEY)
                 .put(fieldNameBytes)
                 .put(AggregatorUtil.STRING_SEPARATOR)
@@ -204,8 +287,11 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
                 .put(AggregatorUtil.STRING_SEPARATOR)
                 .put(maxValuesBytes)
                 .put(AggregatorUtil.STRING_SEPARATOR)
-                .put(failOnLimitExceededBytes)
-                .array();
+                .put(failOnLimitExceededBytes);
+        if (atLeast != null) {
+            cacheKey.put(AggregatorUtil.STRING_SEPARATOR).put(atLeastBytes);
+        }
+        return cacheKey.array();
     }
 
     @Override
@@ -222,6 +308,9 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
 
     @Override
     public int getMaxIntermediateSize() {
+        if (atLeast != null) {
+            return AtLeastHashcodeSlot.getMaxIntermediateSize(atLeast);
+        }
         return (int) Math.ceil(maxNumberOfValues * 16 + (maxNumberOfValues / 0.75) * 8);
     }
 
@@ -245,12 +334,15 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
         if (failOnLimitExceeded.booleanValue() != that.failOnLimitExceeded.booleanValue()) {
             return false;
         }
+        if (!Objects.equals(atLeast, that.atLeast)) {
+            return false;
+        }
         return name.equals(that.name);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(fieldNames, maxNumberOfValues, failOnLimitExceeded);
+        return Objects.hash(fieldNames, maxNumberOfValues, failOnLimitExceeded, atLeast);
     }
 
     @Override
@@ -259,6 +351,7 @@ public class ExactDistinctCountAggregatorFactory extends AggregatorFactory {
                 + name + '\'' + ", fieldNames='"
                 + fieldNames + '\'' + ", maxNumberOfValues="
                 + maxNumberOfValues + ", failOnLimitExceeded="
-                + failOnLimitExceeded.toString() + '}';
+                + failOnLimitExceeded.toString() + ", atLeast="
+                + atLeast + '}';
     }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import org.apache.druid.query.aggregation.BufferAggregator;
+import org.apache.druid.query.monomorphicprocessing.RuntimeShapeInspector;
+import org.apache.druid.segment.DimensionSelector;
+
+public class ExactDistinctCountAtLeastBufferAggregator implements BufferAggregator {
+    private final List<DimensionSelector> selectors;
+    private final AtLeastHashcodeSlot slot;
+
+    public ExactDistinctCountAtLeastBufferAggregator(List<DimensionSelector> selectors, int atLeast) {
+        this.selectors = selectors;
+        this.slot = new AtLeastHashcodeSlot(atLeast);
+    }
+
+    @Override
+    public void init(@Nonnull ByteBuffer byteBuffer, int position) {
+        slot.init(byteBuffer, position);
+    }
+
+    @Override
+    public void aggregate(@Nonnull ByteBuffer byteBuffer, int position) {
+        if (slot.isSaturated(byteBuffer, position)) {
+            return;
+        }
+
+        int hashcode = HashcodeRegistry.INITIAL_HASHCODE;
+        for (DimensionSelector selector : selectors) {
+            hashcode = HashcodeRegistry.combineHashcode(hashcode, selector.getObject());
+        }
+
+        slot.add(byteBuffer, position, hashcode);
+    }
+
+    @Nullable
+    @Override
+    public Object get(@Nonnull ByteBuffer byteBuffer, int position) {
+        return slot.get(byteBuffer, position);
+    }
+
+    @Override
+    public float getFloat(@Nonnull ByteBuffer byteBuffer, int position) {
+        throw new UnsupportedOperationException(
+                "ExactDistinctCountAtLeastBufferAggregator does not support getFloat()");
+    }
+
+    @Override
+    public long getLong(@Nonnull ByteBuffer byteBuffer, int position) {
+        throw new UnsupportedOperationException(
+                "ExactDistinctCountAtLeastBufferAggregator does not support getLong()");
+    }
+
+    @Override
+    public void relocate(int oldPosition, int newPosition, ByteBuffer oldBuffer, ByteBuffer newBuffer) {
+        slot.relocate(oldPosition, newPosition, oldBuffer, newBuffer);
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void inspectRuntimeShape(RuntimeShapeInspector inspector) {
+        inspector.visit("selectors", selectors);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright Deep BI, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package bi.deep;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.apache.druid.query.aggregation.VectorAggregator;
+import org.apache.druid.segment.vector.VectorObjectSelector;
+
+public class ExactDistinctCountAtLeastVectorAggregator implements VectorAggregator {
+    private final List<VectorObjectSelector> selectors;
+    private final AtLeastHashcodeSlot slot;
+    private final Object[][] vectors;
+
+    public ExactDistinctCountAtLeastVectorAggregator(List<VectorObjectSelector> selectors, int atLeast) {
+        this.selectors = selectors;
+        this.slot = new AtLeastHashcodeSlot(atLeast);
+        this.vectors = new Object[selectors.size()][];
+    }
+
+    @Override
+    public void init(ByteBuffer buf, int position) {
+        slot.init(buf, position);
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int position, int startRow, int endRow) {
+        if (slot.isSaturated(buf, position)) {
+            return;
+        }
+
+        readVectors();
+
+        for (int row = startRow; row < endRow && !slot.isSaturated(buf, position); row++) {
+            slot.add(buf, position, hashcode(row));
+        }
+    }
+
+    @Override
+    public void aggregate(ByteBuffer buf, int numRows, int[] positions, @Nullable int[] rows, int positionOffset) {
+        readVectors();
+
+        for (int i = 0; i < numRows; i++) {
+            final int position = positions[i] + positionOffset;
+
+            if (!slot.isSaturated(buf, position)) {
+                slot.add(buf, position, hashcode(rows != null ? rows[i] : i));
+            }
+        }
+    }
+
+    private void readVectors() {
+        for (int i = 0; i < vectors.length; i++) {
+            vectors[i] = selectors.get(i).getObjectVector();
+        }
+    }
+
+    private int hashcode(int row) {
+        int hashcode = HashcodeRegistry.INITIAL_HASHCODE;
+        for (Object[] vector : vectors) {
+            hashcode = HashcodeRegistry.combineHashcode(hashcode, vector[row]);
+        }
+        return hashcode;
+    }
+
+    @Nullable
+    @Override
+    public Object get(ByteBuffer buf, int position) {
+        return slot.get(buf, position);
+    }
+
+    @Override
+    public void relocate(int oldPosition, int newPosition, ByteBuffer oldBuffer, ByteBuffer newBuffer) {
+        slot.relocate(oldPosition, newPosition, oldBuffer, newBuffer);
+    }
+
+    @Override
+    public void close() {}
+}
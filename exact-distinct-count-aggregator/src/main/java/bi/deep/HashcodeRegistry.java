@@ -15,13 +15,13 @@
  */
 package bi.deep;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import org.apache.druid.segment.DimensionSelector;
 
 public class HashcodeRegistry {
+    public static final int INITIAL_HASHCODE = 1;
     private static final String NULL = "NULL";
     private final Set<Integer> hashcodeSet;
 
@@ -42,14 +42,21 @@ public class HashcodeRegistry {
     }
 
     private int getHashcode(List<DimensionSelector> selectors) {
-        List<Object> objectList = new ArrayList<>();
+        int hashcode = INITIAL_HASHCODE;
 
-        selectors.forEach(selector -> objectList.add(findObject(selector)));
-        return objectList.hashCode();
+        for (DimensionSelector selector : selectors) {
+            hashcode = combineHashcode(hashcode, selector.getObject());
+        }
+
+        return hashcode;
     }
 
-    private Object findObject(DimensionSelector selector) {
-        return selector.getObject() == null ? NULL : selector.getObject();
+    /**
+     * Folds the next value into a row hashcode. Starting from {@link #INITIAL_HASHCODE} this gives the same result as
+     * {@link List#hashCode()} of the row values (with nulls replaced by a placeholder), without building the list.
+     */
+    public static int combineHashcode(int hashcode, Object value) {
+        return 31 * hashcode + (value == null ? NULL : value).hashCode();
     }
 
     public HashSet<Integer> getRegistry() {
@@ -19,14 +19,21 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import javax.validation.ValidationException;
+import org.apache.druid.data.input.InputRow;
 import org.apache.druid.data.input.MapBasedInputRow;
 import org.apache.druid.data.input.impl.TimestampSpec;
 import org.apache.druid.java.util.common.DateTimes;
+import org.apache.druid.java.util.common.StringUtils;
 import org.apache.druid.java.util.common.granularity.Granularities;
 import org.apache.druid.query.Druids;
+import org.apache.druid.query.QueryContexts;
 import org.apache.druid.query.QueryRunnerTestHelper;
 import org.apache.druid.query.Result;
 import org.apache.druid.query.aggregation.CountAggregatorFactory;
@@ -34,7 +41,11 @@ import org.apache.druid.query.timeseries.DefaultTimeseriesQueryMetrics;
 import org.apache.druid.query.timeseries.TimeseriesQuery;
 import org.apache.druid.query.timeseries.TimeseriesQueryEngine;
 import org.apache.druid.query.timeseries.TimeseriesResultValue;
+import org.apache.druid.segment.DimensionSelector;
 import org.apache.druid.segment.IncrementalIndexTimeBoundaryInspector;
+import org.apache.druid.segment.IndexBuilder;
+import org.apache.druid.segment.QueryableIndex;
+import org.apache.druid.segment.QueryableIndexCursorFactory;
 import org.apache.druid.segment.TestHelper;
 import org.apache.druid.segment.incremental.IncrementalIndex;
 import org.apache.druid.segment.incremental.IncrementalIndexCursorFactory;
@@ -44,40 +55,71 @@ import org.apache.druid.testing.InitializedNullHandlingTest;
 import org.joda.time.DateTime;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class DistinctCountTimeseriesQueryTest extends InitializedNullHandlingTest {
     private static final String VISITOR_ID = "visitor_id";
     private static final String CLIENT_TYPE = "client_type";
     private static final DateTime DATE_TIME = DateTimes.of("2016-03-04T00:00:00.000Z");
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private TimeseriesQueryEngine engine;
+    private IncrementalIndexSchema schema;
+    private List<InputRow> rows;
     private IncrementalIndex index;
 
     @Before
     public void setup() {
         engine = new TimeseriesQueryEngine();
+        schema = new IncrementalIndexSchema.Builder()
+                .withTimestampSpec(new TimestampSpec("__time", "millis", null))
+                .withQueryGranularity(Granularities.SECOND)
+                .withMetrics(new CountAggregatorFactory("cnt"))
+                .build();
         index = new OnheapIncrementalIndex.Builder()
-                .setIndexSchema(new IncrementalIndexSchema.Builder()
-                        .withTimestampSpec(new TimestampSpec("__time", "millis", null))
-                        .withQueryGranularity(Granularities.SECOND)
-                        .withMetrics(new CountAggregatorFactory("cnt"))
-                        .build())
+                .setIndexSchema(schema)
                 .setMaxRowCount(1000)
                 .build();
         long timestamp = DATE_TIME.getMillis();
-        index.add(new MapBasedInputRow(
-                timestamp,
-                Lists.newArrayList(VISITOR_ID, CLIENT_TYPE),
-                ImmutableMap.of(VISITOR_ID, "0", CLIENT_TYPE, "iphone")));
-        index.add(new MapBasedInputRow(
-                timestamp,
-                Lists.newArrayList(VISITOR_ID, CLIENT_TYPE),
-                ImmutableMap.of(VISITOR_ID, "1", CLIENT_TYPE, "iphone")));
-        index.add(new MapBasedInputRow(
-                timestamp,
-                Lists.newArrayList(VISITOR_ID, CLIENT_TYPE),
-                ImmutableMap.of(VISITOR_ID, "2", CLIENT_TYPE, "android")));
+        rows = ImmutableList.of(
+                new MapBasedInputRow(
+                        timestamp,
+                        Lists.newArrayList(VISITOR_ID, CLIENT_TYPE),
+                        ImmutableMap.of(VISITOR_ID, "0", CLIENT_TYPE, "iphone")),
+                new MapBasedInputRow(
+                        timestamp,
+                        Lists.newArrayList(VISITOR_ID, CLIENT_TYPE),
+                        ImmutableMap.of(VISITOR_ID, "1", CLIENT_TYPE, "iphone")),
+                new MapBasedInputRow(
+                        timestamp,
+                        Lists.newArrayList(VISITOR_ID, CLIENT_TYPE),
+                        ImmutableMap.of(VISITOR_ID, "2", CLIENT_TYPE, "android")));
+        for (InputRow row : rows) {
+            index.add(row);
+        }
+    }
+
+    /**
+     * Runs the query with forced vectorization over a persisted segment of the rows, since incremental indexes are
+     * not vectorized.
+     */
+    private List<Result<TimeseriesResultValue>> runVectorized(TimeseriesQuery query) throws IOException {
+        QueryableIndex queryableIndex = IndexBuilder.create()
+                .tmpDir(temporaryFolder.newFolder())
+                .schema(schema)
+                .rows(rows)
+                .buildMMappedIndex();
+
+        return engine.process(
+                        query.withOverriddenContext(ImmutableMap.of(QueryContexts.VECTORIZE_KEY, "force")),
+                        new QueryableIndexCursorFactory(queryableIndex),
+                        null,
+                        new DefaultTimeseriesQueryMetrics())
+                .toList();
     }
 
     @Test
@@ -224,4 +266,140 @@ public class DistinctCountTimeseriesQueryTest extends InitializedNullHandlingTes
 
         TestHelper.assertExpectedResults(multiDimensionResults, multiDimensionExpectedResults);
     }
+
+    @Test
+    public void testAtLeastQuery() {
+        TimeseriesQuery atLeastQuery = Druids.newTimeseriesQueryBuilder()
+                .dataSource(QueryRunnerTestHelper.DATA_SOURCE)
+                .granularity(QueryRunnerTestHelper.ALL_GRAN)
+                .intervals(QueryRunnerTestHelper.FULL_ON_INTERVAL_SPEC)
+                .aggregators(Lists.newArrayList(
+                        QueryRunnerTestHelper.ROWS_COUNT,
+                        new ExactDistinctCountAggregatorFactory("UV", ImmutableList.of(VISITOR_ID), 3, true, 2)))
+                .build();
+
+        final Iterable<Result<TimeseriesResultValue>> results = engine.process(
+                        atLeastQuery,
+                        new IncrementalIndexCursorFactory(index),
+                        new IncrementalIndexTimeBoundaryInspector(index),
+                        new DefaultTimeseriesQueryMetrics())
+                .toList();
+
+        List<Result<TimeseriesResultValue>> expectedResults = Collections.singletonList(
+                new Result<>(DATE_TIME, new TimeseriesResultValue(ImmutableMap.of("UV", 2, "rows", 3L))));
+        TestHelper.assertExpectedResults(expectedResults, results);
+    }
+
+    @Test
+    public void testAtLeastNotReachedQuery() {
+        TimeseriesQuery atLeastQuery = Druids.newTimeseriesQueryBuilder()
+                .dataSource(QueryRunnerTestHelper.DATA_SOURCE)
+                .granularity(QueryRunnerTestHelper.ALL_GRAN)
+                .intervals(QueryRunnerTestHelper.FULL_ON_INTERVAL_SPEC)
+                .aggregators(Lists.newArrayList(
+                        QueryRunnerTestHelper.ROWS_COUNT,
+                        new ExactDistinctCountAggregatorFactory("UV", ImmutableList.of(CLIENT_TYPE), 5, true, 5)))
+                .build();
+
+        final Iterable<Result<TimeseriesResultValue>> results = engine.process(
+                        atLeastQuery,
+                        new IncrementalIndexCursorFactory(index),
+                        new IncrementalIndexTimeBoundaryInspector(index),
+                        new DefaultTimeseriesQueryMetrics())
+                .toList();
+
+        Set<Integer> set =
+                ImmutableSet.of(ImmutableList.of("iphone").hashCode(), ImmutableList.of("android").hashCode());
+
+        List<Result<TimeseriesResultValue>> expectedResults = Collections.singletonList(
+                new Result<>(DATE_TIME, new TimeseriesResultValue(ImmutableMap.of("UV", set, "rows", 3L))));
+        TestHelper.assertExpectedResults(expectedResults, results);
+    }
+
+    @Test
+    public void testAtLeastVectorizedQuery() throws IOException {
+        TimeseriesQuery atLeastQuery = Druids.newTimeseriesQueryBuilder()
+                .dataSource(QueryRunnerTestHelper.DATA_SOURCE)
+                .granularity(QueryRunnerTestHelper.ALL_GRAN)
+                .intervals(QueryRunnerTestHelper.FULL_ON_INTERVAL_SPEC)
+                .aggregators(Lists.newArrayList(
+                        QueryRunnerTestHelper.ROWS_COUNT,
+                        new ExactDistinctCountAggregatorFactory("UV", ImmutableList.of(VISITOR_ID), 3, true, 2)))
+                .build();
+
+        List<Result<TimeseriesResultValue>> expectedResults = Collections.singletonList(
+                new Result<>(DATE_TIME, new TimeseriesResultValue(ImmutableMap.of("UV", 2, "rows", 3L))));
+        TestHelper.assertExpectedResults(expectedResults, runVectorized(atLeastQuery));
+    }
+
+    @Test
+    public void testAtLeastNotReachedVectorizedQuery() throws IOException {
+        TimeseriesQuery atLeastQuery = Druids.newTimeseriesQueryBuilder()
+                .dataSource(QueryRunnerTestHelper.DATA_SOURCE)
+                .granularity(QueryRunnerTestHelper.ALL_GRAN)
+                .intervals(QueryRunnerTestHelper.FULL_ON_INTERVAL_SPEC)
+                .aggregators(Lists.newArrayList(
+                        QueryRunnerTestHelper.ROWS_COUNT,
+                        new ExactDistinctCountAggregatorFactory(
+                                "UV", ImmutableList.of(VISITOR_ID, CLIENT_TYPE), 5, true, 5)))
+                .build();
+
+        Set<Integer> set = ImmutableSet.of(
+                ImmutableList.of("0", "iphone").hashCode(),
+                ImmutableList.of("1", "iphone").hashCode(),
+                ImmutableList.of("2", "android").hashCode());
+
+        List<Result<TimeseriesResultValue>> expectedResults = Collections.singletonList(
+                new Result<>(DATE_TIME, new TimeseriesResultValue(ImmutableMap.of("UV", set, "rows", 3L))));
+        TestHelper.assertExpectedResults(expectedResults, runVectorized(atLeastQuery));
+    }
+
+    @Test
+    public void testCacheKeyWithoutAtLeast() {
+        ExactDistinctCountAggregatorFactory withoutAtLeast =
+                new ExactDistinctCountAggregatorFactory("UV", ImmutableList.of(VISITOR_ID), 10, false);
+        ExactDistinctCountAggregatorFactory withAtLeast =
+                new ExactDistinctCountAggregatorFactory("UV", ImmutableList.of(VISITOR_ID), 10, false, 3);
+
+        // the key of queries without atLeast ends with failOnLimitExceeded, as before atLeast was added
+        byte[] key = withoutAtLeast.getCacheKey();
+        Assert.assertTrue(StringUtils.fromUtf8(key).endsWith("false"));
+        Assert.assertFalse(Arrays.equals(key, withAtLeast.getCacheKey()));
+    }
+
+    @Test
+    public void testAtLeastCombine() {
+        ExactDistinctCountAggregatorFactory factory =
+                new ExactDistinctCountAggregatorFactory("UV", ImmutableList.of(VISITOR_ID), 10, false, 3);
+
+        Assert.assertEquals(ImmutableSet.of(1, 2), factory.combine(ImmutableSet.of(1), ImmutableSet.of(2)));
+        Assert.assertEquals(3, factory.combine(ImmutableSet.of(1, 2), ImmutableSet.of(3)));
+        Assert.assertEquals(3, factory.combine(3, ImmutableSet.of(1)));
+        Assert.assertEquals(3, factory.finalizeComputation(factory.combine(ImmutableSet.of(1), 3)));
+    }
+
+    @Test
+    public void testAtLeastBufferAggregator() {
+        ExactDistinctCountAtLeastBufferAggregator aggregator = new ExactDistinctCountAtLeastBufferAggregator(
+                ImmutableList.of(DimensionSelector.constant("a")), 2);
+        ByteBuffer buffer = ByteBuffer.allocate(AtLeastHashcodeSlot.getMaxIntermediateSize(2));
+
+        aggregator.init(buffer, 0);
+        aggregator.aggregate(buffer, 0);
+        aggregator.aggregate(buffer, 0);
+
+        Assert.assertEquals(ImmutableSet.of(ImmutableList.of("a").hashCode()), aggregator.get(buffer, 0));
+
+        AtLeastHashcodeSlot slot = new AtLeastHashcodeSlot(2);
+        slot.add(buffer, 0, 0);
+
+        Assert.assertEquals(2, aggregator.get(buffer, 0));
+    }
+
+    @Test
+    public void testInvalidAtLeast() {
+        Assert.assertThrows(
+                ValidationException.class,
+                () -> new ExactDistinctCountAggregatorFactory("UV", ImmutableList.of(VISITOR_ID), 2, false, 3));
+    }
 }